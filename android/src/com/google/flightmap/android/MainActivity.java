@@ -28,6 +28,7 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.location.Location;
 import android.location.LocationManager;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -45,10 +46,13 @@ import com.google.flightmap.android.location.SimulatorDialog;
 import com.google.flightmap.android.map.MapView;
 import com.google.flightmap.android.net.DbUpdaterTask;
 import com.google.flightmap.common.ProgressListener;
-import com.google.flightmap.common.db.CachedAirportDirectory;
-import com.google.flightmap.common.db.CachedAviationDbAdapter;
-import com.google.flightmap.common.db.CustomGridAirportDirectory;
+import com.google.flightmap.common.QueryExecutor;
+import com.google.flightmap.common.db.AviationDbAdapter;
 import com.google.flightmap.common.db.DbAdapter;
+import com.google.flightmap.common.db.InstrumentedAviationDbAdapter;
+import com.google.flightmap.common.db.SwappableAviationDb;
+import com.google.flightmap.common.geo.NavigationUtil;
+import com.google.flightmap.common.metrics.MetricsRegistry;
 
 public class MainActivity extends Activity {
   private static final String TAG = MainActivity.class.getSimpleName();
@@ -70,6 +74,17 @@ public class MainActivity extends Activity {
       "http://sites.google.com/site/flightmapdata/aviation-db/aviation.db";
   private static final int AVIATION_DATABASE_REQUIRED_SCHEMA_VERSION = 4;
 
+  // Threads running the map queries (airports and airspaces run side by side).
+  private static final int QUERY_THREADS = 2;
+
+  // Minimum time between two background database update checks.
+  private static final long BACKGROUND_UPDATE_INTERVAL = 6 * 60 * 60 * 1000;
+
+  /**
+   * Time of the last background database update check, in this process.
+   */
+  private static long lastBackgroundUpdateTime;
+
   private boolean disclaimerAccepted;
   private boolean isRunning;
   private UpdateHandler updater = new UpdateHandler();
@@ -79,8 +94,8 @@ public class MainActivity extends Activity {
   private boolean databaseDownloaded;
   private DbUpdaterTask dbUpdaterTask;
   private FlightMap flightMap;
-  private CachedAviationDbAdapter aviationDbAdapter;
-  private CachedAirportDirectory airportDirectory;
+  private SwappableAviationDb aviationDb;
+  private final QueryExecutor queryExecutor = new QueryExecutor(QUERY_THREADS);
   private UserPrefs userPrefs;
   private SimulatorDialog simulatorDialog;
 
@@ -187,16 +202,6 @@ public class MainActivity extends Activity {
       return;
     }
 
-    final File localFile = new File(AndroidAviationDbAdapter.DATABASE_PATH);
-    final File workingDir = new File(AndroidAviationDbAdapter.DATABASE_PATH + ".work");
-    URL url = null;
-    try {
-      url = new URL(AVIATION_DATABASE_URL);
-    } catch (MalformedURLException e) {
-      Log.e(TAG, "Bad url", e);
-      return;
-    }
-
     final ProgressDialog dialog = new ProgressDialog(this);
     dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
     dialog.setMessage(this.getString(R.string.updating_database));
@@ -221,11 +226,68 @@ public class MainActivity extends Activity {
       }
     };
 
+    startDbUpdate(dbUpdateListener, null);
+  }
+
+  /**
+   * Checks for a database update while the map is shown, at most once every
+   * {@link #BACKGROUND_UPDATE_INTERVAL} milliseconds.  If there is one, the map switches to the
+   * new database once it is downloaded and ready (see {@link SwappableAviationDb#reload}).
+   */
+  private void updateDatabaseInBackground() {
+    if (!isInitializationDone() ||
+        (dbUpdaterTask != null && dbUpdaterTask.getStatus() != AsyncTask.Status.FINISHED)) {
+      return;
+    }
+    final long now = System.currentTimeMillis();
+    synchronized (MainActivity.class) {
+      if (lastBackgroundUpdateTime != 0 &&
+          now - lastBackgroundUpdateTime < BACKGROUND_UPDATE_INTERVAL) {
+        return;
+      }
+      lastBackgroundUpdateTime = now;
+    }
+
+    final ProgressListener dbUpdateListener = new ProgressListener() {
+      @Override
+      public void hasCompleted(boolean success) {
+        Log.i(TAG, "Background update completed.  Success: " + success);
+        if (success && aviationDb != null) {
+          NavigationUtil.setMagneticVariationGrid(
+              getAviationDbAdapter().getMagneticVariationGrid());
+        }
+      }
+
+      @Override
+      public void hasProgressed(int percent) {
+      }
+    };
+
+    startDbUpdate(dbUpdateListener, aviationDb);
+  }
+
+  /**
+   * Starts updating the database file in the background.
+   *
+   * @param reloadedDb Database to reload after an update, or {@code null}.
+   */
+  private void startDbUpdate(final ProgressListener listener,
+      final SwappableAviationDb reloadedDb) {
+    final File localFile = new File(AndroidAviationDbAdapter.DATABASE_PATH);
+    final File workingDir = new File(AndroidAviationDbAdapter.DATABASE_PATH + ".work");
+    URL url = null;
+    try {
+      url = new URL(AVIATION_DATABASE_URL);
+    } catch (MalformedURLException e) {
+      Log.e(TAG, "Bad url", e);
+      return;
+    }
+
     final DbAdapter dbAdapter = new AndroidAviationDbAdapter(getUserPrefs());
     final DbUpdaterTask.Params params =
         new DbUpdaterTask.Params(localFile, url, workingDir, dbAdapter,
-            AVIATION_DATABASE_REQUIRED_SCHEMA_VERSION);
-    dbUpdaterTask = new DbUpdaterTask(dbUpdateListener);
+            AVIATION_DATABASE_REQUIRED_SCHEMA_VERSION, reloadedDb);
+    dbUpdaterTask = new DbUpdaterTask(listener);
     dbUpdaterTask.execute(params);
   }
 
@@ -238,12 +300,17 @@ public class MainActivity extends Activity {
   }
 
   private synchronized void initializeApplication() {
-    aviationDbAdapter = new CachedAviationDbAdapter(new AndroidAviationDbAdapter(getUserPrefs()));
-    airportDirectory =
-        new CachedAirportDirectory(new CustomGridAirportDirectory(getAviationDbAdapter()));
+    aviationDb = new SwappableAviationDb(new SwappableAviationDb.AdapterFactory() {
+      @Override
+      public AviationDbAdapter createAdapter() {
+        return new InstrumentedAviationDbAdapter(new AndroidAviationDbAdapter(getUserPrefs()),
+            MetricsRegistry.getDefault(), "db");
+      }
+    });
 
     // TODO: handle the case of this throwing when there's no database.
-    airportDirectory.open();
+    aviationDb.open();
+    NavigationUtil.setMagneticVariationGrid(getAviationDbAdapter().getMagneticVariationGrid());
 
     setInitializationDone(true);
     setRunning(true);
@@ -291,6 +358,7 @@ public class MainActivity extends Activity {
     flightMap.getLocationHandler().startListening();
     setRunning(isInitializationDone());
     update();
+    updateDatabaseInBackground();
   }
 
   @Override
@@ -298,14 +366,16 @@ public class MainActivity extends Activity {
     super.onPause();
     setRunning(false);
     flightMap.getLocationHandler().stopListening();
+    Log.i(TAG, "Metrics:\n" + MetricsRegistry.getDefault().getSnapshot());
   }
 
   @Override
   protected void onDestroy() {
     super.onDestroy();
     mapView.destroy();
-    if (airportDirectory != null) {
-      airportDirectory.close();
+    queryExecutor.shutdown();
+    if (aviationDb != null) {
+      aviationDb.close();
     }
   }
 
@@ -389,11 +459,15 @@ public class MainActivity extends Activity {
     return flightMap;
   }
 
-  public CachedAviationDbAdapter getAviationDbAdapter() {
-    return aviationDbAdapter;
+  public QueryExecutor getQueryExecutor() {
+    return queryExecutor;
+  }
+
+  public SwappableAviationDb.DbAdapterView getAviationDbAdapter() {
+    return aviationDb == null ? null : aviationDb.getAviationDbAdapter();
   }
 
-  public CachedAirportDirectory getAirportDirectory() {
-    return airportDirectory;
+  public SwappableAviationDb.DirectoryView getAirportDirectory() {
+    return aviationDb == null ? null : aviationDb.getAirportDirectory();
   }
 }
@@ -46,6 +46,8 @@ import com.google.flightmap.android.db.AndroidAviationDbAdapter;
 import com.google.flightmap.android.location.LocationHandler;
 import com.google.flightmap.android.map.MapView;
 import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.AirportAirspace;
+import com.google.flightmap.common.data.Airspace;
 import com.google.flightmap.common.data.Comm;
 import com.google.flightmap.common.data.LatLng;
 import com.google.flightmap.common.data.Runway;
@@ -158,6 +160,9 @@ public class TapcardActivity extends Activity implements SurfaceHolder.Callback
     // Runway details
     addRunways(airport.runways, res);
 
+    // Airspaces overlying the airport
+    addAirspaces(airport, res);
+
     // Elevation
     addElevation(airport);
   }
@@ -301,6 +306,28 @@ public class TapcardActivity extends Activity implements SurfaceHolder.Callback
     }
   }
 
+  /**
+   * Adds the airspaces containing the airport to the tapcard, below the runways.
+   */
+  private void addAirspaces(Airport airport, Resources res) {
+    final List<AirportAirspace> airspaces = aviationDbAdapter.getAirportAirspaces(airport.id);
+    final LinearLayout runwayLayout = (LinearLayout) findViewById(R.id.tapcard_runway_layout);
+    final int textAnnotationColor = res.getColor(R.color.TapcardForegroundAnnotation);
+
+    for (AirportAirspace airspace : airspaces) {
+      final String bottom =
+          airspace.bottom == Airspace.SFC ? "SFC" : Integer.toString(airspace.bottom);
+      TextView text = new TextView(this);
+      text.setText("Class " + airspace.airspaceClass + " " + bottom + "-" + airspace.top +
+          "' MSL");
+      text.setTypeface(Typeface.SANS_SERIF);
+      text.setTextColor(textAnnotationColor);
+      text.setTextSize(TypedValue.DENSITY_DEFAULT, 15 * density);
+      text.setPadding(5, 0, 5, 0);
+      runwayLayout.addView(text);
+    }
+  }
+
   /**
    * Adds airport elevation to the tapcard
    */
@@ -21,8 +21,9 @@ import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
 
 import com.google.flightmap.android.UserPrefs;
-import com.google.flightmap.common.ThreadUtils;
+import com.google.flightmap.common.CancellationToken;
 import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.AirportAirspace;
 import com.google.flightmap.common.data.Airspace;
 import com.google.flightmap.common.data.AirspaceArc;
 import com.google.flightmap.common.data.Comm;
@@ -31,6 +32,10 @@ import com.google.flightmap.common.data.LatLngRect;
 import com.google.flightmap.common.data.Runway;
 import com.google.flightmap.common.data.RunwayEnd;
 import com.google.flightmap.common.db.AviationDbAdapter;
+import com.google.flightmap.common.db.CustomGridUtil;
+import com.google.flightmap.common.db.NearestAirports;
+import com.google.flightmap.common.geo.AirspaceLevelsOfDetail;
+import com.google.flightmap.common.geo.MagneticVariationGrid;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -166,6 +171,38 @@ public class AndroidAviationDbAdapter implements AviationDbAdapter {
   private static final String[] ARC_COLUMNS = new String[] {NUM_COLUMN, MIN_LAT_COLUMN,
       MAX_LAT_COLUMN, MIN_LNG_COLUMN, MAX_LNG_COLUMN, START_ANGLE_COLUMN, SWEEP_ANGLE_COLUMN};
 
+  // airspace_lods
+  private static final String AIRSPACE_LODS_TABLE = "airspace_lods";
+  private static final String LOD_COLUMN = "lod";
+  private static final String POINTS_COLUMN = "points";
+  private static final String[] LOD_COLUMNS = new String[] {POINTS_COLUMN};
+  private static final String AIRSPACE_ID_LOD_WHERE =
+      AIRSPACE_ID_COLUMN + " = ? AND " + LOD_COLUMN + " = ?";
+  // magnetic_variation
+  private static final String MAGNETIC_VARIATION_TABLE = "magnetic_variation";
+  private static final String STEP_COLUMN = "step";
+  private static final String ROWS_COLUMN = "rows";
+  private static final String COLS_COLUMN = "cols";
+  private static final String VARIATION_COLUMN = "variation";
+  private static final String[] MAGNETIC_VARIATION_COLUMNS = new String[] {MIN_LAT_COLUMN,
+      MIN_LNG_COLUMN, STEP_COLUMN, ROWS_COLUMN, COLS_COLUMN, VARIATION_COLUMN};
+  // nearest_airports
+  private static final String NEAREST_AIRPORTS_TABLE = "nearest_airports";
+  private static final String START_CELL_ID_COLUMN = "start_cell_id";
+  private static final String END_CELL_ID_COLUMN = "end_cell_id";
+  private static final String AIRPORTS_COLUMN = "airports";
+  private static final String[] NEAREST_AIRPORTS_COLUMNS =
+      new String[] {END_CELL_ID_COLUMN, AIRPORTS_COLUMN};
+  private static final String START_CELL_ID_WHERE = START_CELL_ID_COLUMN + " <= ?";
+  private static final String START_CELL_ID_DESC = START_CELL_ID_COLUMN + " DESC";
+  // airport_airspaces
+  private static final String AIRPORT_AIRSPACES_TABLE = "airport_airspaces";
+  private static final String[] AIRPORT_AIRSPACE_COLUMNS = new String[] {AIRSPACE_ID_COLUMN,
+      CLASS_COLUMN, LOW_ALT_COLUMN, HIGH_ALT_COLUMN};
+
+  private static final String TABLE_EXISTS_QUERY =
+      "SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?";
+
   static {
     INTEGER_AIRPORT_PROPERTIES = new HashSet<String>();
     INTEGER_AIRPORT_PROPERTIES.add("Elevation");
@@ -176,9 +213,33 @@ public class AndroidAviationDbAdapter implements AviationDbAdapter {
 
   private SQLiteDatabase database;
   private final UserPrefs userPrefs;
+  private final String path;
+
+  /**
+   * Whether the database holds simplified airspace geometries (see {@link #open}).
+   */
+  private boolean hasAirspaceLods;
+
+  /**
+   * Whether the database holds precomputed nearest airports (see {@link #open}).
+   */
+  private boolean hasNearestAirports;
+
+  /**
+   * Whether the database holds the airspaces containing each airport (see {@link #open}).
+   */
+  private boolean hasAirportAirspaces;
 
   public AndroidAviationDbAdapter(final UserPrefs userPrefs) {
+    this(userPrefs, DATABASE_PATH);
+  }
+
+  /**
+   * @param path Path of the database file, e.g. a shard (see {@link AndroidShardFactory}).
+   */
+  public AndroidAviationDbAdapter(final UserPrefs userPrefs, final String path) {
     this.userPrefs = userPrefs;
+    this.path = path;
   }
 
   @Override
@@ -188,7 +249,22 @@ public class AndroidAviationDbAdapter implements AviationDbAdapter {
    * @throws SQLException on database error.
    */
   public synchronized void open() {
-    database = SQLiteDatabase.openDatabase(DATABASE_PATH, null, SQLiteDatabase.OPEN_READONLY);
+    database = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY);
+    hasAirspaceLods = hasTable(AIRSPACE_LODS_TABLE);
+    hasNearestAirports = hasTable(NEAREST_AIRPORTS_TABLE);
+    hasAirportAirspaces = hasTable(AIRPORT_AIRSPACES_TABLE);
+  }
+
+  /**
+   * Checks if the database holds a table with the given name.
+   */
+  private boolean hasTable(final String name) {
+    final Cursor result = database.rawQuery(TABLE_EXISTS_QUERY, new String[] {name});
+    try {
+      return result.moveToNext();
+    } finally {
+      result.close();
+    }
   }
 
   @Override
@@ -285,11 +361,13 @@ public class AndroidAviationDbAdapter implements AviationDbAdapter {
   }
 
   /**
-   * Returns airspace with given {@code id}.
+   * Returns airspace with given {@code id}, with its geometry at the given level of detail (see
+   * {@link AirspaceLevelsOfDetail}).  Falls back to the full geometry if no simplified geometry is
+   * available.
    *
    * @return Airspace with corresponding id, {@code null} if none.
    */
-  private Airspace getAirspace(final int id) {
+  private Airspace getAirspace(final int id, final int level) {
     final Cursor result = database.query(AIRSPACES_TABLE, AIRSPACE_COLUMNS, ID_WHERE,
         new String[] {Integer.toString(id)}, null, null, null);
     try {
@@ -302,6 +380,13 @@ public class AndroidAviationDbAdapter implements AviationDbAdapter {
       final Airspace.Class airspaceClass = Airspace.Class.valueOf(classString);
       final int lowAlt = result.getInt(result.getColumnIndexOrThrow(LOW_ALT_COLUMN));
       final int highAlt = result.getInt(result.getColumnIndexOrThrow(HIGH_ALT_COLUMN));
+      if (level != AirspaceLevelsOfDetail.FULL_DETAIL) {
+        final SortedMap<Integer, LatLng> points = getAirspaceLodPoints(id, level);
+        if (points != null) {
+          return new Airspace(id, name, airspaceClass, lowAlt, highAlt, points,
+              new TreeMap<Integer, AirspaceArc>());
+        }
+      }
       final SortedMap<Integer, LatLng> points = getAirspacePoints(id);
       final SortedMap<Integer, AirspaceArc> arcs = getAirspaceArcs(id);
       return new Airspace(id, name, airspaceClass, lowAlt, highAlt, points, arcs);
@@ -333,6 +418,27 @@ public class AndroidAviationDbAdapter implements AviationDbAdapter {
     }
   }
 
+  /**
+   * Returns simplified polygon points for airspace with given {@code id}, {@code null} if not
+   * available.
+   */
+  private SortedMap<Integer, LatLng> getAirspaceLodPoints(final int id, final int level) {
+    if (!hasAirspaceLods) {
+      return null;
+    }
+    final Cursor result = database.query(AIRSPACE_LODS_TABLE, LOD_COLUMNS, AIRSPACE_ID_LOD_WHERE,
+        new String[] {Integer.toString(id), Integer.toString(level)}, null, null, null);
+    try {
+      if (!result.moveToNext()) {
+        return null;
+      }
+      final byte[] blob = result.getBlob(result.getColumnIndexOrThrow(POINTS_COLUMN));
+      return AirspaceLevelsOfDetail.decodePoints(blob);
+    } finally {
+      result.close();
+    }
+  }
+
   private SortedMap<Integer, AirspaceArc> getAirspaceArcs(final int id) {
     final Cursor result = database.query(AIRSPACE_ARCS_TABLE, ARC_COLUMNS, AIRSPACE_ID_WHERE,
         new String[] {Integer.toString(id)}, null, null, null);
@@ -367,6 +473,32 @@ public class AndroidAviationDbAdapter implements AviationDbAdapter {
   @Override
   public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect)
       throws InterruptedException {
+    return getAirspacesInRectangle(rect, CancellationToken.NONE);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final float zoom)
+      throws InterruptedException {
+    return getAirspacesInRectangle(rect, zoom, CancellationToken.NONE);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect,
+      final CancellationToken token) throws InterruptedException {
+    return getAirspacesInRectangle(rect, AirspaceLevelsOfDetail.FULL_DETAIL, token);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final float zoom,
+      final CancellationToken token) throws InterruptedException {
+    return getAirspacesInRectangle(rect, AirspaceLevelsOfDetail.getLevelOfDetail(zoom), token);
+  }
+
+  /**
+   * Returns airspaces overlapping {@code rect}, at the given level of detail.
+   */
+  private Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final int level,
+      final CancellationToken token) throws InterruptedException {
     final int minLat = rect.getSouth();
     final int maxLat = rect.getNorth();
     final int minLng = rect.getWest();
@@ -378,9 +510,11 @@ public class AndroidAviationDbAdapter implements AviationDbAdapter {
     try {
       final int idColumn = result.getColumnIndexOrThrow(ID_COLUMN);
       while (result.moveToNext()) {
-        ThreadUtils.checkIfInterrupted();
+        if (token.hasExpired()) {
+          break;
+        }
         final int id = result.getInt(idColumn);
-        airspaces.add(getAirspace(id));
+        airspaces.add(getAirspace(id, level));
       }
       return airspaces;
     } finally {
@@ -501,6 +635,52 @@ public class AndroidAviationDbAdapter implements AviationDbAdapter {
     return result;
   }
 
+  @Override
+  public List<AirportAirspace> getAirportAirspaces(final int airportId) {
+    final List<AirportAirspace> airspaces = new LinkedList<AirportAirspace>();
+    if (!hasAirportAirspaces) {
+      return airspaces;
+    }
+    final Cursor result = database.query(AIRPORT_AIRSPACES_TABLE, AIRPORT_AIRSPACE_COLUMNS,
+        AIRPORT_ID_WHERE, new String[] {Integer.toString(airportId)}, null, null, LOW_ALT_COLUMN);
+    try {
+      final int airspaceIdColumn = result.getColumnIndexOrThrow(AIRSPACE_ID_COLUMN);
+      final int classColumn = result.getColumnIndexOrThrow(CLASS_COLUMN);
+      final int lowAltColumn = result.getColumnIndexOrThrow(LOW_ALT_COLUMN);
+      final int highAltColumn = result.getColumnIndexOrThrow(HIGH_ALT_COLUMN);
+      while (result.moveToNext()) {
+        final Airspace.Class airspaceClass =
+            Airspace.Class.valueOf(getConstant(result.getInt(classColumn)));
+        airspaces.add(new AirportAirspace(result.getInt(airspaceIdColumn), airspaceClass,
+            result.getInt(lowAltColumn), result.getInt(highAltColumn)));
+      }
+    } finally {
+      result.close();
+    }
+    return airspaces;
+  }
+
+  @Override
+  public int[] getNearestAirportCandidates(final LatLng position) {
+    if (!hasNearestAirports) {
+      return null;
+    }
+    final int cellId = CustomGridUtil.getCellId(position);
+    final Cursor result = database.query(NEAREST_AIRPORTS_TABLE, NEAREST_AIRPORTS_COLUMNS,
+        START_CELL_ID_WHERE, new String[] {Integer.toString(cellId)}, null, null,
+        START_CELL_ID_DESC, "1");
+    try {
+      if (!result.moveToNext() ||
+          cellId >= result.getInt(result.getColumnIndexOrThrow(END_CELL_ID_COLUMN))) {
+        return null;
+      }
+      final byte[] blob = result.getBlob(result.getColumnIndexOrThrow(AIRPORTS_COLUMN));
+      return NearestAirports.decodeCandidates(blob);
+    } finally {
+      result.close();
+    }
+  }
+
   /**
    * @return Map of airport properties, null if none
    */
@@ -625,6 +805,29 @@ public class AndroidAviationDbAdapter implements AviationDbAdapter {
     }
   }
 
+  @Override
+  public MagneticVariationGrid getMagneticVariationGrid() {
+    if (!hasTable(MAGNETIC_VARIATION_TABLE)) {
+      return null;
+    }
+    final Cursor result = database.query(MAGNETIC_VARIATION_TABLE, MAGNETIC_VARIATION_COLUMNS,
+        null, null, null, null, null);
+    try {
+      if (!result.moveToNext()) {
+        return null;
+      }
+      final int minLat = result.getInt(result.getColumnIndexOrThrow(MIN_LAT_COLUMN));
+      final int minLng = result.getInt(result.getColumnIndexOrThrow(MIN_LNG_COLUMN));
+      final int step = result.getInt(result.getColumnIndexOrThrow(STEP_COLUMN));
+      final int rows = result.getInt(result.getColumnIndexOrThrow(ROWS_COLUMN));
+      final int cols = result.getInt(result.getColumnIndexOrThrow(COLS_COLUMN));
+      final byte[] variation = result.getBlob(result.getColumnIndexOrThrow(VARIATION_COLUMN));
+      return new MagneticVariationGrid(minLat, minLng, step, rows, cols, variation);
+    } finally {
+      result.close();
+    }
+  }
+
   private SortedSet<Runway> getRunways(final int airportId) {
     final String[] stringAirportId = {Integer.toString(airportId)};
     final Cursor runwayCursor =
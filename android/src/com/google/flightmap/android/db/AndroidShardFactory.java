@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.android.db;
+
+import com.google.flightmap.android.UserPrefs;
+import com.google.flightmap.common.db.AviationDbAdapter;
+import com.google.flightmap.common.db.AviationDbShards;
+import com.google.flightmap.common.db.ShardedAviationDbAdapter;
+
+import java.io.File;
+
+/**
+ * Opens the shards downloaded to a local directory with {@link AndroidAviationDbAdapter}.
+ */
+public class AndroidShardFactory implements ShardedAviationDbAdapter.ShardFactory {
+  private final UserPrefs userPrefs;
+  private final File dir;
+
+  /**
+   * @param dir Local directory of the shards.
+   */
+  public AndroidShardFactory(final UserPrefs userPrefs, final File dir) {
+    this.userPrefs = userPrefs;
+    this.dir = dir;
+  }
+
+  @Override
+  public AviationDbAdapter createAdapter(final AviationDbShards.Shard shard) {
+    final File file = new File(dir, shard.name);
+    if (!file.exists()) {
+      return null;
+    }
+    return new AndroidAviationDbAdapter(userPrefs, file.getPath());
+  }
+}
@@ -18,15 +18,16 @@ package com.google.flightmap.android.db;
 
 import java.util.Collection;
 
+import com.google.flightmap.common.CancellationToken;
 import com.google.flightmap.common.ProgressListener;
+import com.google.flightmap.common.QueryExecutor;
 import com.google.flightmap.common.data.Airport;
 import com.google.flightmap.common.data.LatLngRect;
 import com.google.flightmap.common.db.AirportDirectory;
 
 /**
  * Background task to get airports in a rectangle (which is a fairly slow
- * query). Clients should call {@link #execute} to start the
- * background task.
+ * query). Clients should call {@link #execute} to queue the query.
  */
 public class GetAirportsInRectangleTask extends
     QueryTask<GetAirportsInRectangleTask.QueryParams, Collection<Airport>> {
@@ -36,11 +37,16 @@ public class GetAirportsInRectangleTask extends
    * Initializes task to get airports in a {@link LatLngRect}.
    * 
    * @param airportDirectory directory to call on background thread.
+   * @param executor executor to run the query.
+   * @param priority priority of the query.
+   * @param timeoutMillis time after which the query returns partial results. 0
+   *        for none.
    * @param listener listener to notify of completion. May be null.
    */
   public GetAirportsInRectangleTask(final AirportDirectory airportDirectory,
-      final ProgressListener listener) {
-    super(listener);
+      final QueryExecutor executor, final QueryExecutor.Priority priority,
+      final long timeoutMillis, final ProgressListener listener) {
+    super(executor, priority, timeoutMillis, listener);
     this.airportDirectory = airportDirectory;
   }
 
@@ -52,10 +58,11 @@ public class GetAirportsInRectangleTask extends
    * thread.
    */
   @Override
-  protected Collection<Airport> doQuery(final QueryParams params) throws InterruptedException {
+  protected Collection<Airport> doQuery(final QueryParams params, final CancellationToken token)
+      throws InterruptedException {
     final LatLngRect rectangle = params.rectangle;
     final int minRank = params.minRank;
-    return airportDirectory.getAirportsInRectangle(rectangle, minRank);
+    return airportDirectory.getAirportsInRectangle(rectangle, minRank, token);
   }
 
   /**
@@ -18,39 +18,62 @@ package com.google.flightmap.android.db;
 
 import java.util.Collection;
 
+import com.google.flightmap.common.CancellationToken;
 import com.google.flightmap.common.ProgressListener;
+import com.google.flightmap.common.QueryExecutor;
 import com.google.flightmap.common.data.Airspace;
 import com.google.flightmap.common.data.LatLngRect;
 import com.google.flightmap.common.db.AviationDbAdapter;
 
 /**
  * Background task to get airspaces in a rectangle (which is a fairly slow
- * query). Clients should call {@link #execute} to start the
- * background task.
+ * query). Clients should call {@link #execute} to queue the query.
  */
-public class GetAirspacesInRectangleTask extends QueryTask<LatLngRect, Collection<Airspace>> {
+public class GetAirspacesInRectangleTask extends
+    QueryTask<GetAirspacesInRectangleTask.QueryParams, Collection<Airspace>> {
   private final AviationDbAdapter dbAdapter;
 
   /**
    * Initializes task to get airspaces in a {@link LatLngRect}.
    * 
    * @param dbAdapter Interface to the aviation database.
+   * @param executor executor to run the query.
+   * @param priority priority of the query.
+   * @param timeoutMillis time after which the query returns partial results. 0
+   *        for none.
    * @param listener listener to notify of completion. May be null.
    */
   public GetAirspacesInRectangleTask(final AviationDbAdapter dbAdapter,
-      final ProgressListener listener) {
-    super(listener);
+      final QueryExecutor executor, final QueryExecutor.Priority priority,
+      final long timeoutMillis, final ProgressListener listener) {
+    super(executor, priority, timeoutMillis, listener);
     this.dbAdapter = dbAdapter;
   }
 
   /**
    * {@inheritDoc}
    * <p>
-   * Calls {@link AviationDbAdapter#getAirspacesInRectangle} on a background
-   * thread.
+   * Calls {@link AviationDbAdapter#getAirspacesInRectangle(LatLngRect, float,
+   * CancellationToken)} on a background thread.
    */
   @Override
-  protected Collection<Airspace> doQuery(final LatLngRect params) throws InterruptedException {
-    return dbAdapter.getAirspacesInRectangle(params);
+  protected Collection<Airspace> doQuery(final QueryParams params, final CancellationToken token)
+      throws InterruptedException {
+    return dbAdapter.getAirspacesInRectangle(params.rectangle, params.zoom, token);
+  }
+
+  /**
+   * Specifies the rectangle to query and zoom level (which determines the level
+   * of detail of airspaces) when calling
+   * {@link AviationDbAdapter#getAirspacesInRectangle(LatLngRect, float)}.
+   */
+  public static class QueryParams {
+    public final LatLngRect rectangle;
+    public final float zoom;
+
+    public QueryParams(LatLngRect rectangle, float zoom) {
+      this.rectangle = rectangle;
+      this.zoom = zoom;
+    }
   }
 }
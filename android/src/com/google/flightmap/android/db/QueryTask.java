@@ -16,64 +16,158 @@
 
 package com.google.flightmap.android.db;
 
-import android.os.AsyncTask;
+import android.os.Handler;
 
+import com.google.flightmap.common.CancellationToken;
 import com.google.flightmap.common.ProgressListener;
+import com.google.flightmap.common.QueryExecutor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
- * Background task to get airports in a rectangle (which is a fairly slow
- * query). Clients should call {@link #execute} to start the
- * background task.
+ * Background query run by a {@link QueryExecutor}. Clients should call
+ * {@link #execute} to queue the query, on the UI thread. A query queued by a
+ * task supersedes the one of the same task class still queued, if any.
+ * <p>
+ * Cancelling the task also cancels its {@link CancellationToken}, which stops
+ * database cursors even if they swallow the thread interrupt. A task given a
+ * timeout returns partial results once its deadline passes.
  */
-public abstract class QueryTask<A, B> extends AsyncTask<A, Void, B> {
+public abstract class QueryTask<A, B> {
   protected final ProgressListener listener;
-  private A queryParams;
+  private final QueryExecutor executor;
+  private final QueryExecutor.Priority priority;
+  private final Handler handler = new Handler();
+  private final CancellationToken token;
+  private A params;
+  private Future<B> future;
 
   /**
    * Initializes task.
    * 
+   * @param executor executor to run the query.
+   * @param priority priority of the query.
+   * @param timeoutMillis time, counted from now, after which the query returns
+   *        partial results (see {@link #isDeadlineExceeded}). 0 for none.
    * @param listener listener to notify of completion. May be null.
    */
-  public QueryTask(final ProgressListener listener) {
+  public QueryTask(final QueryExecutor executor, final QueryExecutor.Priority priority,
+      final long timeoutMillis, final ProgressListener listener) {
+    this.executor = executor;
+    this.priority = priority;
     this.listener = listener;
+    token = timeoutMillis > 0 ? CancellationToken.withTimeout(timeoutMillis)
+        : new CancellationToken();
+  }
+
+  /**
+   * Queues the query. The listener is notified on the UI thread when it
+   * completes, unless the task is cancelled: with false if the query threw.
+   */
+  public synchronized void execute(final A queryParams) {
+    if (future != null) {
+      throw new IllegalStateException("Task already executed.");
+    }
+    params = queryParams;
+    // The listener is notified once the result is stored in the future, so
+    // that it can get it without blocking.
+    future = executor.submit(priority, getClass(), new Callable<B>() {
+      @Override
+      public B call() throws InterruptedException {
+        return doQuery(queryParams, token);
+      }
+    }, new Runnable() {
+      @Override
+      public void run() {
+        handler.post(new Runnable() {
+          @Override
+          public void run() {
+            onPostExecute();
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Returns the parameters passed to {@link #execute}, or null if not executed.
+   */
+  public synchronized A getParams() {
+    return params;
+  }
+
+  /**
+   * Returns true if the deadline of the query passed before it completed: its
+   * result is then partial.
+   */
+  public boolean isDeadlineExceeded() {
+    return token.isDeadlineExceeded();
   }
 
   /**
-   * Returns true if there is a query in progress.
+   * Returns true if there is a query queued or in progress.
    */
   public synchronized boolean isQueryInProgress() {
-    return queryParams != null;
+    return future != null && !future.isDone();
   }
 
   /**
-   * {@inheritDoc}
-   * <p>
-   * Executes query on a background thread.
+   * Cancels the query.
+   * 
+   * @param mayInterruptIfRunning whether to interrupt the query if it is
+   *        already running.
+   * @return false if the query could not be cancelled (typically, because it
+   *         has already completed).
    */
-  @Override
-  protected B doInBackground(A... queryData) {
-    // AsyncTask specifies a Varargs parameter, but only the first element is
-    // processed in this implementation.
-    final A queryParamsCopy = queryData[0];
-    synchronized (this) {
-      queryParams = queryParamsCopy;
+  public synchronized boolean cancel(final boolean mayInterruptIfRunning) {
+    if (future == null || !future.cancel(mayInterruptIfRunning)) {
+      return false;
     }
-    try {
-      return doQuery(queryParamsCopy);
-    } catch (InterruptedException iEx) {
-      return null;
+    if (mayInterruptIfRunning) {
+      token.cancel("Query task cancelled");
     }
+    return true;
   }
 
-  protected abstract B doQuery(A params) throws InterruptedException ; 
+  /**
+   * Waits if necessary for the query to complete, and returns its result.
+   */
+  public B get() throws InterruptedException, ExecutionException {
+    final Future<B> queued;
+    synchronized (this) {
+      queued = future;
+    }
+    return queued.get();
+  }
+
+  /**
+   * Runs the query on a background thread. Long queries should call
+   * {@link CancellationToken#hasExpired} regularly.
+   */
+  protected abstract B doQuery(A params, CancellationToken token) throws InterruptedException ; 
 
-  @Override
-  protected void onPostExecute(B result) {
+  private void onPostExecute() {
+    final Future<B> completed;
     synchronized (this) {
-      queryParams = null;
+      if (future.isCancelled()) {
+        return;
+      }
+      completed = future;
+    }
+    if (listener == null) {
+      return;
     }
-    if (listener != null) {
-      listener.hasCompleted(true);
+    boolean success = true;
+    try {
+      completed.get();
+    } catch (ExecutionException e) {
+      success = false;
+    } catch (InterruptedException e) {
+      // Unreachable: the query is done.
+      Thread.currentThread().interrupt();
     }
+    listener.hasCompleted(success);
   }
 }
@@ -26,16 +26,17 @@ import com.google.flightmap.android.TapcardActivity;
 import com.google.flightmap.android.UserPrefs;
 import com.google.flightmap.android.db.GetAirportsInRectangleTask;
 import com.google.flightmap.android.db.GetAirspacesInRectangleTask;
+import com.google.flightmap.android.db.QueryTask;
 import com.google.flightmap.android.geo.AndroidMercatorProjection;
 import com.google.flightmap.android.location.LocationHandler;
 import com.google.flightmap.common.ProgressListener;
+import com.google.flightmap.common.QueryExecutor;
 import com.google.flightmap.common.data.Airport;
 import com.google.flightmap.common.data.Airspace;
 import com.google.flightmap.common.data.AirspaceArc;
 import com.google.flightmap.common.data.LatLng;
 import com.google.flightmap.common.data.LatLngRect;
-import com.google.flightmap.common.db.CachedAirportDirectory;
-import com.google.flightmap.common.db.CachedAviationDbAdapter;
+import com.google.flightmap.common.db.SwappableAviationDb;
 import com.google.flightmap.common.geo.CachedMagneticVariation;
 import com.google.flightmap.common.geo.NavigationUtil;
 import com.google.flightmap.common.geo.NavigationUtil.DistanceUnits;
@@ -51,7 +52,6 @@ import android.graphics.Path;
 import android.graphics.Point;
 import android.graphics.RectF;
 import android.location.Location;
-import android.os.AsyncTask;
 import android.util.Log;
 
 /**
@@ -67,6 +67,13 @@ public class MapPresenter implements OnSharedPreferenceChangeListener {
 
   private static final double LOG_OF_2 = Math.log(2);
 
+  /**
+   * Time after which queries for the visible map return partial results, so
+   * that the map is drawn early. The complete results are queried again
+   * without deadline.
+   */
+  private static final long VIEWPORT_QUERY_TIMEOUT_MILLIS = 500;
+
   // Fields relating to touch events and panning.
   private static final int PAN_CROSSHAIR_SIZE = 12;
   private static final int PAN_INFO_MARGIN = 20;
@@ -678,7 +685,7 @@ public class MapPresenter implements OnSharedPreferenceChangeListener {
       boolean isTrackUp) {
     final int minAirportRank = getMinimumAirportRank(zoom);
     updateAirportsOnScreen(screenArea, minAirportRank);
-    updateAirspacesOnScreen(screenArea);
+    updateAirspacesOnScreen(screenArea, zoom);
     drawAirspacesOnMap(c, zoom, location);
     drawAirportsOnMap(c, minAirportRank, zoom, isTrackUp);
   }
@@ -834,7 +841,7 @@ public class MapPresenter implements OnSharedPreferenceChangeListener {
   }
 
   private synchronized void updateAirportsOnScreen(LatLngRect screenArea, int minimumAirportRank) {
-    final CachedAirportDirectory airportDirectory = mainActivity.getAirportDirectory();
+    final SwappableAviationDb.DirectoryView airportDirectory = mainActivity.getAirportDirectory();
     // Is there a query in progress?
     if (getAirportsTask != null && getAirportsTask.isQueryInProgress()) {
       if (airportDirectory.isCacheMatch(screenArea, minimumAirportRank)) {
@@ -845,39 +852,55 @@ public class MapPresenter implements OnSharedPreferenceChangeListener {
       }
       cancelTask(getAirportsTask);
     }
+    queryAirports(new GetAirportsInRectangleTask.QueryParams(screenArea, minimumAirportRank),
+        VIEWPORT_QUERY_TIMEOUT_MILLIS);
+  }
+
+  private synchronized void queryAirports(GetAirportsInRectangleTask.QueryParams params,
+      long timeoutMillis) {
     // Create listener only once
     if (getAirportsListener == null) {
       getAirportsListener = new AirportsQueryListener();
     }
-    // Have to make a new task here. Can't call execute again on an active task.
-    getAirportsTask = new GetAirportsInRectangleTask(airportDirectory, getAirportsListener);
-    getAirportsTask.execute(new GetAirportsInRectangleTask.QueryParams(screenArea,
-        minimumAirportRank));
+    // Have to make a new task here. Can't call execute again on a task.
+    getAirportsTask = new GetAirportsInRectangleTask(mainActivity.getAirportDirectory(),
+        mainActivity.getQueryExecutor(), QueryExecutor.Priority.VIEWPORT, timeoutMillis,
+        getAirportsListener);
+    getAirportsTask.execute(params);
   }
 
-  private synchronized void updateAirspacesOnScreen(LatLngRect screenArea) {
-    final CachedAviationDbAdapter aviationDbAdapter = mainActivity.getAviationDbAdapter();
+  private synchronized void updateAirspacesOnScreen(LatLngRect screenArea, float zoom) {
+    final SwappableAviationDb.DbAdapterView aviationDbAdapter =
+        mainActivity.getAviationDbAdapter();
     // Is there a query in progress?
     if (getAirspacesTask != null && getAirspacesTask.isQueryInProgress()) {
-      if (aviationDbAdapter.isCacheMatch(screenArea)) {
+      if (aviationDbAdapter.isCacheMatch(screenArea, zoom)) {
         Log.i(TAG, "updateAirspacesOnScreen: Still waiting on query");
         return;
       }
       cancelTask(getAirspacesTask);
     }
+    queryAirspaces(new GetAirspacesInRectangleTask.QueryParams(screenArea, zoom),
+        VIEWPORT_QUERY_TIMEOUT_MILLIS);
+  }
+
+  private synchronized void queryAirspaces(GetAirspacesInRectangleTask.QueryParams params,
+      long timeoutMillis) {
     // Create listener only once
     if (getAirspacesListener == null) {
       getAirspacesListener = new AirspacesQueryListener();
     }
-    // Have to make a new task here. Can't call execute again on an active task.
-    getAirspacesTask = new GetAirspacesInRectangleTask(aviationDbAdapter, getAirspacesListener);
-    getAirspacesTask.execute(screenArea);
+    // Have to make a new task here. Can't call execute again on a task.
+    getAirspacesTask = new GetAirspacesInRectangleTask(mainActivity.getAviationDbAdapter(),
+        mainActivity.getQueryExecutor(), QueryExecutor.Priority.VIEWPORT, timeoutMillis,
+        getAirspacesListener);
+    getAirspacesTask.execute(params);
   }
 
   /**
    * Cancels task. Logs a warning message on failure.
    */
-  private static void cancelTask(AsyncTask<?, ?, ?> task) {
+  private static void cancelTask(QueryTask<?, ?> task) {
     Log.d(TAG, "Cancelling task: " + task);
     boolean cancelled = task.cancel(true);
     if (!cancelled) {
@@ -896,6 +919,11 @@ public class MapPresenter implements OnSharedPreferenceChangeListener {
           try {
             airportsOnScreen = getAirportsTask.get();
             model.setRedrawNeeded(true);
+            if (getAirportsTask.isDeadlineExceeded()) {
+              // Draw the partial results now, and complete them.
+              Log.i(TAG, "Airports query exceeded its deadline, querying again");
+              queryAirports(getAirportsTask.getParams(), 0);
+            }
           } catch (InterruptedException e) {
             Log.i(TAG, "Interrupted while getting airports on screen", e);
           } catch (ExecutionException e) {
@@ -922,6 +950,11 @@ public class MapPresenter implements OnSharedPreferenceChangeListener {
           try {
             airspacesOnScreen = getAirspacesTask.get();
             model.setRedrawNeeded(true);
+            if (getAirspacesTask.isDeadlineExceeded()) {
+              // Draw the partial results now, and complete them.
+              Log.i(TAG, "Airspaces query exceeded its deadline, querying again");
+              queryAirspaces(getAirspacesTask.getParams(), 0);
+            }
           } catch (InterruptedException e) {
             Log.i(TAG, "Interrupted while getting airspaces on screen", e);
           } catch (ExecutionException e) {
@@ -23,6 +23,7 @@ import java.net.URL;
 import android.os.AsyncTask;
 import com.google.flightmap.common.ProgressListener;
 import com.google.flightmap.common.db.DbAdapter;
+import com.google.flightmap.common.db.SwappableAviationDb;
 import com.google.flightmap.common.net.DbUpdater;
 
 public class DbUpdaterTask extends AsyncTask<DbUpdaterTask.Params, Integer, Boolean> implements
@@ -44,10 +45,16 @@ public class DbUpdaterTask extends AsyncTask<DbUpdaterTask.Params, Integer, Bool
       }
       updater.addProgressListener(this);
       updater.update();
+      if (param.reloadedDb != null) {
+        // Still on the background thread: the map keeps using the previous database meanwhile.
+        param.reloadedDb.reload();
+      }
       return Boolean.TRUE;
     } catch (IOException ex) {
       ex.printStackTrace();
       return Boolean.FALSE;
+    } catch (InterruptedException ex) {
+      return Boolean.FALSE;
     }
   }
 
@@ -81,6 +88,7 @@ public class DbUpdaterTask extends AsyncTask<DbUpdaterTask.Params, Integer, Bool
     final File workingDir;
     final DbAdapter dbAdapter;
     final int requiredSchemaVersion;
+    final SwappableAviationDb reloadedDb;
 
     /**
      * Initializes {@link DbUpdaterTask} parameters.
@@ -94,11 +102,23 @@ public class DbUpdaterTask extends AsyncTask<DbUpdaterTask.Params, Integer, Bool
      */
     public Params(final File file, final URL url, final File workingDir, final DbAdapter dbAdapter,
          final int requiredSchemaVersion) {
+      this(file, url, workingDir, dbAdapter, requiredSchemaVersion, null);
+    }
+
+    /**
+     * Initializes {@link DbUpdaterTask} parameters, to reload an open database after an update.
+     *
+     * @param reloadedDb Database to reload once {@code file} is updated, or {@code null}
+     * @see SwappableAviationDb#reload
+     */
+    public Params(final File file, final URL url, final File workingDir, final DbAdapter dbAdapter,
+         final int requiredSchemaVersion, final SwappableAviationDb reloadedDb) {
       this.file = file;
       this.url = url;
       this.workingDir = workingDir;
       this.dbAdapter = dbAdapter;
       this.requiredSchemaVersion = requiredSchemaVersion;
+      this.reloadedDb = reloadedDb;
     }
   }
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common;
+
+/**
+ * Stops a long query, either when cancelled or when its deadline has passed.
+ * <p>
+ * Queries call {@link #hasExpired} regularly.  A cancelled query throws {@link
+ * InterruptedException}, as when its thread is interrupted (see {@link
+ * ThreadUtils#checkIfInterrupted}): unlike interrupts, cancellation cannot be swallowed by the
+ * database driver.  A query past its deadline returns the results found so far instead: callers
+ * check {@link #isDeadlineExceeded} to know if results are partial.
+ */
+public class CancellationToken {
+  /**
+   * Token without deadline, that cannot be cancelled.  Queries given this token still stop when
+   * their thread is interrupted.
+   */
+  public final static CancellationToken NONE = new CancellationToken(Long.MAX_VALUE);
+
+  /**
+   * Reason given when the deadline is exceeded.
+   */
+  public final static String DEADLINE_EXCEEDED = "Deadline exceeded";
+
+  /**
+   * Deadline, in milliseconds since the epoch.
+   */
+  private final long deadline;
+
+  private volatile String cancelReason;
+  private volatile boolean deadlineExceeded;
+
+  /**
+   * Creates a token without deadline.
+   */
+  public CancellationToken() {
+    this(Long.MAX_VALUE);
+  }
+
+  /**
+   * Creates a token expiring at {@code deadline}.
+   *
+   * @param deadline Deadline, in milliseconds since the epoch (see {@link
+   * System#currentTimeMillis}).
+   */
+  public CancellationToken(final long deadline) {
+    this.deadline = deadline;
+  }
+
+  /**
+   * Returns a token expiring {@code timeoutMillis} milliseconds from now.
+   */
+  public static CancellationToken withTimeout(final long timeoutMillis) {
+    return new CancellationToken(System.currentTimeMillis() + timeoutMillis);
+  }
+
+  /**
+   * Cancels queries using this token.
+   *
+   * @param reason Reason of the cancellation, used as message of the {@link InterruptedException}
+   * thrown by {@link #hasExpired}.
+   */
+  public void cancel(final String reason) {
+    if (this == NONE) {
+      throw new UnsupportedOperationException("Cannot cancel NONE.");
+    }
+    cancelReason = reason == null ? "Cancelled" : reason;
+  }
+
+  /**
+   * Returns true if {@link #cancel} was called.
+   */
+  public boolean isCancelled() {
+    return cancelReason != null;
+  }
+
+  /**
+   * Returns true if a query using this token returned partial results, because the deadline had
+   * passed.
+   */
+  public boolean isDeadlineExceeded() {
+    return deadlineExceeded;
+  }
+
+  /**
+   * Returns why queries using this token stopped, or {@code null} if they did not.
+   */
+  public String getReason() {
+    final String reason = cancelReason;
+    if (reason != null) {
+      return reason;
+    }
+    return deadlineExceeded ? DEADLINE_EXCEEDED : null;
+  }
+
+  /**
+   * Returns true if the deadline has passed: queries should then return the results found so
+   * far.
+   *
+   * @throws InterruptedException This token was cancelled, or the current thread interrupted.
+   */
+  public boolean hasExpired() throws InterruptedException {
+    final String reason = cancelReason;
+    if (reason != null) {
+      throw new InterruptedException(reason);
+    }
+    ThreadUtils.checkIfInterrupted();
+    if (deadline != Long.MAX_VALUE && System.currentTimeMillis() >= deadline) {
+      deadlineExceeded = true;
+    }
+    return deadlineExceeded;
+  }
+}
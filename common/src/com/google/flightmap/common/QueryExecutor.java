@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs database and geometry queries on a small pool of background threads, most urgent first.
+ * <p>
+ * Queries are run in order of {@link Priority}, then in order of submission.  A query submitted
+ * with a key supersedes the query with the same key that is still queued, if any: the queued
+ * query is cancelled without running.  Queries are cancelled through their {@link Future}.
+ * Cancelling a running query interrupts its thread: long queries should call {@link
+ * ThreadUtils#checkIfInterrupted} regularly, and return early.
+ */
+public class QueryExecutor {
+  /**
+   * Urgency of a query.  Queries of a higher priority are run first.
+   */
+  public enum Priority {
+    /** Contents of the visible map. */
+    VIEWPORT,
+    /** Details of an airport the user tapped. */
+    TAPCARD,
+    /** Data that may be needed soon. */
+    PREFETCH
+  }
+
+  private final PriorityBlockingQueue<Query<?>> queue = new PriorityBlockingQueue<Query<?>>();
+  private final Thread[] workers;
+
+  /**
+   * Queued queries, by key.  Guarded by {@code this}.
+   */
+  private final Map<Object, Query<?>> queuedByKey = new HashMap<Object, Query<?>>();
+
+  // Statistics, by priority.  Guarded by {@code this}.
+  private long sequence;
+  private final long[] started = new long[Priority.values().length];
+  private final long[] superseded = new long[Priority.values().length];
+  private final long[] totalWaitMillis = new long[Priority.values().length];
+  private final long[] maxWaitMillis = new long[Priority.values().length];
+  private boolean shutdown;
+
+  /**
+   * Starts {@code threadCount} worker threads.
+   */
+  public QueryExecutor(final int threadCount) {
+    workers = new Thread[threadCount];
+    for (int i = 0; i < threadCount; ++i) {
+      workers[i] = new Worker("QueryExecutor-" + i);
+      workers[i].start();
+    }
+  }
+
+  /**
+   * Queues {@code query}.
+   *
+   * @param priority Urgency of the query
+   * @param key Kind of query: supersedes the queued query with the same key.  May be null.
+   * @param query Query to run
+   * @return Future of the result of {@code query}.
+   * @throws RejectedExecutionException This executor is shut down.
+   */
+  public <V> Future<V> submit(final Priority priority, final Object key,
+      final Callable<V> query) {
+    return submit(priority, key, query, null);
+  }
+
+  /**
+   * Queues {@code query}, and runs {@code onDone} once it completes or is cancelled.
+   *
+   * @param onDone Run when the result of the query is available through its {@link Future},
+   * on the thread that completed or cancelled the query.  May be null.
+   * @see #submit(Priority, Object, Callable)
+   */
+  public <V> Future<V> submit(final Priority priority, final Object key,
+      final Callable<V> query, final Runnable onDone) {
+    final Query<V> task;
+    final Query<?> previous;
+    synchronized (this) {
+      if (shutdown) {
+        throw new RejectedExecutionException("Executor is shut down.");
+      }
+      task = new Query<V>(query, priority, key, sequence++, onDone);
+      previous = key == null ? null : queuedByKey.put(key, task);
+      queue.add(task);
+    }
+    if (previous != null && previous.cancel(false)) {
+      synchronized (this) {
+        ++superseded[previous.priority.ordinal()];
+      }
+    }
+    return task;
+  }
+
+  /**
+   * Stops the worker threads.  Queued queries are cancelled, and running queries interrupted.
+   */
+  public void shutdown() {
+    synchronized (this) {
+      shutdown = true;
+      queuedByKey.clear();
+    }
+    Query<?> query;
+    while ((query = queue.poll()) != null) {
+      query.cancel(false);
+    }
+    for (Thread worker: workers) {
+      worker.interrupt();
+    }
+  }
+
+  private synchronized boolean isShutdown() {
+    return shutdown;
+  }
+
+  /**
+   * Returns the number of queued queries.
+   */
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * Returns the number of queries of {@code priority} that were started.
+   */
+  public synchronized long getStartedCount(final Priority priority) {
+    return started[priority.ordinal()];
+  }
+
+  /**
+   * Returns the number of queued queries of {@code priority} cancelled by a newer query.
+   */
+  public synchronized long getSupersededCount(final Priority priority) {
+    return superseded[priority.ordinal()];
+  }
+
+  /**
+   * Returns the average time, in milliseconds, queries of {@code priority} waited in the queue
+   * before they were started.
+   */
+  public synchronized double getAverageWaitMillis(final Priority priority) {
+    final int index = priority.ordinal();
+    return started[index] == 0 ? 0 : (double) totalWaitMillis[index] / started[index];
+  }
+
+  /**
+   * Returns the longest time, in milliseconds, a query of {@code priority} waited in the queue
+   * before it was started.
+   */
+  public synchronized long getMaxWaitMillis(final Priority priority) {
+    return maxWaitMillis[priority.ordinal()];
+  }
+
+  /**
+   * Removes {@code query} from the queue, and records its wait time.  Returns {@code false} if
+   * {@code query} was cancelled meanwhile.
+   */
+  private synchronized boolean dequeued(final Query<?> query) {
+    if (query.key != null && queuedByKey.get(query.key) == query) {
+      queuedByKey.remove(query.key);
+    }
+    if (query.isCancelled()) {
+      return false;
+    }
+    final int index = query.priority.ordinal();
+    final long waitMillis = System.currentTimeMillis() - query.submitTime;
+    ++started[index];
+    totalWaitMillis[index] += waitMillis;
+    maxWaitMillis[index] = Math.max(maxWaitMillis[index], waitMillis);
+    return true;
+  }
+
+  /**
+   * A queued query.
+   */
+  private class Query<V> extends FutureTask<V> implements Comparable<Query<?>> {
+    final Priority priority;
+    final Object key;
+    final long sequence;
+    final long submitTime = System.currentTimeMillis();
+    private final Runnable onDone;
+
+    Query(final Callable<V> callable, final Priority priority, final Object key,
+        final long sequence, final Runnable onDone) {
+      super(callable);
+      this.priority = priority;
+      this.key = key;
+      this.sequence = sequence;
+      this.onDone = onDone;
+    }
+
+    @Override
+    public int compareTo(final Query<?> other) {
+      final int byPriority = priority.compareTo(other.priority);
+      if (byPriority != 0) {
+        return byPriority;
+      }
+      return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Cancelled queries leave the queue at once, so that they are not counted in its depth.
+     */
+    @Override
+    protected void done() {
+      if (isCancelled() && queue.remove(this)) {
+        dequeued(this);
+      }
+      if (onDone != null) {
+        onDone.run();
+      }
+    }
+  }
+
+  private class Worker extends Thread {
+    Worker(final String name) {
+      super(name);
+      setDaemon(true);
+      setPriority(NORM_PRIORITY - 1);
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        final Query<?> query;
+        try {
+          query = queue.take();
+        } catch (InterruptedException iEx) {
+          // Either a shutdown, or a late interrupt meant for a cancelled query (FutureTask may
+          // interrupt its runner after run() returned).
+          if (isShutdown()) {
+            return;
+          }
+          continue;
+        }
+        if (dequeued(query)) {
+          query.run();
+        }
+        if (isShutdown()) {
+          return;
+        }
+        // Clears an interrupt meant for the query just run.
+        Thread.interrupted();
+      }
+    }
+  }
+}
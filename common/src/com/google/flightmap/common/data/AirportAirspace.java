@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.data;
+
+/**
+ * Airspace whose lateral boundary contains an airport.
+ */
+public class AirportAirspace {
+  /**
+   * Id of the {@link Airspace}.
+   */
+  public final int airspaceId;
+
+  public final Airspace.Class airspaceClass;
+
+  /**
+   * Lowest altitude of airspace, in feet MSL, or {@link Airspace#SFC}.
+   */
+  public final int bottom;
+
+  /**
+   * Highest altitude of airspace, in feet MSL.
+   */
+  public final int top;
+
+  public AirportAirspace(final int airspaceId, final Airspace.Class airspaceClass,
+      final int bottom, final int top) {
+    this.airspaceId = airspaceId;
+    this.airspaceClass = airspaceClass;
+    this.bottom = bottom;
+    this.top = top;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s (%s - %d)", airspaceClass, bottom == Airspace.SFC ? "SFC" : bottom,
+        top);
+  }
+}
@@ -16,7 +16,7 @@
 
 package com.google.flightmap.common.db;
 
-
+import com.google.flightmap.common.CancellationToken;
 import com.google.flightmap.common.data.Airport;
 import com.google.flightmap.common.data.AirportDistance;
 import com.google.flightmap.common.data.LatLng;
@@ -29,8 +29,21 @@ import java.util.TreeSet;
 /**
  * Abstract class provides a naive implementation of
  * {@link AirportDirectory#getAirportsWithinRadius getAirportsWithinRadius}.
+ * <p>
+ * Queries without {@link CancellationToken} are run with {@link CancellationToken#NONE}.
  */
 public abstract class AbstractAirportDirectory implements AirportDirectory {
+  @Override
+  public TreeSet<AirportDistance> getAirportsWithinRadius(final LatLng position,
+      final double radius, final int minRank) throws InterruptedException {
+    return getAirportsWithinRadius(position, radius, minRank, CancellationToken.NONE);
+  }
+
+  @Override
+  public Collection<Airport> getAirportsInRectangle(final LatLngRect area, final int minRank)
+      throws InterruptedException {
+    return getAirportsInRectangle(area, minRank, CancellationToken.NONE);
+  }
 
   /**
    * Returns airports within {@code radius} meters of {@code position}.
@@ -43,10 +56,12 @@ public abstract class AbstractAirportDirectory implements AirportDirectory {
    * @param position  Center of radius search
    * @param radius    Radius of search [meters]
    * @param minRank   Minimum airport rank to return
+   * @param token     Stops the search
    */
   @Override
   public TreeSet<AirportDistance> getAirportsWithinRadius(final LatLng position,
-      final double radius, final int minRank) throws InterruptedException {
+      final double radius, final int minRank, final CancellationToken token)
+      throws InterruptedException {
 
     // Translate radius in degrees at that latitude (and all longitudes):
     final double earthRadiusAtLat =
@@ -60,7 +75,7 @@ public abstract class AbstractAirportDirectory implements AirportDirectory {
 
     // Retrieve airports in rectangular bounding box
     final Collection<Airport> airportsInBoundingBox =
-       getAirportsInRectangle(LatLngRect.getBoundingBox(position, radiusE6), minRank);
+       getAirportsInRectangle(LatLngRect.getBoundingBox(position, radiusE6), minRank, token);
 
     // Filter out airports outside of radius
     TreeSet<AirportDistance> airportsInRange = new TreeSet<AirportDistance>();
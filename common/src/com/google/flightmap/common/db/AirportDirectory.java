@@ -16,6 +16,7 @@
 
 package com.google.flightmap.common.db;
 
+import com.google.flightmap.common.CancellationToken;
 import com.google.flightmap.common.data.Airport;
 import com.google.flightmap.common.data.AirportDistance;
 import com.google.flightmap.common.data.LatLng;
@@ -40,6 +41,18 @@ public interface AirportDirectory {
   public SortedSet<AirportDistance> getAirportsWithinRadius(final LatLng position,
       final double radius, final int minRank) throws InterruptedException;
 
+  /**
+   * Returns airports within {@code radius} meters of {@code position}, stopping when {@code token}
+   * expires.
+   *
+   * @return Airports found before {@code token} expired (see {@link
+   * CancellationToken#isDeadlineExceeded}).
+   * @see #getAirportsWithinRadius(LatLng, double, int)
+   */
+  public SortedSet<AirportDistance> getAirportsWithinRadius(final LatLng position,
+      final double radius, final int minRank, final CancellationToken token)
+      throws InterruptedException;
+
   /**
    * Returns airports in {@code area}.
    * <p>
@@ -53,6 +66,27 @@ public interface AirportDirectory {
   public Collection<Airport> getAirportsInRectangle(final LatLngRect area, final int minRank)
       throws InterruptedException;
 
+  /**
+   * Returns airports in {@code area}, stopping when {@code token} expires.
+   *
+   * @return Airports found before {@code token} expired (see {@link
+   * CancellationToken#isDeadlineExceeded}).
+   * @see #getAirportsInRectangle(LatLngRect, int)
+   */
+  public Collection<Airport> getAirportsInRectangle(final LatLngRect area, final int minRank,
+      final CancellationToken token) throws InterruptedException;
+
+  /**
+   * Returns the (at most) {@code count} airports nearest to {@code position}.
+   * <p>
+   * Only airports that passed the rank and runway filters applied when the database was built are
+   * considered (see {@link NearestAirports}).  Returns an empty set if the database holds no
+   * nearest airports for {@code position}.<br />
+   * Results are sorted in order of increasing distance from {@code position}.
+   */
+  public SortedSet<AirportDistance> getNearestAirports(final LatLng position, final int count)
+      throws InterruptedException;
+
   /**
    * Prepares this object for future calls.
    * <p>
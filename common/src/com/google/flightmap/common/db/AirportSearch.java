@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Airport search on top of the lookups of an {@link AviationDbAdapter}, for adapters that cannot
+ * delegate {@link AviationDbAdapter#doSearch} to a database.
+ */
+public class AirportSearch {
+  /**
+   * Utility class: default and only constructor is private.
+   */
+  private AirportSearch() { }
+
+  /**
+   * Returns a Map of airport ids and Rank to put in search results. An
+   * exact match will return a single-element Map. The rank is incremented each
+   * time the query matches search criteria, if the airport Rank is high
+   * according to the db and if the airport is in close proximity. If no match
+   * is found, return a Map with a single element with airportId -1.
+   *
+   * @param query A string to try to match.
+   */
+  public static Map<Integer, Integer> doSearch(final AviationDbAdapter adapter,
+      final String query) {
+    Map<Integer, Integer> airportResults = new HashMap<Integer, Integer>();
+    int airportId = adapter.getAirportIdByIcao(query);
+    // If we found an exact match for the ICAO, return it alone.
+    if (airportId != -1) {
+      airportResults.put(airportId, 1);
+      return airportResults;
+    } else if (query.length() == 3) {
+      // Try again with 'K' prepended if it's only 3 letters.
+      airportId = adapter.getAirportIdByIcao("K" + query);
+      if (airportId != -1) {
+        // The first time we find an airport set the rank.
+        airportResults.put(airportId, adapter.getAirport(airportId).rank);
+      }
+    }
+    // Replaces spaces with % for the %LIKE% search.
+    String[] querySplit = query.split(" ");
+    String queryLike = "";
+    for (int i = 0; i < querySplit.length; i++) {
+      queryLike += '%' + querySplit[i];
+    }
+    queryLike += '%';
+    List<Integer> airportsNameCity = adapter.getAirportIdsWithNameLike(queryLike);
+    airportsNameCity.addAll(adapter.getAirportIdsWithCityLike(queryLike));
+    // If no results are returned, send existing result or add one with -1.
+    if (airportsNameCity.isEmpty()) {
+      if (airportResults.isEmpty()) {
+        airportResults.put(-1, 0);
+      }
+      return airportResults;
+    }
+    Iterator<Integer> nameIterator = airportsNameCity.iterator();
+    // Merge Name and City matches into the airportResults Map and
+    // increments the rank appropriately.
+    while (nameIterator.hasNext()) {
+      Integer id = nameIterator.next();
+      Integer count = airportResults.get(id);
+      if (count == null) {
+        // Initially the rank is the airport rank.
+        airportResults.put(id, adapter.getAirport(id).rank);
+      } else {
+        // Increment the rank if there is more than 1 criteria match.
+        airportResults.put(id, count + 1);
+      }
+    }
+    return airportResults;
+  }
+}
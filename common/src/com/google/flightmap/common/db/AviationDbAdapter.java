@@ -16,11 +16,14 @@
 
 package com.google.flightmap.common.db;
 
+import com.google.flightmap.common.CancellationToken;
 import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.AirportAirspace;
 import com.google.flightmap.common.data.Airspace;
 import com.google.flightmap.common.data.Comm;
 import com.google.flightmap.common.data.LatLng;
 import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.geo.MagneticVariationGrid;
 
 import java.util.Collection;
 import java.util.Map;
@@ -66,6 +69,35 @@ public interface AviationDbAdapter extends DbAdapter {
    */
   public Collection<Airspace> getAirspacesInRectangle(LatLngRect rect) throws InterruptedException;
 
+  /**
+   * Returns airspaces overlapping the given area, with the coarsest geometry that is still
+   * accurate to the pixel at {@code zoom} (see {@link
+   * com.google.flightmap.common.geo.AirspaceLevelsOfDetail}).  Falls back to the full geometry if
+   * the database holds no simplified geometry.
+   */
+  public Collection<Airspace> getAirspacesInRectangle(LatLngRect rect, float zoom)
+      throws InterruptedException;
+
+  /**
+   * Returns airspaces overlapping the given area, stopping when {@code token} expires.
+   *
+   * @return Airspaces found before {@code token} expired (see {@link
+   * CancellationToken#isDeadlineExceeded}).
+   * @see #getAirspacesInRectangle(LatLngRect)
+   */
+  public Collection<Airspace> getAirspacesInRectangle(LatLngRect rect, CancellationToken token)
+      throws InterruptedException;
+
+  /**
+   * Returns airspaces overlapping the given area, stopping when {@code token} expires.
+   *
+   * @return Airspaces found before {@code token} expired (see {@link
+   * CancellationToken#isDeadlineExceeded}).
+   * @see #getAirspacesInRectangle(LatLngRect, float)
+   */
+  public Collection<Airspace> getAirspacesInRectangle(LatLngRect rect, float zoom,
+      CancellationToken token) throws InterruptedException;
+
   /**
    * Returns a Map of {@link Airport}s and Rank to put in search results. An
    * exact match will return a single-element Map. The rank is incremented each
@@ -82,6 +114,13 @@ public interface AviationDbAdapter extends DbAdapter {
    */
   public Collection<Airport> getAirportsInCells(int startCell, int endCell, int minRank);
 
+  /**
+   * Returns the nearest airport candidates precomputed for the cell containing {@code position},
+   * as interleaved (id, latitude E6, longitude E6) triples (see {@link NearestAirports}), or
+   * {@code null} if the database holds none for that cell.
+   */
+  public int[] getNearestAirportCandidates(LatLng position);
+
   /**
    * Returns non-essential properties for an airport.
    */
@@ -92,6 +131,12 @@ public interface AviationDbAdapter extends DbAdapter {
    */
   public List<Comm> getAirportComms(int airportId);
 
+  /**
+   * Returns the airspaces containing an airport, in order of increasing floor.  Empty if there are
+   * none or if the database holds no containment data.
+   */
+  public List<AirportAirspace> getAirportAirspaces(int airportId);
+
   /**
    * Returns non-essential properties for a runway end.
    */
@@ -101,4 +146,10 @@ public interface AviationDbAdapter extends DbAdapter {
    * Returns constant string.
    */
   public String getConstant(int constantId);
+
+  /**
+   * Returns the magnetic variation precomputed over the area covered by the database, or
+   * {@code null} if not available.
+   */
+  public MagneticVariationGrid getMagneticVariationGrid();
 }
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.geo.NavigationUtil;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index of a region-sharded aviation database.
+ * <p>
+ * Each shard is a complete aviation database restricted to the airports of one {@link
+ * CustomGridUtil} cell at {@link #getLevel level}, with the airspaces overlapping that cell.
+ * Constants, metadata and the magnetic variation grid are copied to every shard.  Airport ids are
+ * global, and the index records which shard holds each of them.
+ * <p>
+ * The index is a text file named after the database with a {@link #INDEX_SUFFIX} suffix, next to
+ * the shards.  It holds a "level" line, then one line per shard with its cell id, file name
+ * and airport id ranges, e.g. {@code "123 aviation-4-123.db 1-20,35,40-41"}.
+ */
+public class AviationDbShards {
+  /**
+   * Suffix appended to the database name to get the name of its shard index.
+   */
+  public static final String INDEX_SUFFIX = ".shards";
+
+  private static final Pattern LEVEL_PATTERN = Pattern.compile("^level\\s+(\\d+)$");
+  private static final Pattern SHARD_PATTERN = Pattern.compile("^(\\d+)\\s+(\\S+)\\s*(\\S*)$");
+
+  /**
+   * Part of the database covering one grid cell.
+   */
+  public static class Shard {
+    /**
+     * Id of the shard cell, at the index level.
+     */
+    public final int cellId;
+
+    /**
+     * File name of the shard, relative to the index.
+     */
+    public final String name;
+
+    /**
+     * Area covered by the shard cell.
+     */
+    public final LatLngRect bounds;
+
+    /**
+     * Cell range covered by the shard, at {@link CustomGridUtil} maximum level: {@code
+     * [startCellId, endCellId)}.
+     */
+    public final int startCellId;
+    public final int endCellId;
+
+    /**
+     * Airport ids held by the shard, as sorted, disjoint, inclusive {@code [first, last]} pairs.
+     */
+    private final int[] airportIdRanges;
+
+    public Shard(final int cellId, final int level, final String name,
+        final int[] airportIdRanges) {
+      this.cellId = cellId;
+      this.name = name;
+      this.bounds = CustomGridUtil.getCellBounds(cellId, level);
+      final int[] range = CustomGridUtil.getCellRange(cellId, level);
+      this.startCellId = range[0];
+      this.endCellId = range[1];
+      this.airportIdRanges = airportIdRanges;
+    }
+
+    /**
+     * Checks if the shard holds the airport with the given id.
+     */
+    public boolean hasAirport(final int airportId) {
+      int low = 0;
+      int high = airportIdRanges.length / 2 - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        if (airportId < airportIdRanges[mid * 2]) {
+          high = mid - 1;
+        } else if (airportId > airportIdRanges[mid * 2 + 1]) {
+          low = mid + 1;
+        } else {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder line = new StringBuilder();
+      line.append(cellId).append(' ').append(name).append(' ');
+      for (int i = 0; i < airportIdRanges.length; i += 2) {
+        if (i > 0) {
+          line.append(',');
+        }
+        line.append(airportIdRanges[i]);
+        if (airportIdRanges[i + 1] != airportIdRanges[i]) {
+          line.append('-').append(airportIdRanges[i + 1]);
+        }
+      }
+      return line.toString();
+    }
+  }
+
+  private final int level;
+  private final List<Shard> shards;
+
+  /**
+   * @param level {@link CustomGridUtil} level of shard cells
+   */
+  public AviationDbShards(final int level, final List<Shard> shards) {
+    this.level = level;
+    this.shards = Collections.unmodifiableList(new ArrayList<Shard>(shards));
+  }
+
+  /**
+   * Parses an index file (see class description).
+   */
+  public static AviationDbShards parse(final String content) throws IOException {
+    int level = -1;
+    final List<Shard> shards = new ArrayList<Shard>();
+    final BufferedReader in = new BufferedReader(new StringReader(content));
+    String line;
+    while ((line = in.readLine()) != null) {
+      line = line.trim();
+      final Matcher levelMatcher = LEVEL_PATTERN.matcher(line);
+      if (levelMatcher.matches()) {
+        level = Integer.parseInt(levelMatcher.group(1));
+        continue;
+      }
+      final Matcher shardMatcher = SHARD_PATTERN.matcher(line);
+      if (!shardMatcher.matches()) {
+        continue;
+      }
+      if (level < 0) {
+        throw new IOException("Shard index must start with its level.");
+      }
+      shards.add(new Shard(Integer.parseInt(shardMatcher.group(1)), level,
+          shardMatcher.group(2), parseRanges(shardMatcher.group(3))));
+    }
+    if (level < 0) {
+      throw new IOException("Missing level in shard index.");
+    }
+    return new AviationDbShards(level, shards);
+  }
+
+  /**
+   * Parses comma-separated ids and id ranges (e.g. "1-20,35") to {@code [first, last]} pairs.
+   */
+  private static int[] parseRanges(final String ranges) {
+    if (ranges.length() == 0) {
+      return new int[0];
+    }
+    final String[] items = ranges.split(",");
+    final int[] result = new int[items.length * 2];
+    for (int i = 0; i < items.length; ++i) {
+      final int dash = items[i].indexOf('-', 1);
+      if (dash < 0) {
+        result[i * 2] = result[i * 2 + 1] = Integer.parseInt(items[i]);
+      } else {
+        result[i * 2] = Integer.parseInt(items[i].substring(0, dash));
+        result[i * 2 + 1] = Integer.parseInt(items[i].substring(dash + 1));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Converts sorted airport ids to {@code [first, last]} pairs of consecutive ids (see {@link
+   * Shard#Shard}).
+   */
+  public static int[] getRanges(final int[] sortedIds) {
+    final List<Integer> ranges = new ArrayList<Integer>();
+    for (int i = 0; i < sortedIds.length; ++i) {
+      if (i == 0 || sortedIds[i] != sortedIds[i - 1] + 1) {
+        ranges.add(sortedIds[i]);
+        ranges.add(sortedIds[i]);
+      } else {
+        ranges.set(ranges.size() - 1, sortedIds[i]);
+      }
+    }
+    final int[] result = new int[ranges.size()];
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = ranges.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the file name of the shard for {@code cellId}, for a database named {@code dbName}.
+   */
+  public static String getShardName(final String dbName, final int level, final int cellId) {
+    final int dot = dbName.lastIndexOf('.');
+    final String base = dot < 0 ? dbName : dbName.substring(0, dot);
+    final String extension = dot < 0 ? "" : dbName.substring(dot);
+    return String.format("%s-%d-%d%s", base, level, cellId, extension);
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  public List<Shard> getShards() {
+    return shards;
+  }
+
+  /**
+   * Returns the shard holding the airport with the given id, {@code null} if none.
+   */
+  public Shard getShardForAirport(final int airportId) {
+    for (Shard shard: shards) {
+      if (shard.hasAirport(airportId)) {
+        return shard;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the shard covering {@code position}, {@code null} if none.
+   */
+  public Shard getShardForPosition(final LatLng position) {
+    final int cellId = CustomGridUtil.getCellId(position, level);
+    for (Shard shard: shards) {
+      if (shard.cellId == cellId) {
+        return shard;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the shards whose cell intersects {@code area}.
+   */
+  public List<Shard> getShardsInRectangle(final LatLngRect area) {
+    final List<Shard> result = new ArrayList<Shard>();
+    for (Shard shard: shards) {
+      if (intersects(shard.bounds, area)) {
+        result.add(shard);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the shards intersecting any of {@code areas}, in index order.
+   */
+  public List<Shard> getShardsInRectangles(final Collection<LatLngRect> areas) {
+    final Collection<Shard> result = new LinkedHashSet<Shard>();
+    for (Shard shard: shards) {
+      for (LatLngRect area: areas) {
+        if (intersects(shard.bounds, area)) {
+          result.add(shard);
+          break;
+        }
+      }
+    }
+    return new ArrayList<Shard>(result);
+  }
+
+  /**
+   * Returns the areas within {@code radius} of a route: one rectangle around each leg.
+   *
+   * @param route Route waypoints, in order
+   * @param radius Distance from the route, in meters
+   */
+  public static List<LatLngRect> getRouteAreas(final List<LatLng> route, final double radius) {
+    final List<LatLngRect> areas = new ArrayList<LatLngRect>();
+    if (route.size() == 1) {
+      areas.add(getBoundingBox(route.get(0), radius));
+    }
+    for (int i = 1; i < route.size(); ++i) {
+      final LatLngRect area = getBoundingBox(route.get(i - 1), radius);
+      area.add(getBoundingBox(route.get(i), radius));
+      areas.add(area);
+    }
+    return areas;
+  }
+
+  /**
+   * Returns the rectangle bounding the circle of {@code radius} meters around {@code center}.
+   */
+  public static LatLngRect getBoundingBox(final LatLng center, final double radius) {
+    // Translate radius in degrees at that latitude (and all longitudes).
+    final double latRadius = Math.toDegrees(radius / NavigationUtil.EARTH_RADIUS);
+    final double lngRadius = Math.min(180, latRadius / Math.cos(center.latRad()));
+    final int radiusE6 = (int) (Math.max(lngRadius, latRadius) * 1E6);
+    return LatLngRect.getBoundingBox(center, radiusE6);
+  }
+
+  private static boolean intersects(final LatLngRect a, final LatLngRect b) {
+    return Math.max(a.getSouth(), b.getSouth()) <= Math.min(a.getNorth(), b.getNorth()) &&
+        Math.max(a.getWest(), b.getWest()) <= Math.min(a.getEast(), b.getEast());
+  }
+
+  /**
+   * Returns the contents of the index file (see class description).
+   */
+  @Override
+  public String toString() {
+    final StringBuilder content = new StringBuilder();
+    content.append("level ").append(level).append('\n');
+    for (Shard shard: shards) {
+      content.append(shard).append('\n');
+    }
+    return content.toString();
+  }
+}
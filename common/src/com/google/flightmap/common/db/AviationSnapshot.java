@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+/**
+ * Layout of the flat aviation snapshot file shared by {@link AviationSnapshotWriter} and {@link
+ * MappedAviationDbAdapter}.
+ * <p>
+ * All values are big-endian 32-bit integers.  The file starts with a header: {@link #MAGIC},
+ * {@link #VERSION}, the number of airspace levels of detail, then an (offset, count) pair for
+ * each of the {@link #SECTION_COUNT} sections.  Except for {@link #STRINGS} and {@link
+ * #MAGNETIC_VARIATION}, sections are arrays of fixed-width records whose fields are listed below,
+ * in order.  Strings are referenced by their index in {@link #STRINGS}, or -1 for {@code null}.
+ */
+final class AviationSnapshot {
+  static final int MAGIC = 0x464d4150; // "FMAP"
+  static final int VERSION = 1;
+
+  // Sections
+  /**
+   * String pool: {@code count + 1} byte offsets, then the UTF-8 bytes of all strings.
+   */
+  static final int STRINGS = 0;
+  /**
+   * Constants, sorted by id.
+   */
+  static final int CONSTANTS = 1;
+  /**
+   * Metadata, in no particular order.
+   */
+  static final int METADATA = 2;
+  /**
+   * Airports, sorted by cell id.
+   */
+  static final int AIRPORTS = 3;
+  /**
+   * Index of {@link #AIRPORTS}, sorted by airport id.
+   */
+  static final int AIRPORT_IDS = 4;
+  /**
+   * Index of {@link #AIRPORTS}, sorted by ICAO.
+   */
+  static final int AIRPORT_ICAOS = 5;
+  static final int RUNWAYS = 6;
+  static final int RUNWAY_ENDS = 7;
+  /**
+   * Index of {@link #RUNWAY_ENDS}, sorted by runway end id.
+   */
+  static final int RUNWAY_END_IDS = 8;
+  /**
+   * Airport and runway end properties.
+   */
+  static final int PROPERTIES = 9;
+  static final int COMMS = 10;
+  static final int AIRPORT_AIRSPACES = 11;
+  static final int AIRSPACES = 12;
+  /**
+   * Points of full and simplified airspace geometries.
+   */
+  static final int AIRSPACE_POINTS = 13;
+  static final int AIRSPACE_ARCS = 14;
+  /**
+   * At most one grid: min lat, min lng, step, rows, cols, then the encoded values (see {@link
+   * com.google.flightmap.common.geo.MagneticVariationGrid#encodeValues}).
+   */
+  static final int MAGNETIC_VARIATION = 15;
+  /**
+   * Nearest airport cell ranges, sorted by start cell id.
+   */
+  static final int NEAREST_AIRPORTS = 16;
+  /**
+   * (id, lat, lng) triples referenced by {@link #NEAREST_AIRPORTS}.
+   */
+  static final int NEAREST_AIRPORT_CANDIDATES = 17;
+  static final int SECTION_COUNT = 18;
+
+  static final int HEADER_SIZE = 3 + 2 * SECTION_COUNT;
+
+  // CONSTANTS records
+  static final int CONSTANT_ID = 0;
+  static final int CONSTANT_STRING = 1;
+  static final int CONSTANT_SIZE = 2;
+
+  // METADATA and PROPERTIES records
+  static final int PAIR_KEY = 0;
+  static final int PAIR_VALUE = 1;
+  static final int PAIR_SIZE = 2;
+
+  // AIRPORTS records
+  static final int AIRPORT_ID = 0;
+  static final int AIRPORT_CELL_ID = 1;
+  static final int AIRPORT_LAT = 2;
+  static final int AIRPORT_LNG = 3;
+  static final int AIRPORT_ICAO = 4;
+  static final int AIRPORT_NAME = 5;
+  static final int AIRPORT_CITY = 6;
+  /**
+   * Ordinal of {@link com.google.flightmap.common.data.Airport.Type}.
+   */
+  static final int AIRPORT_TYPE = 7;
+  static final int AIRPORT_FLAGS = 8;
+  static final int AIRPORT_RANK = 9;
+  static final int AIRPORT_RUNWAY_START = 10;
+  static final int AIRPORT_RUNWAY_COUNT = 11;
+  static final int AIRPORT_PROPERTY_START = 12;
+  static final int AIRPORT_PROPERTY_COUNT = 13;
+  static final int AIRPORT_COMM_START = 14;
+  static final int AIRPORT_COMM_COUNT = 15;
+  static final int AIRPORT_AIRSPACE_START = 16;
+  static final int AIRPORT_AIRSPACE_COUNT = 17;
+  static final int AIRPORT_SIZE = 18;
+
+  // AIRPORT_FLAGS bits
+  static final int FLAG_OPEN = 1;
+  static final int FLAG_PUBLIC = 2;
+  static final int FLAG_TOWERED = 4;
+  static final int FLAG_MILITARY = 8;
+
+  // AIRPORT_IDS and RUNWAY_END_IDS records
+  static final int INDEX_ID = 0;
+  static final int INDEX_RECORD = 1;
+  static final int INDEX_SIZE = 2;
+
+  // AIRPORT_ICAOS records
+  static final int ICAO_INDEX_SIZE = 1;
+
+  // RUNWAYS records
+  static final int RUNWAY_LETTERS = 0;
+  static final int RUNWAY_LENGTH = 1;
+  static final int RUNWAY_WIDTH = 2;
+  static final int RUNWAY_SURFACE = 3;
+  static final int RUNWAY_END_START = 4;
+  static final int RUNWAY_END_COUNT = 5;
+  static final int RUNWAY_SIZE = 6;
+
+  // RUNWAY_ENDS records
+  static final int RUNWAY_END_ID = 0;
+  static final int RUNWAY_END_LETTERS = 1;
+  static final int RUNWAY_END_PROPERTY_START = 2;
+  static final int RUNWAY_END_PROPERTY_COUNT = 3;
+  static final int RUNWAY_END_SIZE = 4;
+
+  // COMMS records
+  static final int COMM_IDENTIFIER = 0;
+  static final int COMM_FREQUENCY = 1;
+  static final int COMM_REMARKS = 2;
+  static final int COMM_SIZE = 3;
+
+  // AIRPORT_AIRSPACES records
+  static final int AIRPORT_AIRSPACE_ID = 0;
+  /**
+   * Ordinal of {@link com.google.flightmap.common.data.Airspace.Class}.
+   */
+  static final int AIRPORT_AIRSPACE_CLASS = 1;
+  static final int AIRPORT_AIRSPACE_BOTTOM = 2;
+  static final int AIRPORT_AIRSPACE_TOP = 3;
+  static final int AIRPORT_AIRSPACE_SIZE = 4;
+
+  // AIRSPACES records, followed by a (point start, point count) pair for each level of detail.
+  // A count of -1 means that the level is not available.
+  static final int AIRSPACE_ID = 0;
+  static final int AIRSPACE_NAME = 1;
+  static final int AIRSPACE_CLASS = 2;
+  static final int AIRSPACE_BOTTOM = 3;
+  static final int AIRSPACE_TOP = 4;
+  static final int AIRSPACE_MIN_LAT = 5;
+  static final int AIRSPACE_MAX_LAT = 6;
+  static final int AIRSPACE_MIN_LNG = 7;
+  static final int AIRSPACE_MAX_LNG = 8;
+  static final int AIRSPACE_POINT_START = 9;
+  static final int AIRSPACE_POINT_COUNT = 10;
+  static final int AIRSPACE_ARC_START = 11;
+  static final int AIRSPACE_ARC_COUNT = 12;
+  static final int AIRSPACE_LODS = 13;
+
+  // AIRSPACE_POINTS records
+  static final int POINT_NUM = 0;
+  static final int POINT_LAT = 1;
+  static final int POINT_LNG = 2;
+  static final int POINT_SIZE = 3;
+
+  // AIRSPACE_ARCS records.  Angles are stored as float bits.
+  static final int ARC_NUM = 0;
+  static final int ARC_MIN_LAT = 1;
+  static final int ARC_MAX_LAT = 2;
+  static final int ARC_MIN_LNG = 3;
+  static final int ARC_MAX_LNG = 4;
+  static final int ARC_START_ANGLE = 5;
+  static final int ARC_SWEEP_ANGLE = 6;
+  static final int ARC_SIZE = 7;
+
+  // MAGNETIC_VARIATION header
+  static final int VARIATION_MIN_LAT = 0;
+  static final int VARIATION_MIN_LNG = 1;
+  static final int VARIATION_STEP = 2;
+  static final int VARIATION_ROWS = 3;
+  static final int VARIATION_COLS = 4;
+  static final int VARIATION_HEADER_SIZE = 5;
+
+  // NEAREST_AIRPORTS records
+  static final int NEAREST_START_CELL_ID = 0;
+  static final int NEAREST_END_CELL_ID = 1;
+  static final int NEAREST_CANDIDATE_START = 2;
+  /**
+   * Number of ints (not triples) in {@link #NEAREST_AIRPORT_CANDIDATES}.
+   */
+  static final int NEAREST_CANDIDATE_COUNT = 3;
+  static final int NEAREST_SIZE = 4;
+
+  /**
+   * Returns the size of {@link #AIRSPACES} records, in ints.
+   */
+  static int getAirspaceSize(final int levelCount) {
+    return AIRSPACE_LODS + 2 * levelCount;
+  }
+
+  /**
+   * Utility class: default and only constructor is private.
+   */
+  private AviationSnapshot() {
+  }
+}
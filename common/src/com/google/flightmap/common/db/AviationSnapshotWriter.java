@@ -0,0 +1,472 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import static com.google.flightmap.common.db.AviationSnapshot.*;
+
+import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.AirportAirspace;
+import com.google.flightmap.common.data.Airspace;
+import com.google.flightmap.common.data.AirspaceArc;
+import com.google.flightmap.common.data.Comm;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.data.Runway;
+import com.google.flightmap.common.data.RunwayEnd;
+import com.google.flightmap.common.geo.AirspaceLevelsOfDetail;
+import com.google.flightmap.common.geo.MagneticVariationGrid;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Writes a flat, read-only aviation snapshot for {@link MappedAviationDbAdapter} (see {@link
+ * AviationSnapshot} for the layout).
+ * <p>
+ * Entities are added in any order and kept in memory until {@link #write}, which sorts them.
+ */
+public class AviationSnapshotWriter {
+  private final SortedMap<Integer, String> constants = new TreeMap<Integer, String>();
+  private final SortedMap<String, String> metadata = new TreeMap<String, String>();
+  private final List<AirportEntry> airports = new ArrayList<AirportEntry>();
+  private final Map<Integer, Map<String, String>> runwayEndProperties =
+      new HashMap<Integer, Map<String, String>>();
+  private final SortedMap<Integer, AirspaceEntry> airspaces =
+      new TreeMap<Integer, AirspaceEntry>();
+  private final SortedMap<Integer, int[]> nearestAirports = new TreeMap<Integer, int[]>();
+  private MagneticVariationGrid magneticVariationGrid;
+
+  /**
+   * String pool of the snapshot being written: index of each string.
+   */
+  private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+  private final List<String> strings = new ArrayList<String>();
+
+  public void addConstant(final int id, final String constant) {
+    constants.put(id, constant);
+  }
+
+  public void addMetadata(final String key, final String value) {
+    metadata.put(key, value);
+  }
+
+  /**
+   * Adds an airport with its runways.
+   *
+   * @param properties Airport properties, as returned by {@link
+   *        AviationDbAdapter#getAirportProperties}, or {@code null}
+   * @param comms Airport communication data, or {@code null}
+   * @param airportAirspaces Airspaces containing the airport, or {@code null}
+   */
+  public void addAirport(final Airport airport, final Map<String, String> properties,
+      final List<Comm> comms, final List<AirportAirspace> airportAirspaces) {
+    airports.add(new AirportEntry(airport, properties, comms, airportAirspaces));
+  }
+
+  /**
+   * Adds the properties of a runway end, as returned by {@link
+   * AviationDbAdapter#getRunwayEndProperties}.
+   */
+  public void addRunwayEndProperties(final int runwayEndId, final Map<String, String> properties) {
+    runwayEndProperties.put(runwayEndId, properties);
+  }
+
+  /**
+   * Adds an airspace.
+   *
+   * @param bounds Bounding box of the airspace, used to answer area queries
+   * @param levels Simplified points of the airspace for each level of detail (see {@link
+   *        AirspaceLevelsOfDetail}), {@code null} if none or if a level is not available
+   */
+  public void addAirspace(final Airspace airspace, final LatLngRect bounds,
+      final List<SortedMap<Integer, LatLng>> levels) {
+    airspaces.put(airspace.id, new AirspaceEntry(airspace, bounds, levels));
+  }
+
+  public void setMagneticVariationGrid(final MagneticVariationGrid grid) {
+    magneticVariationGrid = grid;
+  }
+
+  /**
+   * Adds the nearest airport candidates of cells {@code [startCellId, endCellId)}, as triples
+   * (see {@link NearestAirports}).
+   */
+  public void addNearestAirports(final int startCellId, final int endCellId,
+      final int[] candidates) {
+    final int[] range = new int[candidates.length + 1];
+    range[0] = endCellId;
+    System.arraycopy(candidates, 0, range, 1, candidates.length);
+    nearestAirports.put(startCellId, range);
+  }
+
+  /**
+   * Writes the snapshot to {@code out}.  Does not close {@code out}.
+   */
+  public void write(final OutputStream out) throws IOException {
+    strings.clear();
+    stringIndexes.clear();
+    final IntList[] sections = new IntList[SECTION_COUNT];
+    for (int i = 0; i < SECTION_COUNT; ++i) {
+      sections[i] = new IntList();
+    }
+    final int[] counts = new int[SECTION_COUNT];
+
+    for (Map.Entry<Integer, String> constant: constants.entrySet()) {
+      sections[CONSTANTS].add(constant.getKey(), intern(constant.getValue()));
+    }
+    counts[CONSTANTS] = constants.size();
+
+    for (Map.Entry<String, String> entry: metadata.entrySet()) {
+      sections[METADATA].add(intern(entry.getKey()), intern(entry.getValue()));
+    }
+    counts[METADATA] = metadata.size();
+
+    writeAirports(sections, counts);
+    writeAirspaces(sections, counts);
+
+    final MagneticVariationGrid grid = magneticVariationGrid;
+    byte[] variation = new byte[0];
+    if (grid != null) {
+      sections[MAGNETIC_VARIATION].add(grid.getMinLat(), grid.getMinLng(), grid.getStep(),
+          grid.getRows(), grid.getCols());
+      variation = grid.encodeValues();
+      counts[MAGNETIC_VARIATION] = 1;
+    }
+
+    for (Map.Entry<Integer, int[]> entry: nearestAirports.entrySet()) {
+      final int[] range = entry.getValue();
+      sections[NEAREST_AIRPORTS].add(entry.getKey(), range[0],
+          sections[NEAREST_AIRPORT_CANDIDATES].size(), range.length - 1);
+      for (int i = 1; i < range.length; ++i) {
+        sections[NEAREST_AIRPORT_CANDIDATES].add(range[i]);
+      }
+    }
+    counts[NEAREST_AIRPORTS] = nearestAirports.size();
+    counts[NEAREST_AIRPORT_CANDIDATES] = sections[NEAREST_AIRPORT_CANDIDATES].size();
+
+    // String pool, last since other sections add to it.
+    final ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+    for (String string: strings) {
+      sections[STRINGS].add(stringBytes.size());
+      final byte[] bytes = encode(string);
+      stringBytes.write(bytes, 0, bytes.length);
+    }
+    sections[STRINGS].add(stringBytes.size());
+    counts[STRINGS] = strings.size();
+
+    final byte[][] trailers = new byte[SECTION_COUNT][];
+    trailers[STRINGS] = stringBytes.toByteArray();
+    trailers[MAGNETIC_VARIATION] = variation;
+
+    final DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeInt(AirspaceLevelsOfDetail.getLevelCount());
+    int offset = HEADER_SIZE * 4;
+    for (int i = 0; i < SECTION_COUNT; ++i) {
+      data.writeInt(offset);
+      data.writeInt(counts[i]);
+      offset += sections[i].size() * 4 + getPaddedLength(trailers[i]);
+    }
+    for (int i = 0; i < SECTION_COUNT; ++i) {
+      sections[i].write(data);
+      if (trailers[i] != null) {
+        data.write(trailers[i]);
+        for (int j = trailers[i].length; j < getPaddedLength(trailers[i]); ++j) {
+          data.write(0);
+        }
+      }
+    }
+    data.flush();
+  }
+
+  private void writeAirports(final IntList[] sections, final int[] counts) {
+    final List<AirportEntry> sortedAirports = new ArrayList<AirportEntry>(airports);
+    Collections.sort(sortedAirports, new Comparator<AirportEntry>() {
+      @Override
+      public int compare(final AirportEntry a, final AirportEntry b) {
+        if (a.cellId != b.cellId) {
+          return a.cellId < b.cellId ? -1 : 1;
+        }
+        return a.airport.id < b.airport.id ? -1 : (a.airport.id == b.airport.id ? 0 : 1);
+      }
+    });
+    final SortedMap<Integer, Integer> airportRecords = new TreeMap<Integer, Integer>();
+    final SortedMap<String, List<Integer>> icaoRecords = new TreeMap<String, List<Integer>>();
+    final SortedMap<Integer, Integer> runwayEndRecords = new TreeMap<Integer, Integer>();
+    final IntList records = sections[AIRPORTS];
+    for (int record = 0; record < sortedAirports.size(); ++record) {
+      final AirportEntry entry = sortedAirports.get(record);
+      final Airport airport = entry.airport;
+      airportRecords.put(airport.id, record);
+      if (airport.icao != null) {
+        List<Integer> icaoRecordList = icaoRecords.get(airport.icao);
+        if (icaoRecordList == null) {
+          icaoRecordList = new ArrayList<Integer>();
+          icaoRecords.put(airport.icao, icaoRecordList);
+        }
+        icaoRecordList.add(record);
+      }
+      int flags = 0;
+      flags |= airport.isOpen ? FLAG_OPEN : 0;
+      flags |= airport.isPublic ? FLAG_PUBLIC : 0;
+      flags |= airport.isTowered ? FLAG_TOWERED : 0;
+      flags |= airport.isMilitary ? FLAG_MILITARY : 0;
+      records.add(airport.id, entry.cellId, airport.location.lat, airport.location.lng);
+      records.add(intern(airport.icao), intern(airport.name), intern(airport.city));
+      records.add(airport.type.ordinal(), flags, airport.rank);
+
+      // Runways and runway ends
+      final int runwayStart = sections[RUNWAYS].size() / RUNWAY_SIZE;
+      int runwayCount = 0;
+      if (airport.runways != null) {
+        for (Runway runway: airport.runways) {
+          final int runwayEndStart = sections[RUNWAY_ENDS].size() / RUNWAY_END_SIZE;
+          int runwayEndCount = 0;
+          if (runway.runwayEnds != null) {
+            for (RunwayEnd runwayEnd: runway.runwayEnds) {
+              runwayEndRecords.put(runwayEnd.id, runwayEndStart + runwayEndCount);
+              final int propertyStart = sections[PROPERTIES].size() / PAIR_SIZE;
+              final int propertyCount =
+                  addPairs(sections[PROPERTIES], runwayEndProperties.get(runwayEnd.id));
+              sections[RUNWAY_ENDS].add(runwayEnd.id, intern(runwayEnd.letters), propertyStart,
+                  propertyCount);
+              ++runwayEndCount;
+            }
+          }
+          sections[RUNWAYS].add(intern(runway.letters), runway.length, runway.width,
+              intern(runway.surface));
+          sections[RUNWAYS].add(runwayEndStart, runwayEndCount);
+          ++runwayCount;
+        }
+      }
+      records.add(runwayStart, runwayCount);
+
+      // Properties
+      final int propertyStart = sections[PROPERTIES].size() / PAIR_SIZE;
+      records.add(propertyStart, addPairs(sections[PROPERTIES], entry.properties));
+
+      // Comms
+      final int commStart = sections[COMMS].size() / COMM_SIZE;
+      int commCount = 0;
+      if (entry.comms != null) {
+        for (Comm comm: entry.comms) {
+          sections[COMMS].add(intern(comm.identifier), intern(comm.frequency),
+              intern(comm.remarks));
+          ++commCount;
+        }
+      }
+      records.add(commStart, commCount);
+
+      // Airspaces containing the airport
+      final int airspaceStart = sections[AIRPORT_AIRSPACES].size() / AIRPORT_AIRSPACE_SIZE;
+      int airspaceCount = 0;
+      if (entry.airportAirspaces != null) {
+        final List<AirportAirspace> airportAirspaces =
+            new ArrayList<AirportAirspace>(entry.airportAirspaces);
+        Collections.sort(airportAirspaces, new Comparator<AirportAirspace>() {
+          @Override
+          public int compare(final AirportAirspace a, final AirportAirspace b) {
+            return a.bottom < b.bottom ? -1 : (a.bottom == b.bottom ? 0 : 1);
+          }
+        });
+        for (AirportAirspace airspace: airportAirspaces) {
+          sections[AIRPORT_AIRSPACES].add(airspace.airspaceId, airspace.airspaceClass.ordinal(),
+              airspace.bottom, airspace.top);
+          ++airspaceCount;
+        }
+      }
+      records.add(airspaceStart, airspaceCount);
+    }
+    counts[AIRPORTS] = sortedAirports.size();
+
+    for (Map.Entry<Integer, Integer> entry: airportRecords.entrySet()) {
+      sections[AIRPORT_IDS].add(entry.getKey(), entry.getValue());
+    }
+    counts[AIRPORT_IDS] = airportRecords.size();
+    for (List<Integer> icaoRecordList: icaoRecords.values()) {
+      for (int record: icaoRecordList) {
+        sections[AIRPORT_ICAOS].add(record);
+        ++counts[AIRPORT_ICAOS];
+      }
+    }
+    for (Map.Entry<Integer, Integer> entry: runwayEndRecords.entrySet()) {
+      sections[RUNWAY_END_IDS].add(entry.getKey(), entry.getValue());
+    }
+    counts[RUNWAY_END_IDS] = runwayEndRecords.size();
+    counts[RUNWAYS] = sections[RUNWAYS].size() / RUNWAY_SIZE;
+    counts[RUNWAY_ENDS] = sections[RUNWAY_ENDS].size() / RUNWAY_END_SIZE;
+    counts[PROPERTIES] = sections[PROPERTIES].size() / PAIR_SIZE;
+    counts[COMMS] = sections[COMMS].size() / COMM_SIZE;
+    counts[AIRPORT_AIRSPACES] = sections[AIRPORT_AIRSPACES].size() / AIRPORT_AIRSPACE_SIZE;
+  }
+
+  private void writeAirspaces(final IntList[] sections, final int[] counts) {
+    final int levelCount = AirspaceLevelsOfDetail.getLevelCount();
+    final IntList records = sections[AIRSPACES];
+    final IntList points = sections[AIRSPACE_POINTS];
+    for (AirspaceEntry entry: airspaces.values()) {
+      final Airspace airspace = entry.airspace;
+      records.add(airspace.id, intern(airspace.name), airspace.airspaceClass.ordinal(),
+          airspace.bottom, airspace.top);
+      records.add(entry.bounds.getSouth(), entry.bounds.getNorth(), entry.bounds.getWest(),
+          entry.bounds.getEast());
+      records.add(points.size() / POINT_SIZE, airspace.points.size());
+      addPoints(points, airspace.points);
+      records.add(sections[AIRSPACE_ARCS].size() / ARC_SIZE, airspace.arcs.size());
+      for (Map.Entry<Integer, AirspaceArc> arcEntry: airspace.arcs.entrySet()) {
+        final AirspaceArc arc = arcEntry.getValue();
+        final LatLngRect box = arc.boundingBox;
+        sections[AIRSPACE_ARCS].add(arcEntry.getKey(), box.getSouth(), box.getNorth(),
+            box.getWest(), box.getEast());
+        sections[AIRSPACE_ARCS].add(Float.floatToIntBits(arc.startAngle),
+            Float.floatToIntBits(arc.sweepAngle));
+      }
+      for (int level = 0; level < levelCount; ++level) {
+        final SortedMap<Integer, LatLng> levelPoints =
+            entry.levels != null && level < entry.levels.size() ? entry.levels.get(level) : null;
+        if (levelPoints == null) {
+          records.add(0, -1);
+        } else {
+          records.add(points.size() / POINT_SIZE, levelPoints.size());
+          addPoints(points, levelPoints);
+        }
+      }
+    }
+    counts[AIRSPACES] = airspaces.size();
+    counts[AIRSPACE_POINTS] = points.size() / POINT_SIZE;
+    counts[AIRSPACE_ARCS] = sections[AIRSPACE_ARCS].size() / ARC_SIZE;
+  }
+
+  private static void addPoints(final IntList section, final SortedMap<Integer, LatLng> points) {
+    for (Map.Entry<Integer, LatLng> point: points.entrySet()) {
+      section.add(point.getKey(), point.getValue().lat, point.getValue().lng);
+    }
+  }
+
+  /**
+   * Adds (key, value) records sorted by key.
+   *
+   * @return Number of records added
+   */
+  private int addPairs(final IntList section, final Map<String, String> pairs) {
+    if (pairs == null) {
+      return 0;
+    }
+    for (Map.Entry<String, String> pair: new TreeMap<String, String>(pairs).entrySet()) {
+      section.add(intern(pair.getKey()), intern(pair.getValue()));
+    }
+    return pairs.size();
+  }
+
+  /**
+   * Returns the index of {@code string} in the string pool, adding it if needed.
+   */
+  private int intern(final String string) {
+    if (string == null) {
+      return -1;
+    }
+    Integer index = stringIndexes.get(string);
+    if (index == null) {
+      index = strings.size();
+      strings.add(string);
+      stringIndexes.put(string, index);
+    }
+    return index;
+  }
+
+  private static byte[] encode(final String string) {
+    try {
+      return string.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException ueEx) {
+      throw new RuntimeException(ueEx);
+    }
+  }
+
+  private static int getPaddedLength(final byte[] bytes) {
+    return bytes == null ? 0 : (bytes.length + 3) & ~3;
+  }
+
+  private static class AirportEntry {
+    final Airport airport;
+    final int cellId;
+    final Map<String, String> properties;
+    final List<Comm> comms;
+    final List<AirportAirspace> airportAirspaces;
+
+    AirportEntry(final Airport airport, final Map<String, String> properties,
+        final List<Comm> comms, final List<AirportAirspace> airportAirspaces) {
+      this.airport = airport;
+      this.cellId = CustomGridUtil.getCellId(airport.location);
+      this.properties = properties;
+      this.comms = comms;
+      this.airportAirspaces = airportAirspaces;
+    }
+  }
+
+  private static class AirspaceEntry {
+    final Airspace airspace;
+    final LatLngRect bounds;
+    final List<SortedMap<Integer, LatLng>> levels;
+
+    AirspaceEntry(final Airspace airspace, final LatLngRect bounds,
+        final List<SortedMap<Integer, LatLng>> levels) {
+      this.airspace = airspace;
+      this.bounds = bounds;
+      this.levels = levels;
+    }
+  }
+
+  /**
+   * Growable array of ints.
+   */
+  private static class IntList {
+    private int[] values = new int[16];
+    private int size;
+
+    void add(final int... newValues) {
+      if (size + newValues.length > values.length) {
+        final int[] grown = new int[Math.max(values.length * 2, size + newValues.length)];
+        System.arraycopy(values, 0, grown, 0, size);
+        values = grown;
+      }
+      System.arraycopy(newValues, 0, values, size, newValues.length);
+      size += newValues.length;
+    }
+
+    int size() {
+      return size;
+    }
+
+    void write(final DataOutputStream out) throws IOException {
+      for (int i = 0; i < size; ++i) {
+        out.writeInt(values[i]);
+      }
+    }
+  }
+}
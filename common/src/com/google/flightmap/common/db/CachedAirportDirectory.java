@@ -16,11 +16,18 @@
 
 package com.google.flightmap.common.db;
 
+import com.google.flightmap.common.CancellationToken;
 import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.AirportDistance;
 import com.google.flightmap.common.data.LatLng;
 import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.metrics.Counter;
+import com.google.flightmap.common.metrics.Gauge;
+import com.google.flightmap.common.metrics.LatencyHistogram;
+import com.google.flightmap.common.metrics.MetricsRegistry;
 
 import java.util.Collection;
+import java.util.SortedSet;
 
 /**
  * Caches access to {@link AirportDirectory} for improved performance.
@@ -56,6 +63,9 @@ import java.util.Collection;
  * src="doc-files/CachedAirportDirectory-3.png" width="40%" /> </a>
  * <p align="center">
  * A new cached area is then retrieved for the following requests.
+ * <p>
+ * Cache hits and misses, the latency of the queries made on a miss, and the number of cached
+ * airports are recorded in a {@link MetricsRegistry}.
  */
 public class CachedAirportDirectory extends AbstractAirportDirectory {
   /**
@@ -82,24 +92,51 @@ public class CachedAirportDirectory extends AbstractAirportDirectory {
 
   private int inProgressRank;
 
+  // Metrics
+  private final Counter hits;
+  private final Counter misses;
+  private final LatencyHistogram fetchLatency;
+  private final Gauge size;
+
   /**
-   * Creates decorator for underlying {@code airportDirectory}.
+   * Creates decorator for underlying {@code airportDirectory}, recording metrics in the {@link
+   * MetricsRegistry#getDefault default registry}.
    * 
    * @see <a href="http://en.wikipedia.org/wiki/Decorator_pattern">Decorator
    *      pattern</a>
    */
   public CachedAirportDirectory(final AirportDirectory airportDirectory) {
+    this(airportDirectory, MetricsRegistry.getDefault());
+  }
+
+  /**
+   * Creates decorator for underlying {@code airportDirectory}, recording metrics in
+   * {@code metrics}.
+   */
+  public CachedAirportDirectory(final AirportDirectory airportDirectory,
+      final MetricsRegistry metrics) {
     this.airportDirectory = airportDirectory;
+    hits = metrics.getCounter("airports.cache.hit");
+    misses = metrics.getCounter("airports.cache.miss");
+    fetchLatency = metrics.getHistogram("airports.cache.fetch");
+    size = metrics.getGauge("airports.cache.size");
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Partial results, returned when {@code token} expires, are not cached.
+   */
   @Override
-  public Collection<Airport> getAirportsInRectangle(final LatLngRect area, final int minRank)
-      throws InterruptedException {
+  public Collection<Airport> getAirportsInRectangle(final LatLngRect area, final int minRank,
+      final CancellationToken token) throws InterruptedException {
     synchronized (this) {
       if (cachedArea != null && cachedArea.contains(area) && cachedMinRank == minRank) {
+        hits.increment();
         return cachedAirports;
       }
     }
+    misses.increment();
     // Cache miss: get new results.
     final LatLng areaNeCorner = area.getNeCorner();
     final LatLng areaSwCorner = area.getSwCorner();
@@ -109,23 +146,26 @@ public class CachedAirportDirectory extends AbstractAirportDirectory {
         new LatLng(areaNeCorner.lat + dLat / 2, areaNeCorner.lng + dLng / 2);
     final LatLng cachedAreaSwCorner =
         new LatLng(areaSwCorner.lat - dLat / 2, areaSwCorner.lng - dLng / 2);
+    final LatLngRect newInProgressArea = new LatLngRect(cachedAreaNeCorner, cachedAreaSwCorner);
     synchronized (this) {
-      inProgressArea = new LatLngRect(cachedAreaNeCorner, cachedAreaSwCorner);
+      inProgressArea = newInProgressArea;
       inProgressRank = minRank;
     }
 
     // This call may be slow.
-    System.out.println("Fetching airports for " + area + "    rank=" + minRank);
-    final long start = System.currentTimeMillis();
+    final long start = LatencyHistogram.start();
     final Collection<Airport> newCachedAirports =
-        airportDirectory.getAirportsInRectangle(inProgressArea, minRank);
-    final long stop = System.currentTimeMillis();
-    System.out.println("Got airports in rectangle. Count: " + newCachedAirports.size() + " in " +
-        (stop - start) + "ms.");
+        airportDirectory.getAirportsInRectangle(newInProgressArea, minRank, token);
+    fetchLatency.recordSince(start);
     synchronized (this) {
-      cachedArea = inProgressArea;
+      if (token.isDeadlineExceeded()) {
+        // The in progress area is kept: the caller is expected to complete the results.
+        return newCachedAirports;
+      }
+      cachedArea = newInProgressArea;
       cachedMinRank = minRank;
       cachedAirports = newCachedAirports;
+      size.set(cachedAirports.size());
       return cachedAirports;
     }
   }
@@ -133,12 +173,19 @@ public class CachedAirportDirectory extends AbstractAirportDirectory {
   /**
    * Returns true if {@code area} and {@code minRank} will either 1) hit the
    * cache, or 2) give the same results as the query that's in progress by
-   * {@link #getAirportsInRectangle(LatLngRect, int)}.
+   * {@link #getAirportsInRectangle(LatLngRect, int)}, or as the latest query if
+   * it returned partial results.
    */
   public synchronized boolean isCacheMatch(LatLngRect area, int minRank) {
     return inProgressArea != null && inProgressArea.contains(area) && inProgressRank == minRank;
   }
 
+  @Override
+  public SortedSet<AirportDistance> getNearestAirports(final LatLng position, final int count)
+      throws InterruptedException {
+    return airportDirectory.getNearestAirports(position, count);
+  }
+
   @Override
   public void open() {
     airportDirectory.open();
@@ -16,11 +16,19 @@
 
 package com.google.flightmap.common.db;
 
+import com.google.flightmap.common.CancellationToken;
 import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.AirportAirspace;
 import com.google.flightmap.common.data.Airspace;
 import com.google.flightmap.common.data.Comm;
 import com.google.flightmap.common.data.LatLng;
 import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.geo.AirspaceLevelsOfDetail;
+import com.google.flightmap.common.geo.MagneticVariationGrid;
+import com.google.flightmap.common.metrics.Counter;
+import com.google.flightmap.common.metrics.Gauge;
+import com.google.flightmap.common.metrics.LatencyHistogram;
+import com.google.flightmap.common.metrics.MetricsRegistry;
 
 import java.util.Collection;
 import java.util.HashMap;
@@ -30,6 +38,11 @@ import java.util.Set;
 
 /**
  * Low level interface to database entities.
+ * <p>
+ * Caches constants, the magnetic variation grid, and the airspaces of an area larger than the
+ * latest one requested (see {@link CachedAirportDirectory}).  Airspace cache hits and misses, the
+ * latency of the queries made on a miss, and the number of cached airspaces are recorded in a
+ * {@link MetricsRegistry}.
  */
 public class CachedAviationDbAdapter implements AviationDbAdapter {
   /** Underlying decorated (cached) instance. */
@@ -48,11 +61,47 @@ public class CachedAviationDbAdapter implements AviationDbAdapter {
    */
   private Collection<Airspace> cachedAirspaces;
 
+  /**
+   * Level of detail of cached airspaces (see {@link AirspaceLevelsOfDetail}).
+   */
+  private int cachedLevel;
+
   private LatLngRect inProgressArea;
 
+  /**
+   * Magnetic variation grid, read once from {@link #cachedDbAdapter}.
+   */
+  private MagneticVariationGrid magneticVariationGrid;
+
+  private boolean isMagneticVariationGridRead;
+
+  private int inProgressLevel;
+
+  // Metrics
+  private final Counter hits;
+  private final Counter misses;
+  private final LatencyHistogram fetchLatency;
+  private final Gauge size;
+
+  /**
+   * Creates decorator for {@code cachedDbAdapter}, recording metrics in the {@link
+   * MetricsRegistry#getDefault default registry}.
+   */
   public CachedAviationDbAdapter(final AviationDbAdapter cachedDbAdapter) {
+    this(cachedDbAdapter, MetricsRegistry.getDefault());
+  }
+
+  /**
+   * Creates decorator for {@code cachedDbAdapter}, recording metrics in {@code metrics}.
+   */
+  public CachedAviationDbAdapter(final AviationDbAdapter cachedDbAdapter,
+      final MetricsRegistry metrics) {
     this.cachedDbAdapter = cachedDbAdapter;
     constants = new HashMap<Integer, String>();
+    hits = metrics.getCounter("airspaces.cache.hit");
+    misses = metrics.getCounter("airspaces.cache.miss");
+    fetchLatency = metrics.getHistogram("airspaces.cache.fetch");
+    size = metrics.getGauge("airspaces.cache.size");
   }
 
   @Override
@@ -99,11 +148,44 @@ public class CachedAviationDbAdapter implements AviationDbAdapter {
   @Override
   public Collection<Airspace> getAirspacesInRectangle(final LatLngRect area)
       throws InterruptedException {
+    return getAirspacesInRectangle(area, CancellationToken.NONE);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect area, final float zoom)
+      throws InterruptedException {
+    return getAirspacesInRectangle(area, zoom, CancellationToken.NONE);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect area,
+      final CancellationToken token) throws InterruptedException {
+    return getAirspacesInRectangle(area, AirspaceLevelsOfDetail.FULL_DETAIL, 0, token);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect area, final float zoom,
+      final CancellationToken token) throws InterruptedException {
+    return getAirspacesInRectangle(area, AirspaceLevelsOfDetail.getLevelOfDetail(zoom), zoom,
+        token);
+  }
+
+  /**
+   * Returns airspaces overlapping {@code area} at the given level of detail.  Partial results,
+   * returned when {@code token} expires, are not cached.
+   *
+   * @param zoom Zoom level passed to the underlying adapter, ignored for
+   *        {@link AirspaceLevelsOfDetail#FULL_DETAIL}.
+   */
+  private Collection<Airspace> getAirspacesInRectangle(final LatLngRect area, final int level,
+      final float zoom, final CancellationToken token) throws InterruptedException {
     synchronized (this) {
-      if (cachedArea != null && cachedArea.contains(area)) {
+      if (cachedArea != null && cachedLevel == level && cachedArea.contains(area)) {
+        hits.increment();
         return cachedAirspaces;
       }
     }
+    misses.increment();
 
     // Cache miss: get new results.
     final LatLng areaNeCorner = area.getNeCorner();
@@ -114,21 +196,27 @@ public class CachedAviationDbAdapter implements AviationDbAdapter {
         new LatLng(areaNeCorner.lat + dLat / 2, areaNeCorner.lng + dLng / 2);
     final LatLng cachedAreaSwCorner =
         new LatLng(areaSwCorner.lat - dLat / 2, areaSwCorner.lng - dLng / 2);
+    final LatLngRect newInProgressArea = new LatLngRect(cachedAreaNeCorner, cachedAreaSwCorner);
     synchronized (this) {
-      inProgressArea = new LatLngRect(cachedAreaNeCorner, cachedAreaSwCorner);
+      inProgressArea = newInProgressArea;
+      inProgressLevel = level;
     }
 
-    System.out.println("Fetching airspaces for " + area);
-    final long start = System.currentTimeMillis();
+    final long start = LatencyHistogram.start();
     // This call may be slow.
-    final Collection<Airspace> newCachedAirspaces =
-        cachedDbAdapter.getAirspacesInRectangle(inProgressArea);
-    final long stop = System.currentTimeMillis();
-    System.out.println("Got airspaces in rectangle. Count: " + newCachedAirspaces.size() + " in " +
-        (stop - start) + "ms.");
+    final Collection<Airspace> newCachedAirspaces = level == AirspaceLevelsOfDetail.FULL_DETAIL
+        ? cachedDbAdapter.getAirspacesInRectangle(newInProgressArea, token)
+        : cachedDbAdapter.getAirspacesInRectangle(newInProgressArea, zoom, token);
+    fetchLatency.recordSince(start);
     synchronized (this) {
-      cachedArea = inProgressArea;
+      if (token.isDeadlineExceeded()) {
+        // The in progress area is kept: the caller is expected to complete the results.
+        return newCachedAirspaces;
+      }
+      cachedArea = newInProgressArea;
+      cachedLevel = level;
       cachedAirspaces = newCachedAirspaces;
+      size.set(cachedAirspaces.size());
       return cachedAirspaces;
     }
   }
@@ -136,12 +224,31 @@ public class CachedAviationDbAdapter implements AviationDbAdapter {
   /**
    * Returns true if {@code area} will either 1) hit the
    * cache, or 2) give the same results as the query that's in progress by
-   * {@link #getAirspacesInRectangle}.
+   * {@link #getAirspacesInRectangle(LatLngRect)}, or as the latest query if it
+   * returned partial results.
    */
   public synchronized boolean isCacheMatch(final LatLngRect area) {
-    return inProgressArea != null && inProgressArea.contains(area);
+    return isLevelCacheMatch(area, AirspaceLevelsOfDetail.FULL_DETAIL);
   }
 
+  /**
+   * Returns true if {@code area} at {@code zoom} will either 1) hit the
+   * cache, or 2) give the same results as the query that's in progress by
+   * {@link #getAirspacesInRectangle(LatLngRect, float)}, or as the latest query
+   * if it returned partial results.
+   */
+  public synchronized boolean isCacheMatch(final LatLngRect area, final float zoom) {
+    return isLevelCacheMatch(area, AirspaceLevelsOfDetail.getLevelOfDetail(zoom));
+  }
+
+  private synchronized boolean isLevelCacheMatch(final LatLngRect area, final int level) {
+    return inProgressArea != null && inProgressLevel == level && inProgressArea.contains(area);
+  }
+
+  @Override
+  public List<AirportAirspace> getAirportAirspaces(final int airportId) {
+    return cachedDbAdapter.getAirportAirspaces(airportId);
+  }
 
   @Override
   public Map<String, String> getRunwayEndProperties(final int runwayEndId) {
@@ -161,12 +268,26 @@ public class CachedAviationDbAdapter implements AviationDbAdapter {
     return newConstant;
   }
 
+  @Override
+  public synchronized MagneticVariationGrid getMagneticVariationGrid() {
+    if (!isMagneticVariationGridRead) {
+      magneticVariationGrid = cachedDbAdapter.getMagneticVariationGrid();
+      isMagneticVariationGridRead = true;
+    }
+    return magneticVariationGrid;
+  }
+
   @Override
   public Collection<Airport> getAirportsInCells(final int startCell, final int endCell,
       final int minRank) {
     return cachedDbAdapter.getAirportsInCells(startCell, endCell, minRank);
   }
 
+  @Override
+  public int[] getNearestAirportCandidates(final LatLng position) {
+    return cachedDbAdapter.getNearestAirportCandidates(position);
+  }
+
   @Override
   public String getMetadata(final String key) {
     return cachedDbAdapter.getMetadata(key);
@@ -16,12 +16,18 @@
 
 package com.google.flightmap.common.db;
 
+import com.google.flightmap.common.CancellationToken;
 import com.google.flightmap.common.ThreadUtils;
 import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.AirportDistance;
+import com.google.flightmap.common.data.LatLng;
 import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.geo.NavigationUtil;
 
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 /**
  * High level interface to the aviation database based on the spatial indexing methods in
@@ -53,12 +59,13 @@ public class CustomGridAirportDirectory extends AbstractAirportDirectory {
   }
 
   @Override
-  public Collection<Airport> getAirportsInRectangle(final LatLngRect area, final int minRank)
-      throws InterruptedException {
-    final LinkedList<int[]> cellRanges = CustomGridUtil.getCellsInRectangle(area);
+  public Collection<Airport> getAirportsInRectangle(final LatLngRect area, final int minRank,
+      final CancellationToken token) throws InterruptedException {
+    final LinkedList<int[]> cellRanges = CustomGridUtil.getCellsInRectangle(area, token);
     final Collection<Airport> airportsInArea = new LinkedList<Airport>();
+    // The token is checked after each fetch, so that the ranges computed before the deadline
+    // give results even if it passed while they were computed.
     for (int[] range : cellRanges) {
-      ThreadUtils.checkIfInterrupted();
       final Collection<Airport> airportsInCells = adapter.getAirportsInCells(
           range[0], range[1], minRank);
       for (Airport airport : airportsInCells) {
@@ -66,7 +73,36 @@ public class CustomGridAirportDirectory extends AbstractAirportDirectory {
           airportsInArea.add(airport);
         }
       }
+      if (token.hasExpired()) {
+        break;
+      }
     }
     return airportsInArea;
   }
+
+  /**
+   * Returns the (at most) {@code count} airports nearest to {@code position}.
+   * <p>
+   * Candidates are read from the nearest airports precomputed for the cell containing
+   * {@code position}, and sorted by their exact distance from {@code position}.
+   */
+  @Override
+  public SortedSet<AirportDistance> getNearestAirports(final LatLng position, final int count)
+      throws InterruptedException {
+    final SortedSet<AirportDistance> nearestAirports = new TreeSet<AirportDistance>();
+    final int[] candidates = adapter.getNearestAirportCandidates(position);
+    if (candidates == null) {
+      return nearestAirports;
+    }
+    for (int id : NearestAirports.getNearestIds(position, candidates, count)) {
+      ThreadUtils.checkIfInterrupted();
+      final Airport airport = adapter.getAirport(id);
+      if (airport == null) {
+        continue;  // Held by a shard that is not available (see ShardedAviationDbAdapter).
+      }
+      final double distance = NavigationUtil.computeDistance(position, airport.location);
+      nearestAirports.add(new AirportDistance(airport, distance));
+    }
+    return nearestAirports;
+  }
 }
@@ -18,7 +18,7 @@ package com.google.flightmap.common.db;
 
 import java.util.LinkedList;
 
-import com.google.flightmap.common.ThreadUtils;
+import com.google.flightmap.common.CancellationToken;
 import com.google.flightmap.common.data.LatLng;
 import com.google.flightmap.common.data.LatLngRect;
 
@@ -264,17 +264,75 @@ public class CustomGridUtil {
     return cellId;
   }
 
+  /**
+   * Returns the id of the cell of the given {@code level} that contains {@code position}.
+   *
+   * @param level Number of splits, from 1 to the maximum level (see class description)
+   */
+  public static int getCellId(final LatLng position, final int level) {
+    checkLevel(level);
+    return getCellId(position) >>> (2 * (MAX_LEVEL - level));
+  }
+
+  /**
+   * Returns the range of (maximum level) cells covered by the cell {@code cellId} of the given
+   * {@code level}.
+   *
+   * @return Array of two integers: int[]{cellMin, cellMax}.  The cell covers all cellIds such
+   *         that cellMin <= cellId < cellMax.
+   */
+  public static int[] getCellRange(final int cellId, final int level) {
+    checkLevel(level);
+    final int shift = 2 * (MAX_LEVEL - level);
+    return new int[]{cellId << shift, (cellId + 1) << shift};
+  }
+
+  /**
+   * Returns the area covered by the cell {@code cellId} of the given {@code level}.
+   */
+  public static LatLngRect getCellBounds(final int cellId, final int level) {
+    checkLevel(level);
+    int northLatE6 = (int)+90E6;
+    int southLatE6 = (int)-90E6;
+    int westLngE6 = (int)-180E6;
+    int eastLngE6 = (int)+180E6;
+
+    for (int i = level - 1; i >= 0; --i) {
+      final int centerLatE6 = (int)Math.ceil((northLatE6+southLatE6)/2.0);
+      final int centerLngE6 = (int)Math.ceil((westLngE6 + eastLngE6)/2.0);
+      final int quadrant = (cellId >>> (2 * i)) & 3;
+      if (quadrant == NW || quadrant == NE) {
+        southLatE6 = centerLatE6;
+      } else {
+        northLatE6 = centerLatE6;
+      }
+      if (quadrant == NE || quadrant == SE) {
+        westLngE6 = centerLngE6;
+      } else {
+        eastLngE6 = centerLngE6;
+      }
+    }
+
+    return new LatLngRect(new LatLng(southLatE6, westLngE6), new LatLng(northLatE6, eastLngE6));
+  }
+
+  private static void checkLevel(final int level) {
+    if (level < 1 || level > MAX_LEVEL) {
+      throw new IllegalArgumentException("Level must be between 1 and " + MAX_LEVEL + ": " + level);
+    }
+  }
+
   /**
    * Returns set of cells that cover at least the area within {@code radius} of {@code origin}.
    *
    * @param origin  Center of circle in Lat,Lng space
    * @param radius  Radius of circle, in degrees * 1E6
    * @return     List of cell intervals that cover the area.
-   * @see #getCellsInRectangle(LatLngRect)
+   * @see #getCellsInRectangle(LatLngRect, CancellationToken)
    */
   static LinkedList<int[]> getCellsInRadius(final LatLng origin, final int radius)
       throws InterruptedException {
-    return getCellsInRectangle(LatLngRect.getBoundingBox(origin, radius));
+    return getCellsInRectangle(LatLngRect.getBoundingBox(origin, radius), CancellationToken.NONE);
   }
 
   /**
@@ -284,8 +342,10 @@ public class CustomGridUtil {
    * @return     List of cell intervals that cover the area.
    *             Each element of the list is an array of two integers: int[]{cellMin, cellMax}
    *             The set of all cellIds such that cellMin <= cellId < cellMax covers area.
+   *             If {@code token} expires, only covers part of the area.
    */
-  static LinkedList<int[]> getCellsInRectangle(final LatLngRect area) throws InterruptedException {
+  static LinkedList<int[]> getCellsInRectangle(final LatLngRect area,
+      final CancellationToken token) throws InterruptedException {
     final double threshold = 0.7;
 
     // Boundaries of next cell to inspect
@@ -308,7 +368,9 @@ public class CustomGridUtil {
     final int areaRight = area.getEast();
 
     while (!remainingCells.isEmpty()) {
-      ThreadUtils.checkIfInterrupted();
+      if (token.hasExpired()) {
+        break;
+      }
       PartialCell currentCell = remainingCells.remove();
 
       heightE6 = currentCell.height;
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import com.google.flightmap.common.CancellationToken;
+import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.AirportDistance;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.metrics.LatencyHistogram;
+import com.google.flightmap.common.metrics.MetricsRegistry;
+import com.google.flightmap.common.metrics.QueryMetrics;
+
+import java.util.Collection;
+import java.util.SortedSet;
+
+/**
+ * Records the latency and number of rows returned of each query made to an {@link
+ * AirportDirectory}, as {@link QueryMetrics} named {@code <prefix>.<method name>}.
+ * <p>
+ * Calls that throw are not recorded.  Cache hits and misses are recorded by the caches
+ * themselves (see {@link CachedAirportDirectory}).
+ */
+public class InstrumentedAirportDirectory implements AirportDirectory {
+  private final AirportDirectory airportDirectory;
+
+  private final QueryMetrics getAirportsWithinRadius;
+  private final QueryMetrics getAirportsInRectangle;
+  private final QueryMetrics getNearestAirports;
+
+  /**
+   * Creates decorator for {@code airportDirectory}.
+   *
+   * @param metrics Registry of the query metrics
+   * @param prefix Prefix of the metric names, e.g. "directory"
+   */
+  public InstrumentedAirportDirectory(final AirportDirectory airportDirectory,
+      final MetricsRegistry metrics, final String prefix) {
+    this.airportDirectory = airportDirectory;
+    getAirportsWithinRadius = new QueryMetrics(metrics, prefix + ".getAirportsWithinRadius");
+    getAirportsInRectangle = new QueryMetrics(metrics, prefix + ".getAirportsInRectangle");
+    getNearestAirports = new QueryMetrics(metrics, prefix + ".getNearestAirports");
+  }
+
+  @Override
+  public void open() {
+    airportDirectory.open();
+  }
+
+  @Override
+  public void close() {
+    airportDirectory.close();
+  }
+
+  @Override
+  public SortedSet<AirportDistance> getAirportsWithinRadius(final LatLng position,
+      final double radius, final int minRank) throws InterruptedException {
+    return getAirportsWithinRadius(position, radius, minRank, CancellationToken.NONE);
+  }
+
+  @Override
+  public SortedSet<AirportDistance> getAirportsWithinRadius(final LatLng position,
+      final double radius, final int minRank, final CancellationToken token)
+      throws InterruptedException {
+    final long start = LatencyHistogram.start();
+    final SortedSet<AirportDistance> airports =
+        airportDirectory.getAirportsWithinRadius(position, radius, minRank, token);
+    getAirportsWithinRadius.record(start, airports.size());
+    return airports;
+  }
+
+  @Override
+  public Collection<Airport> getAirportsInRectangle(final LatLngRect area, final int minRank)
+      throws InterruptedException {
+    return getAirportsInRectangle(area, minRank, CancellationToken.NONE);
+  }
+
+  @Override
+  public Collection<Airport> getAirportsInRectangle(final LatLngRect area, final int minRank,
+      final CancellationToken token) throws InterruptedException {
+    final long start = LatencyHistogram.start();
+    final Collection<Airport> airports =
+        airportDirectory.getAirportsInRectangle(area, minRank, token);
+    getAirportsInRectangle.record(start, airports.size());
+    return airports;
+  }
+
+  @Override
+  public SortedSet<AirportDistance> getNearestAirports(final LatLng position, final int count)
+      throws InterruptedException {
+    final long start = LatencyHistogram.start();
+    final SortedSet<AirportDistance> airports =
+        airportDirectory.getNearestAirports(position, count);
+    getNearestAirports.record(start, airports.size());
+    return airports;
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import com.google.flightmap.common.CancellationToken;
+import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.AirportAirspace;
+import com.google.flightmap.common.data.Airspace;
+import com.google.flightmap.common.data.Comm;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.geo.MagneticVariationGrid;
+import com.google.flightmap.common.metrics.LatencyHistogram;
+import com.google.flightmap.common.metrics.MetricsRegistry;
+import com.google.flightmap.common.metrics.QueryMetrics;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the latency and number of rows returned of each query made to an {@link
+ * AviationDbAdapter}, as {@link QueryMetrics} named {@code <prefix>.<method name>}.
+ * <p>
+ * Calls that throw are not recorded.  Cache hits and misses are recorded by the caches
+ * themselves (see {@link CachedAviationDbAdapter}).
+ */
+public class InstrumentedAviationDbAdapter implements AviationDbAdapter {
+  private final AviationDbAdapter dbAdapter;
+
+  private final QueryMetrics getAirport;
+  private final QueryMetrics getAirportIdByIcao;
+  private final QueryMetrics getAirportIdsWithCityLike;
+  private final QueryMetrics getAirportIdsWithNameLike;
+  private final QueryMetrics getAirspacesInRectangle;
+  private final QueryMetrics doSearch;
+  private final QueryMetrics getAirportsInCells;
+  private final QueryMetrics getNearestAirportCandidates;
+  private final QueryMetrics getAirportProperties;
+  private final QueryMetrics getAirportComms;
+  private final QueryMetrics getAirportAirspaces;
+  private final QueryMetrics getRunwayEndProperties;
+  private final QueryMetrics getConstant;
+  private final QueryMetrics getMagneticVariationGrid;
+  private final QueryMetrics getMetadata;
+
+  /**
+   * Creates decorator for {@code dbAdapter}.
+   *
+   * @param metrics Registry of the query metrics
+   * @param prefix Prefix of the metric names, e.g. "db"
+   */
+  public InstrumentedAviationDbAdapter(final AviationDbAdapter dbAdapter,
+      final MetricsRegistry metrics, final String prefix) {
+    this.dbAdapter = dbAdapter;
+    getAirport = new QueryMetrics(metrics, prefix + ".getAirport");
+    getAirportIdByIcao = new QueryMetrics(metrics, prefix + ".getAirportIdByIcao");
+    getAirportIdsWithCityLike = new QueryMetrics(metrics, prefix + ".getAirportIdsWithCityLike");
+    getAirportIdsWithNameLike = new QueryMetrics(metrics, prefix + ".getAirportIdsWithNameLike");
+    getAirspacesInRectangle = new QueryMetrics(metrics, prefix + ".getAirspacesInRectangle");
+    doSearch = new QueryMetrics(metrics, prefix + ".doSearch");
+    getAirportsInCells = new QueryMetrics(metrics, prefix + ".getAirportsInCells");
+    getNearestAirportCandidates =
+        new QueryMetrics(metrics, prefix + ".getNearestAirportCandidates");
+    getAirportProperties = new QueryMetrics(metrics, prefix + ".getAirportProperties");
+    getAirportComms = new QueryMetrics(metrics, prefix + ".getAirportComms");
+    getAirportAirspaces = new QueryMetrics(metrics, prefix + ".getAirportAirspaces");
+    getRunwayEndProperties = new QueryMetrics(metrics, prefix + ".getRunwayEndProperties");
+    getConstant = new QueryMetrics(metrics, prefix + ".getConstant");
+    getMagneticVariationGrid = new QueryMetrics(metrics, prefix + ".getMagneticVariationGrid");
+    getMetadata = new QueryMetrics(metrics, prefix + ".getMetadata");
+  }
+
+  @Override
+  public void open() {
+    dbAdapter.open();
+  }
+
+  @Override
+  public void close() {
+    dbAdapter.close();
+  }
+
+  @Override
+  public Airport getAirport(final int airportId) {
+    final long start = LatencyHistogram.start();
+    final Airport airport = dbAdapter.getAirport(airportId);
+    getAirport.record(start, airport == null ? 0 : 1);
+    return airport;
+  }
+
+  @Override
+  public int getAirportIdByIcao(final String icao) {
+    final long start = LatencyHistogram.start();
+    final int id = dbAdapter.getAirportIdByIcao(icao);
+    getAirportIdByIcao.record(start);
+    return id;
+  }
+
+  @Override
+  public List<Integer> getAirportIdsWithCityLike(final String pattern) {
+    final long start = LatencyHistogram.start();
+    final List<Integer> ids = dbAdapter.getAirportIdsWithCityLike(pattern);
+    getAirportIdsWithCityLike.record(start, ids.size());
+    return ids;
+  }
+
+  @Override
+  public List<Integer> getAirportIdsWithNameLike(final String pattern) {
+    final long start = LatencyHistogram.start();
+    final List<Integer> ids = dbAdapter.getAirportIdsWithNameLike(pattern);
+    getAirportIdsWithNameLike.record(start, ids.size());
+    return ids;
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect)
+      throws InterruptedException {
+    return getAirspacesInRectangle(rect, CancellationToken.NONE);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final float zoom)
+      throws InterruptedException {
+    return getAirspacesInRectangle(rect, zoom, CancellationToken.NONE);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect,
+      final CancellationToken token) throws InterruptedException {
+    final long start = LatencyHistogram.start();
+    final Collection<Airspace> airspaces = dbAdapter.getAirspacesInRectangle(rect, token);
+    getAirspacesInRectangle.record(start, airspaces.size());
+    return airspaces;
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final float zoom,
+      final CancellationToken token) throws InterruptedException {
+    final long start = LatencyHistogram.start();
+    final Collection<Airspace> airspaces = dbAdapter.getAirspacesInRectangle(rect, zoom, token);
+    getAirspacesInRectangle.record(start, airspaces.size());
+    return airspaces;
+  }
+
+  @Override
+  public Map<Integer, Integer> doSearch(final String query) {
+    final long start = LatencyHistogram.start();
+    final Map<Integer, Integer> results = dbAdapter.doSearch(query);
+    doSearch.record(start, results.size());
+    return results;
+  }
+
+  @Override
+  public Collection<Airport> getAirportsInCells(final int startCell, final int endCell,
+      final int minRank) {
+    final long start = LatencyHistogram.start();
+    final Collection<Airport> airports =
+        dbAdapter.getAirportsInCells(startCell, endCell, minRank);
+    getAirportsInCells.record(start, airports.size());
+    return airports;
+  }
+
+  @Override
+  public int[] getNearestAirportCandidates(final LatLng position) {
+    final long start = LatencyHistogram.start();
+    final int[] candidates = dbAdapter.getNearestAirportCandidates(position);
+    // Candidates are (id, latitude, longitude) triples.
+    getNearestAirportCandidates.record(start, candidates == null ? 0 : candidates.length / 3);
+    return candidates;
+  }
+
+  @Override
+  public Map<String, String> getAirportProperties(final int airportId) {
+    final long start = LatencyHistogram.start();
+    final Map<String, String> properties = dbAdapter.getAirportProperties(airportId);
+    getAirportProperties.record(start, properties == null ? 0 : properties.size());
+    return properties;
+  }
+
+  @Override
+  public List<Comm> getAirportComms(final int airportId) {
+    final long start = LatencyHistogram.start();
+    final List<Comm> comms = dbAdapter.getAirportComms(airportId);
+    getAirportComms.record(start, comms == null ? 0 : comms.size());
+    return comms;
+  }
+
+  @Override
+  public List<AirportAirspace> getAirportAirspaces(final int airportId) {
+    final long start = LatencyHistogram.start();
+    final List<AirportAirspace> airspaces = dbAdapter.getAirportAirspaces(airportId);
+    getAirportAirspaces.record(start, airspaces.size());
+    return airspaces;
+  }
+
+  @Override
+  public Map<String, String> getRunwayEndProperties(final int runwayEndId) {
+    final long start = LatencyHistogram.start();
+    final Map<String, String> properties = dbAdapter.getRunwayEndProperties(runwayEndId);
+    getRunwayEndProperties.record(start, properties == null ? 0 : properties.size());
+    return properties;
+  }
+
+  @Override
+  public String getConstant(final int constantId) {
+    final long start = LatencyHistogram.start();
+    final String constant = dbAdapter.getConstant(constantId);
+    getConstant.record(start);
+    return constant;
+  }
+
+  @Override
+  public MagneticVariationGrid getMagneticVariationGrid() {
+    final long start = LatencyHistogram.start();
+    final MagneticVariationGrid grid = dbAdapter.getMagneticVariationGrid();
+    getMagneticVariationGrid.record(start);
+    return grid;
+  }
+
+  @Override
+  public String getMetadata(final String key) {
+    final long start = LatencyHistogram.start();
+    final String value = dbAdapter.getMetadata(key);
+    getMetadata.record(start);
+    return value;
+  }
+}
@@ -0,0 +1,578 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import static com.google.flightmap.common.db.AviationSnapshot.*;
+
+import com.google.flightmap.common.CancellationToken;
+import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.AirportAirspace;
+import com.google.flightmap.common.data.Airspace;
+import com.google.flightmap.common.data.AirspaceArc;
+import com.google.flightmap.common.data.Comm;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.data.Runway;
+import com.google.flightmap.common.data.RunwayEnd;
+import com.google.flightmap.common.geo.AirspaceLevelsOfDetail;
+import com.google.flightmap.common.geo.MagneticVariationGrid;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Read-only {@link AviationDbAdapter} over a flat snapshot written by {@link
+ * AviationSnapshotWriter}.
+ * <p>
+ * The snapshot is memory-mapped: records are read in place, with binary searches on the sorted
+ * sections, and strings are only decoded for the entities returned.  All reads use absolute
+ * positions, so that methods are safe to call from several threads once {@link #open} returns.
+ * <p>
+ * The adapter must not be closed while queries run, as {@link SwappableAviationDb} guarantees:
+ * queries on a closed adapter throw {@link IllegalStateException}.
+ */
+public class MappedAviationDbAdapter implements AviationDbAdapter {
+  private final File file;
+
+  /**
+   * Mapped snapshot, {@code null} when closed.  Set last by {@link #open}, so that threads seeing
+   * it also see the section offsets.
+   */
+  private volatile ByteBuffer buffer;
+  private final int[] sectionOffsets = new int[SECTION_COUNT];
+  private final int[] sectionCounts = new int[SECTION_COUNT];
+
+  /**
+   * Number of levels of detail stored for each airspace.  Simplified geometries are ignored if it
+   * does not match {@link AirspaceLevelsOfDetail#getLevelCount}.
+   */
+  private int levelCount;
+
+  /**
+   * Offset of the UTF-8 bytes of the string pool.
+   */
+  private int stringBytesOffset;
+
+  /**
+   * @param file Snapshot written by {@link AviationSnapshotWriter}
+   */
+  public MappedAviationDbAdapter(final File file) {
+    this.file = file;
+  }
+
+  /**
+   * Maps the snapshot in memory.
+   *
+   * @throws RuntimeException if the file cannot be read or is not a supported snapshot
+   */
+  @Override
+  public synchronized void open() {
+    final ByteBuffer mapped;
+    try {
+      final RandomAccessFile input = new RandomAccessFile(file, "r");
+      try {
+        final FileChannel channel = input.getChannel();
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      } finally {
+        input.close();
+      }
+    } catch (IOException ioEx) {
+      throw new RuntimeException(ioEx);
+    }
+    if (mapped.getInt(0) != MAGIC) {
+      throw new RuntimeException("Not an aviation snapshot: " + file);
+    }
+    final int version = mapped.getInt(4);
+    if (version != VERSION) {
+      throw new RuntimeException("Unsupported snapshot version: " + version);
+    }
+    levelCount = mapped.getInt(8);
+    for (int i = 0; i < SECTION_COUNT; ++i) {
+      sectionOffsets[i] = mapped.getInt(12 + i * 8);
+      sectionCounts[i] = mapped.getInt(16 + i * 8);
+    }
+    stringBytesOffset = sectionOffsets[STRINGS] + (sectionCounts[STRINGS] + 1) * 4;
+    buffer = mapped;
+  }
+
+  /**
+   * Releases the snapshot.  The mapping itself is released when garbage collected.
+   */
+  @Override
+  public synchronized void close() {
+    buffer = null;
+  }
+
+  /**
+   * Returns the mapped snapshot.
+   *
+   * @throws IllegalStateException if the adapter is not open
+   */
+  private ByteBuffer getBuffer() {
+    final ByteBuffer mapped = buffer;
+    if (mapped == null) {
+      throw new IllegalStateException("Snapshot not open: " + file);
+    }
+    return mapped;
+  }
+
+  /**
+   * Returns {@code field} of record {@code record} in {@code section}.
+   */
+  private int get(final int section, final int size, final int record, final int field) {
+    return getBuffer().getInt(sectionOffsets[section] + (record * size + field) * 4);
+  }
+
+  /**
+   * Returns string at {@code index} in the string pool, {@code null} if {@code index} is -1.
+   */
+  private String getString(final int index) {
+    if (index < 0) {
+      return null;
+    }
+    final int start = get(STRINGS, 1, index, 0);
+    final int end = get(STRINGS, 1, index + 1, 0);
+    final ByteBuffer mapped = getBuffer();
+    final byte[] bytes = new byte[end - start];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = mapped.get(stringBytesOffset + start + i);
+    }
+    try {
+      return new String(bytes, "UTF-8");
+    } catch (UnsupportedEncodingException ueEx) {
+      throw new RuntimeException(ueEx);
+    }
+  }
+
+  /**
+   * Returns the first record of {@code section} whose {@code field} is not less than {@code key}.
+   * Records must be sorted by {@code field}.
+   */
+  private int lowerBound(final int section, final int size, final int field, final int key) {
+    int low = 0;
+    int high = sectionCounts[section];
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (get(section, size, mid, field) < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the record of {@code section} whose {@code field} is {@code key}, -1 if none.
+   */
+  private int find(final int section, final int size, final int field, final int key) {
+    final int record = lowerBound(section, size, field, key);
+    if (record < sectionCounts[section] && get(section, size, record, field) == key) {
+      return record;
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the airport record with the given id, -1 if none.
+   */
+  private int getAirportRecord(final int airportId) {
+    final int index = find(AIRPORT_IDS, INDEX_SIZE, INDEX_ID, airportId);
+    return index < 0 ? -1 : get(AIRPORT_IDS, INDEX_SIZE, index, INDEX_RECORD);
+  }
+
+  private int getAirportField(final int record, final int field) {
+    return get(AIRPORTS, AIRPORT_SIZE, record, field);
+  }
+
+  @Override
+  public Airport getAirport(final int airportId) {
+    final int record = getAirportRecord(airportId);
+    return record < 0 ? null : getAirportAt(record);
+  }
+
+  private Airport getAirportAt(final int record) {
+    final int id = getAirportField(record, AIRPORT_ID);
+    final LatLng location =
+        new LatLng(getAirportField(record, AIRPORT_LAT), getAirportField(record, AIRPORT_LNG));
+    final String icao = getString(getAirportField(record, AIRPORT_ICAO));
+    final String name = getString(getAirportField(record, AIRPORT_NAME));
+    final String city = getString(getAirportField(record, AIRPORT_CITY));
+    final Airport.Type type = Airport.Type.values()[getAirportField(record, AIRPORT_TYPE)];
+    final int flags = getAirportField(record, AIRPORT_FLAGS);
+    final int rank = getAirportField(record, AIRPORT_RANK);
+    final SortedSet<Runway> runways = new TreeSet<Runway>(Collections.reverseOrder());
+    final int runwayStart = getAirportField(record, AIRPORT_RUNWAY_START);
+    final int runwayEnd = runwayStart + getAirportField(record, AIRPORT_RUNWAY_COUNT);
+    for (int runway = runwayStart; runway < runwayEnd; ++runway) {
+      runways.add(getRunwayAt(id, runway));
+    }
+    return new Airport(id, icao, name, type, city, location, (flags & FLAG_OPEN) != 0,
+        (flags & FLAG_PUBLIC) != 0, (flags & FLAG_TOWERED) != 0, (flags & FLAG_MILITARY) != 0,
+        runways, rank);
+  }
+
+  private Runway getRunwayAt(final int airportId, final int record) {
+    final SortedSet<RunwayEnd> runwayEnds = new TreeSet<RunwayEnd>();
+    final int endStart = get(RUNWAYS, RUNWAY_SIZE, record, RUNWAY_END_START);
+    final int endEnd = endStart + get(RUNWAYS, RUNWAY_SIZE, record, RUNWAY_END_COUNT);
+    for (int end = endStart; end < endEnd; ++end) {
+      runwayEnds.add(new RunwayEnd(get(RUNWAY_ENDS, RUNWAY_END_SIZE, end, RUNWAY_END_ID),
+          getString(get(RUNWAY_ENDS, RUNWAY_END_SIZE, end, RUNWAY_END_LETTERS))));
+    }
+    return new Runway(airportId,
+        getString(get(RUNWAYS, RUNWAY_SIZE, record, RUNWAY_LETTERS)),
+        get(RUNWAYS, RUNWAY_SIZE, record, RUNWAY_LENGTH),
+        get(RUNWAYS, RUNWAY_SIZE, record, RUNWAY_WIDTH),
+        getString(get(RUNWAYS, RUNWAY_SIZE, record, RUNWAY_SURFACE)),
+        runwayEnds);
+  }
+
+  @Override
+  public int getAirportIdByIcao(final String icao) {
+    final String key = icao.toUpperCase();
+    int low = 0;
+    int high = sectionCounts[AIRPORT_ICAOS] - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final int record = get(AIRPORT_ICAOS, ICAO_INDEX_SIZE, mid, 0);
+      final int comparison = getString(getAirportField(record, AIRPORT_ICAO)).compareTo(key);
+      if (comparison < 0) {
+        low = mid + 1;
+      } else if (comparison > 0) {
+        high = mid - 1;
+      } else {
+        return getAirportField(record, AIRPORT_ID);
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public List<Integer> getAirportIdsWithCityLike(final String pattern) {
+    return getAirportIdsWithPattern(AIRPORT_CITY, pattern);
+  }
+
+  @Override
+  public List<Integer> getAirportIdsWithNameLike(final String pattern) {
+    return getAirportIdsWithPattern(AIRPORT_NAME, pattern);
+  }
+
+  /**
+   * Returns ids of airports whose string {@code field} matches the LIKE {@code pattern}, in
+   * increasing id order.
+   */
+  private List<Integer> getAirportIdsWithPattern(final int field, final String pattern) {
+    final List<Integer> airportIds = new LinkedList<Integer>();
+    final int count = sectionCounts[AIRPORT_IDS];
+    for (int i = 0; i < count; ++i) {
+      final int record = get(AIRPORT_IDS, INDEX_SIZE, i, INDEX_RECORD);
+      final String value = getString(getAirportField(record, field));
+      if (value != null && isLike(value, pattern)) {
+        airportIds.add(get(AIRPORT_IDS, INDEX_SIZE, i, INDEX_ID));
+      }
+    }
+    return airportIds;
+  }
+
+  /**
+   * Checks if {@code value} matches {@code pattern} with the semantics of the SQLite LIKE
+   * operator (see {@link AviationDbAdapter#getAirportIdsWithCityLike}).
+   */
+  static boolean isLike(final String value, final String pattern) {
+    int v = 0;
+    int p = 0;
+    // Position of the last "%" in pattern, and of the value character it was matched up to.
+    int percent = -1;
+    int percentMatch = 0;
+    while (v < value.length()) {
+      if (p < pattern.length() && pattern.charAt(p) == '%') {
+        percent = p++;
+        percentMatch = v;
+      } else if (p < pattern.length() &&
+          (pattern.charAt(p) == '_' || equalsIgnoreCase(pattern.charAt(p), value.charAt(v)))) {
+        ++p;
+        ++v;
+      } else if (percent >= 0) {
+        p = percent + 1;
+        v = ++percentMatch;
+      } else {
+        return false;
+      }
+    }
+    while (p < pattern.length() && pattern.charAt(p) == '%') {
+      ++p;
+    }
+    return p == pattern.length();
+  }
+
+  private static boolean equalsIgnoreCase(final char a, final char b) {
+    return a == b || Character.toUpperCase(a) == Character.toUpperCase(b);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect)
+      throws InterruptedException {
+    return getAirspacesInRectangle(rect, CancellationToken.NONE);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final float zoom)
+      throws InterruptedException {
+    return getAirspacesInRectangle(rect, zoom, CancellationToken.NONE);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect,
+      final CancellationToken token) throws InterruptedException {
+    return getAirspacesInRectangle(rect, AirspaceLevelsOfDetail.FULL_DETAIL, token);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final float zoom,
+      final CancellationToken token) throws InterruptedException {
+    return getAirspacesInRectangle(rect, AirspaceLevelsOfDetail.getLevelOfDetail(zoom), token);
+  }
+
+  /**
+   * Returns airspaces overlapping {@code rect}, at the given level of detail.
+   */
+  private Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final int level,
+      final CancellationToken token) throws InterruptedException {
+    final int minLat = rect.getSouth();
+    final int maxLat = rect.getNorth();
+    final int minLng = rect.getWest();
+    final int maxLng = rect.getEast();
+    final int size = getAirspaceSize(levelCount);
+    final Collection<Airspace> airspaces = new LinkedList<Airspace>();
+    final int count = sectionCounts[AIRSPACES];
+    for (int record = 0; record < count; ++record) {
+      if (Math.max(get(AIRSPACES, size, record, AIRSPACE_MIN_LAT), minLat) <
+              Math.min(get(AIRSPACES, size, record, AIRSPACE_MAX_LAT), maxLat) &&
+          Math.max(get(AIRSPACES, size, record, AIRSPACE_MIN_LNG), minLng) <
+              Math.min(get(AIRSPACES, size, record, AIRSPACE_MAX_LNG), maxLng)) {
+        if (token.hasExpired()) {
+          break;
+        }
+        airspaces.add(getAirspaceAt(record, level));
+      }
+    }
+    return airspaces;
+  }
+
+  private Airspace getAirspaceAt(final int record, final int level) {
+    final int size = getAirspaceSize(levelCount);
+    final int id = get(AIRSPACES, size, record, AIRSPACE_ID);
+    final String name = getString(get(AIRSPACES, size, record, AIRSPACE_NAME));
+    final Airspace.Class airspaceClass =
+        Airspace.Class.values()[get(AIRSPACES, size, record, AIRSPACE_CLASS)];
+    final int bottom = get(AIRSPACES, size, record, AIRSPACE_BOTTOM);
+    final int top = get(AIRSPACES, size, record, AIRSPACE_TOP);
+    if (level != AirspaceLevelsOfDetail.FULL_DETAIL &&
+        levelCount == AirspaceLevelsOfDetail.getLevelCount()) {
+      final int pointStart = get(AIRSPACES, size, record, AIRSPACE_LODS + level * 2);
+      final int pointCount = get(AIRSPACES, size, record, AIRSPACE_LODS + level * 2 + 1);
+      if (pointCount >= 0) {
+        return new Airspace(id, name, airspaceClass, bottom, top,
+            getAirspacePoints(pointStart, pointCount), new TreeMap<Integer, AirspaceArc>());
+      }
+    }
+    final SortedMap<Integer, LatLng> points =
+        getAirspacePoints(get(AIRSPACES, size, record, AIRSPACE_POINT_START),
+            get(AIRSPACES, size, record, AIRSPACE_POINT_COUNT));
+    final SortedMap<Integer, AirspaceArc> arcs = new TreeMap<Integer, AirspaceArc>();
+    final int arcStart = get(AIRSPACES, size, record, AIRSPACE_ARC_START);
+    final int arcEnd = arcStart + get(AIRSPACES, size, record, AIRSPACE_ARC_COUNT);
+    for (int arc = arcStart; arc < arcEnd; ++arc) {
+      final LatLng swCorner = new LatLng(get(AIRSPACE_ARCS, ARC_SIZE, arc, ARC_MIN_LAT),
+          get(AIRSPACE_ARCS, ARC_SIZE, arc, ARC_MIN_LNG));
+      final LatLng neCorner = new LatLng(get(AIRSPACE_ARCS, ARC_SIZE, arc, ARC_MAX_LAT),
+          get(AIRSPACE_ARCS, ARC_SIZE, arc, ARC_MAX_LNG));
+      final float startAngle =
+          Float.intBitsToFloat(get(AIRSPACE_ARCS, ARC_SIZE, arc, ARC_START_ANGLE));
+      final float sweepAngle =
+          Float.intBitsToFloat(get(AIRSPACE_ARCS, ARC_SIZE, arc, ARC_SWEEP_ANGLE));
+      arcs.put(get(AIRSPACE_ARCS, ARC_SIZE, arc, ARC_NUM),
+          new AirspaceArc(new LatLngRect(swCorner, neCorner), startAngle, sweepAngle));
+    }
+    return new Airspace(id, name, airspaceClass, bottom, top, points, arcs);
+  }
+
+  private SortedMap<Integer, LatLng> getAirspacePoints(final int start, final int count) {
+    final SortedMap<Integer, LatLng> points = new TreeMap<Integer, LatLng>();
+    for (int point = start; point < start + count; ++point) {
+      points.put(get(AIRSPACE_POINTS, POINT_SIZE, point, POINT_NUM),
+          new LatLng(get(AIRSPACE_POINTS, POINT_SIZE, point, POINT_LAT),
+              get(AIRSPACE_POINTS, POINT_SIZE, point, POINT_LNG)));
+    }
+    return points;
+  }
+
+  @Override
+  public Map<Integer, Integer> doSearch(final String query) {
+    return AirportSearch.doSearch(this, query);
+  }
+
+  @Override
+  public Collection<Airport> getAirportsInCells(final int startCell, final int endCell,
+      final int minRank) {
+    final List<Airport> airports = new LinkedList<Airport>();
+    final int count = sectionCounts[AIRPORTS];
+    for (int record = lowerBound(AIRPORTS, AIRPORT_SIZE, AIRPORT_CELL_ID, startCell);
+        record < count && getAirportField(record, AIRPORT_CELL_ID) < endCell; ++record) {
+      if (getAirportField(record, AIRPORT_RANK) >= minRank) {
+        airports.add(getAirportAt(record));
+      }
+    }
+    return airports;
+  }
+
+  @Override
+  public int[] getNearestAirportCandidates(final LatLng position) {
+    final int cellId = CustomGridUtil.getCellId(position);
+    // Last range starting at or before cellId.
+    final int record = lowerBound(NEAREST_AIRPORTS, NEAREST_SIZE, NEAREST_START_CELL_ID,
+        cellId + 1) - 1;
+    if (record < 0 ||
+        cellId >= get(NEAREST_AIRPORTS, NEAREST_SIZE, record, NEAREST_END_CELL_ID)) {
+      return null;
+    }
+    final int start = get(NEAREST_AIRPORTS, NEAREST_SIZE, record, NEAREST_CANDIDATE_START);
+    final int[] candidates =
+        new int[get(NEAREST_AIRPORTS, NEAREST_SIZE, record, NEAREST_CANDIDATE_COUNT)];
+    for (int i = 0; i < candidates.length; ++i) {
+      candidates[i] = get(NEAREST_AIRPORT_CANDIDATES, 1, start + i, 0);
+    }
+    return candidates;
+  }
+
+  @Override
+  public Map<String, String> getAirportProperties(final int airportId) {
+    final int record = getAirportRecord(airportId);
+    if (record < 0) {
+      return new HashMap<String, String>();
+    }
+    return getProperties(getAirportField(record, AIRPORT_PROPERTY_START),
+        getAirportField(record, AIRPORT_PROPERTY_COUNT));
+  }
+
+  @Override
+  public Map<String, String> getRunwayEndProperties(final int runwayEndId) {
+    final int index = find(RUNWAY_END_IDS, INDEX_SIZE, INDEX_ID, runwayEndId);
+    if (index < 0) {
+      return new HashMap<String, String>();
+    }
+    final int record = get(RUNWAY_END_IDS, INDEX_SIZE, index, INDEX_RECORD);
+    return getProperties(get(RUNWAY_ENDS, RUNWAY_END_SIZE, record, RUNWAY_END_PROPERTY_START),
+        get(RUNWAY_ENDS, RUNWAY_END_SIZE, record, RUNWAY_END_PROPERTY_COUNT));
+  }
+
+  private Map<String, String> getProperties(final int start, final int count) {
+    final Map<String, String> properties = new HashMap<String, String>();
+    for (int property = start; property < start + count; ++property) {
+      properties.put(getString(get(PROPERTIES, PAIR_SIZE, property, PAIR_KEY)),
+          getString(get(PROPERTIES, PAIR_SIZE, property, PAIR_VALUE)));
+    }
+    return properties;
+  }
+
+  @Override
+  public List<Comm> getAirportComms(final int airportId) {
+    final List<Comm> comms = new LinkedList<Comm>();
+    final int record = getAirportRecord(airportId);
+    if (record < 0) {
+      return comms;
+    }
+    final int start = getAirportField(record, AIRPORT_COMM_START);
+    final int end = start + getAirportField(record, AIRPORT_COMM_COUNT);
+    for (int comm = start; comm < end; ++comm) {
+      comms.add(new Comm(getString(get(COMMS, COMM_SIZE, comm, COMM_IDENTIFIER)),
+          getString(get(COMMS, COMM_SIZE, comm, COMM_FREQUENCY)),
+          getString(get(COMMS, COMM_SIZE, comm, COMM_REMARKS))));
+    }
+    return comms;
+  }
+
+  @Override
+  public List<AirportAirspace> getAirportAirspaces(final int airportId) {
+    final List<AirportAirspace> airspaces = new LinkedList<AirportAirspace>();
+    final int record = getAirportRecord(airportId);
+    if (record < 0) {
+      return airspaces;
+    }
+    final int start = getAirportField(record, AIRPORT_AIRSPACE_START);
+    final int end = start + getAirportField(record, AIRPORT_AIRSPACE_COUNT);
+    for (int i = start; i < end; ++i) {
+      airspaces.add(new AirportAirspace(
+          get(AIRPORT_AIRSPACES, AIRPORT_AIRSPACE_SIZE, i, AIRPORT_AIRSPACE_ID),
+          Airspace.Class.values()[
+              get(AIRPORT_AIRSPACES, AIRPORT_AIRSPACE_SIZE, i, AIRPORT_AIRSPACE_CLASS)],
+          get(AIRPORT_AIRSPACES, AIRPORT_AIRSPACE_SIZE, i, AIRPORT_AIRSPACE_BOTTOM),
+          get(AIRPORT_AIRSPACES, AIRPORT_AIRSPACE_SIZE, i, AIRPORT_AIRSPACE_TOP)));
+    }
+    return airspaces;
+  }
+
+  @Override
+  public String getConstant(final int constantId) {
+    final int record = find(CONSTANTS, CONSTANT_SIZE, CONSTANT_ID, constantId);
+    return record < 0 ? null : getString(get(CONSTANTS, CONSTANT_SIZE, record, CONSTANT_STRING));
+  }
+
+  @Override
+  public MagneticVariationGrid getMagneticVariationGrid() {
+    if (sectionCounts[MAGNETIC_VARIATION] == 0) {
+      return null;
+    }
+    final int rows = get(MAGNETIC_VARIATION, 1, VARIATION_ROWS, 0);
+    final int cols = get(MAGNETIC_VARIATION, 1, VARIATION_COLS, 0);
+    final byte[] values = new byte[rows * cols * 2];
+    final int valuesOffset = sectionOffsets[MAGNETIC_VARIATION] + VARIATION_HEADER_SIZE * 4;
+    final ByteBuffer mapped = getBuffer();
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = mapped.get(valuesOffset + i);
+    }
+    return new MagneticVariationGrid(get(MAGNETIC_VARIATION, 1, VARIATION_MIN_LAT, 0),
+        get(MAGNETIC_VARIATION, 1, VARIATION_MIN_LNG, 0),
+        get(MAGNETIC_VARIATION, 1, VARIATION_STEP, 0), rows, cols, values);
+  }
+
+  @Override
+  public String getMetadata(final String key) {
+    final int count = sectionCounts[METADATA];
+    for (int record = 0; record < count; ++record) {
+      if (key.equals(getString(get(METADATA, PAIR_SIZE, record, PAIR_KEY)))) {
+        return getString(get(METADATA, PAIR_SIZE, record, PAIR_VALUE));
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.geo.NavigationUtil;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Utility methods for the nearest airports precomputed per {@link CustomGridUtil} cell.
+ * <p>
+ * For each populated cell, the database holds a set of candidate airports that includes the
+ * {@code K} nearest suitable airports of every point of the cell.  Candidates are stored as
+ * interleaved (id, latitude, longitude) triples, so that the exact nearest airports of a position
+ * can be selected without reading any other table.
+ */
+public class NearestAirports {
+  /**
+   * Number of integers per candidate: id, latitude and longitude.
+   */
+  private static final int CANDIDATE_SIZE = 3;
+
+  /**
+   *  Utility class: default and only constructor is private.
+   */
+  private NearestAirports() { }
+
+  /**
+   * Encodes candidates for storage in the database.
+   *
+   * @param candidates Interleaved (id, latitude E6, longitude E6) triples.
+   */
+  public static byte[] encodeCandidates(final int[] candidates) {
+    final byte[] encoded = new byte[candidates.length * 4];
+    for (int i = 0; i < candidates.length; ++i) {
+      final int value = candidates[i];
+      encoded[i * 4] = (byte) (value >>> 24);
+      encoded[i * 4 + 1] = (byte) (value >>> 16);
+      encoded[i * 4 + 2] = (byte) (value >>> 8);
+      encoded[i * 4 + 3] = (byte) value;
+    }
+    return encoded;
+  }
+
+  /**
+   * Decodes candidates encoded with {@link #encodeCandidates}.
+   */
+  public static int[] decodeCandidates(final byte[] encoded) {
+    final int[] candidates = new int[encoded.length / 4];
+    for (int i = 0; i < candidates.length; ++i) {
+      candidates[i] = (encoded[i * 4] << 24) |
+                      ((encoded[i * 4 + 1] & 0xff) << 16) |
+                      ((encoded[i * 4 + 2] & 0xff) << 8) |
+                      (encoded[i * 4 + 3] & 0xff);
+    }
+    return candidates;
+  }
+
+  /**
+   * Returns the ids of the (at most) {@code count} candidates nearest to {@code position}, in
+   * order of increasing distance.
+   *
+   * @param candidates Interleaved (id, latitude E6, longitude E6) triples.
+   */
+  public static int[] getNearestIds(final LatLng position, final int[] candidates,
+      final int count) {
+    final int candidateCount = candidates.length / CANDIDATE_SIZE;
+    final double[] distances = new double[candidateCount];
+    for (int i = 0; i < candidateCount; ++i) {
+      distances[i] = NavigationUtil.computeDistance(position,
+          candidates[i * CANDIDATE_SIZE + 1], candidates[i * CANDIDATE_SIZE + 2]);
+    }
+    final Integer[] order = new Integer[candidateCount];
+    for (int i = 0; i < candidateCount; ++i) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(final Integer a, final Integer b) {
+        return Double.compare(distances[a], distances[b]);
+      }
+    });
+    final int[] ids = new int[Math.min(count, candidateCount)];
+    for (int i = 0; i < ids.length; ++i) {
+      ids[i] = candidates[order[i] * CANDIDATE_SIZE];
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import com.google.flightmap.common.CancellationToken;
+import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.AirportAirspace;
+import com.google.flightmap.common.data.Airspace;
+import com.google.flightmap.common.data.Comm;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.geo.MagneticVariationGrid;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link AviationDbAdapter} over a region-sharded database (see {@link AviationDbShards}).
+ * <p>
+ * Each query is routed to the shards intersecting the request: by cell range or area for spatial
+ * queries, and through the index for airport ids.  Shards are opened on first use and stay open
+ * until {@link #close}.  Shards that are not available locally (e.g. not downloaded) are treated
+ * as empty, so that name searches only cover the shards at hand.
+ */
+public class ShardedAviationDbAdapter implements AviationDbAdapter {
+  /**
+   * Creates adapters for individual shards.
+   */
+  public interface ShardFactory {
+    /**
+     * Returns a new, unopened adapter for {@code shard}, or {@code null} if the shard is not
+     * available.
+     */
+    AviationDbAdapter createAdapter(AviationDbShards.Shard shard);
+  }
+
+  private final AviationDbShards index;
+  private final ShardFactory factory;
+
+  /**
+   * Adapters of the shards used so far, by shard cell id.  {@code null} for shards the factory
+   * could not provide.
+   */
+  private final Map<Integer, AviationDbAdapter> adapters =
+      new LinkedHashMap<Integer, AviationDbAdapter>();
+
+  public ShardedAviationDbAdapter(final AviationDbShards index, final ShardFactory factory) {
+    this.index = index;
+    this.factory = factory;
+  }
+
+  /**
+   * Does nothing: shards are opened on first use.
+   */
+  @Override
+  public void open() {
+  }
+
+  @Override
+  public synchronized void close() {
+    for (AviationDbAdapter adapter: adapters.values()) {
+      if (adapter != null) {
+        adapter.close();
+      }
+    }
+    adapters.clear();
+  }
+
+  /**
+   * Returns the opened adapter for {@code shard}, {@code null} if the shard is not available.
+   */
+  private synchronized AviationDbAdapter getAdapter(final AviationDbShards.Shard shard) {
+    if (shard == null) {
+      return null;
+    }
+    if (adapters.containsKey(shard.cellId)) {
+      return adapters.get(shard.cellId);
+    }
+    final AviationDbAdapter adapter = factory.createAdapter(shard);
+    if (adapter != null) {
+      adapter.open();
+    }
+    adapters.put(shard.cellId, adapter);
+    return adapter;
+  }
+
+  /**
+   * Returns the opened adapters of all available shards.
+   */
+  private List<AviationDbAdapter> getAllAdapters() {
+    return getAdapters(index.getShards());
+  }
+
+  private List<AviationDbAdapter> getAdapters(final List<AviationDbShards.Shard> shards) {
+    final List<AviationDbAdapter> result = new ArrayList<AviationDbAdapter>(shards.size());
+    for (AviationDbShards.Shard shard: shards) {
+      final AviationDbAdapter adapter = getAdapter(shard);
+      if (adapter != null) {
+        result.add(adapter);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns any available shard adapter, preferring shards already open.  Used for data copied to
+   * every shard.
+   */
+  private AviationDbAdapter getAnyAdapter() {
+    synchronized (this) {
+      for (AviationDbAdapter adapter: adapters.values()) {
+        if (adapter != null) {
+          return adapter;
+        }
+      }
+    }
+    for (AviationDbShards.Shard shard: index.getShards()) {
+      final AviationDbAdapter adapter = getAdapter(shard);
+      if (adapter != null) {
+        return adapter;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the adapter of the shard holding {@code airportId}, {@code null} if not available.
+   */
+  private AviationDbAdapter getAirportAdapter(final int airportId) {
+    return getAdapter(index.getShardForAirport(airportId));
+  }
+
+  @Override
+  public Airport getAirport(final int airportId) {
+    final AviationDbAdapter adapter = getAirportAdapter(airportId);
+    return adapter == null ? null : adapter.getAirport(airportId);
+  }
+
+  @Override
+  public int getAirportIdByIcao(final String icao) {
+    for (AviationDbAdapter adapter: getAllAdapters()) {
+      final int airportId = adapter.getAirportIdByIcao(icao);
+      if (airportId != -1) {
+        return airportId;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public List<Integer> getAirportIdsWithCityLike(final String pattern) {
+    final List<Integer> airportIds = new LinkedList<Integer>();
+    for (AviationDbAdapter adapter: getAllAdapters()) {
+      airportIds.addAll(adapter.getAirportIdsWithCityLike(pattern));
+    }
+    return airportIds;
+  }
+
+  @Override
+  public List<Integer> getAirportIdsWithNameLike(final String pattern) {
+    final List<Integer> airportIds = new LinkedList<Integer>();
+    for (AviationDbAdapter adapter: getAllAdapters()) {
+      airportIds.addAll(adapter.getAirportIdsWithNameLike(pattern));
+    }
+    return airportIds;
+  }
+
+  /**
+   * Returns airspaces overlapping {@code rect}.  Airspaces spanning several shards are returned
+   * once.
+   */
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect)
+      throws InterruptedException {
+    return getAirspacesInRectangle(rect, CancellationToken.NONE);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final float zoom)
+      throws InterruptedException {
+    return getAirspacesInRectangle(rect, zoom, CancellationToken.NONE);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect,
+      final CancellationToken token) throws InterruptedException {
+    final Map<Integer, Airspace> airspaces = new LinkedHashMap<Integer, Airspace>();
+    for (AviationDbAdapter adapter: getAdapters(index.getShardsInRectangle(rect))) {
+      if (token.hasExpired()) {
+        break;
+      }
+      for (Airspace airspace: adapter.getAirspacesInRectangle(rect, token)) {
+        airspaces.put(airspace.id, airspace);
+      }
+    }
+    return airspaces.values();
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final float zoom,
+      final CancellationToken token) throws InterruptedException {
+    final Map<Integer, Airspace> airspaces = new LinkedHashMap<Integer, Airspace>();
+    for (AviationDbAdapter adapter: getAdapters(index.getShardsInRectangle(rect))) {
+      if (token.hasExpired()) {
+        break;
+      }
+      for (Airspace airspace: adapter.getAirspacesInRectangle(rect, zoom, token)) {
+        airspaces.put(airspace.id, airspace);
+      }
+    }
+    return airspaces.values();
+  }
+
+  @Override
+  public Map<Integer, Integer> doSearch(final String query) {
+    return AirportSearch.doSearch(this, query);
+  }
+
+  @Override
+  public Collection<Airport> getAirportsInCells(final int startCell, final int endCell,
+      final int minRank) {
+    final List<Airport> airports = new LinkedList<Airport>();
+    for (AviationDbShards.Shard shard: index.getShards()) {
+      final int start = Math.max(startCell, shard.startCellId);
+      final int end = Math.min(endCell, shard.endCellId);
+      if (start >= end) {
+        continue;
+      }
+      final AviationDbAdapter adapter = getAdapter(shard);
+      if (adapter != null) {
+        airports.addAll(adapter.getAirportsInCells(start, end, minRank));
+      }
+    }
+    return airports;
+  }
+
+  @Override
+  public int[] getNearestAirportCandidates(final LatLng position) {
+    final AviationDbAdapter adapter = getAdapter(index.getShardForPosition(position));
+    return adapter == null ? null : adapter.getNearestAirportCandidates(position);
+  }
+
+  @Override
+  public Map<String, String> getAirportProperties(final int airportId) {
+    final AviationDbAdapter adapter = getAirportAdapter(airportId);
+    return adapter == null ?
+        Collections.<String, String>emptyMap() : adapter.getAirportProperties(airportId);
+  }
+
+  @Override
+  public List<Comm> getAirportComms(final int airportId) {
+    final AviationDbAdapter adapter = getAirportAdapter(airportId);
+    return adapter == null ? Collections.<Comm>emptyList() : adapter.getAirportComms(airportId);
+  }
+
+  @Override
+  public List<AirportAirspace> getAirportAirspaces(final int airportId) {
+    final AviationDbAdapter adapter = getAirportAdapter(airportId);
+    return adapter == null ?
+        new LinkedList<AirportAirspace>() : adapter.getAirportAirspaces(airportId);
+  }
+
+  /**
+   * Returns non-essential properties for a runway end.  The index does not record runway ends,
+   * so shards already open (typically the one of the airport just displayed) are tried first.
+   */
+  @Override
+  public Map<String, String> getRunwayEndProperties(final int runwayEndId) {
+    final List<AviationDbAdapter> openAdapters;
+    synchronized (this) {
+      openAdapters = new ArrayList<AviationDbAdapter>(adapters.values());
+    }
+    for (AviationDbAdapter adapter: openAdapters) {
+      if (adapter != null) {
+        final Map<String, String> properties = adapter.getRunwayEndProperties(runwayEndId);
+        if (properties != null && !properties.isEmpty()) {
+          return properties;
+        }
+      }
+    }
+    for (AviationDbAdapter adapter: getAllAdapters()) {
+      final Map<String, String> properties = adapter.getRunwayEndProperties(runwayEndId);
+      if (properties != null && !properties.isEmpty()) {
+        return properties;
+      }
+    }
+    return new HashMap<String, String>();
+  }
+
+  @Override
+  public String getConstant(final int constantId) {
+    final AviationDbAdapter adapter = getAnyAdapter();
+    return adapter == null ? null : adapter.getConstant(constantId);
+  }
+
+  @Override
+  public MagneticVariationGrid getMagneticVariationGrid() {
+    final AviationDbAdapter adapter = getAnyAdapter();
+    return adapter == null ? null : adapter.getMagneticVariationGrid();
+  }
+
+  @Override
+  public String getMetadata(final String key) {
+    final AviationDbAdapter adapter = getAnyAdapter();
+    return adapter == null ? null : adapter.getMetadata(key);
+  }
+}
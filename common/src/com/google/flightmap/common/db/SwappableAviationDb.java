@@ -0,0 +1,494 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import com.google.flightmap.common.CancellationToken;
+import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.AirportAirspace;
+import com.google.flightmap.common.data.AirportDistance;
+import com.google.flightmap.common.data.Airspace;
+import com.google.flightmap.common.data.Comm;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.geo.MagneticVariationGrid;
+import com.google.flightmap.common.metrics.MetricsRegistry;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+
+/**
+ * Holds the open aviation database, and replaces it (e.g. after an update) while it is in use.
+ * <p>
+ * Clients query the database through {@link #getAviationDbAdapter} and {@link
+ * #getAirportDirectory}, which always route to the current database, with the usual caches
+ * ({@link CachedAviationDbAdapter}, {@link CachedAirportDirectory}).  {@link #reload} opens the
+ * database file again in the background, warms the new caches around the areas queried last,
+ * then switches all new queries to it at once.  Queries already running on the previous database
+ * complete normally: the previous database is closed when the last of them returns.
+ */
+public class SwappableAviationDb {
+  /**
+   * Creates adapters for the database file.
+   */
+  public interface AdapterFactory {
+    /**
+     * Returns a new, unopened adapter for the current database file.
+     */
+    AviationDbAdapter createAdapter();
+  }
+
+  private final AdapterFactory factory;
+  private final DbAdapterView aviationDbAdapter = new DbAdapterView();
+  private final DirectoryView airportDirectory = new DirectoryView();
+
+  /**
+   * Database used by new queries.  {@code null} when closed.
+   */
+  private Generation current;
+
+  // Latest queried areas, used to warm the caches on reload.
+  private LatLngRect lastAirportArea;
+  private int lastAirportMinRank;
+  private LatLngRect lastAirspaceArea;
+  private float lastAirspaceZoom;
+
+  public SwappableAviationDb(final AdapterFactory factory) {
+    this.factory = factory;
+  }
+
+  /**
+   * Opens the database.
+   */
+  public void open() {
+    final Generation generation = new Generation(factory.createAdapter());
+    synchronized (this) {
+      current = generation;
+    }
+  }
+
+  /**
+   * Closes the database, once the queries in progress have returned.
+   */
+  public void close() {
+    final Generation previous;
+    synchronized (this) {
+      previous = current;
+      current = null;
+    }
+    if (previous != null) {
+      retire(previous);
+    }
+  }
+
+  /**
+   * Opens the database file again, and switches to it when its caches are ready.  The previous
+   * database stays in use until then.
+   * <p>
+   * This call may be slow, and must not be made on the UI thread.
+   *
+   * @throws InterruptedException The reload was cancelled: the previous database is kept.
+   */
+  public void reload() throws InterruptedException {
+    final Generation next = new Generation(factory.createAdapter());
+    Generation previous = null;
+    try {
+      warm(next);
+      synchronized (this) {
+        if (current != null) {
+          previous = current;
+          current = next;
+        }
+      }
+    } finally {
+      if (previous == null) {
+        // Cancelled or closed meanwhile.
+        next.close();
+      }
+    }
+    if (previous == null) {
+      return;
+    }
+    retire(previous);
+  }
+
+  /**
+   * Runs the queries of the latest frame on {@code generation}, so that the first queries made
+   * after the switch are served from its caches.
+   */
+  private void warm(final Generation generation) throws InterruptedException {
+    final LatLngRect airportArea;
+    final int airportMinRank;
+    final LatLngRect airspaceArea;
+    final float airspaceZoom;
+    synchronized (this) {
+      airportArea = lastAirportArea;
+      airportMinRank = lastAirportMinRank;
+      airspaceArea = lastAirspaceArea;
+      airspaceZoom = lastAirspaceZoom;
+    }
+    generation.aviationDbAdapter.getMagneticVariationGrid();
+    if (airportArea != null) {
+      generation.airportDirectory.getAirportsInRectangle(airportArea, airportMinRank);
+    }
+    if (airspaceArea != null) {
+      generation.aviationDbAdapter.getAirspacesInRectangle(airspaceArea, airspaceZoom);
+    }
+  }
+
+  /**
+   * Closes {@code generation} as soon as no query is running on it.
+   */
+  private void retire(final Generation generation) {
+    final boolean idle;
+    synchronized (this) {
+      generation.retired = true;
+      idle = generation.queries == 0;
+    }
+    if (idle) {
+      generation.close();
+    }
+  }
+
+  /**
+   * Returns the current database, counting one more query running on it.  Must be followed by
+   * {@link #release}.
+   */
+  private synchronized Generation acquire() {
+    if (current == null) {
+      throw new IllegalStateException("Database is not open.");
+    }
+    ++current.queries;
+    return current;
+  }
+
+  private void release(final Generation generation) {
+    final boolean idle;
+    synchronized (this) {
+      idle = --generation.queries == 0 && generation.retired;
+    }
+    if (idle) {
+      generation.close();
+    }
+  }
+
+  /**
+   * Returns the adapter to the current database.
+   */
+  public DbAdapterView getAviationDbAdapter() {
+    return aviationDbAdapter;
+  }
+
+  /**
+   * Returns the airport directory of the current database.
+   */
+  public DirectoryView getAirportDirectory() {
+    return airportDirectory;
+  }
+
+  /**
+   * One opened database file, with its caches.
+   */
+  private static class Generation {
+    final CachedAviationDbAdapter aviationDbAdapter;
+    final CachedAirportDirectory airportDirectory;
+
+    /**
+     * Number of queries running on this database.  Guarded by the enclosing instance.
+     */
+    int queries;
+
+    /**
+     * Whether new queries go to another database.  Guarded by the enclosing instance.
+     */
+    boolean retired;
+
+    Generation(final AviationDbAdapter adapter) {
+      aviationDbAdapter = new CachedAviationDbAdapter(adapter);
+      airportDirectory = new CachedAirportDirectory(new InstrumentedAirportDirectory(
+          new CustomGridAirportDirectory(aviationDbAdapter), MetricsRegistry.getDefault(),
+          "directory"));
+      airportDirectory.open();
+    }
+
+    void close() {
+      airportDirectory.close();
+    }
+  }
+
+  /**
+   * {@link AviationDbAdapter} routing each call to the current database.  {@link #open} and
+   * {@link #close} are managed by the enclosing {@link SwappableAviationDb}, and do nothing.
+   */
+  public class DbAdapterView implements AviationDbAdapter {
+    private DbAdapterView() { }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @see CachedAviationDbAdapter#isCacheMatch(LatLngRect, float)
+     */
+    public boolean isCacheMatch(final LatLngRect area, final float zoom) {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.isCacheMatch(area, zoom);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public Airport getAirport(final int airportId) {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getAirport(airportId);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public int getAirportIdByIcao(final String icao) {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getAirportIdByIcao(icao);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public List<Integer> getAirportIdsWithCityLike(final String pattern) {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getAirportIdsWithCityLike(pattern);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public List<Integer> getAirportIdsWithNameLike(final String pattern) {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getAirportIdsWithNameLike(pattern);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect)
+        throws InterruptedException {
+      return getAirspacesInRectangle(rect, CancellationToken.NONE);
+    }
+
+    @Override
+    public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final float zoom)
+        throws InterruptedException {
+      return getAirspacesInRectangle(rect, zoom, CancellationToken.NONE);
+    }
+
+    @Override
+    public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect,
+        final CancellationToken token) throws InterruptedException {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getAirspacesInRectangle(rect, token);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final float zoom,
+        final CancellationToken token) throws InterruptedException {
+      synchronized (SwappableAviationDb.this) {
+        lastAirspaceArea = rect;
+        lastAirspaceZoom = zoom;
+      }
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getAirspacesInRectangle(rect, zoom, token);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public Map<Integer, Integer> doSearch(final String query) {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.doSearch(query);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public Collection<Airport> getAirportsInCells(final int startCell, final int endCell,
+        final int minRank) {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getAirportsInCells(startCell, endCell, minRank);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public int[] getNearestAirportCandidates(final LatLng position) {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getNearestAirportCandidates(position);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public Map<String, String> getAirportProperties(final int airportId) {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getAirportProperties(airportId);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public List<Comm> getAirportComms(final int airportId) {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getAirportComms(airportId);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public List<AirportAirspace> getAirportAirspaces(final int airportId) {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getAirportAirspaces(airportId);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public Map<String, String> getRunwayEndProperties(final int runwayEndId) {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getRunwayEndProperties(runwayEndId);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public String getConstant(final int constantId) {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getConstant(constantId);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public MagneticVariationGrid getMagneticVariationGrid() {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getMagneticVariationGrid();
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public String getMetadata(final String key) {
+      final Generation generation = acquire();
+      try {
+        return generation.aviationDbAdapter.getMetadata(key);
+      } finally {
+        release(generation);
+      }
+    }
+  }
+
+  /**
+   * {@link AirportDirectory} routing each call to the current database.  {@link #open} and
+   * {@link #close} are managed by the enclosing {@link SwappableAviationDb}, and do nothing.
+   */
+  public class DirectoryView extends AbstractAirportDirectory {
+    private DirectoryView() { }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @see CachedAirportDirectory#isCacheMatch(LatLngRect, int)
+     */
+    public boolean isCacheMatch(final LatLngRect area, final int minRank) {
+      final Generation generation = acquire();
+      try {
+        return generation.airportDirectory.isCacheMatch(area, minRank);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public Collection<Airport> getAirportsInRectangle(final LatLngRect area, final int minRank,
+        final CancellationToken token) throws InterruptedException {
+      synchronized (SwappableAviationDb.this) {
+        lastAirportArea = area;
+        lastAirportMinRank = minRank;
+      }
+      final Generation generation = acquire();
+      try {
+        return generation.airportDirectory.getAirportsInRectangle(area, minRank, token);
+      } finally {
+        release(generation);
+      }
+    }
+
+    @Override
+    public SortedSet<AirportDistance> getNearestAirports(final LatLng position, final int count)
+        throws InterruptedException {
+      final Generation generation = acquire();
+      try {
+        return generation.airportDirectory.getNearestAirports(position, count);
+      } finally {
+        release(generation);
+      }
+    }
+  }
+}
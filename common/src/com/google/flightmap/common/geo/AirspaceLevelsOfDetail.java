@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.geo;
+
+import com.google.flightmap.common.data.Airspace;
+import com.google.flightmap.common.data.AirspaceArc;
+import com.google.flightmap.common.data.LatLng;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Simplified airspace geometries used when the map is zoomed out.
+ * <p>
+ * Each level of detail covers a band of zoom levels (level 0 being the coarsest) and holds a
+ * single polygon per airspace: arcs are tessellated, then the polygon is simplified with the
+ * Douglas-Peucker algorithm.  Both steps are done in Mercator pixel space at the highest zoom of
+ * the band, so that the simplified shape stays within {@link #PIXEL_TOLERANCE} pixels of the full
+ * geometry drawn by the map.  Above the last band, the full geometry (with arcs) is used.
+ */
+public class AirspaceLevelsOfDetail {
+  /**
+   * Level of detail returned by {@link #getLevelOfDetail} when the full geometry should be used.
+   */
+  public static final int FULL_DETAIL = -1;
+
+  /**
+   * Highest zoom level at which each level of detail is used.  Bands follow the airport rank bands
+   * of the map, whose zoom ranges from 4 to 12.
+   */
+  private static final float[] MAX_ZOOMS = {6, 8, 10};
+
+  /**
+   * Maximum distance between the simplified and full geometries, in pixels.
+   */
+  private static final double PIXEL_TOLERANCE = 0.5;
+
+  /**
+   * Fraction of the tolerance allowed when tessellating arcs.  The rest is left to the
+   * simplification of the resulting polygon.
+   */
+  private static final double TESSELLATION_SHARE = 0.25;
+
+  /**
+   * Maximum number of segments a single arc is tessellated into.
+   */
+  private static final int MAX_ARC_SEGMENTS = 1 << 12;
+
+  /**
+   * Length of a side of the Mercator pixel space at zoom 0 (see {@link MercatorProjection}).
+   */
+  private static final int ZOOM_0_PIXELS = 512;
+
+  /**
+   * Size of an encoded point, in bytes.
+   */
+  private static final int ENCODED_POINT_SIZE = 8;
+
+  /**
+   *  Utility class: default and only constructor is private.
+   */
+  private AirspaceLevelsOfDetail() { }
+
+  /**
+   * Returns the number of levels of detail, not counting the full geometry.
+   */
+  public static int getLevelCount() {
+    return MAX_ZOOMS.length;
+  }
+
+  /**
+   * Returns the coarsest level of detail that is still accurate to the pixel at {@code zoom}, or
+   * {@link #FULL_DETAIL}.
+   */
+  public static int getLevelOfDetail(final float zoom) {
+    for (int level = 0; level < MAX_ZOOMS.length; ++level) {
+      if (zoom <= MAX_ZOOMS[level]) {
+        return level;
+      }
+    }
+    return FULL_DETAIL;
+  }
+
+  /**
+   * Returns the simplified polygon of {@code airspace} at the given level of detail.
+   *
+   * @return Points in E6 format, as {@code [lat0, lng0, lat1, lng1, ...]}.  The polygon is
+   * implicitly closed.
+   */
+  public static int[] simplify(final Airspace airspace, final int level) {
+    final double tolerance = getTolerance(level);
+    final double[] ring = tessellate(airspace, tolerance * TESSELLATION_SHARE);
+    final boolean[] keep = simplifyRing(ring, tolerance * (1 - TESSELLATION_SHARE));
+    int count = 0;
+    for (boolean kept: keep) {
+      if (kept) {
+        ++count;
+      }
+    }
+    final int[] latLngs = new int[count * 2];
+    int offset = 0;
+    for (int i = 0; i < keep.length; ++i) {
+      if (keep[i]) {
+        final double x = ring[i * 2];
+        final double y = ring[i * 2 + 1];
+        final double lng = 360 * (x / ZOOM_0_PIXELS - 0.5);
+        final double lat =
+            Math.toDegrees(2 * Math.atan(Math.exp(2 * Math.PI * (0.5 - y / ZOOM_0_PIXELS))) -
+                Math.PI / 2);
+        latLngs[offset++] = (int) Math.round(lat * 1E6);
+        latLngs[offset++] = (int) Math.round(lng * 1E6);
+      }
+    }
+    return latLngs;
+  }
+
+  /**
+   * Encodes points returned by {@link #simplify} for storage in the database.
+   */
+  public static byte[] encodePoints(final int[] latLngs) {
+    final byte[] blob = new byte[latLngs.length * ENCODED_POINT_SIZE / 2];
+    int offset = 0;
+    for (int value: latLngs) {
+      blob[offset++] = (byte) (value >>> 24);
+      blob[offset++] = (byte) (value >>> 16);
+      blob[offset++] = (byte) (value >>> 8);
+      blob[offset++] = (byte) value;
+    }
+    return blob;
+  }
+
+  /**
+   * Decodes points encoded by {@link #encodePoints}, keyed by sequence number like
+   * {@link Airspace#points}.
+   */
+  public static SortedMap<Integer, LatLng> decodePoints(final byte[] blob) {
+    final SortedMap<Integer, LatLng> points = new TreeMap<Integer, LatLng>();
+    int offset = 0;
+    int num = 0;
+    while (offset + ENCODED_POINT_SIZE <= blob.length) {
+      final int lat = decodeInt(blob, offset);
+      final int lng = decodeInt(blob, offset + ENCODED_POINT_SIZE / 2);
+      points.put(num++, new LatLng(lat, lng));
+      offset += ENCODED_POINT_SIZE;
+    }
+    return points;
+  }
+
+  /**
+   * Returns a copy of {@code airspace} whose shape is given by {@code points} only.
+   */
+  public static Airspace withPoints(final Airspace airspace,
+      final SortedMap<Integer, LatLng> points) {
+    return new Airspace(airspace.id, airspace.name, airspace.airspaceClass, airspace.bottom,
+        airspace.top, points, new TreeMap<Integer, AirspaceArc>());
+  }
+
+  /**
+   * Returns the tolerance of {@code level}, in Mercator pixels at zoom 0.
+   */
+  static double getTolerance(final int level) {
+    return PIXEL_TOLERANCE / Math.pow(2, MAX_ZOOMS[level]);
+  }
+
+  /**
+   * Returns the polygon drawn for {@code airspace}, in Mercator pixel space at zoom 0.  Arcs are
+   * replaced with segments deviating from them by no more than {@code tolerance}.
+   *
+   * @return Points as {@code [x0, y0, x1, y1, ...]}.
+   */
+  static double[] tessellate(final Airspace airspace, final double tolerance) {
+    double[] ring = new double[(airspace.points.size() + airspace.arcs.size() * 8) * 2];
+    int size = 0;
+
+    // Points and arcs are merged by sequence number, as they are drawn by the map.
+    final Iterator<Map.Entry<Integer, LatLng>> pointIter = airspace.points.entrySet().iterator();
+    final Iterator<Map.Entry<Integer, AirspaceArc>> arcIter = airspace.arcs.entrySet().iterator();
+    Map.Entry<Integer, LatLng> pointEntry = pointIter.hasNext() ? pointIter.next() : null;
+    Map.Entry<Integer, AirspaceArc> arcEntry = arcIter.hasNext() ? arcIter.next() : null;
+    while (pointEntry != null || arcEntry != null) {
+      final int pointSeqNr = pointEntry != null ? pointEntry.getKey() : Integer.MAX_VALUE;
+      final int arcSeqNr = arcEntry != null ? arcEntry.getKey() : Integer.MAX_VALUE;
+      if (pointSeqNr < arcSeqNr) {
+        final LatLng point = pointEntry.getValue();
+        ring = ensureCapacity(ring, size + 2);
+        ring[size++] = getX(point.lngDeg());
+        ring[size++] = getY(point.latRad());
+        pointEntry = pointIter.hasNext() ? pointIter.next() : null;
+      } else {
+        final AirspaceArc arc = arcEntry.getValue();
+        final double left = getX(arc.boundingBox.getWest() * 1E-6);
+        final double right = getX(arc.boundingBox.getEast() * 1E-6);
+        final double top = getY(Math.toRadians(arc.boundingBox.getNorth() * 1E-6));
+        final double bottom = getY(Math.toRadians(arc.boundingBox.getSouth() * 1E-6));
+        final double centerX = (left + right) / 2;
+        final double centerY = (top + bottom) / 2;
+        final double radiusX = (right - left) / 2;
+        final double radiusY = (bottom - top) / 2;
+        final double radius = Math.max(radiusX, radiusY);
+        final double start = Math.toRadians(arc.startAngle);
+        final double sweep = Math.toRadians(arc.sweepAngle);
+        // A chord spanning angle a deviates from the arc by radius * (1 - cos(a / 2)).
+        int segments = 1;
+        if (radius > tolerance) {
+          final double maxAngle = 2 * Math.acos(1 - tolerance / radius);
+          segments = (int) Math.min(MAX_ARC_SEGMENTS, Math.ceil(Math.abs(sweep) / maxAngle));
+          segments = Math.max(1, segments);
+        }
+        ring = ensureCapacity(ring, size + (segments + 1) * 2);
+        // Angles are clockwise from East: y grows downwards in Mercator pixel space.
+        for (int i = 0; i <= segments; ++i) {
+          final double angle = start + sweep * i / segments;
+          ring[size++] = centerX + radiusX * Math.cos(angle);
+          ring[size++] = centerY + radiusY * Math.sin(angle);
+        }
+        arcEntry = arcIter.hasNext() ? arcIter.next() : null;
+      }
+    }
+
+    final double[] result = new double[size];
+    System.arraycopy(ring, 0, result, 0, size);
+    return result;
+  }
+
+  /**
+   * Simplifies the closed polygon {@code ring} with the Douglas-Peucker algorithm.
+   *
+   * @param ring Points as {@code [x0, y0, x1, y1, ...]}.
+   * @return Whether each point of {@code ring} is kept.
+   */
+  static boolean[] simplifyRing(final double[] ring, final double tolerance) {
+    final int count = ring.length / 2;
+    final boolean[] keep = new boolean[count];
+    if (count <= 3) {
+      for (int i = 0; i < count; ++i) {
+        keep[i] = true;
+      }
+      return keep;
+    }
+
+    // Split the ring in two chains at the point farthest from the first one.
+    int farthest = 1;
+    double farthestDistance = -1;
+    for (int i = 1; i < count; ++i) {
+      final double dx = ring[i * 2] - ring[0];
+      final double dy = ring[i * 2 + 1] - ring[1];
+      final double distance = dx * dx + dy * dy;
+      if (distance > farthestDistance) {
+        farthest = i;
+        farthestDistance = distance;
+      }
+    }
+    keep[0] = true;
+    keep[farthest] = true;
+
+    // Chains to simplify, as [first, last] point indices.  Index count designates point 0.
+    final int[] stack = new int[count * 2 + 4];
+    int stackSize = 0;
+    stack[stackSize++] = 0;
+    stack[stackSize++] = farthest;
+    stack[stackSize++] = farthest;
+    stack[stackSize++] = count;
+    while (stackSize > 0) {
+      final int last = stack[--stackSize];
+      final int first = stack[--stackSize];
+      int split = -1;
+      double splitDistance = tolerance * tolerance;
+      for (int i = first + 1; i < last; ++i) {
+        final double distance = getSquaredSegmentDistance(ring, i, first, last % count);
+        if (distance > splitDistance) {
+          split = i;
+          splitDistance = distance;
+        }
+      }
+      if (split != -1) {
+        keep[split] = true;
+        stack[stackSize++] = first;
+        stack[stackSize++] = split;
+        stack[stackSize++] = split;
+        stack[stackSize++] = last;
+      }
+    }
+    return keep;
+  }
+
+  /**
+   * Returns the squared distance between point {@code i} and segment [{@code a}, {@code b}].
+   */
+  private static double getSquaredSegmentDistance(final double[] ring, final int i, final int a,
+      final int b) {
+    final double ax = ring[a * 2];
+    final double ay = ring[a * 2 + 1];
+    final double abx = ring[b * 2] - ax;
+    final double aby = ring[b * 2 + 1] - ay;
+    double px = ring[i * 2] - ax;
+    double py = ring[i * 2 + 1] - ay;
+    final double length = abx * abx + aby * aby;
+    if (length > 0) {
+      final double t = Math.max(0, Math.min(1, (px * abx + py * aby) / length));
+      px -= t * abx;
+      py -= t * aby;
+    }
+    return px * px + py * py;
+  }
+
+  /**
+   * Returns the Mercator x coordinate at zoom 0 of longitude {@code lng} (in degrees).
+   */
+  static double getX(final double lng) {
+    return ZOOM_0_PIXELS * (0.5 + lng / 360);
+  }
+
+  /**
+   * Returns the Mercator y coordinate at zoom 0 of latitude {@code lat} (in radians).
+   */
+  static double getY(final double lat) {
+    final double sinLat = Math.sin(lat);
+    return ZOOM_0_PIXELS * (0.5 - Math.log((1 + sinLat) / (1 - sinLat)) / 4 / Math.PI);
+  }
+
+  private static double[] ensureCapacity(final double[] array, final int capacity) {
+    if (capacity <= array.length) {
+      return array;
+    }
+    final double[] newArray = new double[Math.max(capacity, array.length * 2)];
+    System.arraycopy(array, 0, newArray, 0, array.length);
+    return newArray;
+  }
+
+  private static int decodeInt(final byte[] blob, final int offset) {
+    return (blob[offset] << 24) | ((blob[offset + 1] & 0xff) << 16) |
+        ((blob[offset + 2] & 0xff) << 8) | (blob[offset + 3] & 0xff);
+  }
+}
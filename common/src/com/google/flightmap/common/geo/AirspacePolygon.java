@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.geo;
+
+import com.google.flightmap.common.data.Airspace;
+import com.google.flightmap.common.data.LatLng;
+
+/**
+ * Lateral boundary of an airspace, for point-in-polygon tests.
+ * <p>
+ * The boundary is the shape drawn by the map: points and arcs are merged by sequence number, and
+ * arcs are tessellated in Mercator space (see {@link AirspaceLevelsOfDetail#tessellate}) within
+ * {@link #TOLERANCE} of the true curve.
+ */
+public class AirspacePolygon {
+  /**
+   * Maximum distance between tessellated and true arcs, in Mercator pixels at zoom 0 (about one
+   * meter at the equator).
+   */
+  private static final double TOLERANCE = 1E-5;
+
+  public final Airspace airspace;
+
+  /**
+   * Tessellated boundary, as {@code [x0, y0, x1, y1, ...]}.
+   */
+  private final double[] ring;
+
+  private final double minX;
+  private final double maxX;
+  private final double minY;
+  private final double maxY;
+
+  public AirspacePolygon(final Airspace airspace) {
+    this.airspace = airspace;
+    ring = AirspaceLevelsOfDetail.tessellate(airspace, TOLERANCE);
+    double minX = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < ring.length; i += 2) {
+      minX = Math.min(minX, ring[i]);
+      maxX = Math.max(maxX, ring[i]);
+      minY = Math.min(minY, ring[i + 1]);
+      maxY = Math.max(maxY, ring[i + 1]);
+    }
+    this.minX = minX;
+    this.maxX = maxX;
+    this.minY = minY;
+    this.maxY = maxY;
+  }
+
+  /**
+   * Checks if {@code point} lies within the lateral boundary of the airspace.
+   * <p>
+   * Points outside the bounding box of the boundary are rejected first, so that most calls are
+   * cheap.  Others are tested with the even-odd rule.
+   */
+  public boolean contains(final LatLng point) {
+    final double x = AirspaceLevelsOfDetail.getX(point.lngDeg());
+    final double y = AirspaceLevelsOfDetail.getY(point.latRad());
+    if (x < minX || x > maxX || y < minY || y > maxY) {
+      return false;
+    }
+    boolean inside = false;
+    for (int i = 0, j = ring.length - 2; i < ring.length; j = i, i += 2) {
+      final double xi = ring[i];
+      final double yi = ring[i + 1];
+      final double xj = ring[j];
+      final double yj = ring[j + 1];
+      if ((yi > y) != (yj > y) && x < xi + (y - yi) * (xj - xi) / (yj - yi)) {
+        inside = !inside;
+      }
+    }
+    return inside;
+  }
+}
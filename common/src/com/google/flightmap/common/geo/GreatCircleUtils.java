@@ -25,11 +25,149 @@ import java.util.List;
  * Utility methods related to Great Circles (Earth geodesics).
  */
 public class GreatCircleUtils {
+  /**
+   * Fraction of {@code maxError} targeted by {@link #sampleGreatCircleE6}.  The margin absorbs
+   * rounding to E6 coordinates and the small-offset approximations of the error bound.
+   */
+  private static final double ERROR_BOUND_MARGIN = 0.9;
+
+  /**
+   * Maximum number of segments returned by {@link #sampleGreatCircleE6}.  Only reached for paths
+   * passing very close to a pole.
+   */
+  private static final int MAX_SEGMENTS = 1 << 16;
+
   /**
    *  Utility class: default and only constructor is private.
    */
   private GreatCircleUtils() { }
 
+  /**
+   * Samples great circle between {@code point1} and {@code point2}, with the same guarantee as
+   * {@link #sampleGreatCircle}: the great circle and the resulting points connected by Rhumb lines
+   * (straight lines in latitude and longitude) should differ by no more than {@code maxError}
+   * meters.
+   * <p>
+   * Unlike {@link #sampleGreatCircle}, the number of samples is determined up front.  Linearly
+   * interpolating the latitude and longitude of a great circle arc of {@code d} radians deviates
+   * from it by at most {@code d^2 / 8} times the largest second derivative of its latitude and
+   * longitude (scaled to meters), which is bounded by {@code sqrt(2) * R * max|tan(lat)|} along the
+   * path.  Samples are then evenly spaced on the great circle and generated with an incremental
+   * rotation (spherical linear interpolation), without any trigonometric call per sample besides
+   * the conversion to latitude and longitude.
+   *
+   * @return Samples in E6 format, as {@code [lat0, lng0, lat1, lng1, ...]}.  The first and last
+   * samples are {@code point1} and {@code point2}.
+   */
+  public static int[] sampleGreatCircleE6(final LatLng point1, final LatLng point2,
+      final double maxError) {
+    final double lat1 = point1.latRad();
+    final double lng1 = point1.lngRad();
+    final double lat2 = point2.latRad();
+    final double lng2 = point2.lngRad();
+    // Unit vectors
+    final double lat1Cos = Math.cos(lat1);
+    final double x1 = lat1Cos * Math.cos(lng1);
+    final double y1 = lat1Cos * Math.sin(lng1);
+    final double z1 = Math.sin(lat1);
+    final double lat2Cos = Math.cos(lat2);
+    final double x2 = lat2Cos * Math.cos(lng2);
+    final double y2 = lat2Cos * Math.sin(lng2);
+    final double z2 = Math.sin(lat2);
+    // Normal to the great circle plane (its norm is the sine of the distance)
+    final double nx = y1 * z2 - z1 * y2;
+    final double ny = z1 * x2 - x1 * z2;
+    final double nz = x1 * y2 - y1 * x2;
+    final double distanceRadSin = Math.sqrt(nx * nx + ny * ny + nz * nz);
+    final double distanceRad = Math.atan2(distanceRadSin, x1 * x2 + y1 * y2 + z1 * z2);
+
+    int segments = 1;
+    if (distanceRad * NavigationUtil.EARTH_RADIUS > maxError && distanceRadSin > 0) {
+      final double maxLatSin =
+          getMaxAbsLatitudeSin(x1, y1, z1, x2, y2, z2, nx, ny, nz, distanceRadSin);
+      if (maxLatSin >= 1) {
+        segments = MAX_SEGMENTS;
+      } else if (maxLatSin > 0) {
+        final double maxLatTan = maxLatSin / Math.sqrt(1 - maxLatSin * maxLatSin);
+        final double maxStepRad = Math.sqrt(8 * ERROR_BOUND_MARGIN * maxError /
+            (Math.sqrt(2) * NavigationUtil.EARTH_RADIUS * maxLatTan));
+        segments = (int) Math.min(MAX_SEGMENTS, Math.ceil(distanceRad / maxStepRad));
+      }
+    }
+
+    final int[] samples = new int[2 * (segments + 1)];
+    samples[0] = point1.lat;
+    samples[1] = point1.lng;
+    if (segments > 1) {
+      // P(k+1) = 2 cos(step) P(k) - P(k-1) for points evenly spaced on a great circle.
+      final double stepRad = distanceRad / segments;
+      final double twoStepCos = 2 * Math.cos(stepRad);
+      final double a = Math.sin(distanceRad - stepRad) / distanceRadSin;
+      final double b = Math.sin(stepRad) / distanceRadSin;
+      double prevX = x1;
+      double prevY = y1;
+      double prevZ = z1;
+      double x = a * x1 + b * x2;
+      double y = a * y1 + b * y2;
+      double z = a * z1 + b * z2;
+      for (int i = 1; i < segments; ++i) {
+        samples[2 * i] = toE6(Math.atan2(z, Math.sqrt(x * x + y * y)));
+        samples[2 * i + 1] = toE6(Math.atan2(y, x));
+        final double nextX = twoStepCos * x - prevX;
+        final double nextY = twoStepCos * y - prevY;
+        final double nextZ = twoStepCos * z - prevZ;
+        prevX = x;
+        prevY = y;
+        prevZ = z;
+        x = nextX;
+        y = nextY;
+        z = nextZ;
+      }
+    }
+    samples[2 * segments] = point2.lat;
+    samples[2 * segments + 1] = point2.lng;
+    return samples;
+  }
+
+  /**
+   * Returns the sine of the largest absolute latitude on the great circle arc between unit
+   * vectors {@code p1} and {@code p2}, given their cross product {@code n} and its norm.
+   * <p>
+   * This is reached either at an end point, or at the vertex (northernmost or southernmost point)
+   * of the great circle if it lies on the arc.
+   */
+  private static double getMaxAbsLatitudeSin(final double x1, final double y1, final double z1,
+      final double x2, final double y2, final double z2, final double nx, final double ny,
+      final double nz, final double nNorm) {
+    double maxSin = Math.max(Math.abs(z1), Math.abs(z2));
+    // Projection of the north pole on the great circle plane: direction of the northern vertex.
+    final double nzUnit = nz / nNorm;
+    final double vx = -nzUnit * nx / nNorm;
+    final double vy = -nzUnit * ny / nNorm;
+    final double vz = 1 - nzUnit * nzUnit;
+    final double vNorm = Math.sqrt(vx * vx + vy * vy + vz * vz);
+    if (vNorm == 0) {
+      return maxSin;  // Great circle is the equator.
+    }
+    // Northern vertex is on the arc if it is between p1 and p2 (relative to n), and so on for the
+    // southern vertex (-v).
+    final double p1CrossV = (y1 * vz - z1 * vy) * nx + (z1 * vx - x1 * vz) * ny +
+        (x1 * vy - y1 * vx) * nz;
+    final double vCrossP2 = (vy * z2 - vz * y2) * nx + (vz * x2 - vx * z2) * ny +
+        (vx * y2 - vy * x2) * nz;
+    if ((p1CrossV >= 0 && vCrossP2 >= 0) || (p1CrossV <= 0 && vCrossP2 <= 0)) {
+      maxSin = Math.max(maxSin, vz / vNorm);
+    }
+    return maxSin;
+  }
+
+  /**
+   * Converts an angle in radians to degrees in E6 format, as done by {@link LatLng#fromRadians}.
+   */
+  private static int toE6(final double radians) {
+    return (int) Math.round(Math.toDegrees(radians) * 1E6);
+  }
+
   /**
    * Samples great circle between {@code point1} and {@code point2}.  The great circle and the 
    * resulting points connected by Rhumb lines should differ by no more than {@code maxError}
@@ -70,7 +208,7 @@ public class GreatCircleUtils {
    * and far beyond the scope of this method.  In practice, the current heuristic approach yields
    * satisfactory results.
    */
-  private static boolean pathsBelowError(final LatLng point1, final LatLng point2,
+  static boolean pathsBelowError(final LatLng point1, final LatLng point2,
       final double maxError) {
     final double distance = NavigationUtil.computeDistance(point1, point2);
     if (distance <= maxError) {
@@ -150,13 +150,6 @@ public class MagField {
 
   private static final int nmax = htnm_igrf2010.length - 1;
 
-  private static double[][] P = new double[nmax + 1][nmax + 1];
-  private static double[][] DP = new double[nmax + 1][nmax + 1];
-  private static double[][] gnm = new double[nmax + 1][nmax + 1];
-  private static double[][] hnm = new double[nmax + 1][nmax + 1];
-  private static double[] sm = new double[nmax + 1];
-  private static double[] cm = new double[nmax + 1];
-
   private static final double[] root;
   private static final double[][][] roots;
 
@@ -177,17 +170,53 @@ public class MagField {
   }
 
   /**
-   * Time of latest retrieved magnetic variation (milliseconds since Epoch)
+   * Workspace of the calling thread, used by {@link #GetMagVar}.
    */
-  private static Long previousTime = null;
+  private static final ThreadLocal<MagField> threadWorkspace = new ThreadLocal<MagField>() {
+    @Override
+    protected MagField initialValue() {
+      return new MagField();
+    }
+  };
+
+  // Workspace: an instance must not be used by several threads at the same time.
+  private final double[][] P = new double[nmax + 1][nmax + 1];
+  private final double[][] DP = new double[nmax + 1][nmax + 1];
+  private final double[][] gnm = new double[nmax + 1][nmax + 1];
+  private final double[][] hnm = new double[nmax + 1][nmax + 1];
+  private final double[] sm = new double[nmax + 1];
+  private final double[] cm = new double[nmax + 1];
 
   /**
-   * Utility class: default and only constructor is private.
+   * Time of the current Gauss coefficients (milliseconds since Epoch), valid if
+   * {@link #hasCoefficients}.
    */
-  private MagField() { }
+  private long coefficientsTime;
+  private boolean hasCoefficients;
 
   /**
-   * Computes magnetic variation.
+   * Geodetic latitude (radians) and height (km) of the current Legendre functions ({@link #P},
+   * {@link #DP}) and geocentric coordinates, valid if {@link #hasPosition}.
+   */
+  private double positionLat;
+  private double positionHeight;
+  private boolean hasPosition;
+
+  /** Geocentric co-latitude of the current position. */
+  private double theta;
+  /** Geocentric radial distance (km) of the current position. */
+  private double r;
+  /** 1 / sin(theta), protected against zero divide at the geographic poles. */
+  private double inv_s;
+
+  /**
+   * Creates a new workspace.  Each thread should use its own instance, which can be reused between
+   * calls.
+   */
+  public MagField() { }
+
+  /**
+   * Computes magnetic variation.  Thread-safe: uses a workspace specific to the calling thread.
    *
    * @param lat     geodetic latitude (radians)
    * @param lng     geodetic longitude (radians)
@@ -204,6 +233,73 @@ public class MagField {
                                  final double h,
                                  final long time,
                                  final double[] field) {
+    return threadWorkspace.get().getMagVar(lat, lng, h, time, field);
+  }
+
+  /**
+   * Computes magnetic variation, like {@link #GetMagVar}, using the workspace of this instance.
+   */
+  public double getMagVar(final double lat,
+                          final double lng,
+                          final double h,
+                          final long time,
+                          final double[] field) {
+    updateCoefficients(time);
+    updatePosition(lat, h);
+    return computeMagVar(lat, lng, field);
+  }
+
+  /**
+   * Computes magnetic variation at several points of the same height, at the same time.
+   * <p>
+   * Gauss coefficients are only updated once, and the latitude-dependent terms are only computed
+   * again when the latitude changes: points sharing a latitude (eg. rows of a grid) should be
+   * consecutive.
+   *
+   * @param latLngs     geodetic latitudes and longitudes (radians), as
+   *                    {@code [lat0, lng0, lat1, lng1, ...]}
+   * @param h           height (km)
+   * @param time        time (milliseconds since Epoch)
+   * @param variations  output magnetic variations (radians, West is positive), one per point
+   */
+  public void getMagVar(final double[] latLngs,
+                        final double h,
+                        final long time,
+                        final double[] variations) {
+    updateCoefficients(time);
+    for (int i = 0; i < latLngs.length / 2; ++i) {
+      final double lat = latLngs[i * 2];
+      updatePosition(lat, h);
+      variations[i] = computeMagVar(lat, latLngs[i * 2 + 1], null);
+    }
+  }
+
+  /**
+   * Computes Gauss coefficients (gnm, hnm) for {@code time}, unless already done.
+   */
+  private void updateCoefficients(final long time) {
+    if (hasCoefficients && coefficientsTime == time) {
+      return;
+    }
+    final double yearfrac = (time - DATA_TIME) / MILLIS_PER_YEAR;
+    for (int n = 1; n <= nmax ; ++n) {
+      for (int m = 0 ; m <= nmax ; ++m) {
+        gnm[n][m] = gnm_igrf2010[n][m] + yearfrac * gtnm_igrf2010[n][m];
+        hnm[n][m] = hnm_igrf2010[n][m] + yearfrac * htnm_igrf2010[n][m];
+      }
+    }
+    coefficientsTime = time;
+    hasCoefficients = true;
+  }
+
+  /**
+   * Computes geocentric coordinates and Legendre functions for {@code lat} and {@code h}, unless
+   * already done.
+   */
+  private void updatePosition(final double lat, final double h) {
+    if (hasPosition && positionLat == lat && positionHeight == h) {
+      return;
+    }
     final double sinlat = Math.sin(lat);
     final double sinlat2 = sinlat * sinlat;
     final double coslat = Math.cos(lat);
@@ -215,25 +311,16 @@ public class MagField {
     final double sr = Math.sqrt(a2 * coslat2 + b2 * sinlat2);
 
     // theta is geocentric co-latitude
-    final double theta = Math.atan2(coslat * (h * sr + a2), sinlat * (h * sr + b2));
+    theta = Math.atan2(coslat * (h * sr + a2), sinlat * (h * sr + b2));
 
     // r is geocentric radial distance
-    final double r =
-        Math.sqrt(h * h + 2.0 * h * sr + (a4 - (a4 - b4) * sinlat2) / (a2 - (a2 - b2) * sinlat2));
+    r = Math.sqrt(h * h + 2.0 * h * sr + (a4 - (a4 - b4) * sinlat2) / (a2 - (a2 - b2) * sinlat2));
 
     final double c = Math.cos(theta);
     final double s = Math.sin(theta);
 
     // protect against zero divide at geographic poles
-    final double inv_s =  1.0 / (s + ((s == 0.) ? 1.0e-8 : 0));
-
-    // reset arrays
-    for (int n = 0; n <= nmax; ++n) {
-      for (int m = 0; m <= n; ++m) {
-        P[n][m] = 0;
-        DP[n][m] = 0;
-      }
-    }
+    inv_s =  1.0 / (s + ((s == 0.) ? 1.0e-8 : 0));
 
     // diagonal elements
     P[0][0] = 1;
@@ -248,7 +335,7 @@ public class MagField {
       DP[n][n] = (DP[n - 1][n - 1] * s + P[n - 1][n - 1] * c) * root[n];
     }
 
-    // lower triangle
+    // lower triangle (together with the diagonal, every element with m <= n is set)
     for (int m = 0; m <= nmax; ++m) {
       for (int n = Math.max(m + 1, 2); n <= nmax; ++n) {
         P[n][m] = (P[n - 1][m] * c * (2.0 * n - 1) - P[n - 2][m] * roots[m][n][0]) * roots[m][n][1];
@@ -257,22 +344,24 @@ public class MagField {
       }
     }
 
-    // On first call or if time has changed, compute Gauss coefficients (gnm, hnm).
-    if (previousTime == null || !previousTime.equals(time)) {
-      final double yearfrac = (time - DATA_TIME) / MILLIS_PER_YEAR;
-      for (int n = 1; n <= nmax ; ++n) {
-        for (int m = 0 ; m <= nmax ; ++m) {
-          gnm[n][m] = gnm_igrf2010[n][m] + yearfrac * gtnm_igrf2010[n][m];
-          hnm[n][m] = hnm_igrf2010[n][m] + yearfrac * htnm_igrf2010[n][m];
-        }
-      }
-      previousTime = time;
-    }
+    positionLat = lat;
+    positionHeight = h;
+    hasPosition = true;
+  }
 
-    // compute sm (sin(m lng) and cm (cos(m lng))
-    for (int m = 0 ; m <= nmax ; ++m) {
-      sm[m] = Math.sin(m * lng);
-      cm[m] = Math.cos(m * lng);
+  /**
+   * Computes magnetic variation at longitude {@code lng}, for the current coefficients and
+   * position.
+   */
+  private double computeMagVar(final double lat, final double lng, final double[] field) {
+    // compute sm (sin(m lng) and cm (cos(m lng)), with the angle addition formulas
+    final double sinlng = Math.sin(lng);
+    final double coslng = Math.cos(lng);
+    sm[0] = 0;
+    cm[0] = 1;
+    for (int m = 1 ; m <= nmax ; ++m) {
+      sm[m] = sm[m - 1] * coslng + cm[m - 1] * sinlng;
+      cm[m] = cm[m - 1] * coslng - sm[m - 1] * sinlng;
     }
 
     // compute B fields
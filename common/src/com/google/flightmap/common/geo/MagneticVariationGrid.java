@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.geo;
+
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+
+/**
+ * Magnetic variation precomputed on a regular latitude/longitude grid.
+ * <p>
+ * Variation is computed with {@link MagField} at sea level for every node of the grid, and
+ * bilinearly interpolated in between.  Altitude is ignored: below 60,000 feet, it changes the
+ * variation by much less than the accuracy of the model.
+ */
+public class MagneticVariationGrid {
+  /**
+   * Stored variations are in hundredths of a degree.
+   */
+  private static final double VALUE_TO_DEGREES = 0.01;
+
+  private final int minLat;
+  private final int minLng;
+  private final int step;
+  private final int rows;
+  private final int cols;
+
+  /**
+   * Variation at each node, row by row from South to North, in hundredths of a degree.
+   */
+  private final short[] values;
+
+  /**
+   * @param minLat Latitude of first row, in E6 format
+   * @param minLng Longitude of first column, in E6 format
+   * @param step Distance between rows and between columns, in degrees E6
+   * @param rows Number of rows (at least 2)
+   * @param cols Number of columns (at least 2)
+   * @param values Variations encoded with {@link #encodeValues}
+   */
+  public MagneticVariationGrid(final int minLat, final int minLng, final int step, final int rows,
+      final int cols, final byte[] values) {
+    this(minLat, minLng, step, rows, cols, decodeValues(values));
+    if (rows < 2 || cols < 2) {
+      throw new IllegalArgumentException("Grid must have at least 2 rows and 2 columns.");
+    }
+    if (this.values.length != rows * cols) {
+      throw new IllegalArgumentException(
+          "Expected " + rows * cols + " values, got " + this.values.length);
+    }
+  }
+
+  private MagneticVariationGrid(final int minLat, final int minLng, final int step,
+      final int rows, final int cols, final short[] values) {
+    this.minLat = minLat;
+    this.minLng = minLng;
+    this.step = step;
+    this.rows = rows;
+    this.cols = cols;
+    this.values = values;
+  }
+
+  /**
+   * Computes the magnetic variation on a grid covering {@code area}.
+   *
+   * @param step Distance between rows and between columns, in degrees E6
+   * @param time Time of the variation (milliseconds since Epoch)
+   */
+  public static MagneticVariationGrid build(final LatLngRect area, final int step,
+      final long time) {
+    final int minLat = area.getSouth();
+    final int minLng = area.getWest();
+    final int rows = Math.max(2, (int) (((long) area.getNorth() - minLat + step - 1) / step) + 1);
+    final int cols = Math.max(2, (int) (((long) area.getEast() - minLng + step - 1) / step) + 1);
+    final short[] values = new short[rows * cols];
+    final MagField magField = new MagField();
+    final double[] latLngs = new double[cols * 2];
+    final double[] variations = new double[cols];
+    for (int row = 0; row < rows; ++row) {
+      // Variation is undefined at the poles.
+      final double lat = Math.max(-89.9, Math.min(89.9, (minLat + (long) row * step) * 1E-6));
+      for (int col = 0; col < cols; ++col) {
+        latLngs[col * 2] = Math.toRadians(lat);
+        latLngs[col * 2 + 1] = Math.toRadians((minLng + (long) col * step) * 1E-6);
+      }
+      magField.getMagVar(latLngs, 0, time, variations);
+      for (int col = 0; col < cols; ++col) {
+        final double variation = Math.toDegrees(variations[col]);
+        values[row * cols + col] = (short) Math.round(variation / VALUE_TO_DEGREES);
+      }
+    }
+    return new MagneticVariationGrid(minLat, minLng, step, rows, cols, values);
+  }
+
+  public int getMinLat() {
+    return minLat;
+  }
+
+  public int getMinLng() {
+    return minLng;
+  }
+
+  public int getStep() {
+    return step;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  public int getCols() {
+    return cols;
+  }
+
+  /**
+   * Checks if {@code location} is covered by this grid.
+   */
+  public boolean contains(final LatLng location) {
+    final long dLat = (long) location.lat - minLat;
+    final long dLng = (long) location.lng - minLng;
+    return dLat >= 0 && dLat <= (long) (rows - 1) * step &&
+        dLng >= 0 && dLng <= (long) (cols - 1) * step;
+  }
+
+  /**
+   * Returns the magnetic variation at {@code location}, interpolated from the four surrounding
+   * nodes.
+   *
+   * @return Magnetic variation (degrees), West positive, East negative.  {@code NaN} if
+   * {@code location} is not covered (see {@link #contains}).
+   */
+  public double getMagneticVariation(final LatLng location) {
+    if (!contains(location)) {
+      return Double.NaN;
+    }
+    final double y = ((double) location.lat - minLat) / step;
+    final double x = ((double) location.lng - minLng) / step;
+    final int row = Math.min((int) y, rows - 2);
+    final int col = Math.min((int) x, cols - 2);
+    final double fy = y - row;
+    final double fx = x - col;
+    final int southWest = row * cols + col;
+    final int northWest = southWest + cols;
+    final double south = values[southWest] + fx * (values[southWest + 1] - values[southWest]);
+    final double north = values[northWest] + fx * (values[northWest + 1] - values[northWest]);
+    return (south + fy * (north - south)) * VALUE_TO_DEGREES;
+  }
+
+  /**
+   * Encodes variations for storage in the database.
+   */
+  public byte[] encodeValues() {
+    final byte[] encoded = new byte[values.length * 2];
+    for (int i = 0; i < values.length; ++i) {
+      encoded[i * 2] = (byte) (values[i] >>> 8);
+      encoded[i * 2 + 1] = (byte) values[i];
+    }
+    return encoded;
+  }
+
+  private static short[] decodeValues(final byte[] encoded) {
+    final short[] values = new short[encoded.length / 2];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = (short) ((encoded[i * 2] << 8) | (encoded[i * 2 + 1] & 0xff));
+    }
+    return values;
+  }
+}
@@ -71,6 +71,12 @@ public class NavigationUtil {
    */
   private static final long SESSION_TIME_MILLIS = System.currentTimeMillis();
 
+  /**
+   * Precomputed magnetic variation, {@code null} if none.  See
+   * {@link #setMagneticVariationGrid}.
+   */
+  private static volatile MagneticVariationGrid magneticVariationGrid;
+
   /**
    * Utility class: default and only constructor is private.
    */
@@ -268,8 +274,14 @@ public class NavigationUtil {
    * @param height Height (meters)
    * 
    * @return Magnetic variation (degrees). West positive, East negative.
+   * @see #setMagneticVariationGrid
    */
   public static double getMagneticVariation(final LatLng position, final double height) {
+    final MagneticVariationGrid grid = magneticVariationGrid;
+    if (grid != null && grid.contains(position)) {
+      return grid.getMagneticVariation(position);
+    }
+
     final double latRad = position.latRad();
     final double lngRad = position.lngRad();
     final double heightKm = height / 1000.0;
@@ -279,6 +291,16 @@ public class NavigationUtil {
   }
 
 
+  /**
+   * Sets the grid used by {@link #getMagneticVariation} to look up the variation of the positions
+   * it covers, instead of evaluating the magnetic field model.
+   *
+   * @param grid Precomputed magnetic variation, {@code null} to always evaluate the model.
+   */
+  public static void setMagneticVariationGrid(final MagneticVariationGrid grid) {
+    magneticVariationGrid = grid;
+  }
+
   /**
    * Returns the trigonometric haversine of an angle.
    * <p>
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.flightmap.common.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility class for message digests, as used to check downloaded files.
+ */
+public class DigestUtils {
+  private final static int DEFAULT_BUFFER_SIZE = 10240;
+  private final static char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /**
+   *  Utility class: default and only constructor is private.
+   */
+  private DigestUtils() { }
+
+  /**
+   * Returns a new SHA-256 digest.
+   */
+  public static MessageDigest newSha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException nsaEx) {
+      throw new RuntimeException("SHA-256 is required by the Java platform.", nsaEx);
+    }
+  }
+
+  /**
+   * Updates {@code digest} with the contents of {@code file}.
+   */
+  public static void update(final MessageDigest digest, final File file) throws IOException {
+    final InputStream in = new FileInputStream(file);
+    try {
+      final byte[] buf = new byte[DEFAULT_BUFFER_SIZE];
+      int count;
+      while ((count = in.read(buf)) != -1) {
+        digest.update(buf, 0, count);
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Returns the SHA-256 digest of {@code file}, in lower case hexadecimal.
+   */
+  public static String getSha256(final File file) throws IOException {
+    final MessageDigest digest = newSha256();
+    update(digest, file);
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Formats {@code bytes} in lower case hexadecimal, as done by sha256sum.
+   */
+  public static String toHex(final byte[] bytes) {
+    final char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; ++i) {
+      hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+      hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+    }
+    return new String(hex);
+  }
+}
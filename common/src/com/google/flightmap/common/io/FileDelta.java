@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.flightmap.common.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>Block-level binary delta between two versions of a file.</p>
+ *
+ * <p>The new file is cut in blocks of fixed size.  Each block found anywhere in the old file (at
+ * a block boundary) is encoded as a reference to the old block, other blocks are encoded
+ * literally.  With a block size matching the database page size, unchanged pages cost a few
+ * bytes each, even if they moved.</p>
+ *
+ * <p>A delta is a gzipped stream holding the block size, the lengths and SHA-256 digests of both
+ * files, then a sequence of operations: copy a run of old blocks, or insert literal data.  The
+ * digests let {@link #apply} check both its input and its output.</p>
+ */
+public class FileDelta {
+  public final static int DEFAULT_BLOCK_SIZE = 4096;
+
+  private final static int MAGIC = 0x464d4454;  // "FMDT"
+  private final static int VERSION = 1;
+
+  // Operations
+  private final static int END = 0;
+  private final static int COPY = 1;
+  private final static int DATA = 2;
+
+  private final static int DIGEST_LENGTH = 32;
+
+  /**
+   *  Utility class: default and only constructor is private.
+   */
+  private FileDelta() { }
+
+  /**
+   * Writes to {@code out} the delta from {@code oldFile} to {@code newFile}.
+   *
+   * @param blockSize Block size, in bytes (e.g. the database page size)
+   */
+  public static void create(final File oldFile, final File newFile, final int blockSize,
+      final OutputStream out) throws IOException {
+    final Map<String, Integer> oldBlocks = new HashMap<String, Integer>();
+    final byte[] oldDigest = indexBlocks(oldFile, blockSize, oldBlocks);
+    final byte[] newDigest = getSha256(newFile);
+
+    final DataOutputStream delta =
+        new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)));
+    delta.writeInt(MAGIC);
+    delta.writeInt(VERSION);
+    delta.writeInt(blockSize);
+    delta.writeLong(oldFile.length());
+    delta.writeLong(newFile.length());
+    delta.write(oldDigest);
+    delta.write(newDigest);
+
+    final MessageDigest blockDigest = DigestUtils.newSha256();
+    final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    int copyStart = -1;
+    int copyCount = 0;
+    final DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(newFile)));
+    try {
+      final byte[] block = new byte[blockSize];
+      int length;
+      while ((length = readBlock(in, block)) > 0) {
+        final Integer oldBlock = length == blockSize ?
+            oldBlocks.get(DigestUtils.toHex(blockDigest.digest(block))) : null;
+        if (oldBlock != null && copyCount > 0 && oldBlock == copyStart + copyCount) {
+          ++copyCount;
+          continue;
+        }
+        if (copyCount > 0) {
+          writeCopy(delta, copyStart, copyCount);
+          copyCount = 0;
+        }
+        if (oldBlock != null) {
+          writeData(delta, data);
+          copyStart = oldBlock;
+          copyCount = 1;
+        } else {
+          data.write(block, 0, length);
+        }
+      }
+    } finally {
+      in.close();
+    }
+    if (copyCount > 0) {
+      writeCopy(delta, copyStart, copyCount);
+    }
+    writeData(delta, data);
+    delta.writeByte(END);
+    delta.close();
+  }
+
+  /**
+   * Rebuilds {@code newFile} from {@code oldFile} and {@code deltaFile} (see {@link #create}).
+   * {@code oldFile} is left untouched.  Deletes {@code newFile} on failure.
+   *
+   * @throws IOException {@code oldFile} is not the base of the delta, the delta is corrupt, or
+   *         the result does not match the digest recorded in the delta.
+   */
+  public static void apply(final File oldFile, final File deltaFile, final File newFile)
+      throws IOException {
+    boolean success = false;
+    final DataInputStream delta = new DataInputStream(
+        new BufferedInputStream(new GZIPInputStream(new FileInputStream(deltaFile))));
+    try {
+      if (delta.readInt() != MAGIC || delta.readInt() != VERSION) {
+        throw new IOException("Not a supported delta: " + deltaFile.getPath());
+      }
+      final int blockSize = delta.readInt();
+      final long oldLength = delta.readLong();
+      final long newLength = delta.readLong();
+      final byte[] oldDigest = new byte[DIGEST_LENGTH];
+      final byte[] newDigest = new byte[DIGEST_LENGTH];
+      delta.readFully(oldDigest);
+      delta.readFully(newDigest);
+      if (oldFile.length() != oldLength || !Arrays.equals(oldDigest, getSha256(oldFile))) {
+        throw new IOException("Delta does not apply to " + oldFile.getPath());
+      }
+
+      final MessageDigest digest = DigestUtils.newSha256();
+      final RandomAccessFile old = new RandomAccessFile(oldFile, "r");
+      final OutputStream out = new BufferedOutputStream(new FileOutputStream(newFile));
+      try {
+        final byte[] buf = new byte[blockSize];
+        int operation;
+        while ((operation = delta.readUnsignedByte()) != END) {
+          if (operation == COPY) {
+            final int start = delta.readInt();
+            final int count = delta.readInt();
+            old.seek((long) start * blockSize);
+            for (int i = 0; i < count; ++i) {
+              old.readFully(buf);
+              digest.update(buf);
+              out.write(buf);
+            }
+          } else if (operation == DATA) {
+            int remaining = delta.readInt();
+            while (remaining > 0) {
+              final int length = Math.min(remaining, buf.length);
+              delta.readFully(buf, 0, length);
+              digest.update(buf, 0, length);
+              out.write(buf, 0, length);
+              remaining -= length;
+            }
+          } else {
+            throw new IOException("Corrupt delta: " + deltaFile.getPath());
+          }
+        }
+      } finally {
+        try {
+          old.close();
+        } finally {
+          out.close();
+        }
+      }
+      if (newFile.length() != newLength || !Arrays.equals(newDigest, digest.digest())) {
+        throw new IOException("Delta result does not match: " + newFile.getPath());
+      }
+      success = true;
+    } catch (EOFException eofEx) {
+      throw new IOException("Truncated delta: " + deltaFile.getPath());
+    } finally {
+      delta.close();
+      if (!success) {
+        newFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Maps the digests of the full blocks of {@code file} to their index.
+   *
+   * @return Digest of {@code file}
+   */
+  private static byte[] indexBlocks(final File file, final int blockSize,
+      final Map<String, Integer> blocks) throws IOException {
+    final MessageDigest fileDigest = DigestUtils.newSha256();
+    final MessageDigest blockDigest = DigestUtils.newSha256();
+    final DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      final byte[] block = new byte[blockSize];
+      int length;
+      int index = 0;
+      while ((length = readBlock(in, block)) > 0) {
+        fileDigest.update(block, 0, length);
+        if (length == blockSize) {
+          final String key = DigestUtils.toHex(blockDigest.digest(block));
+          if (!blocks.containsKey(key)) {
+            blocks.put(key, index);
+          }
+        }
+        ++index;
+      }
+    } finally {
+      in.close();
+    }
+    return fileDigest.digest();
+  }
+
+  private static byte[] getSha256(final File file) throws IOException {
+    final MessageDigest digest = DigestUtils.newSha256();
+    DigestUtils.update(digest, file);
+    return digest.digest();
+  }
+
+  /**
+   * Reads up to a full block from {@code in}.
+   *
+   * @return Number of bytes read, less than the block size only at the end of {@code in}
+   */
+  private static int readBlock(final DataInputStream in, final byte[] block) throws IOException {
+    int length = 0;
+    int count;
+    while (length < block.length && (count = in.read(block, length, block.length - length)) > 0) {
+      length += count;
+    }
+    return length;
+  }
+
+  private static void writeCopy(final DataOutputStream delta, final int start, final int count)
+      throws IOException {
+    delta.writeByte(COPY);
+    delta.writeInt(start);
+    delta.writeInt(count);
+  }
+
+  /**
+   * Writes pending literal {@code data}, if any, and clears it.
+   */
+  private static void writeData(final DataOutputStream delta, final ByteArrayOutputStream data)
+      throws IOException {
+    if (data.size() == 0) {
+      return;
+    }
+    delta.writeByte(DATA);
+    delta.writeInt(data.size());
+    data.writeTo(delta);
+    data.reset();
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count of events, such as cache hits.
+ */
+public class Counter {
+  private final AtomicLong count = new AtomicLong();
+
+  Counter() { }
+
+  /**
+   * Counts one more event.
+   */
+  public void increment() {
+    count.incrementAndGet();
+  }
+
+  /**
+   * Counts {@code delta} more events.
+   */
+  public void add(final long delta) {
+    count.addAndGet(delta);
+  }
+
+  /**
+   * Returns the number of events counted.
+   */
+  public long get() {
+    return count.get();
+  }
+}
@@ -1,5 +1,5 @@
-/* 
- * Copyright (C) 2010 Google Inc.
+/*
+ * Copyright (C) 2011 Google Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -14,25 +14,27 @@
  * limitations under the License.
  */
 
-package com.google.flightmap.parsing.esri.data;
+package com.google.flightmap.common.metrics;
 
-public class Point {
-  public final double x;
-  public final double y;
+/**
+ * Latest value of a quantity, such as the number of cached airports.
+ */
+public class Gauge {
+  private volatile long value;
+
+  Gauge() { }
 
-  public Point(final double x, final double y) {
-    this.x = x;
-    this.y = y;
+  /**
+   * Sets the current value.
+   */
+  public void set(final long value) {
+    this.value = value;
   }
 
-  @Override
-  public String toString() {
-    final StringBuilder sb = new StringBuilder();
-    sb.append("Point -");
-    sb.append(" x: ");
-    sb.append(x);
-    sb.append(" y: ");
-    sb.append(y);
-    return sb.toString();
+  /**
+   * Returns the latest value set.
+   */
+  public long get() {
+    return value;
   }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of durations, such as query latencies, over fixed buckets.
+ * <p>
+ * Recording a duration does not allocate memory.
+ */
+public class LatencyHistogram {
+  /**
+   * Upper bounds of the buckets, in microseconds.  Durations above the last bound are counted in
+   * an extra, last bucket.
+   */
+  private final static long[] BUCKET_BOUNDS_MICROS = {
+      100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000, 100000, 200000, 500000, 1000000,
+      2000000, 5000000};
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MICROS.length + 1);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  LatencyHistogram() { }
+
+  /**
+   * Returns the start time of a duration to record with {@link #recordSince}.
+   */
+  public static long start() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Records the duration from {@code startNanos} (returned by {@link #start}) to now.
+   */
+  public void recordSince(final long startNanos) {
+    recordMicros((System.nanoTime() - startNanos) / 1000);
+  }
+
+  /**
+   * Records a duration, in microseconds.
+   */
+  public void recordMicros(final long micros) {
+    int bucket = 0;
+    while (bucket < BUCKET_BOUNDS_MICROS.length && micros > BUCKET_BOUNDS_MICROS[bucket]) {
+      ++bucket;
+    }
+    buckets.incrementAndGet(bucket);
+    count.incrementAndGet();
+    totalMicros.addAndGet(micros);
+    long max;
+    while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+      // Another thread updated the maximum: try again.
+    }
+  }
+
+  /**
+   * Returns a copy of the current distribution.
+   */
+  public Snapshot getSnapshot() {
+    final long[] bucketCounts = new long[buckets.length()];
+    for (int i = 0; i < bucketCounts.length; ++i) {
+      bucketCounts[i] = buckets.get(i);
+    }
+    return new Snapshot(bucketCounts, count.get(), totalMicros.get(), maxMicros.get());
+  }
+
+  /**
+   * Distribution of the durations recorded until {@link LatencyHistogram#getSnapshot} was called.
+   */
+  public static class Snapshot {
+    private final long[] bucketCounts;
+    public final long count;
+    public final long totalMicros;
+    public final long maxMicros;
+
+    Snapshot(final long[] bucketCounts, final long count, final long totalMicros,
+        final long maxMicros) {
+      this.bucketCounts = bucketCounts;
+      this.count = count;
+      this.totalMicros = totalMicros;
+      this.maxMicros = maxMicros;
+    }
+
+    /**
+     * Returns the average duration, in microseconds, or 0 if none was recorded.
+     */
+    public long getAverageMicros() {
+      return count == 0 ? 0 : totalMicros / count;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of durations, in microseconds: the bound of
+     * the bucket holding that percentile, or the maximum duration for the last bucket.
+     *
+     * @param percentile Percentile, between 0 and 100
+     */
+    public long getPercentileMicros(final double percentile) {
+      final long rank = (long) Math.ceil(count * percentile / 100);
+      long seen = 0;
+      for (int i = 0; i < BUCKET_BOUNDS_MICROS.length; ++i) {
+        seen += bucketCounts[i];
+        if (seen >= rank && seen > 0) {
+          return Math.min(BUCKET_BOUNDS_MICROS[i], maxMicros);
+        }
+      }
+      return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.US, "count=%d avg=%.1fms p50<=%.1fms p90<=%.1fms max=%.1fms",
+          count, getAverageMicros() / 1000.0, getPercentileMicros(50) / 1000.0,
+          getPercentileMicros(90) / 1000.0, maxMicros / 1000.0);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Named counters, gauges and latency histograms.
+ * <p>
+ * Metrics are created on first use, and kept for the life of the registry.  Instrumented code
+ * should look its metrics up once, and keep them: updating a metric is cheap, and does not
+ * allocate memory.  {@link #getSnapshot} copies all values, e.g. to log them or show them.
+ */
+public class MetricsRegistry {
+  private final static MetricsRegistry DEFAULT = new MetricsRegistry();
+
+  private final ConcurrentMap<String, Counter> counters =
+      new ConcurrentHashMap<String, Counter>();
+  private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+  private final ConcurrentMap<String, LatencyHistogram> histograms =
+      new ConcurrentHashMap<String, LatencyHistogram>();
+
+  /**
+   * Returns the registry shared by the application.
+   */
+  public static MetricsRegistry getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Returns the counter named {@code name}, creating it if needed.
+   */
+  public Counter getCounter(final String name) {
+    Counter counter = counters.get(name);
+    if (counter == null) {
+      final Counter newCounter = new Counter();
+      counter = counters.putIfAbsent(name, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    return counter;
+  }
+
+  /**
+   * Returns the gauge named {@code name}, creating it if needed.
+   */
+  public Gauge getGauge(final String name) {
+    Gauge gauge = gauges.get(name);
+    if (gauge == null) {
+      final Gauge newGauge = new Gauge();
+      gauge = gauges.putIfAbsent(name, newGauge);
+      if (gauge == null) {
+        gauge = newGauge;
+      }
+    }
+    return gauge;
+  }
+
+  /**
+   * Returns the latency histogram named {@code name}, creating it if needed.
+   */
+  public LatencyHistogram getHistogram(final String name) {
+    LatencyHistogram histogram = histograms.get(name);
+    if (histogram == null) {
+      final LatencyHistogram newHistogram = new LatencyHistogram();
+      histogram = histograms.putIfAbsent(name, newHistogram);
+      if (histogram == null) {
+        histogram = newHistogram;
+      }
+    }
+    return histogram;
+  }
+
+  /**
+   * Returns the current values of all metrics.
+   */
+  public MetricsSnapshot getSnapshot() {
+    final SortedMap<String, Long> counterValues = new TreeMap<String, Long>();
+    for (Map.Entry<String, Counter> entry: counters.entrySet()) {
+      counterValues.put(entry.getKey(), entry.getValue().get());
+    }
+    final SortedMap<String, Long> gaugeValues = new TreeMap<String, Long>();
+    for (Map.Entry<String, Gauge> entry: gauges.entrySet()) {
+      gaugeValues.put(entry.getKey(), entry.getValue().get());
+    }
+    final SortedMap<String, LatencyHistogram.Snapshot> histogramValues =
+        new TreeMap<String, LatencyHistogram.Snapshot>();
+    for (Map.Entry<String, LatencyHistogram> entry: histograms.entrySet()) {
+      histogramValues.put(entry.getKey(), entry.getValue().getSnapshot());
+    }
+    return new MetricsSnapshot(counterValues, gaugeValues, histogramValues);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.metrics;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Values of the metrics of a {@link MetricsRegistry} at one point in time, by name.
+ */
+public class MetricsSnapshot {
+  private final SortedMap<String, Long> counters;
+  private final SortedMap<String, Long> gauges;
+  private final SortedMap<String, LatencyHistogram.Snapshot> histograms;
+
+  MetricsSnapshot(final SortedMap<String, Long> counters, final SortedMap<String, Long> gauges,
+      final SortedMap<String, LatencyHistogram.Snapshot> histograms) {
+    this.counters = Collections.unmodifiableSortedMap(counters);
+    this.gauges = Collections.unmodifiableSortedMap(gauges);
+    this.histograms = Collections.unmodifiableSortedMap(histograms);
+  }
+
+  public SortedMap<String, Long> getCounters() {
+    return counters;
+  }
+
+  public SortedMap<String, Long> getGauges() {
+    return gauges;
+  }
+
+  public SortedMap<String, LatencyHistogram.Snapshot> getHistograms() {
+    return histograms;
+  }
+
+  /**
+   * Writes one line per metric, in order of name.
+   */
+  public void write(final PrintWriter out) {
+    for (Map.Entry<String, Long> entry: counters.entrySet()) {
+      out.println(entry.getKey() + ": " + entry.getValue());
+    }
+    for (Map.Entry<String, Long> entry: gauges.entrySet()) {
+      out.println(entry.getKey() + ": " + entry.getValue());
+    }
+    for (Map.Entry<String, LatencyHistogram.Snapshot> entry: histograms.entrySet()) {
+      out.println(entry.getKey() + ": " + entry.getValue());
+    }
+    out.flush();
+  }
+
+  /**
+   * Returns the lines written by {@link #write}.
+   */
+  @Override
+  public String toString() {
+    final StringWriter text = new StringWriter();
+    write(new PrintWriter(text));
+    return text.toString();
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.metrics;
+
+/**
+ * Latency ({@code <name>.latency}) and number of rows returned ({@code <name>.rows}) of a query
+ * method.
+ */
+public class QueryMetrics {
+  private final LatencyHistogram latency;
+  private final Counter rows;
+
+  public QueryMetrics(final MetricsRegistry registry, final String name) {
+    latency = registry.getHistogram(name + ".latency");
+    rows = registry.getCounter(name + ".rows");
+  }
+
+  /**
+   * Records a call started at {@code startNanos} (see {@link LatencyHistogram#start}), that
+   * returned {@code rowCount} rows.
+   */
+  public void record(final long startNanos, final int rowCount) {
+    latency.recordSince(startNanos);
+    rows.add(rowCount);
+  }
+
+  /**
+   * Records a call started at {@code startNanos}, that returned a single value.
+   */
+  public void record(final long startNanos) {
+    latency.recordSince(startNanos);
+  }
+}
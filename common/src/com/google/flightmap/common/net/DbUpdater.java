@@ -52,12 +52,18 @@ public class DbUpdater extends FileUpdater {
   /**
    * Checks if the database needs to be updated. This is determined based on
    * the database expiration time and schema version (available as metadata).
+   * An expired database is not updated if it is already the latest one
+   * available (see {@link FileUpdater#isUpdateNeeded}).
    */
   @Override
   public synchronized boolean isUpdateNeeded() throws IOException {
-    if (dbAdapter == null) {
-      return super.isUpdateNeeded();
-    }
+    return (dbAdapter == null || isDbOutdated()) && super.isUpdateNeeded();
+  }
+
+  /**
+   * Checks the database expiration time and schema version.
+   */
+  private boolean isDbOutdated() {
     boolean openedDbAdapter = false;
     try {
       dbAdapter.open();
@@ -19,15 +19,20 @@ package com.google.flightmap.common.net;
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.net.HttpURLConnection;
 import java.net.URLConnection;
 import java.net.URL;
+import java.security.MessageDigest;
 import java.util.zip.GZIPInputStream;
 
 import com.google.flightmap.common.ProgressListener;
+import com.google.flightmap.common.io.DigestUtils;
 import com.google.flightmap.common.io.StreamUtils;
 
 /**
@@ -36,6 +41,9 @@ import com.google.flightmap.common.io.StreamUtils;
 public class FileDownload {
   static final int BUFFER_SIZE = 10240;
 
+  /** HTTP status code of a {@code Range} request beyond the end of the content. */
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
   private FileDownload() {
   }
 
@@ -108,6 +116,101 @@ public class FileDownload {
     }
   }
 
+  /**
+   * <p>Downloads {@code url} to {@code destination} without altering the data, resuming after
+   * the bytes {@code destination} already holds.</p>
+   *
+   * <p>Resuming relies on HTTP {@code Range} requests: the download starts over if the server
+   * ignores them.  Unlike other methods of this class, {@code destination} is kept on failure so
+   * that the next attempt can resume.</p>
+   *
+   * @param listener Optional progress listener, notified with the percentage of the whole file.
+   * @throws IOException Transfer failed, or ended before the announced content length.
+   */
+  public static void downloadResume(final URL url, final File destination,
+      final ProgressListener listener) throws IOException {
+    downloadResume(url, destination, listener, null);
+  }
+
+  /**
+   * <p>Downloads {@code url} to {@code destination} like {@link #downloadResume(URL, File,
+   * ProgressListener)}, and computes the digest of the whole file while the data streams in.</p>
+   *
+   * @param digest Optional digest, reset and updated with the content of {@code destination}.
+   */
+  public static void downloadResume(final URL url, final File destination,
+      final ProgressListener listener, final MessageDigest digest) throws IOException {
+    if (digest != null) {
+      digest.reset();
+    }
+    final long existingLength = destination.exists() ? destination.length() : 0;
+    final URLConnection urlConnection = url.openConnection();
+    if (existingLength > 0) {
+      urlConnection.setRequestProperty("Range", "bytes=" + existingLength + "-");
+    }
+
+    boolean append = false;
+    if (existingLength > 0 && urlConnection instanceof HttpURLConnection) {
+      final int responseCode = ((HttpURLConnection) urlConnection).getResponseCode();
+      if (responseCode == HTTP_RANGE_NOT_SATISFIABLE) {
+        // Nothing left to download: callers validate the content.
+        ((HttpURLConnection) urlConnection).disconnect();
+        if (digest != null) {
+          DigestUtils.update(digest, destination);
+        }
+        return;
+      }
+      if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+        final String contentRange = urlConnection.getHeaderField("Content-Range");
+        if (contentRange == null || !contentRange.startsWith("bytes " + existingLength + "-")) {
+          ((HttpURLConnection) urlConnection).disconnect();
+          destination.delete();
+          throw new IOException("Unexpected content range for " + url + ": " + contentRange);
+        }
+        append = true;
+        if (digest != null) {
+          DigestUtils.update(digest, destination);
+        }
+      }
+    }
+
+    final InputStream in = new BufferedInputStream(urlConnection.getInputStream(), BUFFER_SIZE);
+    final int contentLength = urlConnection.getContentLength();
+    final long startLength = append ? existingLength : 0;
+    final long totalLength = contentLength < 0 ? -1 : startLength + contentLength;
+    final OutputStream out = new FileOutputStream(destination, append);
+    try {
+      final byte buf[] = new byte[BUFFER_SIZE];
+      long length = startLength;
+      int lastNotifiedPercent = -1;
+      int count;
+      while ((count = in.read(buf)) != -1) {
+        out.write(buf, 0, count);
+        if (digest != null) {
+          digest.update(buf, 0, count);
+        }
+        length += count;
+        if (listener != null && totalLength > 0) {
+          final int percent = (int)(100.0 * length / totalLength);
+          if (percent != lastNotifiedPercent) {
+            listener.hasProgressed(percent);
+            lastNotifiedPercent = percent;
+          }
+        }
+      }
+      if (totalLength >= 0 && length < totalLength) {
+        throw new IOException(
+            "Premature end of " + url + ": " + length + " of " + totalLength + " bytes");
+      }
+    } finally {
+      try {
+        in.close();
+      } finally {
+        out.close();
+      }
+    }
+  }
+
   /**
    * Gets contents of {@code url} as {@code String}.
    */
@@ -16,26 +16,41 @@
 
 package com.google.flightmap.common.net;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.StringReader;
 import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 import com.google.flightmap.common.ProgressListener;
+import com.google.flightmap.common.io.DigestUtils;
+import com.google.flightmap.common.io.FileDelta;
 import com.google.flightmap.common.io.StreamUtils;
 
 /**
@@ -54,26 +69,64 @@ import com.google.flightmap.common.io.StreamUtils;
  * <p>Besides compression, splitting files has the advantage of reducing unecessary
  * retransmissions: if a transmission failure occurs, the following attempts
  * will not download part files that were succesfully downloaded previously.</p>
+ *
+ * <p>Parts are downloaded concurrently (see {@link #setMaxConcurrentDownloads}), and each part
+ * is retried on failure (see {@link #setMaxAttempts}).  Partially downloaded parts are kept in
+ * the working directory and resumed with HTTP {@code Range} requests, both within an update and
+ * across updates.</p>
+ *
+ * <p>A manifest with a ".sha256" suffix, in the format of sha256sum, can list the SHA-256 digests
+ * of the parts and of the whole file.  Digests are computed while the data is downloaded and
+ * assembled.  A corrupt part is downloaded again on its own.</p>
+ *
+ * <p>If the local file is up to date with a previous version, the remote file can be obtained
+ * from a {@link FileDelta} against that version.  Deltas are named after the remote file, with a
+ * ".delta." suffix followed by the contents of the previous version's info file.  The delta is
+ * applied to a copy of the local file; the full file is downloaded if the delta is missing or
+ * does not yield the expected file.</p>
  */
 public class FileUpdater {
   /** Suffix of info files for both local and remote files. */
   private static final String INFO_SUFFIX = ".info";
   private static final String PARTS_SUFFIX = ".parts";
+  private static final String GZ_SUFFIX = ".gz";
+  private static final String MANIFEST_SUFFIX = ".sha256";
+  private static final String DELTA_SUFFIX = ".delta.";
+
+  private static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 3;
+  private static final int DEFAULT_MAX_ATTEMPTS = 3;
+  private static final long DEFAULT_RETRY_DELAY = 1000;
+
+  /** Period at which the assembly of parts checks for cancellation, in milliseconds. */
+  private static final long CANCELLATION_CHECK_PERIOD = 200;
 
   private final File localFile;
   private final File localInfoFile;
   private final URL remoteUrl;
   private final URL remoteInfoUrl;
   private final URL remotePartsUrl;
+  private final URL remoteManifestUrl;
   private final File workingDir;
 
+  private int maxConcurrentDownloads = DEFAULT_MAX_CONCURRENT_DOWNLOADS;
+  private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+  private long retryDelay = DEFAULT_RETRY_DELAY;
+
   private LinkedHashMap<String, Integer> parts;
   private int totalBytes;
+  /** Expected SHA-256 digests by file name, {@code null} if no manifest is published. */
+  private Map<String, String> digests;
+  private volatile boolean cancelled;
+
+  /**
+   * Guards progress data, updated from part download threads while {@link #update} holds the
+   * updater lock.
+   */
+  private final Object progressLock = new Object();
   private int bytesDownloaded;
   private int lastPercentNotified;
-  private Boolean cancelled = Boolean.FALSE;
 
-  private List<ProgressListener> listeners = new LinkedList<ProgressListener>();
+  private final List<ProgressListener> listeners = new CopyOnWriteArrayList<ProgressListener>();
 
   /**
    * Initializes updater with local resource {@code localFile} and remote
@@ -91,6 +144,7 @@ public class FileUpdater {
     this.remoteUrl = remoteUrl;
     remoteInfoUrl = new URL(remoteUrl.toString() + INFO_SUFFIX);
     remotePartsUrl = new URL(remoteUrl.toString() + PARTS_SUFFIX);
+    remoteManifestUrl = new URL(remoteUrl.toString() + MANIFEST_SUFFIX);
     this.workingDir = workingDir;
   }
 
@@ -133,10 +187,41 @@ public class FileUpdater {
   /**
    * Adds a listener to notify of progress.
    */
-  public synchronized void addProgressListener(ProgressListener listener) {
+  public void addProgressListener(ProgressListener listener) {
     listeners.add(listener);
   }
 
+  /**
+   * Sets the maximum number of parts downloaded at the same time.  Must be called before {@link
+   * #update}.
+   */
+  public void setMaxConcurrentDownloads(final int maxConcurrentDownloads) {
+    if (maxConcurrentDownloads < 1) {
+      throw new IllegalArgumentException(
+          "Invalid number of concurrent downloads: " + maxConcurrentDownloads);
+    }
+    this.maxConcurrentDownloads = maxConcurrentDownloads;
+  }
+
+  /**
+   * Sets the maximum number of download attempts per part.  Must be called before {@link
+   * #update}.
+   */
+  public void setMaxAttempts(final int maxAttempts) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("Invalid number of attempts: " + maxAttempts);
+    }
+    this.maxAttempts = maxAttempts;
+  }
+
+  /**
+   * Sets the delay before the first retry of a part, in milliseconds.  The delay grows linearly
+   * with the number of failed attempts.  Must be called before {@link #update}.
+   */
+  public void setRetryDelay(final long retryDelay) {
+    this.retryDelay = retryDelay;
+  }
+
   /**
    * Forces an update of the local file (regardless of whether it is needed).
    */
@@ -159,8 +244,17 @@ public class FileUpdater {
 
     // See if parts file is available.
     final File workingPartsFile = new File(workingDir, localFile.getName() + PARTS_SUFFIX);
-    if (FileDownload.tryDownload(remotePartsUrl, workingPartsFile, null)) {
+    if (tryDeltaUpdate(workingFile)) {
+      // Latest file rebuilt from the local file.
+    } else if (FileDownload.tryDownload(remotePartsUrl, workingPartsFile, null)) {
       parsePartsFile(workingPartsFile);
+      final File workingManifestFile =
+          new File(workingDir, localFile.getName() + MANIFEST_SUFFIX);
+      if (FileDownload.tryDownload(remoteManifestUrl, workingManifestFile, null)) {
+        parseManifestFile(workingManifestFile);
+      } else {
+        digests = null;
+      }
       downloadInParts(workingFile);
     } else {
       FileDownload.download(remoteUrl, workingFile, new ProgressListener() {
@@ -176,6 +270,10 @@ public class FileUpdater {
       });
     }
 
+    if (isCancelled()) {
+      return;
+    }
+
     try {
       renameFile(workingFile, localFile);
       renameFile(workingInfoFile, localInfoFile);
@@ -187,6 +285,47 @@ public class FileUpdater {
     }
   }
 
+  /**
+   * <p>Attempts to rebuild the latest file in {@code workingFile} from the local file and a delta
+   * against the local version (see class description).</p>
+   *
+   * <p>The local file is left untouched, and {@code workingFile} deleted on failure.</p>
+   *
+   * @return true/false on success/failure.
+   */
+  private boolean tryDeltaUpdate(final File workingFile) {
+    if (!localFile.exists() || !localInfoFile.exists()) {
+      return false;
+    }
+    final File workingDeltaFile = new File(workingDir, localFile.getName() + ".delta");
+    try {
+      final String localInfo = StreamUtils.read(localInfoFile).trim();
+      final URL deltaUrl =
+          new URL(remoteUrl.toString() + DELTA_SUFFIX + URLEncoder.encode(localInfo, "UTF-8"));
+      if (!FileDownload.tryDownload(deltaUrl, workingDeltaFile, new ProgressListener() {
+        @Override
+        public void hasProgressed(int percent) {
+          notifyUpdateProgress(percent);
+        }
+
+        @Override
+        public void hasCompleted(boolean success) {
+          // Completion is notified by update()
+        }
+      })) {
+        return false;
+      }
+      FileDelta.apply(localFile, workingDeltaFile, workingFile);
+      return true;
+    } catch (IOException ioEx) {
+      ioEx.printStackTrace();
+      workingFile.delete();
+      return false;
+    } finally {
+      workingDeltaFile.delete();
+    }
+  }
+
   /**
    * Removes files relaed to the download of parts files.
    */
@@ -199,30 +338,58 @@ public class FileUpdater {
 
   /**
    * <p>Download parts and combine them in {@code file}.</p>
-   * <p>Deletes the later on failure but leaves succesfully downloaded partial files intact.</p>
+   * <p>Parts are downloaded concurrently, and appended to {@code file} in order as soon as
+   * available.  Deletes {@code file} on failure but leaves succesfully downloaded and partial
+   * part files intact.</p>
+   * <p>Parts are appended with {@link FileChannel#transferTo}, and read through a memory mapping
+   * to compute the digest of {@code file}.</p>
    */
   private void downloadInParts(final File file) throws IOException {
-    final byte[] buf = new byte[FileDownload.BUFFER_SIZE];
     file.delete();  // Clean slate: removes any previous file.
-    final OutputStream out =
-        new BufferedOutputStream(new FileOutputStream(file), FileDownload.BUFFER_SIZE);
 
-    try {
-      for (Map.Entry<String, Integer> partEntry: parts.entrySet()) {
-        if (isCancelled()) return;
-        final String partFilename = partEntry.getKey();
-        final int partFileSize = partEntry.getValue().intValue();
-
-        final URL remotePartUrl = new URL(remoteUrl, partFilename);
-        final File localPartFile = new File(workingDir, partFilename);
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(Math.max(1, Math.min(maxConcurrentDownloads, parts.size())));
+    final List<Future<File>> downloads = new ArrayList<Future<File>>(parts.size());
+    for (Map.Entry<String, Integer> partEntry: parts.entrySet()) {
+      final String partFilename = partEntry.getKey();
+      final int partFileSize = partEntry.getValue().intValue();
+      final URL remotePartUrl = new URL(remoteUrl, partFilename);
+      final File localPartFile = new File(workingDir, partFilename);
 
-        downloadPart(remotePartUrl, localPartFile, partFileSize);
+      downloads.add(executor.submit(new Callable<File>() {
+        @Override
+        public File call() throws IOException, InterruptedException {
+          downloadPartWithRetries(remotePartUrl, localPartFile, partFileSize);
+          return localPartFile;
+        }
+      }));
+    }
+    executor.shutdown();
 
-        final InputStream in =
-            new BufferedInputStream(new FileInputStream(localPartFile), FileDownload.BUFFER_SIZE);
+    boolean success = false;
+    final String expectedDigest = digests == null ? null : digests.get(file.getName());
+    final MessageDigest digest = expectedDigest == null ? null : DigestUtils.newSha256();
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      final FileChannel outChannel = out.getChannel();
+      for (Future<File> download: downloads) {
+        final File localPartFile = waitForPart(download);
+        if (localPartFile == null) {
+          return;  // Cancelled
+        }
 
+        final FileInputStream in = new FileInputStream(localPartFile);
         try {
-          StreamUtils.pipe(in, out, buf);
+          final FileChannel inChannel = in.getChannel();
+          final long size = inChannel.size();
+          if (digest != null) {
+            final MappedByteBuffer data = inChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            digest.update(data);
+          }
+          long position = 0;
+          while (position < size) {
+            position += inChannel.transferTo(position, size - position, outChannel);
+          }
         } finally {
           try {
             in.close();
@@ -231,11 +398,55 @@ public class FileUpdater {
           }
         }
       }
+      if (digest != null) {
+        checkDigest(file, expectedDigest, digest);
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        executor.shutdownNow();
+      }
+      try {
+        out.close();
+      } finally {
+        if (!success) {
+          file.delete();
+        }
+      }
+    }
+  }
 
-      out.close();
-    } catch (IOException ioEx) {
-      file.delete();
-      throw ioEx;
+  /**
+   * Waits for {@code download} to complete.
+   *
+   * @return Downloaded part file, {@code null} if the update was cancelled.
+   * @throws IOException The part could not be downloaded.
+   */
+  private File waitForPart(final Future<File> download) throws IOException {
+    try {
+      while (true) {
+        if (isCancelled()) {
+          return null;
+        }
+        try {
+          final File localPartFile = download.get(CANCELLATION_CHECK_PERIOD, TimeUnit.MILLISECONDS);
+          return isCancelled() ? null : localPartFile;
+        } catch (TimeoutException toEx) {
+          // Check for cancellation again.
+        }
+      }
+    } catch (InterruptedException intEx) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while downloading parts.");
+    } catch (ExecutionException exEx) {
+      final Throwable cause = exEx.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof InterruptedException) {
+        throw new InterruptedIOException("Interrupted while downloading parts.");
+      }
+      throw new RuntimeException(cause);
     }
   }
 
@@ -243,17 +454,38 @@ public class FileUpdater {
    * Cancels update as soon as possible.
    */
   public void cancel() {
-    synchronized(this.cancelled) {
-      cancelled = Boolean.FALSE;
-    }
+    cancelled = true;
   }
 
   /**
    * Checks if cancelled flag is set.
    */
   private boolean isCancelled() {
-    synchronized(this.cancelled) {
-      return cancelled;
+    return cancelled;
+  }
+
+  /**
+   * <p>Downloads partial file from {@code url} to {@code file}, with up to {@link #maxAttempts}
+   * attempts.</p>
+   *
+   * <p>Missing remote files are not retried.</p>
+   */
+  private void downloadPartWithRetries(final URL url, final File file, final int size)
+      throws IOException, InterruptedException {
+    final PartDownloadProgressListener listener = new PartDownloadProgressListener(size);
+    final String expectedDigest = digests == null ? null : digests.get(file.getName());
+    for (int attempt = 1; !isCancelled(); ++attempt) {
+      try {
+        downloadPart(url, file, size, expectedDigest, listener);
+        return;
+      } catch (FileNotFoundException fnfEx) {
+        throw fnfEx;
+      } catch (IOException ioEx) {
+        if (attempt >= maxAttempts) {
+          throw ioEx;
+        }
+      }
+      Thread.sleep(retryDelay * attempt);
     }
   }
 
@@ -261,40 +493,120 @@ public class FileUpdater {
    * <p>Downloads partial file from {@code url} to {@code file}.</p>
    *
    * <p>If {@code file} already exists and has {@code size} bytes, download is skipped.
-   * Otherwise, an attempt to download a gzipped file will be made.  If it fails, the plain file
-   * will be downloaded.</p>
+   * Otherwise, an attempt to download a gzipped file will be made, unless {@code file} holds the
+   * beginning of a plain download.  If it fails, the plain file will be downloaded.</p>
+   *
+   * <p>If {@code expectedDigest} is not {@code null}, the digest of {@code file} is checked, and
+   * {@code file} is deleted if it does not match.</p>
    */
-  private void downloadPart(final URL url, final File file, final int size) throws IOException {
+  private void downloadPart(final URL url, final File file, final int size,
+      final String expectedDigest, final PartDownloadProgressListener listener)
+      throws IOException {
+    final MessageDigest digest = expectedDigest == null ? null : DigestUtils.newSha256();
     if (file.exists() && file.length() == size) {
-      addDownloadedBytes(size);
+      if (digest != null) {
+        DigestUtils.update(digest, file);
+        checkDigest(file, expectedDigest, digest);
+      }
+      listener.hasCompleted(true);
       return;
     }
 
-    try {
-      downloadGzippedPart(url, file, size);
-    } catch (FileNotFoundException fnfEx) {
-      downloadPlainPart(url, file, size);
+    final File gzFile = new File(file.getPath() + GZ_SUFFIX);
+    if (!file.exists() || gzFile.exists()) {
+      try {
+        downloadGzippedPart(url, gzFile, file, size, expectedDigest, digest, listener);
+        return;
+      } catch (FileNotFoundException fnfEx) {
+        gzFile.delete();
+        file.delete();
+      }
     }
+    downloadPlainPart(url, file, size, expectedDigest, digest, listener);
   }
 
   /**
-   * Appends .gz to {@code url} and downloads with on-the-fly decompression to {@code file}.
+   * Appends .gz to {@code url}, downloads it to {@code gzFile} and decompresses the latter to
+   * {@code file}.  {@code gzFile} is kept until decompressed, so that downloads can resume.
+   * {@code digest} is computed on the decompressed data, if not {@code null}.
    */
-  private void downloadGzippedPart(final URL url, final File file,
-                                   final int size) throws IOException {
-    final URL gzUrl = new URL(url, url.getPath() + ".gz");
-    FileDownload.downloadGunzip(gzUrl, file, size, new PartDownloadProgressListener(size));
+  private void downloadGzippedPart(final URL url, final File gzFile, final File file,
+      final int size, final String expectedDigest, final MessageDigest digest,
+      final PartDownloadProgressListener listener) throws IOException {
+    final URL gzUrl = new URL(url, url.getPath() + GZ_SUFFIX);
+    FileDownload.downloadResume(gzUrl, gzFile, listener);
+
+    boolean success = false;
+    try {
+      InputStream in = new GZIPInputStream(new FileInputStream(gzFile), FileDownload.BUFFER_SIZE);
+      if (digest != null) {
+        in = new DigestInputStream(in, digest);
+      }
+      try {
+        StreamUtils.write(in, file, new byte[FileDownload.BUFFER_SIZE], size, null);
+      } finally {
+        in.close();
+      }
+      checkPartSize(file, size);
+      if (digest != null) {
+        checkDigest(file, expectedDigest, digest);
+      }
+      success = true;
+    } finally {
+      gzFile.delete();  // Corrupt or no longer needed.
+      if (!success) {
+        file.delete();
+      }
+    }
+    listener.hasCompleted(true);
   }
 
   /**
    * Download plain partial file from {@code url} to {@code file}.
    */
-  private void downloadPlainPart(final URL url, final File file,
-                                 final int size) throws IOException {
-    FileDownload.download(url, file, new PartDownloadProgressListener(size));
+  private void downloadPlainPart(final URL url, final File file, final int size,
+      final String expectedDigest, final MessageDigest digest,
+      final PartDownloadProgressListener listener) throws IOException {
+    FileDownload.downloadResume(url, file, listener, digest);
+    if (file.length() > size) {
+      file.delete();
+    }
+    checkPartSize(file, size);
+    if (digest != null) {
+      checkDigest(file, expectedDigest, digest);
+    }
+    listener.hasCompleted(true);
   }
-  
 
+  /**
+   * @throws IOException {@code file} does not have {@code size} bytes.
+   */
+  private static void checkPartSize(final File file, final int size) throws IOException {
+    if (file.length() != size) {
+      throw new IOException("Unexpected size for " + file.getPath() + ": " + file.length() +
+          " instead of " + size + " bytes");
+    }
+  }
+
+  /**
+   * Deletes {@code file} if {@code digest} does not match {@code expectedDigest}.
+   *
+   * @throws IOException Digests do not match.
+   */
+  private static void checkDigest(final File file, final String expectedDigest,
+      final MessageDigest digest) throws IOException {
+    final String actualDigest = DigestUtils.toHex(digest.digest());
+    if (!actualDigest.equalsIgnoreCase(expectedDigest)) {
+      file.delete();
+      throw new IOException("Corrupt file " + file.getPath() + ": SHA-256 " + actualDigest +
+          " instead of " + expectedDigest);
+    }
+  }
+
+  /**
+   * Converts the progress of a part download to bytes.  Bytes are only counted once, even if
+   * the part is downloaded again after a failure.
+   */
   private class PartDownloadProgressListener implements ProgressListener {
     final int size;
     int bytesDownloaded;
@@ -324,10 +636,12 @@ public class FileUpdater {
   /**
    * Adds {@code bytes} to the total number of bytes downloaded and notifies listeners.
    */
-  private synchronized void addDownloadedBytes(final int bytes) {
-    bytesDownloaded += bytes;
-    final int percent = (int)(100.0 * bytesDownloaded / totalBytes + 0.5);
-    notifyUpdateProgress(percent);
+  private void addDownloadedBytes(final int bytes) {
+    synchronized (progressLock) {
+      bytesDownloaded += bytes;
+      final int percent = (int)(100.0 * bytesDownloaded / totalBytes + 0.5);
+      notifyUpdateProgress(percent);
+    }
   }
 
   /**
@@ -335,6 +649,10 @@ public class FileUpdater {
    */
   private void parsePartsFile(final File file) throws IOException {
     parts = new LinkedHashMap<String, Integer>();
+    totalBytes = 0;
+    synchronized (progressLock) {
+      bytesDownloaded = 0;
+    }
     final String partsContent = StreamUtils.read(file);
     final Pattern pattern = Pattern.compile("^(\\d+)\\s+(\\S+)$");
 
@@ -352,6 +670,23 @@ public class FileUpdater {
     }
   }
 
+  /**
+   * Parses expected digests from manifest {@code file}, in the format of sha256sum.
+   */
+  private void parseManifestFile(final File file) throws IOException {
+    digests = new HashMap<String, String>();
+    final Pattern pattern = Pattern.compile("^([0-9a-fA-F]{64})\\s+\\*?(\\S+)$");
+
+    final BufferedReader in = new BufferedReader(new StringReader(StreamUtils.read(file)));
+    String line;
+    while ((line = in.readLine()) != null) {
+      final Matcher matcher = pattern.matcher(line);
+      if (matcher.matches()) {
+        digests.put(matcher.group(2), matcher.group(1));
+      }
+    }
+  }
+
   /**
    * Checks that the working directory exists or creates one.
    *
@@ -383,21 +718,25 @@ public class FileUpdater {
     totalBytes += bytes;
   }
 
-  private synchronized void notifyUpdateCompleted(boolean success) {
-    notifyUpdateProgress(100);
-    for (ProgressListener listener : listeners) {
-      listener.hasCompleted(success);
+  private void notifyUpdateCompleted(boolean success) {
+    synchronized (progressLock) {
+      notifyUpdateProgress(100);
+      for (ProgressListener listener : listeners) {
+        listener.hasCompleted(success);
+      }
     }
   }
 
-  private synchronized void notifyUpdateProgress(int percent) {
-    if (lastPercentNotified == percent) {
-      return;
-    }
-    for (ProgressListener listener: listeners) {
-      listener.hasProgressed(percent);
+  private void notifyUpdateProgress(int percent) {
+    synchronized (progressLock) {
+      if (lastPercentNotified == percent) {
+        return;
+      }
+      for (ProgressListener listener: listeners) {
+        listener.hasProgressed(percent);
+      }
+      lastPercentNotified = percent;
     }
-    lastPercentNotified = percent;
   }
 
   /**
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.flightmap.common.net;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.google.flightmap.common.ProgressListener;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.db.AviationDbShards;
+import com.google.flightmap.common.io.StreamUtils;
+
+/**
+ * <p>Updates the local copy of a region-sharded database (see {@link AviationDbShards}).</p>
+ *
+ * <p>The shard index and each shard are published like any other file (see {@link
+ * FileUpdater}), next to each other.  Only the shards covering the areas of interest (e.g. around
+ * the current position or along a route) are downloaded; other local shards are left as is.</p>
+ */
+public class ShardedDbUpdater {
+  private final File localDir;
+  private final URL remoteUrl;
+  private final File workingDir;
+  private final String indexName;
+
+  private AviationDbShards index;
+  private FileUpdater currentUpdater;
+  private boolean cancelled;
+
+  private List<ProgressListener> listeners = new LinkedList<ProgressListener>();
+
+  /**
+   * Initializes updater for the database published at {@code remoteUrl}.
+   *
+   * @param localDir Local directory of the index and shards.
+   * @param remoteUrl URL of the (unsharded) remote database.  The index and shards are expected
+   *        next to it.
+   * @param workingDir Path of local working directory.
+   */
+  public ShardedDbUpdater(final File localDir, final URL remoteUrl, final File workingDir) {
+    this.localDir = localDir;
+    this.remoteUrl = remoteUrl;
+    this.workingDir = workingDir;
+    indexName = new File(remoteUrl.getPath()).getName() + AviationDbShards.INDEX_SUFFIX;
+  }
+
+  /**
+   * Adds a listener to notify of progress.
+   */
+  public synchronized void addProgressListener(ProgressListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Returns the local shard index, updating it first if needed.
+   */
+  public synchronized AviationDbShards getIndex() throws IOException {
+    if (index == null) {
+      final File localIndexFile = new File(localDir, indexName);
+      final FileUpdater indexUpdater = createUpdater(localIndexFile, indexName);
+      if (indexUpdater.isUpdateNeeded()) {
+        indexUpdater.update();
+      }
+      index = AviationDbShards.parse(StreamUtils.read(localIndexFile));
+    }
+    return index;
+  }
+
+  /**
+   * Returns the local file of {@code shard}.
+   */
+  public File getShardFile(final AviationDbShards.Shard shard) {
+    return new File(localDir, shard.name);
+  }
+
+  /**
+   * Returns the shards covering {@code areas} that need to be updated.
+   */
+  public List<AviationDbShards.Shard> getShardsToUpdate(final Collection<LatLngRect> areas)
+      throws IOException {
+    final List<AviationDbShards.Shard> shards = new LinkedList<AviationDbShards.Shard>();
+    for (AviationDbShards.Shard shard: getIndex().getShardsInRectangles(areas)) {
+      if (createUpdater(getShardFile(shard), shard.name).isUpdateNeeded()) {
+        shards.add(shard);
+      }
+    }
+    return shards;
+  }
+
+  /**
+   * Updates the shards within {@code radius} meters of {@code position}.
+   */
+  public void updateNear(final LatLng position, final double radius) throws IOException {
+    update(Collections.singletonList(AviationDbShards.getBoundingBox(position, radius)));
+  }
+
+  /**
+   * Updates the shards within {@code radius} meters of {@code route}.
+   */
+  public void updateAlongRoute(final List<LatLng> route, final double radius) throws IOException {
+    update(AviationDbShards.getRouteAreas(route, radius));
+  }
+
+  /**
+   * Updates the shards covering {@code areas}, if needed.
+   */
+  public void update(final Collection<LatLngRect> areas) throws IOException {
+    boolean success = false;
+    try {
+      final List<AviationDbShards.Shard> shards = getShardsToUpdate(areas);
+      final int shardCount = shards.size();
+      int shardIndex = 0;
+      for (AviationDbShards.Shard shard: shards) {
+        final FileUpdater updater = createUpdater(getShardFile(shard), shard.name);
+        updater.addProgressListener(new ShardProgressListener(shardIndex++, shardCount));
+        synchronized (this) {
+          if (cancelled) {
+            return;
+          }
+          currentUpdater = updater;
+        }
+        updater.update();
+      }
+      synchronized (this) {
+        success = !cancelled;
+      }
+    } finally {
+      synchronized (this) {
+        currentUpdater = null;
+      }
+      notifyUpdateCompleted(success);
+    }
+  }
+
+  /**
+   * Cancels update as soon as possible.
+   */
+  public synchronized void cancel() {
+    cancelled = true;
+    if (currentUpdater != null) {
+      currentUpdater.cancel();
+    }
+  }
+
+  private FileUpdater createUpdater(final File localFile, final String name) throws IOException {
+    return new FileUpdater(localFile, new URL(remoteUrl, name), new File(workingDir, name));
+  }
+
+  /**
+   * Reports the progress of one shard update as part of the overall progress.
+   */
+  private class ShardProgressListener implements ProgressListener {
+    final int shardIndex;
+    final int shardCount;
+
+    ShardProgressListener(final int shardIndex, final int shardCount) {
+      this.shardIndex = shardIndex;
+      this.shardCount = shardCount;
+    }
+
+    @Override
+    public void hasProgressed(int percent) {
+      notifyUpdateProgress((shardIndex * 100 + percent) / shardCount);
+    }
+
+    @Override
+    public void hasCompleted(boolean success) {
+      // Completion is notified by update()
+    }
+  }
+
+  private synchronized void notifyUpdateCompleted(boolean success) {
+    for (ProgressListener listener : listeners) {
+      listener.hasCompleted(success);
+    }
+  }
+
+  private synchronized void notifyUpdateProgress(int percent) {
+    for (ProgressListener listener: listeners) {
+      listener.hasProgressed(percent);
+    }
+  }
+}
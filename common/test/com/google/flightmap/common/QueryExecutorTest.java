@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common;
+
+import com.google.flightmap.common.QueryExecutor.Priority;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class QueryExecutorTest extends TestCase {
+  private QueryExecutor executor;
+  private final List<String> runs = new ArrayList<String>();
+
+  @Override
+  protected void setUp() {
+    executor = new QueryExecutor(1);
+  }
+
+  @Override
+  protected void tearDown() {
+    executor.shutdown();
+  }
+
+  public void testPriorityAndSupersession() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    executor.submit(Priority.VIEWPORT, null, new Callable<String>() {
+      @Override
+      public String call() throws InterruptedException {
+        started.countDown();
+        release.await();
+        return null;
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    executor.submit(Priority.PREFETCH, null, new Record("prefetch"));
+    executor.submit(Priority.TAPCARD, null, new Record("tapcard"));
+    final Future<String> old = executor.submit(Priority.VIEWPORT, "airports", new Record("old"));
+    final Future<String> last =
+        executor.submit(Priority.VIEWPORT, "airports", new Record("new"));
+    assertTrue(old.isCancelled());
+    assertEquals(3, executor.getQueueDepth());
+
+    release.countDown();
+    assertEquals("new", last.get(5, TimeUnit.SECONDS));
+    try {
+      old.get();
+      fail("Superseded query should be cancelled.");
+    } catch (CancellationException expected) {
+    }
+    executor.submit(Priority.PREFETCH, null, new Record("done")).get(5, TimeUnit.SECONDS);
+    synchronized (runs) {
+      assertEquals(Arrays.asList("new", "tapcard", "prefetch", "done"), runs);
+    }
+    assertEquals(0, executor.getQueueDepth());
+    assertEquals(1, executor.getSupersededCount(Priority.VIEWPORT));
+    assertEquals(2, executor.getStartedCount(Priority.VIEWPORT));
+    assertTrue(executor.getMaxWaitMillis(Priority.PREFETCH) >= 0);
+  }
+
+  public void testCancelInterruptsRunningQuery() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final Future<String> query = executor.submit(Priority.VIEWPORT, null, new Callable<String>() {
+      @Override
+      public String call() throws InterruptedException {
+        started.countDown();
+        while (true) {
+          ThreadUtils.checkIfInterrupted();
+        }
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    assertTrue(query.cancel(true));
+    // The worker thread is free for the next query.
+    assertEquals("next",
+        executor.submit(Priority.VIEWPORT, null, new Record("next")).get(5, TimeUnit.SECONDS));
+  }
+
+  public void testWorkerSurvivesLateInterrupt() throws Exception {
+    final Thread[] worker = new Thread[1];
+    executor.submit(Priority.VIEWPORT, null, new Callable<String>() {
+      @Override
+      public String call() {
+        worker[0] = Thread.currentThread();
+        return null;
+      }
+    }).get(5, TimeUnit.SECONDS);
+    // Wait until the worker is idle, then interrupt it as a late cancel(true) would.
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (worker[0].getState() != Thread.State.WAITING &&
+        System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    worker[0].interrupt();
+    assertEquals("later",
+        executor.submit(Priority.VIEWPORT, null, new Record("later")).get(5, TimeUnit.SECONDS));
+    assertTrue(worker[0].isAlive());
+  }
+
+  public void testOnDoneRunsOnceResultIsAvailable() throws Exception {
+    final List<Future<String>> queries = new ArrayList<Future<String>>();
+    final CountDownLatch done = new CountDownLatch(2);
+    final Runnable onDone = new Runnable() {
+      @Override
+      public void run() {
+        // The result is available without blocking.
+        synchronized (queries) {
+          assertTrue(queries.get(queries.size() - 1).isDone());
+        }
+        done.countDown();
+      }
+    };
+    synchronized (queries) {
+      queries.add(executor.submit(Priority.VIEWPORT, null, new Record("result"), onDone));
+    }
+    assertEquals("result", queries.get(0).get(5, TimeUnit.SECONDS));
+    synchronized (queries) {
+      queries.add(executor.submit(Priority.VIEWPORT, null, new Callable<String>() {
+        @Override
+        public String call() {
+          throw new IllegalStateException("Query failed");
+        }
+      }, onDone));
+    }
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    try {
+      queries.get(1).get();
+      fail("Failed query should throw.");
+    } catch (ExecutionException expected) {
+    }
+  }
+
+  private class Record implements Callable<String> {
+    private final String name;
+
+    Record(final String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String call() {
+      synchronized (runs) {
+        runs.add(name);
+      }
+      return name;
+    }
+  }
+}
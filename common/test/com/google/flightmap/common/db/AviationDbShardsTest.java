@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class AviationDbShardsTest extends TestCase {
+  private static final LatLng SFO = new LatLng(37618889, -122375000);
+  private static final LatLng JFK = new LatLng(40639722, -73778889);
+
+  private AviationDbShards shards;
+  private int sfoCell;
+  private int jfkCell;
+
+  @Override
+  protected void setUp() throws IOException {
+    sfoCell = CustomGridUtil.getCellId(SFO, 4);
+    jfkCell = CustomGridUtil.getCellId(JFK, 4);
+    shards = AviationDbShards.parse("level 4\n" +
+        sfoCell + " aviation-4-" + sfoCell + ".db 1-20,35,40-41\n" +
+        jfkCell + " aviation-4-" + jfkCell + ".db 21-34\n");
+  }
+
+  public void testGetRanges() {
+    assertTrue(Arrays.equals(new int[] {1, 3, 5, 5, 7, 8},
+        AviationDbShards.getRanges(new int[] {1, 2, 3, 5, 7, 8})));
+    assertEquals(0, AviationDbShards.getRanges(new int[0]).length);
+  }
+
+  public void testParse() throws IOException {
+    assertEquals(4, shards.getLevel());
+    assertEquals(2, shards.getShards().size());
+    assertEquals(shards.toString(), AviationDbShards.parse(shards.toString()).toString());
+    assertEquals("aviation-4-" + sfoCell + ".db", shards.getShards().get(0).name);
+    assertEquals("aviation-4-12.db", AviationDbShards.getShardName("aviation.db", 4, 12));
+    try {
+      AviationDbShards.parse("12 aviation-4-12.db 1-2\n");
+      fail("Missing level should be rejected.");
+    } catch (IOException expected) {
+    }
+  }
+
+  public void testGetShardForAirport() {
+    final AviationDbShards.Shard sfoShard = shards.getShards().get(0);
+    final AviationDbShards.Shard jfkShard = shards.getShards().get(1);
+    assertSame(sfoShard, shards.getShardForAirport(1));
+    assertSame(sfoShard, shards.getShardForAirport(20));
+    assertSame(jfkShard, shards.getShardForAirport(21));
+    assertSame(sfoShard, shards.getShardForAirport(35));
+    assertSame(sfoShard, shards.getShardForAirport(41));
+    assertNull(shards.getShardForAirport(36));
+    assertNull(shards.getShardForAirport(42));
+  }
+
+  public void testSpatialLookups() {
+    assertEquals(sfoCell, shards.getShardForPosition(SFO).cellId);
+    assertEquals(jfkCell, shards.getShardForPosition(JFK).cellId);
+    assertNull(shards.getShardForPosition(new LatLng(-33946111, 151177222)));
+
+    assertEquals(1, shards.getShardsInRectangle(LatLngRect.getBoundingBox(SFO, 10000)).size());
+    final List<LatLngRect> route = AviationDbShards.getRouteAreas(Arrays.asList(SFO, JFK), 10000);
+    assertEquals(1, route.size());
+    assertEquals(2, shards.getShardsInRectangles(route).size());
+  }
+
+  public void testRadiusInMeters() {
+    // 10 km is about 0.09 degrees of latitude, and 0.11 degrees of longitude at SFO: the box
+    // is a square of the larger.
+    final LatLngRect box = AviationDbShards.getBoundingBox(SFO, 10000);
+    assertEquals(SFO.lat + 113000, box.getNorth(), 1000);
+    assertEquals(SFO.lng - 113000, box.getWest(), 1000);
+
+    // The level 4 cell of JFK starts at 90W, 32.4 degrees of longitude (about 2850 km) east of
+    // SFO.
+    final List<AviationDbShards.Shard> near = shards.getShardsInRectangles(
+        AviationDbShards.getRouteAreas(Arrays.asList(SFO), 2500 * 1000));
+    assertEquals(1, near.size());
+    assertEquals(sfoCell, near.get(0).cellId);
+    assertEquals(2, shards.getShardsInRectangles(
+        AviationDbShards.getRouteAreas(Arrays.asList(SFO), 3200 * 1000)).size());
+  }
+}
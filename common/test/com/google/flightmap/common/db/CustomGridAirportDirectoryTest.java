@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import com.google.flightmap.common.CancellationToken;
+import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.LatLngRect;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+import junit.framework.TestCase;
+
+public class CustomGridAirportDirectoryTest extends TestCase {
+  private static final LatLngRect BAY_AREA = TestSnapshots.BAY_AREA;
+
+  private File file;
+  private SlowAdapter adapter;
+  private CachedAirportDirectory directory;
+
+  @Override
+  protected void setUp() throws IOException {
+    file = TestSnapshots.writeSnapshot("San Francisco Intl");
+    adapter = new SlowAdapter(file);
+    directory = new CachedAirportDirectory(new CustomGridAirportDirectory(adapter));
+    directory.open();
+  }
+
+  @Override
+  protected void tearDown() {
+    directory.close();
+    file.delete();
+  }
+
+  public void testExpiredDeadlineReturnsPartialResults() throws InterruptedException {
+    final CancellationToken expired = new CancellationToken(0);
+    assertTrue(CustomGridUtil.getCellsInRectangle(BAY_AREA, expired).isEmpty());
+    assertTrue(directory.getAirportsInRectangle(BAY_AREA, 0, expired).isEmpty());
+    assertTrue(expired.isDeadlineExceeded());
+    assertEquals(CancellationToken.DEADLINE_EXCEEDED, expired.getReason());
+    // Partial results are not cached, but the area counts as in progress until completed.
+    assertTrue(directory.isCacheMatch(BAY_AREA, 0));
+
+    final CancellationToken token = CancellationToken.withTimeout(60 * 1000);
+    assertEquals(1, directory.getAirportsInRectangle(BAY_AREA, 0, token).size());
+    assertTrue(adapter.cellQueries > 0);
+    assertFalse(token.isDeadlineExceeded());
+    assertNull(token.getReason());
+    assertTrue(directory.isCacheMatch(BAY_AREA, 0));
+  }
+
+  public void testDeadlinePassingDuringQueryReturnsPartialResults()
+      throws InterruptedException {
+    final CancellationToken token = CancellationToken.withTimeout(50);
+    adapter.delayMillis = 200;
+    final Collection<Airport> partial = directory.getAirportsInRectangle(BAY_AREA, 0, token);
+    // The deadline passed while the range of KSFO was read.
+    assertEquals(1, partial.size());
+    assertTrue(token.isDeadlineExceeded());
+    // The follow-up query completing the results counts as in progress.
+    assertTrue(directory.isCacheMatch(BAY_AREA, 0));
+
+    adapter.delayMillis = 0;
+    final int partialCellQueries = adapter.cellQueries;
+    assertEquals(1, directory.getAirportsInRectangle(BAY_AREA, 0).size());
+    // Partial results were not cached, and the ranges after KSFO's were skipped.
+    final int fullCellQueries = adapter.cellQueries - partialCellQueries;
+    assertTrue(partialCellQueries < fullCellQueries);
+    assertTrue(directory.isCacheMatch(BAY_AREA, 0));
+    directory.getAirportsInRectangle(BAY_AREA, 0);
+    assertEquals(partialCellQueries + fullCellQueries, adapter.cellQueries);
+  }
+
+  public void testCancelledQueryThrows() {
+    final CancellationToken token = new CancellationToken();
+    token.cancel("Map moved");
+    try {
+      directory.getAirportsInRectangle(BAY_AREA, 0, token);
+      fail("Cancelled query should throw.");
+    } catch (InterruptedException expected) {
+      assertEquals("Map moved", expected.getMessage());
+    }
+    assertTrue(token.isCancelled());
+    assertEquals("Map moved", token.getReason());
+  }
+
+  /**
+   * Adapter that counts cell queries, and optionally slows down those finding airports.
+   */
+  private static class SlowAdapter extends MappedAviationDbAdapter {
+    volatile long delayMillis;
+    volatile int cellQueries;
+
+    SlowAdapter(final File file) {
+      super(file);
+    }
+
+    @Override
+    public Collection<Airport> getAirportsInCells(final int startCell, final int endCell,
+        final int minRank) {
+      ++cellQueries;
+      final Collection<Airport> airports = super.getAirportsInCells(startCell, endCell, minRank);
+      if (delayMillis > 0 && !airports.isEmpty()) {
+        try {
+          Thread.sleep(delayMillis);
+        } catch (InterruptedException iEx) {
+          throw new RuntimeException(iEx);
+        }
+      }
+      return airports;
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import com.google.flightmap.common.CancellationToken;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.metrics.MetricsRegistry;
+import com.google.flightmap.common.metrics.MetricsSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class InstrumentedAviationDbAdapterTest extends TestCase {
+  private final MetricsRegistry registry = new MetricsRegistry();
+  private File file;
+  private MappedAviationDbAdapter dbAdapter;
+
+  @Override
+  protected void setUp() throws IOException {
+    file = TestSnapshots.writeSnapshot("San Francisco Intl");
+    dbAdapter = new MappedAviationDbAdapter(file);
+  }
+
+  @Override
+  protected void tearDown() {
+    file.delete();
+  }
+
+  public void testAirportQueries() throws InterruptedException {
+    final CachedAirportDirectory directory = new CachedAirportDirectory(
+        new InstrumentedAirportDirectory(new CustomGridAirportDirectory(
+            new InstrumentedAviationDbAdapter(dbAdapter, registry, "db")), registry,
+            "directory"), registry);
+    directory.open();
+    try {
+      directory.getAirportsInRectangle(TestSnapshots.BAY_AREA, 0);
+      directory.getAirportsInRectangle(TestSnapshots.BAY_AREA, 0);
+      directory.getNearestAirports(new LatLng(37618972, -122374889), 5);
+    } finally {
+      directory.close();
+    }
+
+    final MetricsSnapshot snapshot = registry.getSnapshot();
+    assertEquals(Long.valueOf(1), snapshot.getCounters().get("airports.cache.hit"));
+    assertEquals(Long.valueOf(1), snapshot.getCounters().get("airports.cache.miss"));
+    assertEquals(Long.valueOf(1), snapshot.getGauges().get("airports.cache.size"));
+    assertEquals(1, snapshot.getHistograms().get("airports.cache.fetch").count);
+    assertEquals(1,
+        snapshot.getHistograms().get("directory.getAirportsInRectangle.latency").count);
+    assertEquals(Long.valueOf(1),
+        snapshot.getCounters().get("directory.getAirportsInRectangle.rows"));
+    assertEquals(1, snapshot.getHistograms().get("directory.getNearestAirports.latency").count);
+    assertTrue(snapshot.getHistograms().get("db.getAirportsInCells.latency").count > 0);
+    assertEquals(Long.valueOf(1), snapshot.getCounters().get("db.getAirportsInCells.rows"));
+  }
+
+  public void testAirspaceQueries() throws InterruptedException {
+    final InstrumentedAviationDbAdapter instrumented =
+        new InstrumentedAviationDbAdapter(dbAdapter, registry, "db");
+    instrumented.open();
+    try {
+      assertEquals(1, instrumented.getAirspacesInRectangle(TestSnapshots.BAY_AREA).size());
+      assertEquals(1, instrumented.getAirspacesInRectangle(TestSnapshots.BAY_AREA, 10).size());
+      assertEquals(1, instrumented.getAirspacesInRectangle(TestSnapshots.BAY_AREA,
+          new CancellationToken()).size());
+      assertEquals(1, instrumented.getAirspacesInRectangle(TestSnapshots.BAY_AREA, 10,
+          new CancellationToken()).size());
+      // Partial results are recorded.
+      assertEquals(0, instrumented.getAirspacesInRectangle(TestSnapshots.BAY_AREA, 10,
+          new CancellationToken(0)).size());
+      // Cancelled queries are not.
+      final CancellationToken cancelled = new CancellationToken();
+      cancelled.cancel(null);
+      try {
+        instrumented.getAirspacesInRectangle(TestSnapshots.BAY_AREA, cancelled);
+        fail("Cancelled query should throw.");
+      } catch (InterruptedException expected) {
+      }
+    } finally {
+      instrumented.close();
+    }
+
+    final MetricsSnapshot snapshot = registry.getSnapshot();
+    assertEquals(5, snapshot.getHistograms().get("db.getAirspacesInRectangle.latency").count);
+    assertEquals(Long.valueOf(4), snapshot.getCounters().get("db.getAirspacesInRectangle.rows"));
+  }
+
+  public void testAirspaceCacheMetrics() throws InterruptedException {
+    final CachedAviationDbAdapter cached = new CachedAviationDbAdapter(
+        new InstrumentedAviationDbAdapter(dbAdapter, registry, "db"), registry);
+    cached.open();
+    try {
+      assertEquals(1, cached.getAirspacesInRectangle(TestSnapshots.BAY_AREA, 10).size());
+      assertEquals(1, cached.getAirspacesInRectangle(TestSnapshots.BAY_AREA, 10).size());
+    } finally {
+      cached.close();
+    }
+
+    final MetricsSnapshot snapshot = registry.getSnapshot();
+    assertEquals(Long.valueOf(1), snapshot.getCounters().get("airspaces.cache.hit"));
+    assertEquals(Long.valueOf(1), snapshot.getCounters().get("airspaces.cache.miss"));
+    assertEquals(Long.valueOf(1), snapshot.getGauges().get("airspaces.cache.size"));
+    assertEquals(1, snapshot.getHistograms().get("airspaces.cache.fetch").count);
+  }
+
+  public void testPartialAirspacesAreNotCached() throws InterruptedException {
+    final CachedAviationDbAdapter cached = new CachedAviationDbAdapter(dbAdapter, registry);
+    cached.open();
+    try {
+      final CancellationToken expired = new CancellationToken(0);
+      assertTrue(cached.getAirspacesInRectangle(TestSnapshots.BAY_AREA, 10, expired).isEmpty());
+      assertTrue(expired.isDeadlineExceeded());
+      // The follow-up query completing the results counts as in progress.
+      assertTrue(cached.isCacheMatch(TestSnapshots.BAY_AREA, 10));
+      assertEquals(1, cached.getAirspacesInRectangle(TestSnapshots.BAY_AREA, 10).size());
+    } finally {
+      cached.close();
+    }
+
+    final MetricsSnapshot snapshot = registry.getSnapshot();
+    assertEquals(Long.valueOf(2), snapshot.getCounters().get("airspaces.cache.miss"));
+    assertEquals(Long.valueOf(1), snapshot.getGauges().get("airspaces.cache.size"));
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.AirportAirspace;
+import com.google.flightmap.common.data.Airspace;
+import com.google.flightmap.common.data.AirspaceArc;
+import com.google.flightmap.common.data.Comm;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.data.Runway;
+import com.google.flightmap.common.data.RunwayEnd;
+import com.google.flightmap.common.geo.AirspaceLevelsOfDetail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+public class MappedAviationDbAdapterTest extends TestCase {
+  private File file;
+  private MappedAviationDbAdapter adapter;
+
+  @Override
+  protected void setUp() throws IOException {
+    final AviationSnapshotWriter writer = new AviationSnapshotWriter();
+    writer.addConstant(1, "Airport");
+    writer.addMetadata(DbAdapter.SCHEMA_VERSION_KEY, "3");
+
+    final SortedSet<RunwayEnd> ends = new TreeSet<RunwayEnd>();
+    ends.add(new RunwayEnd(10, "10L"));
+    ends.add(new RunwayEnd(11, "28R"));
+    final SortedSet<Runway> runways = new TreeSet<Runway>(Collections.reverseOrder());
+    runways.add(new Runway(1, "10L/28R", 11870, 200, "ASPH", ends));
+    final Map<String, String> properties = new HashMap<String, String>();
+    properties.put("Elevation", "13");
+    final List<Comm> comms = new ArrayList<Comm>();
+    comms.add(new Comm("Tower", "120.5", null));
+    final List<AirportAirspace> airportAirspaces = new ArrayList<AirportAirspace>();
+    airportAirspaces.add(new AirportAirspace(7, Airspace.Class.BRAVO, Airspace.SFC, 10000));
+    writer.addAirport(createAirport(1, "KSFO", "San Francisco Intl", 37618972, -122374889,
+        runways), properties, comms, airportAirspaces);
+    writer.addAirport(createAirport(2, "KOAK", "Metropolitan Oakland Intl", 37721278,
+        -122220722, null), null, null, null);
+    writer.addAirport(createAirport(3, "KJFK", "John F Kennedy Intl", 40639751, -73778925,
+        null), null, null, null);
+    final Map<String, String> endProperties = new HashMap<String, String>();
+    endProperties.put("True Alignment", "118");
+    writer.addRunwayEndProperties(10, endProperties);
+
+    final SortedMap<Integer, LatLng> points = new TreeMap<Integer, LatLng>();
+    points.put(0, LatLng.fromDouble(37, -123));
+    points.put(2, LatLng.fromDouble(38, -122));
+    final SortedMap<Integer, AirspaceArc> arcs = new TreeMap<Integer, AirspaceArc>();
+    arcs.put(1, new AirspaceArc(new LatLngRect(LatLng.fromDouble(37, -123),
+        LatLng.fromDouble(38, -122)), 90.5f, -45.25f));
+    final Airspace airspace =
+        new Airspace(7, "SAN FRANCISCO", Airspace.Class.BRAVO, Airspace.SFC, 10000, points, arcs);
+    final SortedMap<Integer, LatLng> simplified = new TreeMap<Integer, LatLng>();
+    simplified.put(0, LatLng.fromDouble(37, -123));
+    final List<SortedMap<Integer, LatLng>> levels = new ArrayList<SortedMap<Integer, LatLng>>();
+    levels.add(simplified);
+    writer.addAirspace(airspace, new LatLngRect(LatLng.fromDouble(37, -123),
+        LatLng.fromDouble(38, -122)), levels);
+
+    writer.addNearestAirports(100, 200, new int[] {1, 37618972, -122374889});
+
+    file = File.createTempFile("snapshot", null);
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      writer.write(out);
+    } finally {
+      out.close();
+    }
+    adapter = new MappedAviationDbAdapter(file);
+    adapter.open();
+  }
+
+  @Override
+  protected void tearDown() {
+    adapter.close();
+    file.delete();
+  }
+
+  public void testAirports() {
+    final Airport sfo = adapter.getAirport(1);
+    assertEquals("KSFO", sfo.icao);
+    assertEquals("San Francisco Intl", sfo.name);
+    assertEquals(Airport.Type.AIRPORT, sfo.type);
+    assertEquals(new LatLng(37618972, -122374889), sfo.location);
+    assertTrue(sfo.isOpen);
+    assertFalse(sfo.isMilitary);
+    final Runway runway = sfo.runways.first();
+    assertEquals(11870, runway.length);
+    assertEquals("ASPH", runway.surface);
+    assertEquals(2, runway.runwayEnds.size());
+    assertNull(adapter.getAirport(4));
+
+    assertEquals(2, adapter.getAirportIdByIcao("koak"));
+    assertEquals(-1, adapter.getAirportIdByIcao("KSQL"));
+    assertEquals(Arrays.asList(1, 2, 3), adapter.getAirportIdsWithNameLike("%intl"));
+    assertEquals(Arrays.asList(2), adapter.getAirportIdsWithNameLike("%oak%"));
+    assertEquals(Arrays.asList(3), adapter.getAirportIdsWithNameLike("John _ Kennedy%"));
+
+    final int[] range = CustomGridUtil.getCellRange(CustomGridUtil.getCellId(sfo.location, 4), 4);
+    final Collection<Airport> bayArea = adapter.getAirportsInCells(range[0], range[1], 0);
+    assertEquals(2, bayArea.size());
+    assertTrue(bayArea.contains(sfo));
+    assertTrue(adapter.getAirportsInCells(range[0], range[1], 6).isEmpty());
+  }
+
+  public void testAirportDetails() {
+    assertEquals("13", adapter.getAirportProperties(1).get("Elevation"));
+    assertTrue(adapter.getAirportProperties(2).isEmpty());
+    assertEquals("118", adapter.getRunwayEndProperties(10).get("True Alignment"));
+    assertTrue(adapter.getRunwayEndProperties(11).isEmpty());
+    final Comm comm = adapter.getAirportComms(1).get(0);
+    assertEquals("120.5", comm.frequency);
+    assertEquals("", comm.remarks);
+    assertEquals(Airspace.Class.BRAVO, adapter.getAirportAirspaces(1).get(0).airspaceClass);
+    assertEquals("Airport", adapter.getConstant(1));
+    assertNull(adapter.getConstant(2));
+    assertEquals("3", adapter.getMetadata(DbAdapter.SCHEMA_VERSION_KEY));
+    assertNull(adapter.getMagneticVariationGrid());
+    assertTrue(Arrays.equals(new int[] {1, 37618972, -122374889},
+        adapter.getNearestAirportCandidates(CustomGridUtil.getCellBounds(150, 15).getCenter())));
+    assertNull(
+        adapter.getNearestAirportCandidates(CustomGridUtil.getCellBounds(200, 15).getCenter()));
+  }
+
+  public void testQueriesFailCleanlyAfterClose() {
+    adapter.close();
+    try {
+      adapter.getAirport(1);
+      fail("Closed adapter should throw.");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  public void testAirspaces() throws InterruptedException {
+    final LatLngRect area =
+        new LatLngRect(LatLng.fromDouble(37.5, -122.5), LatLng.fromDouble(39, -121));
+    final Airspace full = adapter.getAirspacesInRectangle(area).iterator().next();
+    assertEquals("SAN FRANCISCO", full.name);
+    assertEquals(2, full.points.size());
+    assertEquals(-45.25f, full.arcs.get(1).sweepAngle);
+    final float zoom = 4;
+    final Airspace simplified = adapter.getAirspacesInRectangle(area, zoom).iterator().next();
+    assertEquals(AirspaceLevelsOfDetail.getLevelOfDetail(zoom) == 0 ? 1 : 2,
+        simplified.points.size());
+    assertTrue(adapter.getAirspacesInRectangle(new LatLngRect(LatLng.fromDouble(40, -100),
+        LatLng.fromDouble(41, -99))).isEmpty());
+  }
+
+  public void testIsLike() {
+    assertTrue(MappedAviationDbAdapter.isLike("San Jose", "%jose%"));
+    assertTrue(MappedAviationDbAdapter.isLike("San Jose", "s_n%"));
+    assertFalse(MappedAviationDbAdapter.isLike("San Jose", "jose%"));
+    assertTrue(MappedAviationDbAdapter.isLike("", "%"));
+  }
+
+  private static Airport createAirport(final int id, final String icao, final String name,
+      final int lat, final int lng, final SortedSet<Runway> runways) {
+    return new Airport(id, icao, name, Airport.Type.AIRPORT, null, new LatLng(lat, lng), true,
+        true, true, false, runways, 5);
+  }
+}
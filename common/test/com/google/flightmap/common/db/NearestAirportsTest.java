@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class NearestAirportsTest extends TestCase {
+  public void testEncodeDecodeCandidates() {
+    final int[] candidates = {1, 37618972, -122374889, 20000, -33946111, 151177222};
+    final int[] decoded =
+        NearestAirports.decodeCandidates(NearestAirports.encodeCandidates(candidates));
+    assertTrue(Arrays.equals(candidates, decoded));
+  }
+
+  public void testGetNearestIds() {
+    final LatLng position = LatLng.fromDouble(37.5, -122.2);
+    final int[] candidates = {
+        1, 37618972, -122374889,  // KSFO
+        2, 37721278, -122220722,  // KOAK
+        3, 37511944, -122249694,  // KSQL
+        4, 37362611, -121929028}; // KSJC
+    assertTrue(Arrays.equals(new int[] {3, 1},
+        NearestAirports.getNearestIds(position, candidates, 2)));
+    assertEquals(4, NearestAirports.getNearestIds(position, candidates, 10).length);
+  }
+
+  public void testCellBoundsContainPosition() {
+    final Random random = new Random(0);
+    for (int i = 0; i < 1000; ++i) {
+      final LatLng position = new LatLng(random.nextInt(180000000) - 90000000,
+          random.nextInt(360000000) - 180000000);
+      final int level = 1 + random.nextInt(15);
+      final int cellId = CustomGridUtil.getCellId(position, level);
+      final LatLngRect bounds = CustomGridUtil.getCellBounds(cellId, level);
+      assertTrue(bounds.contains(position));
+      final int[] range = CustomGridUtil.getCellRange(cellId, level);
+      final int maxLevelCellId = CustomGridUtil.getCellId(position);
+      assertTrue(range[0] <= maxLevelCellId && maxLevelCellId < range[1]);
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class SwappableAviationDbTest extends TestCase {
+  private File oldFile;
+  private File newFile;
+  private final List<TestAdapter> adapters = new ArrayList<TestAdapter>();
+  /** File opened by the factory. */
+  private volatile File file;
+  /** When set, {@link TestAdapter#getAirport} counts down {@link #entered} and waits for it. */
+  private volatile CountDownLatch blocker;
+  private final CountDownLatch entered = new CountDownLatch(1);
+  private SwappableAviationDb db;
+
+  @Override
+  protected void setUp() throws IOException {
+    oldFile = TestSnapshots.writeSnapshot("Old Name");
+    newFile = TestSnapshots.writeSnapshot("New Name");
+    file = oldFile;
+    db = new SwappableAviationDb(new SwappableAviationDb.AdapterFactory() {
+      @Override
+      public AviationDbAdapter createAdapter() {
+        final TestAdapter adapter = new TestAdapter(file);
+        adapters.add(adapter);
+        return adapter;
+      }
+    });
+    db.open();
+  }
+
+  @Override
+  protected void tearDown() {
+    db.close();
+    oldFile.delete();
+    newFile.delete();
+  }
+
+  public void testReloadSwitchesToWarmDatabase() throws InterruptedException {
+    final LatLngRect area =
+        new LatLngRect(LatLng.fromDouble(38, -122), LatLng.fromDouble(37, -123));
+    assertEquals(1, db.getAirportDirectory().getAirportsInRectangle(area, 0).size());
+    assertEquals("Old Name", db.getAviationDbAdapter().getAirport(1).name);
+
+    file = newFile;
+    db.reload();
+    assertEquals(2, adapters.size());
+    assertTrue(adapters.get(0).closed);
+    // Caches of the new database cover the latest queried area.
+    assertTrue(db.getAirportDirectory().isCacheMatch(area, 0));
+    final int cellQueries = adapters.get(1).cellQueries;
+    assertTrue(cellQueries > 0);
+    assertEquals("New Name",
+        db.getAirportDirectory().getAirportsInRectangle(area, 0).iterator().next().name);
+    assertEquals(cellQueries, adapters.get(1).cellQueries);
+  }
+
+  public void testReloadDrainsQueriesInProgress() throws InterruptedException {
+    blocker = new CountDownLatch(1);
+    final String[] name = new String[1];
+    final Thread query = new Thread() {
+      @Override
+      public void run() {
+        name[0] = db.getAviationDbAdapter().getAirport(1).name;
+      }
+    };
+    query.start();
+    assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+    file = newFile;
+    final CountDownLatch oldBlocker = blocker;
+    blocker = null;
+    db.reload();
+    // New queries go to the new database, the old one is still in use.
+    assertEquals("New Name", db.getAviationDbAdapter().getAirport(1).name);
+    assertFalse(adapters.get(0).closed);
+
+    oldBlocker.countDown();
+    query.join(5000);
+    assertEquals("Old Name", name[0]);
+    assertTrue(adapters.get(0).closed);
+    assertFalse(adapters.get(1).closed);
+  }
+
+  public void testReloadAfterCloseClosesNewDatabase() throws InterruptedException {
+    db.getAirportDirectory().getAirportsInRectangle(TestSnapshots.BAY_AREA, 0);
+    db.close();
+    file = newFile;
+    db.reload();
+    assertEquals(2, adapters.size());
+    assertTrue(adapters.get(0).closed);
+    assertTrue(adapters.get(1).closed);
+  }
+
+  private class TestAdapter extends MappedAviationDbAdapter {
+    volatile boolean closed;
+    volatile int cellQueries;
+
+    TestAdapter(final File file) {
+      super(file);
+    }
+
+    @Override
+    public Airport getAirport(final int airportId) {
+      final CountDownLatch latch = blocker;
+      if (latch != null) {
+        entered.countDown();
+        try {
+          latch.await();
+        } catch (InterruptedException iEx) {
+          throw new RuntimeException(iEx);
+        }
+      }
+      return super.getAirport(airportId);
+    }
+
+    @Override
+    public Collection<Airport> getAirportsInCells(final int startCell,
+        final int endCell, final int minRank) {
+      ++cellQueries;
+      return super.getAirportsInCells(startCell, endCell, minRank);
+    }
+
+    @Override
+    public synchronized void close() {
+      assertFalse("Closed twice", closed);
+      closed = true;
+      super.close();
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.db;
+
+import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.Airspace;
+import com.google.flightmap.common.data.AirspaceArc;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Small aviation snapshots shared by the database tests.
+ */
+final class TestSnapshots {
+  /** Area containing the only airport and airspace of the snapshots. */
+  static final LatLngRect BAY_AREA =
+      new LatLngRect(LatLng.fromDouble(38, -122), LatLng.fromDouble(37, -123));
+
+  private TestSnapshots() {
+  }
+
+  /**
+   * Writes a snapshot of airport 1 (KSFO, named {@code airportName}) and airspace 7 (the San
+   * Francisco class B) to a temporary file.  The caller deletes the file.
+   */
+  static File writeSnapshot(final String airportName) throws IOException {
+    final AviationSnapshotWriter writer = new AviationSnapshotWriter();
+    writer.addConstant(1, "Airport");
+    writer.addAirport(new Airport(1, "KSFO", airportName, Airport.Type.AIRPORT, null,
+        new LatLng(37618972, -122374889), true, true, true, false, null, 5), null, null, null);
+    final SortedMap<Integer, LatLng> points = new TreeMap<Integer, LatLng>();
+    points.put(0, LatLng.fromDouble(37.5, -122.5));
+    points.put(1, LatLng.fromDouble(37.7, -122.2));
+    writer.addAirspace(new Airspace(7, "SAN FRANCISCO", Airspace.Class.BRAVO, Airspace.SFC,
+        10000, points, new TreeMap<Integer, AirspaceArc>()), BAY_AREA, null);
+    final File file = File.createTempFile("snapshot", null);
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      writer.write(out);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.geo;
+
+import com.google.flightmap.common.data.Airspace;
+import com.google.flightmap.common.data.AirspaceArc;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+public class AirspaceLevelsOfDetailTest extends TestCase {
+  public void testGetLevelOfDetail() {
+    assertEquals(0, AirspaceLevelsOfDetail.getLevelOfDetail(4));
+    assertEquals(0, AirspaceLevelsOfDetail.getLevelOfDetail(6));
+    assertEquals(1, AirspaceLevelsOfDetail.getLevelOfDetail(6.5f));
+    assertEquals(2, AirspaceLevelsOfDetail.getLevelOfDetail(10));
+    final int fullDetail = AirspaceLevelsOfDetail.FULL_DETAIL;
+    assertEquals(fullDetail, AirspaceLevelsOfDetail.getLevelOfDetail(10.5f));
+    assertEquals(fullDetail, AirspaceLevelsOfDetail.getLevelOfDetail(12));
+  }
+
+  public void testEncodeDecodePoints() {
+    final int[] latLngs = {37618972, -122374889, -33946111, 151177222, 0, 0};
+    final SortedMap<Integer, LatLng> points =
+        AirspaceLevelsOfDetail.decodePoints(AirspaceLevelsOfDetail.encodePoints(latLngs));
+    assertEquals(3, points.size());
+    for (int i = 0; i < 3; ++i) {
+      assertEquals(new LatLng(latLngs[i * 2], latLngs[i * 2 + 1]), points.get(i));
+    }
+  }
+
+  public void testSimplifyRemovesCollinearPoints() {
+    final SortedMap<Integer, LatLng> points = new TreeMap<Integer, LatLng>();
+    int num = 0;
+    points.put(num++, LatLng.fromDouble(37, -123));
+    points.put(num++, LatLng.fromDouble(37, -122.5));
+    points.put(num++, LatLng.fromDouble(37, -122));
+    points.put(num++, LatLng.fromDouble(38, -122));
+    points.put(num++, LatLng.fromDouble(38, -123));
+    final Airspace airspace = createAirspace(points, new TreeMap<Integer, AirspaceArc>());
+    for (int level = 0; level < AirspaceLevelsOfDetail.getLevelCount(); ++level) {
+      assertEquals(8, AirspaceLevelsOfDetail.simplify(airspace, level).length);
+    }
+  }
+
+  public void testSimplifyCircleWithinTolerance() {
+    final SortedMap<Integer, AirspaceArc> arcs = new TreeMap<Integer, AirspaceArc>();
+    final LatLngRect boundingBox =
+        LatLngRect.getBoundingBox(LatLng.fromDouble(37.6, -122.4), 20000);
+    arcs.put(0, new AirspaceArc(boundingBox, 0, 360));
+    final Airspace airspace = createAirspace(new TreeMap<Integer, LatLng>(), arcs);
+    final double[] circle = AirspaceLevelsOfDetail.tessellate(airspace, 1E-7);
+
+    int previousCount = 0;
+    for (int level = AirspaceLevelsOfDetail.getLevelCount() - 1; level >= 0; --level) {
+      final int[] latLngs = AirspaceLevelsOfDetail.simplify(airspace, level);
+      final SortedMap<Integer, LatLng> points = AirspaceLevelsOfDetail.decodePoints(
+          AirspaceLevelsOfDetail.encodePoints(latLngs));
+      final double[] ring = AirspaceLevelsOfDetail.tessellate(
+          AirspaceLevelsOfDetail.withPoints(airspace, points), 0);
+      final double tolerance = AirspaceLevelsOfDetail.getTolerance(level);
+      for (int i = 0; i < circle.length; i += 2) {
+        assertTrue(getDistanceToRing(circle[i], circle[i + 1], ring) <= tolerance);
+      }
+      // Coarser levels hold fewer points.
+      if (previousCount != 0) {
+        assertTrue(latLngs.length < previousCount);
+      }
+      previousCount = latLngs.length;
+    }
+  }
+
+  private static Airspace createAirspace(final SortedMap<Integer, LatLng> points,
+      final SortedMap<Integer, AirspaceArc> arcs) {
+    return new Airspace(1, "TEST", Airspace.Class.BRAVO, Airspace.SFC, 10000, points, arcs);
+  }
+
+  private static double getDistanceToRing(final double x, final double y, final double[] ring) {
+    double minDistance = Double.MAX_VALUE;
+    for (int i = 0; i < ring.length; i += 2) {
+      final int j = (i + 2) % ring.length;
+      final double abx = ring[j] - ring[i];
+      final double aby = ring[j + 1] - ring[i + 1];
+      final double length = abx * abx + aby * aby;
+      double t = length > 0 ? ((x - ring[i]) * abx + (y - ring[i + 1]) * aby) / length : 0;
+      t = Math.max(0, Math.min(1, t));
+      final double dx = x - ring[i] - t * abx;
+      final double dy = y - ring[i + 1] - t * aby;
+      minDistance = Math.min(minDistance, Math.sqrt(dx * dx + dy * dy));
+    }
+    return minDistance;
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.geo;
+
+import com.google.flightmap.common.data.Airspace;
+import com.google.flightmap.common.data.AirspaceArc;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+public class AirspacePolygonTest extends TestCase {
+  public void testContainsPolygon() {
+    final SortedMap<Integer, LatLng> points = new TreeMap<Integer, LatLng>();
+    int num = 0;
+    // L-shaped polygon.
+    points.put(num++, LatLng.fromDouble(37, -123));
+    points.put(num++, LatLng.fromDouble(37, -121));
+    points.put(num++, LatLng.fromDouble(38, -121));
+    points.put(num++, LatLng.fromDouble(38, -122));
+    points.put(num++, LatLng.fromDouble(39, -122));
+    points.put(num++, LatLng.fromDouble(39, -123));
+    final AirspacePolygon polygon =
+        new AirspacePolygon(createAirspace(points, new TreeMap<Integer, AirspaceArc>()));
+    assertTrue(polygon.contains(LatLng.fromDouble(37.5, -121.5)));
+    assertTrue(polygon.contains(LatLng.fromDouble(38.5, -122.5)));
+    assertFalse(polygon.contains(LatLng.fromDouble(38.5, -121.5)));
+    assertFalse(polygon.contains(LatLng.fromDouble(36.5, -122.5)));
+  }
+
+  public void testContainsCircle() {
+    final SortedMap<Integer, AirspaceArc> arcs = new TreeMap<Integer, AirspaceArc>();
+    final LatLngRect boundingBox =
+        LatLngRect.getBoundingBox(LatLng.fromDouble(0, 0), 1000000);
+    arcs.put(0, new AirspaceArc(boundingBox, 0, 360));
+    final AirspacePolygon polygon =
+        new AirspacePolygon(createAirspace(new TreeMap<Integer, LatLng>(), arcs));
+    assertTrue(polygon.contains(LatLng.fromDouble(0, 0)));
+    assertTrue(polygon.contains(LatLng.fromDouble(0.99, 0)));
+    assertTrue(polygon.contains(LatLng.fromDouble(0.7, 0.7)));
+    // Inside the bounding box, outside the circle.
+    assertFalse(polygon.contains(LatLng.fromDouble(0.72, 0.72)));
+    assertFalse(polygon.contains(LatLng.fromDouble(1.01, 0)));
+  }
+
+  private static Airspace createAirspace(final SortedMap<Integer, LatLng> points,
+      final SortedMap<Integer, AirspaceArc> arcs) {
+    return new Airspace(1, "TEST", Airspace.Class.CHARLIE, Airspace.SFC, 4000, points, arcs);
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.geo;
+
+import com.google.flightmap.common.data.LatLng;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class GreatCircleUtilsTest extends TestCase {
+  private static final LatLng KSFO = LatLng.fromDouble(37.6189722,  -122.3748889);
+  private static final LatLng KJFK = LatLng.fromDouble(40.6397511, -73.7789256);
+  private static final double[] MAX_ERRORS = {10, 100, 1000};
+
+  public void testSampleGreatCircleE6EndPoints() {
+    final int[] samples = GreatCircleUtils.sampleGreatCircleE6(KSFO, KJFK, 100);
+    final int last = samples.length - 2;
+    assertEquals(KSFO.lat, samples[0]);
+    assertEquals(KSFO.lng, samples[1]);
+    assertEquals(KJFK.lat, samples[last]);
+    assertEquals(KJFK.lng, samples[last + 1]);
+  }
+
+  public void testSampleGreatCircleE6ShortSegment() {
+    final LatLng point = LatLng.fromDouble(37.5, -122.5);
+    final LatLng nearPoint = LatLng.fromDouble(37.5, -122.4999);
+    final int[] samples = GreatCircleUtils.sampleGreatCircleE6(point, nearPoint, 100);
+    assertEquals(4, samples.length);
+  }
+
+  public void testSampleGreatCircleE6Equator() {
+    final int[] samples = GreatCircleUtils.sampleGreatCircleE6(
+        LatLng.fromDouble(0, -10), LatLng.fromDouble(0, 10), 100);
+    assertEquals(4, samples.length);
+  }
+
+  public void testSampleGreatCircleE6CoastToCoast() {
+    for (double maxError: MAX_ERRORS) {
+      assertSamplesBelowError(KSFO, KJFK, maxError);
+      assertSamplesBelowError(KJFK, KSFO, maxError);
+    }
+  }
+
+  /**
+   * Checks the {@code maxError} guarantee of {@link GreatCircleUtils#sampleGreatCircle} on random
+   * segments of up to about 1000 km.
+   */
+  public void testSampleGreatCircleE6RandomSegments() {
+    final Random random = new Random(42);
+    for (int i = 0; i < 200; ++i) {
+      final double lat = random.nextDouble() * 140 - 70;
+      final double lng = random.nextDouble() * 340 - 170;
+      final LatLng point1 = LatLng.fromDouble(lat, lng);
+      final LatLng point2 = LatLng.fromDouble(lat + random.nextDouble() * 16 - 8,
+          lng + random.nextDouble() * 16 - 8);
+      assertSamplesBelowError(point1, point2, MAX_ERRORS[i % MAX_ERRORS.length]);
+    }
+  }
+
+  private static void assertSamplesBelowError(final LatLng point1, final LatLng point2,
+      final double maxError) {
+    final int[] samples = GreatCircleUtils.sampleGreatCircleE6(point1, point2, maxError);
+    for (int i = 2; i < samples.length; i += 2) {
+      final LatLng start = new LatLng(samples[i - 2], samples[i - 1]);
+      final LatLng end = new LatLng(samples[i], samples[i + 1]);
+      assertTrue(point1 + " -> " + point2 + ": " + start + " -> " + end,
+          GreatCircleUtils.pathsBelowError(start, end, maxError));
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.geo;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class MagFieldTest extends TestCase {
+  private static final long TIME = 1293840000000L; // 1 Jan 2011 00:00:00 GMT
+  private static final int POINTS = 1000;
+
+  private final double[] latLngs = new double[POINTS * 2];
+
+  @Override
+  protected void setUp() {
+    final Random random = new Random(0);
+    for (int i = 0; i < POINTS; ++i) {
+      // Consecutive points share their latitude, as in the rows of a grid.
+      latLngs[i * 2] = Math.toRadians(-80 + 16 * (i / 100));
+      latLngs[i * 2 + 1] = Math.toRadians(-180 + 360 * random.nextDouble());
+    }
+  }
+
+  public void testBatchMatchesSinglePoints() {
+    final double[] variations = new double[POINTS];
+    new MagField().getMagVar(latLngs, 0, TIME, variations);
+    for (int i = 0; i < POINTS; ++i) {
+      assertEquals(MagField.GetMagVar(latLngs[i * 2], latLngs[i * 2 + 1], 0, TIME, null),
+          variations[i], 1E-12);
+    }
+  }
+
+  public void testConcurrentCalls() throws InterruptedException {
+    final double[] expected = new double[POINTS];
+    for (int i = 0; i < POINTS; ++i) {
+      expected[i] = MagField.GetMagVar(latLngs[i * 2], latLngs[i * 2 + 1], 0, TIME, null);
+    }
+    final int threads = 4;
+    final int[] mismatches = new int[threads];
+    final Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; ++t) {
+      final int thread = t;
+      workers[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int run = 0; run < 20; ++run) {
+            for (int i = 0; i < POINTS; ++i) {
+              // Each thread uses a different time, so that Gauss coefficients keep changing.
+              final long time = TIME + (i % 2 == 0 ? 0 : thread * 1000L);
+              final double variation =
+                  MagField.GetMagVar(latLngs[i * 2], latLngs[i * 2 + 1], 0, time, null);
+              if (time == TIME && variation != expected[i]) {
+                ++mismatches[thread];
+              }
+            }
+          }
+        }
+      };
+      workers[t].start();
+    }
+    for (Thread worker: workers) {
+      worker.join();
+    }
+    for (int t = 0; t < threads; ++t) {
+      assertEquals(0, mismatches[t]);
+    }
+  }
+}
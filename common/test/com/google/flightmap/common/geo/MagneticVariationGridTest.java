@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.geo;
+
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class MagneticVariationGridTest extends TestCase {
+  private static final long TIME = 1293840000000L; // 1 Jan 2011 00:00:00 GMT
+  private static final int STEP = 500000;
+  private static final LatLngRect AREA =
+      new LatLngRect(LatLng.fromDouble(24, -125), LatLng.fromDouble(50, -66));
+
+  /**
+   * Maximum difference between interpolated and computed variation, in degrees.
+   */
+  private static final double MAX_ERROR = 0.05;
+
+  private final MagneticVariationGrid grid = MagneticVariationGrid.build(AREA, STEP, TIME);
+
+  public void testInterpolatedVariation() {
+    final Random random = new Random(0);
+    for (int i = 0; i < 1000; ++i) {
+      final LatLng location = LatLng.fromDouble(24 + 26 * random.nextDouble(),
+          -125 + 59 * random.nextDouble());
+      final double expected = Math.toDegrees(
+          MagField.GetMagVar(location.latRad(), location.lngRad(), 0, TIME, null));
+      assertEquals(expected, grid.getMagneticVariation(location), MAX_ERROR);
+    }
+  }
+
+  public void testOutsideGrid() {
+    assertFalse(grid.contains(LatLng.fromDouble(-33.9, 151.2)));
+    assertTrue(Double.isNaN(grid.getMagneticVariation(LatLng.fromDouble(-33.9, 151.2))));
+    assertTrue(grid.contains(AREA.getNeCorner()));
+    assertTrue(grid.contains(AREA.getSwCorner()));
+  }
+
+  public void testEncodeValues() {
+    final MagneticVariationGrid decoded = new MagneticVariationGrid(grid.getMinLat(),
+        grid.getMinLng(), grid.getStep(), grid.getRows(), grid.getCols(), grid.encodeValues());
+    final LatLng location = LatLng.fromDouble(37.6189722, -122.3748889);
+    assertEquals(grid.getMagneticVariation(location), decoded.getMagneticVariation(location));
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.flightmap.common.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class FileDeltaTest extends TestCase {
+  private static final int BLOCK_SIZE = 1024;
+
+  private File oldFile;
+  private File newFile;
+  private File deltaFile;
+  private File resultFile;
+
+  @Override
+  protected void setUp() throws IOException {
+    oldFile = File.createTempFile("FileDeltaTest", ".old");
+    newFile = File.createTempFile("FileDeltaTest", ".new");
+    deltaFile = File.createTempFile("FileDeltaTest", ".delta");
+    resultFile = File.createTempFile("FileDeltaTest", ".result");
+  }
+
+  @Override
+  protected void tearDown() {
+    oldFile.delete();
+    newFile.delete();
+    deltaFile.delete();
+    resultFile.delete();
+  }
+
+  public void testRoundTrip() throws IOException {
+    final byte[] oldData = new byte[100 * BLOCK_SIZE];
+    new Random(1).nextBytes(oldData);
+    // New version: one block changed, two blocks swapped, and a partial block appended.
+    final byte[] newData = new byte[oldData.length + BLOCK_SIZE / 2];
+    System.arraycopy(oldData, 0, newData, 0, oldData.length);
+    newData[10 * BLOCK_SIZE + 7] ^= 1;
+    System.arraycopy(oldData, 20 * BLOCK_SIZE, newData, 21 * BLOCK_SIZE, BLOCK_SIZE);
+    System.arraycopy(oldData, 21 * BLOCK_SIZE, newData, 20 * BLOCK_SIZE, BLOCK_SIZE);
+    write(oldFile, oldData);
+    write(newFile, newData);
+
+    createDelta();
+    // Two literal blocks, plus the partial block.
+    assertTrue(deltaFile.length() < 3 * BLOCK_SIZE + 200);
+    FileDelta.apply(oldFile, deltaFile, resultFile);
+    assertTrue(Arrays.equals(newData, StreamUtils.getBytes(resultFile)));
+    assertTrue(Arrays.equals(oldData, StreamUtils.getBytes(oldFile)));
+  }
+
+  public void testWrongBaseIsRejected() throws IOException {
+    final byte[] data = new byte[10 * BLOCK_SIZE];
+    new Random(2).nextBytes(data);
+    write(oldFile, data);
+    write(newFile, data);
+    createDelta();
+
+    data[0] ^= 1;
+    write(oldFile, data);
+    try {
+      FileDelta.apply(oldFile, deltaFile, resultFile);
+      fail("Delta should not apply to a different base.");
+    } catch (IOException expected) {
+    }
+    assertFalse(resultFile.exists());
+  }
+
+  private void createDelta() throws IOException {
+    final OutputStream out = new FileOutputStream(deltaFile);
+    try {
+      FileDelta.create(oldFile, newFile, BLOCK_SIZE, out);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void write(final File file, final byte[] data) throws IOException {
+    final OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(data);
+    } finally {
+      out.close();
+    }
+  }
+}
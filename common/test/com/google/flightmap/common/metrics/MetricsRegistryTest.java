@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.metrics;
+
+import junit.framework.TestCase;
+
+public class MetricsRegistryTest extends TestCase {
+  private final MetricsRegistry registry = new MetricsRegistry();
+
+  public void testMetrics() {
+    registry.getCounter("hits").increment();
+    registry.getCounter("hits").add(2);
+    assertSame(registry.getCounter("hits"), registry.getCounter("hits"));
+    registry.getGauge("size").set(7);
+
+    final LatencyHistogram histogram = registry.getHistogram("latency");
+    for (int i = 0; i < 9; ++i) {
+      histogram.recordMicros(150);
+    }
+    histogram.recordMicros(30000);
+
+    final MetricsSnapshot snapshot = registry.getSnapshot();
+    assertEquals(Long.valueOf(3), snapshot.getCounters().get("hits"));
+    assertEquals(Long.valueOf(7), snapshot.getGauges().get("size"));
+    final LatencyHistogram.Snapshot latency = snapshot.getHistograms().get("latency");
+    assertEquals(10, latency.count);
+    assertEquals(30000, latency.maxMicros);
+    assertEquals((9 * 150 + 30000) / 10, latency.getAverageMicros());
+    assertEquals(200, latency.getPercentileMicros(50));
+    assertEquals(200, latency.getPercentileMicros(90));
+    assertEquals(30000, latency.getPercentileMicros(100));
+    assertEquals("hits: 3\nsize: 7\nlatency: " + latency + "\n",
+        snapshot.toString().replace(System.getProperty("line.separator"), "\n"));
+
+    // Snapshots are not updated.
+    registry.getCounter("hits").increment();
+    assertEquals(Long.valueOf(3), snapshot.getCounters().get("hits"));
+  }
+}
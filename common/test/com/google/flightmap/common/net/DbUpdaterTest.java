@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.net;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import com.google.flightmap.common.db.DbAdapter;
+
+import junit.framework.TestCase;
+
+public class DbUpdaterTest extends TestCase {
+  private static final String NAME = "aviation.db";
+
+  private FakeHttpServer server;
+  private File dir;
+  private File localFile;
+
+  @Override
+  protected void setUp() throws IOException {
+    server = new FakeHttpServer();
+    dir = File.createTempFile("DbUpdaterTest", "");
+    dir.delete();
+    dir.mkdirs();
+    localFile = new File(dir, NAME);
+    write(localFile, "database");
+    write(new File(dir, NAME + ".info"), "1300000000\n");
+  }
+
+  @Override
+  protected void tearDown() throws IOException {
+    server.stop();
+    for (File file: dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  public void testExpiredDatabaseIsNotUpdatedWithoutNewerVersion() throws IOException {
+    server.put("/" + NAME + ".info", "1300000000\n".getBytes("US-ASCII"));
+    assertFalse(createUpdater("0", "4").isUpdateNeeded());
+
+    server.put("/" + NAME + ".info", "1400000000\n".getBytes("US-ASCII"));
+    assertTrue(createUpdater("0", "4").isUpdateNeeded());
+  }
+
+  public void testCurrentDatabaseIsNotUpdated() throws IOException {
+    server.put("/" + NAME + ".info", "1400000000\n".getBytes("US-ASCII"));
+    assertFalse(createUpdater(String.valueOf(Long.MAX_VALUE), "4").isUpdateNeeded());
+    // Old schema.
+    assertTrue(createUpdater(String.valueOf(Long.MAX_VALUE), "3").isUpdateNeeded());
+  }
+
+  private DbUpdater createUpdater(final String expires, final String schemaVersion)
+      throws IOException {
+    return new DbUpdater(localFile, server.getUrl("/" + NAME), new File(dir, "work"),
+        new DbAdapter() {
+          @Override
+          public void open() {
+          }
+
+          @Override
+          public void close() {
+          }
+
+          @Override
+          public String getMetadata(final String key) {
+            return DbAdapter.EXPIRATION_TIMESTAMP_KEY.equals(key) ? expires : schemaVersion;
+          }
+        }, 4);
+  }
+
+  private static void write(final File file, final String content) throws IOException {
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("US-ASCII"));
+    } finally {
+      out.close();
+    }
+  }
+}
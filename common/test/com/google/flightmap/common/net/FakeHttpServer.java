@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.flightmap.common.net;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal in-process HTTP server for download tests.  Serves static content with support for
+ * {@code Range} requests, and can inject latency and failures.
+ */
+class FakeHttpServer {
+  private static final Pattern REQUEST_PATTERN = Pattern.compile("^GET (\\S+) HTTP/1\\.[01]$");
+  private static final Pattern RANGE_PATTERN = Pattern.compile("^bytes=(\\d+)-$");
+
+  private final ServerSocket serverSocket;
+  private final Thread acceptThread;
+
+  private final Map<String, byte[]> contents = new HashMap<String, byte[]>();
+  /**
+   * Number of upcoming requests to fail, and how (see {@link #fail}, {@link #corrupt} and {@link
+   * #truncate}).
+   */
+  private final Map<String, Integer> failures = new HashMap<String, Integer>();
+  private final Map<String, Integer> corruptions = new HashMap<String, Integer>();
+  private final Map<String, Integer> truncations = new HashMap<String, Integer>();
+  /** Requests received so far, as "path" or "path@rangeStart". */
+  private final List<String> requests = new ArrayList<String>();
+  private long latency;
+  private int activeRequests;
+  private int maxActiveRequests;
+
+  FakeHttpServer() throws IOException {
+    serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    acceptThread = new Thread() {
+      @Override
+      public void run() {
+        acceptConnections();
+      }
+    };
+    acceptThread.setDaemon(true);
+    acceptThread.start();
+  }
+
+  URL getUrl(final String path) throws IOException {
+    return new URL("http", "127.0.0.1", serverSocket.getLocalPort(), path);
+  }
+
+  synchronized void put(final String path, final byte[] content) {
+    contents.put(path, content);
+  }
+
+  /**
+   * Delays every response by {@code latency} milliseconds.
+   */
+  synchronized void setLatency(final long latency) {
+    this.latency = latency;
+  }
+
+  /**
+   * Answers the next {@code count} requests for {@code path} with a server error.
+   */
+  synchronized void fail(final String path, final int count) {
+    failures.put(path, count);
+  }
+
+  /**
+   * Flips the bits of the last byte of the next {@code count} responses for {@code path}.
+   */
+  synchronized void corrupt(final String path, final int count) {
+    corruptions.put(path, count);
+  }
+
+  /**
+   * Closes the connection after {@code bytes} bytes of the body, once, on the next request for
+   * {@code path}.
+   */
+  synchronized void truncate(final String path, final int bytes) {
+    truncations.put(path, bytes);
+  }
+
+  synchronized List<String> getRequests() {
+    return new ArrayList<String>(requests);
+  }
+
+  synchronized int getMaxActiveRequests() {
+    return maxActiveRequests;
+  }
+
+  void stop() throws IOException {
+    serverSocket.close();
+  }
+
+  private void acceptConnections() {
+    while (true) {
+      final Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (IOException ioEx) {
+        return;  // Server stopped.
+      }
+      final Thread connectionThread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            handle(socket);
+          } catch (Exception ex) {
+            // Client went away.
+          } finally {
+            try {
+              socket.close();
+            } catch (IOException ioEx) {
+              // Ignored.
+            }
+          }
+        }
+      };
+      connectionThread.setDaemon(true);
+      connectionThread.start();
+    }
+  }
+
+  private void handle(final Socket socket) throws IOException, InterruptedException {
+    final BufferedReader in =
+        new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+    final Matcher requestMatcher = REQUEST_PATTERN.matcher(in.readLine());
+    if (!requestMatcher.matches()) {
+      return;
+    }
+    final String path = requestMatcher.group(1);
+    int rangeStart = -1;
+    String line;
+    while ((line = in.readLine()) != null && line.length() > 0) {
+      final int colon = line.indexOf(':');
+      if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Range")) {
+        final Matcher rangeMatcher = RANGE_PATTERN.matcher(line.substring(colon + 1).trim());
+        if (rangeMatcher.matches()) {
+          rangeStart = Integer.parseInt(rangeMatcher.group(1));
+        }
+      }
+    }
+
+    byte[] content;
+    final boolean fail;
+    final int truncation;
+    final long delay;
+    synchronized (this) {
+      requests.add(rangeStart < 0 ? path : path + "@" + rangeStart);
+      maxActiveRequests = Math.max(maxActiveRequests, ++activeRequests);
+      content = contents.get(path);
+      fail = countDown(failures, path);
+      if (content != null && countDown(corruptions, path)) {
+        content = content.clone();
+        content[content.length - 1] ^= 0xff;
+      }
+      truncation = truncations.containsKey(path) ? truncations.remove(path) : -1;
+      delay = latency;
+    }
+    try {
+      Thread.sleep(delay);
+      final OutputStream out = socket.getOutputStream();
+      if (content == null) {
+        writeHeader(out, "404 Not Found", 0, null);
+      } else if (fail) {
+        writeHeader(out, "500 Internal Server Error", 0, null);
+      } else if (rangeStart >= content.length) {
+        writeHeader(out, "416 Requested Range Not Satisfiable", 0, null);
+      } else {
+        final int start = Math.max(rangeStart, 0);
+        final int length = content.length - start;
+        writeHeader(out, rangeStart < 0 ? "200 OK" : "206 Partial Content", length,
+            rangeStart < 0 ? null :
+                "bytes " + start + "-" + (content.length - 1) + "/" + content.length);
+        out.write(content, start, truncation < 0 ? length : Math.min(truncation, length));
+      }
+      out.flush();
+    } finally {
+      synchronized (this) {
+        --activeRequests;
+      }
+    }
+  }
+
+  private static boolean countDown(final Map<String, Integer> counts, final String path) {
+    final Integer count = counts.get(path);
+    if (count == null || count == 0) {
+      return false;
+    }
+    counts.put(path, count - 1);
+    return true;
+  }
+
+  private static void writeHeader(final OutputStream out, final String status,
+      final int contentLength, final String contentRange) throws IOException {
+    final StringBuilder header = new StringBuilder();
+    header.append("HTTP/1.1 ").append(status).append("\r\n");
+    header.append("Content-Length: ").append(contentLength).append("\r\n");
+    if (contentRange != null) {
+      header.append("Content-Range: ").append(contentRange).append("\r\n");
+    }
+    header.append("Connection: close\r\n\r\n");
+    out.write(header.toString().getBytes("US-ASCII"));
+  }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.flightmap.common.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.flightmap.common.ProgressListener;
+import com.google.flightmap.common.io.DigestUtils;
+import com.google.flightmap.common.io.FileDelta;
+import com.google.flightmap.common.io.StreamUtils;
+
+import junit.framework.TestCase;
+
+public class FileUpdaterTest extends TestCase {
+  private static final String NAME = "aviation.db";
+  private static final int PART_SIZE = 20000;
+  private static final int PART_COUNT = 5;
+
+  private FakeHttpServer server;
+  private File dir;
+  private File localFile;
+  private byte[] content;
+
+  @Override
+  protected void setUp() throws IOException {
+    server = new FakeHttpServer();
+    dir = File.createTempFile("FileUpdaterTest", "");
+    dir.delete();
+    dir.mkdirs();
+    localFile = new File(dir, NAME);
+    content = new byte[PART_SIZE * PART_COUNT - 123];
+    new Random(42).nextBytes(content);
+  }
+
+  @Override
+  protected void tearDown() throws IOException {
+    server.stop();
+    deleteRecursively(dir);
+  }
+
+  /**
+   * Publishes {@link #content} like data/scripts/publish_file.sh does, without a manifest.
+   */
+  private void publish(final boolean gzipped) throws IOException {
+    publish(gzipped, false);
+  }
+
+  /**
+   * Publishes {@link #content} like data/scripts/publish_file.sh does.
+   */
+  private void publish(final boolean gzipped, final boolean withManifest) throws IOException {
+    server.put("/" + NAME + ".info", "1300000000\n".getBytes("US-ASCII"));
+    final StringBuilder partsFile = new StringBuilder();
+    final StringBuilder manifest = new StringBuilder();
+    for (int i = 0; i < PART_COUNT; ++i) {
+      final String partName = getPartName(i);
+      final byte[] part = new byte[Math.min(PART_SIZE, content.length - i * PART_SIZE)];
+      System.arraycopy(content, i * PART_SIZE, part, 0, part.length);
+      partsFile.append(part.length).append('\t').append(partName).append('\n');
+      manifest.append(getSha256(part)).append("  ").append(partName).append('\n');
+      if (gzipped) {
+        final ByteArrayOutputStream gz = new ByteArrayOutputStream();
+        final GZIPOutputStream out = new GZIPOutputStream(gz);
+        out.write(part);
+        out.close();
+        server.put("/" + partName + ".gz", gz.toByteArray());
+      } else {
+        server.put("/" + partName, part);
+      }
+    }
+    server.put("/" + NAME + ".parts", partsFile.toString().getBytes("US-ASCII"));
+    manifest.append(getSha256(content)).append("  ").append(NAME).append('\n');
+    if (withManifest) {
+      server.put("/" + NAME + ".sha256", manifest.toString().getBytes("US-ASCII"));
+    }
+  }
+
+  private static String getSha256(final byte[] data) {
+    return DigestUtils.toHex(DigestUtils.newSha256().digest(data));
+  }
+
+  private static String getPartName(final int i) {
+    return NAME + ".part.0" + i;
+  }
+
+  private FileUpdater createUpdater() throws IOException {
+    final FileUpdater updater =
+        new FileUpdater(localFile, server.getUrl("/" + NAME), new File(dir, "work"));
+    updater.setRetryDelay(10);
+    return updater;
+  }
+
+  public void testConcurrentDownload() throws IOException {
+    publish(true);
+    server.setLatency(100);
+    final FileUpdater updater = createUpdater();
+    updater.setMaxConcurrentDownloads(3);
+    final RecordingListener listener = new RecordingListener();
+    updater.addProgressListener(listener);
+
+    assertTrue(updater.isUpdateNeeded());
+    updater.update();
+    assertTrue(Arrays.equals(content, StreamUtils.getBytes(localFile)));
+    assertFalse(updater.isUpdateNeeded());
+    assertFalse(new File(dir, "work").exists());
+    assertEquals(3, server.getMaxActiveRequests());
+    assertEquals(100, listener.lastPercent);
+    assertEquals(Boolean.TRUE, listener.success);
+    assertTrue(listener.monotonic);
+  }
+
+  public void testRetryResumesTruncatedParts() throws IOException {
+    publish(false);
+    server.truncate("/" + getPartName(2), 5000);
+    server.fail("/" + getPartName(3), 2);
+    final FileUpdater updater = createUpdater();
+    updater.update();
+    assertTrue(Arrays.equals(content, StreamUtils.getBytes(localFile)));
+
+    final List<String> requests = server.getRequests();
+    assertTrue(requests.contains("/" + getPartName(2) + "@5000"));
+    assertEquals(3, countRequests(requests, "/" + getPartName(3)));
+  }
+
+  public void testRetryResumesTruncatedGzippedParts() throws IOException {
+    publish(true);
+    server.truncate("/" + getPartName(1) + ".gz", 3000);
+    createUpdater().update();
+    assertTrue(Arrays.equals(content, StreamUtils.getBytes(localFile)));
+    assertTrue(server.getRequests().contains("/" + getPartName(1) + ".gz@3000"));
+  }
+
+  public void testFailedUpdateKeepsDownloadedParts() throws IOException {
+    publish(true);
+    server.fail("/" + getPartName(4) + ".gz", 3);
+    final FileUpdater updater = createUpdater();
+    updater.setMaxAttempts(3);
+    final RecordingListener listener = new RecordingListener();
+    updater.addProgressListener(listener);
+    try {
+      updater.update();
+      fail("Update should fail after 3 attempts.");
+    } catch (IOException expected) {
+    }
+    assertFalse(localFile.exists());
+    assertEquals(Boolean.FALSE, listener.success);
+
+    createUpdater().update();
+    assertTrue(Arrays.equals(content, StreamUtils.getBytes(localFile)));
+    final List<String> requests = server.getRequests();
+    assertEquals(1, countRequests(requests, "/" + getPartName(0) + ".gz"));
+    assertEquals(4, countRequests(requests, "/" + getPartName(4) + ".gz"));
+  }
+
+  public void testManifestRefetchesCorruptPartsOnly() throws IOException {
+    publish(false, true);
+    server.corrupt("/" + getPartName(2), 1);
+    createUpdater().update();
+    assertTrue(Arrays.equals(content, StreamUtils.getBytes(localFile)));
+    final List<String> requests = server.getRequests();
+    assertEquals(2, countRequests(requests, "/" + getPartName(2)));
+    assertEquals(1, countRequests(requests, "/" + getPartName(1)));
+  }
+
+  public void testManifestDetectsCorruptLeftoverParts() throws IOException {
+    publish(true, true);
+    // Leftovers of an interrupted update: same info, and a part of the right size.
+    final File workingDir = new File(dir, "work");
+    workingDir.mkdirs();
+    write(new File(workingDir, NAME + ".info"), "1300000000\n".getBytes("US-ASCII"));
+    write(new File(workingDir, getPartName(0)), new byte[PART_SIZE]);
+    write(new File(workingDir, getPartName(1)), content, PART_SIZE, PART_SIZE);
+
+    createUpdater().update();
+    assertTrue(Arrays.equals(content, StreamUtils.getBytes(localFile)));
+    final List<String> requests = server.getRequests();
+    assertEquals(1, countRequests(requests, "/" + getPartName(0) + ".gz"));
+    assertEquals(0, countRequests(requests, "/" + getPartName(1) + ".gz"));
+  }
+
+  public void testManifestRejectsCorruptGzippedParts() throws IOException {
+    publish(true, true);
+    server.corrupt("/" + getPartName(3) + ".gz", 3);
+    final FileUpdater updater = createUpdater();
+    try {
+      updater.update();
+      fail("Corrupt part should be rejected.");
+    } catch (IOException expected) {
+    }
+    assertFalse(localFile.exists());
+  }
+
+  public void testDeltaUpdate() throws IOException {
+    final byte[] previousContent = installPreviousVersion();
+    publish(true);
+    server.put("/" + NAME + ".delta.1200000000", createDelta(previousContent));
+
+    createUpdater().update();
+    assertTrue(Arrays.equals(content, StreamUtils.getBytes(localFile)));
+    assertEquals("1300000000\n", StreamUtils.read(new File(dir, NAME + ".info")));
+    for (String request: server.getRequests()) {
+      assertFalse(request, request.contains(".part."));
+    }
+  }
+
+  public void testDeltaFallsBackToFullDownload() throws IOException {
+    final byte[] previousContent = installPreviousVersion();
+    publish(true);
+    server.put("/" + NAME + ".delta.1200000000", createDelta(previousContent));
+    // Local file no longer matches the base of the delta.
+    previousContent[0] ^= 1;
+    write(localFile, previousContent);
+
+    createUpdater().update();
+    assertTrue(Arrays.equals(content, StreamUtils.getBytes(localFile)));
+    assertEquals(1, countRequests(server.getRequests(), "/" + getPartName(0) + ".gz"));
+  }
+
+  /**
+   * Installs a previous version of {@link #content} as the local file.
+   */
+  private byte[] installPreviousVersion() throws IOException {
+    final byte[] previousContent = content.clone();
+    previousContent[PART_SIZE + 5] ^= 1;
+    write(localFile, previousContent);
+    write(new File(dir, NAME + ".info"), "1200000000\n".getBytes("US-ASCII"));
+    return previousContent;
+  }
+
+  private byte[] createDelta(final byte[] previousContent) throws IOException {
+    final File previousFile = new File(dir, "previous");
+    final File currentFile = new File(dir, "current");
+    write(previousFile, previousContent);
+    write(currentFile, content);
+    final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+    FileDelta.create(previousFile, currentFile, 1024, delta);
+    previousFile.delete();
+    currentFile.delete();
+    return delta.toByteArray();
+  }
+
+  private static void write(final File file, final byte[] data) throws IOException {
+    write(file, data, 0, data.length);
+  }
+
+  private static void write(final File file, final byte[] data, final int offset,
+      final int length) throws IOException {
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(data, offset, length);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static int countRequests(final List<String> requests, final String request) {
+    int count = 0;
+    for (String r: requests) {
+      if (r.equals(request)) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  private static void deleteRecursively(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (File child: children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static class RecordingListener implements ProgressListener {
+    int lastPercent = -1;
+    boolean monotonic = true;
+    Boolean success;
+
+    @Override
+    public synchronized void hasProgressed(int percent) {
+      monotonic &= percent >= lastPercent;
+      lastPercent = percent;
+    }
+
+    @Override
+    public synchronized void hasCompleted(boolean success) {
+      this.success = success;
+    }
+  }
+}
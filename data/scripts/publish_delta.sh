@@ -0,0 +1,9 @@
+#!/bin/bash
+#
+# Publishes the delta from a previously published file to a newly published
+# one.  Run after publish_file.sh, from the preprocessing directory.
+
+declare -r previous_file=$1
+declare -r file=$2
+
+java -cp build/classes/:lib/commons-cli.jar:lib/flightmap-common.jar:lib/sqlitejdbc.jar com.google.flightmap.parsing.db.AviationDbDeltaBuilder --previous_db "$previous_file" --aviation_db "$file" --delta "$file.delta.$(cat "$previous_file.info")"
@@ -6,5 +6,6 @@ rm -f "$file".*
 date +%s > "$file.info"
 split -d -b 1000000 "$file" "$file.part."
 du -b "$file".part.* > "$file.parts"
+sha256sum "$file".part.* "$file" | sed 's|  .*/|  |' > "$file.sha256"
 gzip "$file".part.*
 
@@ -0,0 +1,21 @@
+#!/bin/bash
+
+# Builds the aviation database twice and checks that both builds are identical, as required by
+# delta updates and part-level caching.
+
+for build in 1 2; do
+  AVIATION_DB="aviation.check$build.db" SHARDS_DIR="shards.check$build" ./prepare_db.sh || exit
+done
+
+hashes() {
+  sha256sum "aviation.check$1.db" "aviation.check$1.snapshot" "shards.check$1"/* |
+      sed "s|check$1|check|"
+}
+
+if diff <(hashes 1) <(hashes 2); then
+  echo "Builds are identical."
+  rm -rf aviation.check[12].db aviation.check[12].snapshot shards.check[12]
+else
+  echo "Builds differ: kept aviation.check[12].* and shards.check[12] for inspection."
+  exit 1
+fi
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.common.geo;
+
+import java.util.Random;
+
+/**
+ * Measures the throughput of {@link MagField}: single points at random locations, and batches of
+ * points laid out as the rows of a grid.
+ * <p>
+ * Usage: {@code MagFieldBenchmark [threads]}.  Each measure is repeated after a warm-up run, and
+ * reported in points per second.
+ */
+public class MagFieldBenchmark {
+  private static final int POINTS = 200000;
+  private static final int ROW_LENGTH = 250;
+  private static final int RUNS = 5;
+
+  private final double[] randomLatLngs = new double[POINTS * 2];
+  private final double[] gridLatLngs = new double[POINTS * 2];
+  private final long time = System.currentTimeMillis();
+
+  /**
+   * Prevents the JIT from eliminating the computations.
+   */
+  private volatile double sink;
+
+  private MagFieldBenchmark() {
+    final Random random = new Random(0);
+    for (int i = 0; i < POINTS; ++i) {
+      randomLatLngs[i * 2] = Math.toRadians(-80 + 160 * random.nextDouble());
+      randomLatLngs[i * 2 + 1] = Math.toRadians(-180 + 360 * random.nextDouble());
+      gridLatLngs[i * 2] = Math.toRadians(24 + 0.5 * (i / ROW_LENGTH));
+      gridLatLngs[i * 2 + 1] = Math.toRadians(-125 + 0.5 * (i % ROW_LENGTH));
+    }
+  }
+
+  private void runSinglePoints() {
+    double sum = 0;
+    for (int i = 0; i < POINTS; ++i) {
+      sum += MagField.GetMagVar(randomLatLngs[i * 2], randomLatLngs[i * 2 + 1], 0, time, null);
+    }
+    sink = sum;
+  }
+
+  private void runBatch() {
+    final MagField magField = new MagField();
+    final double[] variations = new double[POINTS];
+    magField.getMagVar(gridLatLngs, 0, time, variations);
+    sink = variations[POINTS - 1];
+  }
+
+  private void runConcurrentSinglePoints(final int threads) throws InterruptedException {
+    final Thread[] workers = new Thread[threads];
+    for (int i = 0; i < threads; ++i) {
+      workers[i] = new Thread() {
+        @Override
+        public void run() {
+          runSinglePoints();
+        }
+      };
+      workers[i].start();
+    }
+    for (Thread worker: workers) {
+      worker.join();
+    }
+  }
+
+  private static void report(final String name, final int points, final long nanos) {
+    System.out.println(String.format("%-28s %,12.0f points/s", name, points * 1E9 / nanos));
+  }
+
+  public static void main(String[] args) {
+    try {
+      final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+      final MagFieldBenchmark benchmark = new MagFieldBenchmark();
+      for (int run = 0; run <= RUNS; ++run) {
+        final boolean warmUp = run == 0;
+        long start = System.nanoTime();
+        benchmark.runSinglePoints();
+        if (!warmUp) {
+          report("Single points", POINTS, System.nanoTime() - start);
+        }
+
+        start = System.nanoTime();
+        benchmark.runBatch();
+        if (!warmUp) {
+          report("Batch (grid rows)", POINTS, System.nanoTime() - start);
+        }
+
+        start = System.nanoTime();
+        benchmark.runConcurrentSinglePoints(threads);
+        if (!warmUp) {
+          report("Single points, " + threads + " threads", POINTS * threads,
+              System.nanoTime() - start);
+        }
+      }
+    } catch (Exception ex) {
+      ex.printStackTrace();
+    }
+  }
+}
@@ -1 +1,2 @@
 java -cp lib/sqlitejdbc-v056.jar:../common/release/flightmap-common.jar:build/classes/ com.google.flightmap.db.JdbcAviationDbAdapterPatternQueriesTest ../data/aviation.db
+java -cp ../common/release/flightmap-common.jar:build/classes/ com.google.flightmap.common.geo.MagFieldBenchmark 4
@@ -2,7 +2,10 @@
 
 ant compile || exit
 
-AVIATION_DB="aviation.db"
+AVIATION_DB="${AVIATION_DB:-aviation.db}"
+SHARDS_DIR="${SHARDS_DIR:-shards}"
+# Effective date of the data cycle, e.g. 2011-03-10: time of the magnetic variation grid.
+EPOCH="${EPOCH:?Set EPOCH to the effective date of the data cycle (yyyy-MM-dd).}"
 
 rm "$AVIATION_DB"
 
@@ -11,3 +14,17 @@ java -cp build/classes:lib/sqlitejdbc.jar:lib/guava.jar:lib/commons-lang.jar:lib
 java -cp build/classes:lib/sqlitejdbc.jar:lib/guava.jar:lib/commons-lang.jar:lib/commons-cli.jar:lib/flightmap-common.jar:lib/opencsv.jar com.google.flightmap.parsing.faa.nasr.CommParser --twr ~/nasr/TWR.txt --iata_to_icao ../data/iata2icao.txt --freq_uses_normalization ../data/nasr/distinct_freq_uses.csv --aviation_db "$AVIATION_DB"
 
 java -cp build/classes/:lib/commons-cli.jar:lib/flightmap-common.jar:lib/sqlitejdbc.jar com.google.flightmap.parsing.faa.nfd.NfdAirspaceParser --aviation_db "$AVIATION_DB" --nfd ~/Desktop/FAA/FAANFD18
+
+java -cp build/classes/:lib/commons-cli.jar:lib/flightmap-common.jar:lib/sqlitejdbc.jar com.google.flightmap.parsing.db.AirspaceLodBuilder --aviation_db "$AVIATION_DB"
+
+java -cp build/classes/:lib/commons-cli.jar:lib/flightmap-common.jar:lib/sqlitejdbc.jar com.google.flightmap.parsing.db.MagneticVariationGridBuilder --aviation_db "$AVIATION_DB" --epoch "$EPOCH"
+
+java -cp build/classes/:lib/commons-cli.jar:lib/flightmap-common.jar:lib/sqlitejdbc.jar com.google.flightmap.parsing.db.NearestAirportsBuilder --aviation_db "$AVIATION_DB"
+
+java -cp build/classes/:lib/commons-cli.jar:lib/flightmap-common.jar:lib/sqlitejdbc.jar com.google.flightmap.parsing.db.AirportAirspaceBuilder --aviation_db "$AVIATION_DB"
+
+java -cp build/classes/:lib/commons-cli.jar:lib/flightmap-common.jar:lib/sqlitejdbc.jar com.google.flightmap.parsing.db.AviationDbFinalizer --aviation_db "$AVIATION_DB"
+
+java -cp build/classes/:lib/commons-cli.jar:lib/flightmap-common.jar:lib/sqlitejdbc.jar com.google.flightmap.parsing.db.AviationSnapshotBuilder --aviation_db "$AVIATION_DB" --snapshot "${AVIATION_DB%.db}.snapshot"
+
+java -cp build/classes/:lib/commons-cli.jar:lib/flightmap-common.jar:lib/sqlitejdbc.jar com.google.flightmap.parsing.db.AviationDbSharder --aviation_db "$AVIATION_DB" --output_dir "$SHARDS_DIR"
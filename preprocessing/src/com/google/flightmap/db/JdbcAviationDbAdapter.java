@@ -16,14 +16,20 @@
 
 package com.google.flightmap.db;
 
+import com.google.flightmap.common.CancellationToken;
 import com.google.flightmap.common.data.*;
 import com.google.flightmap.common.db.AviationDbAdapter;
+import com.google.flightmap.common.db.CustomGridUtil;
+import com.google.flightmap.common.db.NearestAirports;
+import com.google.flightmap.common.geo.AirspaceLevelsOfDetail;
+import com.google.flightmap.common.geo.MagneticVariationGrid;
 import com.google.flightmap.parsing.db.AviationDbReader;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -61,6 +67,7 @@ public class JdbcAviationDbAdapter implements AviationDbAdapter, AviationDbReade
 
   private final Connection dbConn;
 
+  private PreparedStatement getAirportAirspacesStmt;
   private PreparedStatement getAirportCommsStmt;
   private PreparedStatement getAirportDataFromIdStmt;
   private PreparedStatement getAirportIdFromIcaoStmt;
@@ -70,6 +77,7 @@ public class JdbcAviationDbAdapter implements AviationDbAdapter, AviationDbReade
   private PreparedStatement getAirportPropertiesStmt;
   private PreparedStatement getAirspaceIdsInRect;
   private PreparedStatement getAirspaceArcsStmt;
+  private PreparedStatement getAirspaceLodStmt;
   private PreparedStatement getAirspacePointsStmt;
   private PreparedStatement getAirspaceStmt;
   private PreparedStatement getConstantStmt;
@@ -80,6 +88,22 @@ public class JdbcAviationDbAdapter implements AviationDbAdapter, AviationDbReade
   private PreparedStatement getRunwayEndPropertiesStmt;
   private PreparedStatement getRunwayEndsStmt;
   private PreparedStatement getMetadataStmt;
+  private PreparedStatement getNearestAirportsStmt;
+
+  /**
+   * Whether the database holds simplified airspace geometries.  Checked on first use.
+   */
+  private Boolean hasAirspaceLods;
+
+  /**
+   * Whether the database holds precomputed nearest airports.  Checked on first use.
+   */
+  private Boolean hasNearestAirports;
+
+  /**
+   * Whether the database holds the airspaces containing each airport.  Checked on first use.
+   */
+  private Boolean hasAirportAirspaces;
 
   // TODO(aristidis): Eliminate code duplication (see AndroidAviationDbAdapter)
   private static final HashSet<String> INTEGER_AIRPORT_PROPERTIES;
@@ -96,6 +120,22 @@ public class JdbcAviationDbAdapter implements AviationDbAdapter, AviationDbReade
     this.dbConn = dbConn;
   }
 
+  /**
+   * Returns whether values of the airport property {@code key} are stored as integers rather than
+   * constant ids.
+   */
+  public static boolean isIntegerAirportProperty(final String key) {
+    return INTEGER_AIRPORT_PROPERTIES.contains(key);
+  }
+
+  /**
+   * Returns whether values of the runway end property {@code key} are stored as integers rather
+   * than constant ids.
+   */
+  public static boolean isIntegerRunwayEndProperty(final String key) {
+    return INTEGER_RUNWAY_END_PROPERTIES.contains(key);
+  }
+
   @Override
   public synchronized void open() {
     throw new RuntimeException(
@@ -221,9 +261,11 @@ public class JdbcAviationDbAdapter implements AviationDbAdapter, AviationDbReade
   }
 
   /**
-   * Returns airspace with given {@code id}.
+   * Returns airspace with given {@code id}, with its geometry at the given level of detail (see
+   * {@link AirspaceLevelsOfDetail}).  Falls back to the full geometry if no simplified geometry is
+   * available.
    */
-  private Airspace getAirspace(final int id) {
+  private Airspace getAirspace(final int id, final int level) {
     try {
       if (getAirspaceStmt == null) {
         getAirspaceStmt = dbConn.prepareStatement(
@@ -242,6 +284,13 @@ public class JdbcAviationDbAdapter implements AviationDbAdapter, AviationDbReade
       rs.close();
       final String classString = getConstant(classConstantId);
       final Airspace.Class airspaceClass = Airspace.Class.valueOf(classString);
+      if (level != AirspaceLevelsOfDetail.FULL_DETAIL) {
+        final SortedMap<Integer, LatLng> points = getAirspaceLodPoints(id, level);
+        if (points != null) {
+          return new Airspace(id, name, airspaceClass, lowAlt, highAlt, points,
+              new TreeMap<Integer, AirspaceArc>());
+        }
+      }
       final SortedMap<Integer, LatLng> points = getAirspacePoints(id);
       final SortedMap<Integer, AirspaceArc> arcs = getAirspaceArcs(id);
       return new Airspace(id, name, airspaceClass, lowAlt, highAlt, points, arcs);
@@ -275,6 +324,32 @@ public class JdbcAviationDbAdapter implements AviationDbAdapter, AviationDbReade
     }
   }
 
+  /**
+   * Returns simplified polygon points for a given airspace, or {@code null} if not available.
+   */
+  private SortedMap<Integer, LatLng> getAirspaceLodPoints(final int airspaceId, final int level) {
+    try {
+      if (hasAirspaceLods == null) {
+        hasAirspaceLods = hasTable("airspace_lods");
+      }
+      if (!hasAirspaceLods) {
+        return null;
+      }
+      if (getAirspaceLodStmt == null) {
+        getAirspaceLodStmt = dbConn.prepareStatement(
+            "SELECT points FROM airspace_lods WHERE airspace_id = ? AND lod = ?");
+      }
+      getAirspaceLodStmt.setInt(1, airspaceId);
+      getAirspaceLodStmt.setInt(2, level);
+      final ResultSet rs = getAirspaceLodStmt.executeQuery();
+      final byte[] blob = rs.next() ? rs.getBytes("points") : null;
+      rs.close();
+      return blob == null ? null : AirspaceLevelsOfDetail.decodePoints(blob);
+    } catch (SQLException sqlEx) {
+      throw new RuntimeException(sqlEx);
+    }
+  }
+
   /**
    * Returns arcs for a given airspace.
    */
@@ -310,6 +385,47 @@ public class JdbcAviationDbAdapter implements AviationDbAdapter, AviationDbReade
 
   @Override
   public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect) {
+    return getAirspacesInRectangle(rect, AirspaceLevelsOfDetail.FULL_DETAIL);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final float zoom) {
+    return getAirspacesInRectangle(rect, AirspaceLevelsOfDetail.getLevelOfDetail(zoom));
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect,
+      final CancellationToken token) throws InterruptedException {
+    return getAirspacesInRectangle(rect, AirspaceLevelsOfDetail.FULL_DETAIL, token);
+  }
+
+  @Override
+  public Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final float zoom,
+      final CancellationToken token) throws InterruptedException {
+    return getAirspacesInRectangle(rect, AirspaceLevelsOfDetail.getLevelOfDetail(zoom), token);
+  }
+
+  /**
+   * Returns airspaces overlapping {@code rect}, at the given level of detail.
+   *
+   * @throws RuntimeException The thread was interrupted.  Its interrupt status is kept.
+   */
+  private Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final int level) {
+    try {
+      return getAirspacesInRectangle(rect, level, CancellationToken.NONE);
+    } catch (InterruptedException iEx) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(iEx);
+    }
+  }
+
+  /**
+   * Returns airspaces overlapping {@code rect}, at the given level of detail.
+   *
+   * @param token Stops the query
+   */
+  private Collection<Airspace> getAirspacesInRectangle(final LatLngRect rect, final int level,
+      final CancellationToken token) throws InterruptedException {
     try {
       if (getAirspaceIdsInRect == null) {
         getAirspaceIdsInRect = dbConn.prepareStatement(
@@ -322,11 +438,17 @@ public class JdbcAviationDbAdapter implements AviationDbAdapter, AviationDbReade
       getAirspaceIdsInRect.setInt(4, rect.getEast());
       final ResultSet rs = getAirspaceIdsInRect.executeQuery();
       final Collection<Airspace> airspaces = new LinkedList<Airspace>();
-      while (rs.next()) {
-        final int id = rs.getInt(1);
-        airspaces.add(getAirspace(id));
+      try {
+        while (rs.next()) {
+          if (token.hasExpired()) {
+            break;
+          }
+          final int id = rs.getInt(1);
+          airspaces.add(getAirspace(id, level));
+        }
+      } finally {
+        rs.close();
       }
-      rs.close();
       return airspaces;
     } catch (SQLException sqlEx) {
       throw new RuntimeException(sqlEx);
@@ -433,6 +555,62 @@ public class JdbcAviationDbAdapter implements AviationDbAdapter, AviationDbReade
     }
   }
   
+  @Override
+  public List<AirportAirspace> getAirportAirspaces(final int airportId) {
+    try {
+      final List<AirportAirspace> airspaces = new ArrayList<AirportAirspace>();
+      if (hasAirportAirspaces == null) {
+        hasAirportAirspaces = hasTable("airport_airspaces");
+      }
+      if (!hasAirportAirspaces) {
+        return airspaces;
+      }
+      if (getAirportAirspacesStmt == null) {
+        getAirportAirspacesStmt = dbConn.prepareStatement(
+            "SELECT airspace_id, class, low_alt, high_alt FROM airport_airspaces " +
+            "WHERE airport_id = ? ORDER BY low_alt");
+      }
+      getAirportAirspacesStmt.setInt(1, airportId);
+      final ResultSet rs = getAirportAirspacesStmt.executeQuery();
+      while (rs.next()) {
+        final Airspace.Class airspaceClass =
+            Airspace.Class.valueOf(getConstant(rs.getInt("class")));
+        airspaces.add(new AirportAirspace(rs.getInt("airspace_id"), airspaceClass,
+            rs.getInt("low_alt"), rs.getInt("high_alt")));
+      }
+      rs.close();
+      return airspaces;
+    } catch (SQLException sqlEx) {
+      throw new RuntimeException(sqlEx);
+    }
+  }
+
+  @Override
+  public int[] getNearestAirportCandidates(final LatLng position) {
+    try {
+      if (hasNearestAirports == null) {
+        hasNearestAirports = hasTable("nearest_airports");
+      }
+      if (!hasNearestAirports) {
+        return null;
+      }
+      if (getNearestAirportsStmt == null) {
+        getNearestAirportsStmt = dbConn.prepareStatement(
+            "SELECT end_cell_id, airports FROM nearest_airports WHERE start_cell_id <= ? " +
+            "ORDER BY start_cell_id DESC LIMIT 1");
+      }
+      final int cellId = CustomGridUtil.getCellId(position);
+      getNearestAirportsStmt.setInt(1, cellId);
+      final ResultSet rs = getNearestAirportsStmt.executeQuery();
+      final byte[] blob =
+          rs.next() && cellId < rs.getInt("end_cell_id") ? rs.getBytes("airports") : null;
+      rs.close();
+      return blob == null ? null : NearestAirports.decodeCandidates(blob);
+    } catch (SQLException sqlEx) {
+      throw new RuntimeException(sqlEx);
+    }
+  }
+
   public Map<String, String> getAirportProperties(final int airportId) {
     try {
       if (getAirportPropertiesStmt == null) {
@@ -554,6 +732,43 @@ public class JdbcAviationDbAdapter implements AviationDbAdapter, AviationDbReade
     }
   }
 
+  @Override
+  public MagneticVariationGrid getMagneticVariationGrid() {
+    try {
+      if (!hasTable("magnetic_variation")) {
+        return null;
+      }
+      final Statement stat = dbConn.createStatement();
+      try {
+        final ResultSet rs = stat.executeQuery(
+            "SELECT min_lat, min_lng, step, rows, cols, variation FROM magnetic_variation");
+        if (!rs.next()) {
+          rs.close();
+          return null;
+        }
+        final MagneticVariationGrid grid = new MagneticVariationGrid(rs.getInt("min_lat"),
+            rs.getInt("min_lng"), rs.getInt("step"), rs.getInt("rows"), rs.getInt("cols"),
+            rs.getBytes("variation"));
+        rs.close();
+        return grid;
+      } finally {
+        stat.close();
+      }
+    } catch (SQLException sqlEx) {
+      throw new RuntimeException(sqlEx);
+    }
+  }
+
+  /**
+   * Checks if the database holds a table with the given name.
+   */
+  private boolean hasTable(final String name) throws SQLException {
+    final ResultSet rs = dbConn.getMetaData().getTables(null, null, name, null);
+    final boolean hasTable = rs.next();
+    rs.close();
+    return hasTable;
+  }
+
   @Override
   public Map<Integer, Integer> doSearch(final String query) {
     throw new RuntimeException("This method should not be in AviationDbAdapter. TODO: REMOVE");
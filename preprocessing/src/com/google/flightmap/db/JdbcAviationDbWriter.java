@@ -16,6 +16,7 @@
 
 package com.google.flightmap.db;
 
+import com.google.flightmap.common.geo.MagneticVariationGrid;
 import com.google.flightmap.parsing.db.AviationDbWriter;
 
 import java.io.File;
@@ -49,6 +50,9 @@ public class JdbcAviationDbWriter implements AviationDbWriter {
   private PreparedStatement insertAirspaceStatement;
   private PreparedStatement insertAirspacePointStatement;
   private PreparedStatement insertAirspaceArcStatement;
+  private PreparedStatement insertAirspaceLodStatement;
+  private PreparedStatement insertNearestAirportsStatement;
+  private PreparedStatement insertAirportAirspaceStatement;
   private PreparedStatement insertConstantStatement;
   private PreparedStatement insertRunwayEndStatement;
   private PreparedStatement insertRunwayEndPropertyStatement;
@@ -92,6 +96,12 @@ public class JdbcAviationDbWriter implements AviationDbWriter {
     insertAirspacePointStatement = null;
     tryClose(insertAirspaceArcStatement);
     insertAirspaceArcStatement = null;
+    tryClose(insertAirspaceLodStatement);
+    insertAirspaceLodStatement = null;
+    tryClose(insertNearestAirportsStatement);
+    insertNearestAirportsStatement = null;
+    tryClose(insertAirportAirspaceStatement);
+    insertAirportAirspaceStatement = null;
     tryClose(insertConstantStatement);
     insertConstantStatement = null;
     tryClose(insertRunwayEndStatement);
@@ -269,6 +279,88 @@ public class JdbcAviationDbWriter implements AviationDbWriter {
     }
   }
 
+  @Override
+  public synchronized void initAirspaceLodTable() throws SQLException {
+    Statement stat = null;
+    try {
+      stat = dbConn.createStatement();
+      stat.executeUpdate("DROP TABLE IF EXISTS airspace_lods");
+      stat.executeUpdate("DROP INDEX IF EXISTS airspace_lods_airspace_id_index;");
+      stat.executeUpdate("CREATE TABLE airspace_lods (" +
+                         "airspace_id INTEGER NOT NULL, " +
+                         "lod INTEGER NOT NULL, " +
+                         "points BLOB NOT NULL);");
+      stat.executeUpdate("CREATE INDEX airspace_lods_airspace_id_index ON " +
+                         "airspace_lods (airspace_id, lod)");
+    } finally {
+      if (stat != null) {
+        stat.close();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void initMagneticVariationTable() throws SQLException {
+    Statement stat = null;
+    try {
+      stat = dbConn.createStatement();
+      stat.executeUpdate("DROP TABLE IF EXISTS magnetic_variation");
+      stat.executeUpdate("CREATE TABLE magnetic_variation (" +
+                         "min_lat INTEGER NOT NULL, " +
+                         "min_lng INTEGER NOT NULL, " +
+                         "step INTEGER NOT NULL, " +
+                         "rows INTEGER NOT NULL, " +
+                         "cols INTEGER NOT NULL, " +
+                         "variation BLOB NOT NULL);");
+    } finally {
+      if (stat != null) {
+        stat.close();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void initAirportAirspacesTable() throws SQLException {
+    Statement stat = null;
+    try {
+      stat = dbConn.createStatement();
+      stat.executeUpdate("DROP TABLE IF EXISTS airport_airspaces");
+      stat.executeUpdate("DROP INDEX IF EXISTS airport_airspaces_airport_id_index;");
+      stat.executeUpdate("CREATE TABLE airport_airspaces (" +
+                         "airport_id INTEGER NOT NULL, " +
+                         "airspace_id INTEGER NOT NULL, " +
+                         "class INTEGER NOT NULL, " +
+                         "low_alt INTEGER, " +
+                         "high_alt INTEGER NOT NULL);");
+      stat.executeUpdate("CREATE INDEX airport_airspaces_airport_id_index ON " +
+                         "airport_airspaces (airport_id)");
+    } finally {
+      if (stat != null) {
+        stat.close();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void initNearestAirportsTable() throws SQLException {
+    Statement stat = null;
+    try {
+      stat = dbConn.createStatement();
+      stat.executeUpdate("DROP TABLE IF EXISTS nearest_airports");
+      stat.executeUpdate("DROP INDEX IF EXISTS nearest_airports_start_cell_id_index;");
+      stat.executeUpdate("CREATE TABLE nearest_airports (" +
+                         "start_cell_id INTEGER NOT NULL, " +
+                         "end_cell_id INTEGER NOT NULL, " +
+                         "airports BLOB NOT NULL);");
+      stat.executeUpdate("CREATE UNIQUE INDEX nearest_airports_start_cell_id_index ON " +
+                         "nearest_airports (start_cell_id)");
+    } finally {
+      if (stat != null) {
+        stat.close();
+      }
+    }
+  }
+
   @Override
   public synchronized void initAndroidMetadataTable() throws SQLException {
     Statement stat = null;
@@ -386,17 +478,28 @@ public class JdbcAviationDbWriter implements AviationDbWriter {
         dbConn.prepareStatement("INSERT INTO constants (constant) VALUES (?)");
     }
 
-    insertConstantStatement.setString(1, constant);
-    insertConstantStatement.executeUpdate();
+    // The constant may have been added by an earlier run.
+    Integer id = queryConstantId(constant);
+    if (id == null) {
+      insertConstantStatement.setString(1, constant);
+      insertConstantStatement.executeUpdate();
+      id = queryConstantId(constant);
+      if (id == null) {
+        throw new RuntimeException("Error while adding constant to db: " + constant);
+      }
+    }
+    constantCache.put(constant, id);
+    return id;
+  }
+
+  /**
+   * Returns the id of {@code constant} in the constants db table, {@code null} if not present.
+   */
+  private Integer queryConstantId(final String constant) throws SQLException {
     getConstantIdStatement.setString(1, constant);
     final ResultSet rs = getConstantIdStatement.executeQuery();
     try {
-      if (!rs.next()) {
-        throw new RuntimeException("Error while adding constant to db: " + constant);
-      }
-      final int id = rs.getInt(1);
-      constantCache.put(constant, id);
-      return id;
+      return rs.next() ? rs.getInt(1) : null;
     } finally {
       rs.close();
     }
@@ -521,6 +624,69 @@ public class JdbcAviationDbWriter implements AviationDbWriter {
     insertAirspaceArcStatement.executeUpdate();
   }
 
+  @Override
+  public synchronized void insertAirspaceLod(final int id, final int lod, final byte[] points)
+      throws SQLException {
+    if (insertAirspaceLodStatement == null) {
+      insertAirspaceLodStatement = dbConn.prepareStatement(
+          "INSERT INTO airspace_lods (airspace_id, lod, points) VALUES (?, ?, ?)");
+    }
+    int field = 0;
+    insertAirspaceLodStatement.setInt(++field, id);
+    insertAirspaceLodStatement.setInt(++field, lod);
+    insertAirspaceLodStatement.setBytes(++field, points);
+    insertAirspaceLodStatement.executeUpdate();
+  }
+
+  @Override
+  public synchronized void insertMagneticVariationGrid(final MagneticVariationGrid grid)
+      throws SQLException {
+    final PreparedStatement stat = dbConn.prepareStatement("INSERT INTO magnetic_variation " +
+        "(min_lat, min_lng, step, rows, cols, variation) VALUES (?, ?, ?, ?, ?, ?)");
+    try {
+      int field = 0;
+      stat.setInt(++field, grid.getMinLat());
+      stat.setInt(++field, grid.getMinLng());
+      stat.setInt(++field, grid.getStep());
+      stat.setInt(++field, grid.getRows());
+      stat.setInt(++field, grid.getCols());
+      stat.setBytes(++field, grid.encodeValues());
+      stat.executeUpdate();
+    } finally {
+      stat.close();
+    }
+  }
+
+  @Override
+  public synchronized void insertAirportAirspace(final int airportId, final int airspaceId,
+      final String classString, final int lowAlt, final int highAlt) throws SQLException {
+    if (insertAirportAirspaceStatement == null) {
+      insertAirportAirspaceStatement = dbConn.prepareStatement("INSERT INTO airport_airspaces " +
+          "(airport_id, airspace_id, class, low_alt, high_alt) VALUES (?, ?, ?, ?, ?)");
+    }
+    int field = 0;
+    insertAirportAirspaceStatement.setInt(++field, airportId);
+    insertAirportAirspaceStatement.setInt(++field, airspaceId);
+    insertAirportAirspaceStatement.setInt(++field, getConstantId(classString));
+    insertAirportAirspaceStatement.setInt(++field, lowAlt);
+    insertAirportAirspaceStatement.setInt(++field, highAlt);
+    insertAirportAirspaceStatement.executeUpdate();
+  }
+
+  @Override
+  public synchronized void insertNearestAirports(final int startCell, final int endCell,
+      final byte[] airports) throws SQLException {
+    if (insertNearestAirportsStatement == null) {
+      insertNearestAirportsStatement = dbConn.prepareStatement(
+          "INSERT INTO nearest_airports (start_cell_id, end_cell_id, airports) VALUES (?, ?, ?)");
+    }
+    int field = 0;
+    insertNearestAirportsStatement.setInt(++field, startCell);
+    insertNearestAirportsStatement.setInt(++field, endCell);
+    insertNearestAirportsStatement.setBytes(++field, airports);
+    insertNearestAirportsStatement.executeUpdate();
+  }
+
   @Override
   public synchronized void updateAirportRank(final int id, final int rank) throws SQLException {
     if (updateAirportRankStatement == null) {
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.db;
+
+import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.Airspace;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.geo.AirspacePolygon;
+import com.google.flightmap.db.JdbcAviationDbAdapter;
+import com.google.flightmap.db.JdbcAviationDbWriter;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * Adds to the aviation database the airspaces containing each airport (see {@link
+ * AirspacePolygon}).  Must run after airports and airspaces have been added.
+ */
+public class AirportAirspaceBuilder {
+  private final static Logger LOG = Logger.getLogger(AirportAirspaceBuilder.class.getName());
+
+  // Command line options
+  private final static Options OPTIONS = new Options();
+  private final static String HELP_OPTION = "help";
+  private final static String AVIATION_DB_OPTION = "aviation_db";
+
+  static {
+    // Command Line options definitions
+    OPTIONS.addOption("h", "help", false, "Print this message.");
+    OPTIONS.addOption(OptionBuilder.withLongOpt(AVIATION_DB_OPTION)
+                                   .withDescription("Aviation database.")
+                                   .hasArg()
+                                   .isRequired()
+                                   .withArgName("aviation_db")
+                                   .create());
+  }
+
+  /**
+   * Area covering all airspaces.
+   */
+  private final static LatLngRect WORLD =
+      new LatLngRect(new LatLng(-90000000, -180000000), new LatLng(90000000, 180000000));
+
+  private final AviationDbWriter dbWriter;
+  private final JdbcAviationDbAdapter dbAdapter;
+
+  /**
+   * @param db Aviation database
+   */
+  public AirportAirspaceBuilder(final File db) throws ClassNotFoundException, SQLException {
+    dbWriter = new JdbcAviationDbWriter(db);
+    dbWriter.open();
+    dbAdapter = new JdbcAviationDbAdapter(dbWriter.getConnection());
+  }
+
+  public static void main(String args[]) {
+    CommandLine line = null;
+    try {
+      final CommandLineParser parser = new PosixParser();
+      line = parser.parse(OPTIONS, args);
+    } catch (ParseException pEx) {
+      System.err.println(pEx.getMessage());
+      printHelp(line);
+      System.exit(2);
+    }
+
+    if (line.hasOption(HELP_OPTION)) {
+      printHelp(line);
+      System.exit(0);
+    }
+
+    final String dbPath = line.getOptionValue(AVIATION_DB_OPTION);
+    final File db = new File(dbPath);
+    try {
+      (new AirportAirspaceBuilder(db)).execute();
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void printHelp(final CommandLine line) {
+    final HelpFormatter formatter = new HelpFormatter();
+    formatter.setWidth(100);
+    formatter.printHelp("AirportAirspaceBuilder", OPTIONS, true);
+  }
+
+  /**
+   * Replaces the airspaces containing every airport in the database.
+   */
+  public void execute() throws SQLException {
+    try {
+      final List<AirspacePolygon> polygons = new ArrayList<AirspacePolygon>();
+      for (Airspace airspace: dbAdapter.getAirspacesInRectangle(WORLD)) {
+        polygons.add(new AirspacePolygon(airspace));
+      }
+      final List<Integer> airportIds = dbAdapter.getAllAirportIds();
+      dbWriter.initAirportAirspacesTable();
+      int count = 0;
+      dbWriter.beginTransaction();
+      try {
+        for (int airportId: airportIds) {
+          final LatLng location = dbAdapter.getAirport(airportId).location;
+          for (AirspacePolygon polygon: polygons) {
+            if (polygon.contains(location)) {
+              final Airspace airspace = polygon.airspace;
+              dbWriter.insertAirportAirspace(airportId, airspace.id,
+                  airspace.airspaceClass.toString(), airspace.bottom, airspace.top);
+              ++count;
+            }
+          }
+        }
+        dbWriter.commit();
+      } catch (SQLException sqlEx) {
+        dbWriter.rollback();
+        throw sqlEx;
+      }
+      LOG.info(String.format("%d airports, %d airspaces, %d containments.", airportIds.size(),
+          polygons.size(), count));
+    } finally {
+      dbWriter.close();
+    }
+  }
+}
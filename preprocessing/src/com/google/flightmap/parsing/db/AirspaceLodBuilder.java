@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.db;
+
+import com.google.flightmap.common.data.Airspace;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.geo.AirspaceLevelsOfDetail;
+import com.google.flightmap.db.JdbcAviationDbAdapter;
+import com.google.flightmap.db.JdbcAviationDbWriter;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.logging.Logger;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * Adds simplified airspace geometries to the aviation database, one per level of detail (see
+ * {@link AirspaceLevelsOfDetail}).  Must run after all airspaces have been added.
+ */
+public class AirspaceLodBuilder {
+  private final static Logger LOG = Logger.getLogger(AirspaceLodBuilder.class.getName());
+
+  // Command line options
+  private final static Options OPTIONS = new Options();
+  private final static String HELP_OPTION = "help";
+  private final static String AVIATION_DB_OPTION = "aviation_db";
+
+  static {
+    // Command Line options definitions
+    OPTIONS.addOption("h", "help", false, "Print this message.");
+    OPTIONS.addOption(OptionBuilder.withLongOpt(AVIATION_DB_OPTION)
+                                   .withDescription("Aviation database.")
+                                   .hasArg()
+                                   .isRequired()
+                                   .withArgName("aviation_db")
+                                   .create());
+  }
+
+  /**
+   * Area covering all airspaces.
+   */
+  private final static LatLngRect WORLD =
+      new LatLngRect(new LatLng(-90000000, -180000000), new LatLng(90000000, 180000000));
+
+  private final AviationDbWriter dbWriter;
+  private final JdbcAviationDbAdapter dbAdapter;
+
+  /**
+   * @param db Aviation database
+   */
+  public AirspaceLodBuilder(final File db) throws ClassNotFoundException, SQLException {
+    dbWriter = new JdbcAviationDbWriter(db);
+    dbWriter.open();
+    dbAdapter = new JdbcAviationDbAdapter(dbWriter.getConnection());
+  }
+
+  public static void main(String args[]) {
+    CommandLine line = null;
+    try {
+      final CommandLineParser parser = new PosixParser();
+      line = parser.parse(OPTIONS, args);
+    } catch (ParseException pEx) {
+      System.err.println(pEx.getMessage());
+      printHelp(line);
+      System.exit(2);
+    }
+
+    if (line.hasOption(HELP_OPTION)) {
+      printHelp(line);
+      System.exit(0);
+    }
+
+    final String dbPath = line.getOptionValue(AVIATION_DB_OPTION);
+    final File db = new File(dbPath);
+    try {
+      (new AirspaceLodBuilder(db)).execute();
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void printHelp(final CommandLine line) {
+    final HelpFormatter formatter = new HelpFormatter();
+    formatter.setWidth(100);
+    formatter.printHelp("AirspaceLodBuilder", OPTIONS, true);
+  }
+
+  /**
+   * Replaces the simplified geometries of all airspaces in the database.
+   */
+  public void execute() throws SQLException {
+    try {
+      dbWriter.initAirspaceLodTable();
+      final Collection<Airspace> airspaces = dbAdapter.getAirspacesInRectangle(WORLD);
+      final int levels = AirspaceLevelsOfDetail.getLevelCount();
+      final int[] pointCounts = new int[levels];
+      dbWriter.beginTransaction();
+      try {
+        for (Airspace airspace: airspaces) {
+          for (int level = 0; level < levels; ++level) {
+            final int[] latLngs = AirspaceLevelsOfDetail.simplify(airspace, level);
+            pointCounts[level] += latLngs.length / 2;
+            dbWriter.insertAirspaceLod(
+                airspace.id, level, AirspaceLevelsOfDetail.encodePoints(latLngs));
+          }
+        }
+        dbWriter.commit();
+      } catch (SQLException sqlEx) {
+        dbWriter.rollback();
+        throw sqlEx;
+      }
+      for (int level = 0; level < levels; ++level) {
+        LOG.info(String.format("Level of detail %d: %d airspaces, %d points.", level,
+            airspaces.size(), pointCounts[level]));
+      }
+    } finally {
+      dbWriter.close();
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.db;
+
+import com.google.flightmap.common.io.FileDelta;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * Writes the binary delta (see {@link FileDelta}) from a previous build of the aviation database
+ * to the current one, with one block per database page.  Deltas are only compact if both builds
+ * are deterministic (see {@link AviationDbFinalizer}).
+ */
+public class AviationDbDeltaBuilder {
+  private final static Logger LOG = Logger.getLogger(AviationDbDeltaBuilder.class.getName());
+
+  // Command line options
+  private final static Options OPTIONS = new Options();
+  private final static String HELP_OPTION = "help";
+  private final static String AVIATION_DB_OPTION = "aviation_db";
+  private final static String PREVIOUS_DB_OPTION = "previous_db";
+  private final static String DELTA_OPTION = "delta";
+  private final static String BLOCK_SIZE_OPTION = "block_size";
+
+  static {
+    // Command Line options definitions
+    OPTIONS.addOption("h", "help", false, "Print this message.");
+    OPTIONS.addOption(OptionBuilder.withLongOpt(AVIATION_DB_OPTION)
+                                   .withDescription("Current aviation database.")
+                                   .hasArg()
+                                   .isRequired()
+                                   .withArgName("aviation_db")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(PREVIOUS_DB_OPTION)
+                                   .withDescription("Previous aviation database.")
+                                   .hasArg()
+                                   .isRequired()
+                                   .withArgName("previous_db")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(DELTA_OPTION)
+                                   .withDescription("Delta file to write.")
+                                   .hasArg()
+                                   .isRequired()
+                                   .withArgName("delta")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(BLOCK_SIZE_OPTION)
+                                   .withDescription("Block size, in bytes (default: page size " +
+                                                    "of the current database).")
+                                   .hasArg()
+                                   .withArgName("bytes")
+                                   .create());
+  }
+
+  private final File db;
+  private final File previousDb;
+  private final File delta;
+  private final int blockSize;
+
+  /**
+   * @param db Current aviation database
+   * @param previousDb Previous aviation database
+   * @param delta Delta file to write
+   * @param blockSize Block size, in bytes, or 0 to use the page size of {@code db}
+   */
+  public AviationDbDeltaBuilder(final File db, final File previousDb, final File delta,
+      final int blockSize) {
+    this.db = db;
+    this.previousDb = previousDb;
+    this.delta = delta;
+    this.blockSize = blockSize;
+  }
+
+  public static void main(String args[]) {
+    CommandLine line = null;
+    try {
+      final CommandLineParser parser = new PosixParser();
+      line = parser.parse(OPTIONS, args);
+    } catch (ParseException pEx) {
+      System.err.println(pEx.getMessage());
+      printHelp(line);
+      System.exit(2);
+    }
+
+    if (line.hasOption(HELP_OPTION)) {
+      printHelp(line);
+      System.exit(0);
+    }
+
+    final File db = new File(line.getOptionValue(AVIATION_DB_OPTION));
+    final File previousDb = new File(line.getOptionValue(PREVIOUS_DB_OPTION));
+    final File delta = new File(line.getOptionValue(DELTA_OPTION));
+    final int blockSize = line.hasOption(BLOCK_SIZE_OPTION) ?
+        Integer.parseInt(line.getOptionValue(BLOCK_SIZE_OPTION)) : 0;
+    try {
+      (new AviationDbDeltaBuilder(db, previousDb, delta, blockSize)).execute();
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void printHelp(final CommandLine line) {
+    final HelpFormatter formatter = new HelpFormatter();
+    formatter.setWidth(100);
+    formatter.printHelp("AviationDbDeltaBuilder", OPTIONS, true);
+  }
+
+  /**
+   * Writes the delta, and checks that it rebuilds the current database.
+   */
+  public void execute() throws ClassNotFoundException, IOException, SQLException {
+    final int size = blockSize > 0 ? blockSize : getPageSize();
+    final OutputStream out = new BufferedOutputStream(new FileOutputStream(delta));
+    try {
+      FileDelta.create(previousDb, db, size, out);
+    } finally {
+      out.close();
+    }
+
+    final File check = File.createTempFile("delta", ".db");
+    try {
+      FileDelta.apply(previousDb, delta, check);
+    } finally {
+      check.delete();
+    }
+    LOG.info(String.format("Delta: %d bytes with %d-byte blocks, for %d bytes.", delta.length(),
+        size, db.length()));
+  }
+
+  private int getPageSize() throws ClassNotFoundException, SQLException {
+    Class.forName("org.sqlite.JDBC");
+    final Connection dbConn = DriverManager.getConnection("jdbc:sqlite:" + db.getAbsolutePath());
+    try {
+      final Statement stat = dbConn.createStatement();
+      try {
+        final ResultSet rs = stat.executeQuery("PRAGMA page_size");
+        rs.next();
+        final int pageSize = rs.getInt(1);
+        rs.close();
+        return pageSize;
+      } finally {
+        stat.close();
+      }
+    } finally {
+      dbConn.close();
+    }
+  }
+}
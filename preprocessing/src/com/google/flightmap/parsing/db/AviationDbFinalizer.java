@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.db;
+
+import com.google.flightmap.common.db.NearestAirports;
+import com.google.flightmap.db.JdbcAviationDbAdapter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * Makes the aviation database a deterministic function of its content, so that two builds of the
+ * same source data are identical byte for byte (as needed by {@link AviationDbDeltaBuilder} and
+ * by part-level caching).  Must run after all other builders, and before the snapshot and the
+ * shards are extracted.
+ * <p>
+ * Constants are renumbered in alphabetical order, airports in ICAO order, airspaces, runways and
+ * runway ends by their content, and all references are updated accordingly.  Every table is then
+ * rewritten sorted by id (or by owner, keeping the order in which rows were added), the
+ * database is analyzed and vacuumed with a fixed page size, and the header counters that record
+ * the history of the file are reset.
+ * <p>
+ * The database holds no build timestamp: the publishing time is kept in the separate ".info"
+ * file (see publish_file.sh).
+ */
+public class AviationDbFinalizer {
+  private final static Logger LOG = Logger.getLogger(AviationDbFinalizer.class.getName());
+
+  // Command line options
+  private final static Options OPTIONS = new Options();
+  private final static String HELP_OPTION = "help";
+  private final static String AVIATION_DB_OPTION = "aviation_db";
+  private final static String PAGE_SIZE_OPTION = "page_size";
+
+  private final static int DEFAULT_PAGE_SIZE = 4096;
+
+  // Database header fields that depend on the history of the file rather than its content.
+  private final static int CHANGE_COUNTER_OFFSET = 24;
+  private final static int VERSION_VALID_FOR_OFFSET = 92;
+
+  /**
+   * Temporary table holding the rows of the table being rewritten.
+   */
+  private final static String ROWS_TABLE = "finalized_rows";
+
+  static {
+    // Command Line options definitions
+    OPTIONS.addOption("h", "help", false, "Print this message.");
+    OPTIONS.addOption(OptionBuilder.withLongOpt(AVIATION_DB_OPTION)
+                                   .withDescription("Aviation database.")
+                                   .hasArg()
+                                   .isRequired()
+                                   .withArgName("aviation_db")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(PAGE_SIZE_OPTION)
+                                   .withDescription("Database page size, in bytes (default: " +
+                                                    DEFAULT_PAGE_SIZE + ").")
+                                   .hasArg()
+                                   .withArgName("bytes")
+                                   .create());
+  }
+
+  private final File db;
+  private final int pageSize;
+
+  /**
+   * @param db Aviation database
+   * @param pageSize Database page size, in bytes
+   */
+  public AviationDbFinalizer(final File db, final int pageSize) {
+    this.db = db;
+    this.pageSize = pageSize;
+  }
+
+  public static void main(String args[]) {
+    CommandLine line = null;
+    try {
+      final CommandLineParser parser = new PosixParser();
+      line = parser.parse(OPTIONS, args);
+    } catch (ParseException pEx) {
+      System.err.println(pEx.getMessage());
+      printHelp(line);
+      System.exit(2);
+    }
+
+    if (line.hasOption(HELP_OPTION)) {
+      printHelp(line);
+      System.exit(0);
+    }
+
+    final File db = new File(line.getOptionValue(AVIATION_DB_OPTION));
+    final int pageSize = line.hasOption(PAGE_SIZE_OPTION) ?
+        Integer.parseInt(line.getOptionValue(PAGE_SIZE_OPTION)) : DEFAULT_PAGE_SIZE;
+    try {
+      (new AviationDbFinalizer(db, pageSize)).execute();
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void printHelp(final CommandLine line) {
+    final HelpFormatter formatter = new HelpFormatter();
+    formatter.setWidth(100);
+    formatter.printHelp("AviationDbFinalizer", OPTIONS, true);
+  }
+
+  public void execute() throws ClassNotFoundException, IOException, SQLException {
+    Class.forName("org.sqlite.JDBC");
+    final Connection dbConn = DriverManager.getConnection("jdbc:sqlite:" + db.getAbsolutePath());
+    try {
+      final Statement stat = dbConn.createStatement();
+      try {
+        dbConn.setAutoCommit(false);
+        renumber(dbConn, stat);
+        dbConn.commit();
+        dbConn.setAutoCommit(true);
+
+        stat.executeUpdate("PRAGMA page_size = " + pageSize);
+        stat.executeUpdate("ANALYZE");
+        stat.executeUpdate("VACUUM");
+        stat.executeUpdate("PRAGMA schema_version = 1");
+      } finally {
+        stat.close();
+      }
+    } finally {
+      dbConn.close();
+    }
+    resetChangeCounter();
+    LOG.info(String.format("Finalized %s: %d bytes.", db.getPath(), db.length()));
+  }
+
+  /**
+   * Resets the file change counter in the database header, which otherwise counts the
+   * transactions run by the whole build.  The "version-valid-for" number is set to the same value,
+   * so that the database size recorded in the header stays valid.
+   */
+  private void resetChangeCounter() throws IOException {
+    final RandomAccessFile file = new RandomAccessFile(db, "rw");
+    try {
+      file.seek(CHANGE_COUNTER_OFFSET);
+      file.writeInt(1);
+      file.seek(VERSION_VALID_FOR_OFFSET);
+      file.writeInt(1);
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Assigns stable ids and rewrites all tables in sorted order.
+   */
+  private void renumber(final Connection dbConn, final Statement stat) throws SQLException {
+    // Id maps.  Later maps are ordered by the new ids of earlier ones.
+    createIdMap(dbConn, stat, "constant_ids", "SELECT _id FROM constants ORDER BY constant");
+    createIdMap(dbConn, stat, "airport_ids", "SELECT _id FROM airports ORDER BY icao");
+    if (hasTable(dbConn, "runways")) {
+      createIdMap(dbConn, stat, "runway_ids",
+          "SELECT r._id FROM runways r LEFT JOIN airport_ids a ON a.old_id = r.airport_id " +
+          "ORDER BY a.new_id, r.letters, r.length, r.width, r._id");
+      createIdMap(dbConn, stat, "runway_end_ids",
+          "SELECT e._id FROM runway_ends e LEFT JOIN runway_ids r ON r.old_id = e.runway_id " +
+          "ORDER BY r.new_id, e.letters, e._id");
+    }
+    if (hasTable(dbConn, "airspaces")) {
+      createIdMap(dbConn, stat, "airspace_ids",
+          "SELECT a._id FROM airspaces a LEFT JOIN constants c ON c._id = a.class " +
+          "ORDER BY a.name, c.constant, a.min_lat, a.max_lat, a.min_lng, a.max_lng, " +
+          "a.low_alt, a.high_alt, a._id");
+    }
+
+    // Property values are constant ids, except for integer properties.
+    final List<Integer> integerAirportKeys = new ArrayList<Integer>();
+    final List<Integer> integerRunwayEndKeys = new ArrayList<Integer>();
+    final ResultSet rs = stat.executeQuery("SELECT _id, constant FROM constants");
+    while (rs.next()) {
+      final String constant = rs.getString("constant");
+      if (JdbcAviationDbAdapter.isIntegerAirportProperty(constant)) {
+        integerAirportKeys.add(rs.getInt("_id"));
+      }
+      if (JdbcAviationDbAdapter.isIntegerRunwayEndProperty(constant)) {
+        integerRunwayEndKeys.add(rs.getInt("_id"));
+      }
+    }
+    rs.close();
+
+    rewriteTable(dbConn, stat, "constants", "_id = " + map("constant_ids", "_id"), "_id");
+    rewriteTable(dbConn, stat, "airports",
+        "_id = " + map("airport_ids", "_id") + ", type = " + map("constant_ids", "type"), "_id");
+    rewriteTable(dbConn, stat, "airport_properties",
+        "_id = NULL, airport_id = " + map("airport_ids", "airport_id") +
+        ", key = " + map("constant_ids", "key") +
+        ", value = " + mapPropertyValue(integerAirportKeys),
+        "airport_id, source_order");
+    rewriteTable(dbConn, stat, "airport_comm",
+        "_id = NULL, airport_id = " + map("airport_ids", "airport_id"),
+        "airport_id, source_order");
+    rewriteTable(dbConn, stat, "runways",
+        "_id = " + map("runway_ids", "_id") +
+        ", airport_id = " + map("airport_ids", "airport_id") +
+        ", surface = " + map("constant_ids", "surface"),
+        "_id");
+    rewriteTable(dbConn, stat, "runway_ends",
+        "_id = " + map("runway_end_ids", "_id") + ", runway_id = " + map("runway_ids", "runway_id"),
+        "_id");
+    rewriteTable(dbConn, stat, "runway_end_properties",
+        "_id = NULL, runway_end_id = " + map("runway_end_ids", "runway_end_id") +
+        ", key = " + map("constant_ids", "key") +
+        ", value = " + mapPropertyValue(integerRunwayEndKeys),
+        "runway_end_id, source_order");
+    rewriteTable(dbConn, stat, "airspaces",
+        "_id = " + map("airspace_ids", "_id") +
+        ", airport_id = " + map("airport_ids", "airport_id") +
+        ", class = " + map("constant_ids", "class"),
+        "_id");
+    rewriteTable(dbConn, stat, "airspace_points",
+        "airspace_id = " + map("airspace_ids", "airspace_id"), "airspace_id, num");
+    rewriteTable(dbConn, stat, "airspace_arcs",
+        "airspace_id = " + map("airspace_ids", "airspace_id"), "airspace_id, num");
+    rewriteTable(dbConn, stat, "airspace_lods",
+        "airspace_id = " + map("airspace_ids", "airspace_id"), "airspace_id, lod");
+    rewriteTable(dbConn, stat, "airport_airspaces",
+        "airport_id = " + map("airport_ids", "airport_id") +
+        ", airspace_id = " + map("airspace_ids", "airspace_id") +
+        ", class = " + map("constant_ids", "class"),
+        "airport_id, source_order");
+    rewriteTable(dbConn, stat, "magnetic_variation", null, "min_lat, min_lng");
+    rewriteTable(dbConn, stat, "metadata", null, "key");
+    if (hasTable(dbConn, "nearest_airports")) {
+      rewriteTable(dbConn, stat, "nearest_airports", null, "start_cell_id");
+      renumberNearestAirports(dbConn, stat);
+    }
+  }
+
+  /**
+   * Creates temporary table {@code name} mapping the ids returned by {@code query} to 1, 2...
+   */
+  private static void createIdMap(final Connection dbConn, final Statement stat,
+      final String name, final String query) throws SQLException {
+    stat.executeUpdate("CREATE TEMP TABLE " + name +
+        " (old_id INTEGER PRIMARY KEY, new_id INTEGER NOT NULL)");
+    final List<Integer> ids = new ArrayList<Integer>();
+    final ResultSet rs = stat.executeQuery(query);
+    while (rs.next()) {
+      ids.add(rs.getInt(1));
+    }
+    rs.close();
+
+    final PreparedStatement insert =
+        dbConn.prepareStatement("INSERT INTO " + name + " (old_id, new_id) VALUES (?, ?)");
+    try {
+      int newId = 0;
+      for (int id: ids) {
+        insert.setInt(1, id);
+        insert.setInt(2, ++newId);
+        insert.executeUpdate();
+      }
+    } finally {
+      insert.close();
+    }
+  }
+
+  /**
+   * Returns the SQL expression mapping {@code column} of the rows being rewritten through id map
+   * {@code ids}.  Values absent from the map (e.g. -1) are left unchanged.
+   */
+  private static String map(final String ids, final String column) {
+    return String.format("coalesce((SELECT new_id FROM %s WHERE old_id = %s.%s), %s.%s)",
+        ids, ROWS_TABLE, column, ROWS_TABLE, column);
+  }
+
+  /**
+   * Returns the SQL expression mapping a property value, unless its key is one of
+   * {@code integerKeys}.  Keys are compared before renumbering.
+   */
+  private static String mapPropertyValue(final List<Integer> integerKeys) {
+    if (integerKeys.isEmpty()) {
+      return map("constant_ids", "value");
+    }
+    final StringBuilder keys = new StringBuilder();
+    for (int key: integerKeys) {
+      if (keys.length() > 0) {
+        keys.append(", ");
+      }
+      keys.append(key);
+    }
+    return String.format("CASE WHEN %s.key IN (%s) THEN %s.value ELSE %s END",
+        ROWS_TABLE, keys, ROWS_TABLE, map("constant_ids", "value"));
+  }
+
+  /**
+   * Rewrites {@code table}, if present, after applying {@code assignments} (an SQL SET clause, or
+   * {@code null}), with rows sorted by {@code orderBy}.  Ids set to NULL are reassigned in order.
+   * The original row order is available as column "source_order".
+   */
+  private static void rewriteTable(final Connection dbConn, final Statement stat,
+      final String table, final String assignments, final String orderBy) throws SQLException {
+    if (!hasTable(dbConn, table)) {
+      return;
+    }
+    stat.executeUpdate("CREATE TEMP TABLE " + ROWS_TABLE +
+        " AS SELECT rowid AS source_order, * FROM " + table);
+    if (assignments != null) {
+      stat.executeUpdate("UPDATE " + ROWS_TABLE + " SET " + assignments);
+    }
+    stat.executeUpdate("DELETE FROM " + table);
+    final String columns = getColumns(dbConn, table);
+    stat.executeUpdate("INSERT INTO " + table + " (" + columns + ") SELECT " + columns +
+        " FROM " + ROWS_TABLE + " ORDER BY " + orderBy);
+    stat.executeUpdate("DROP TABLE " + ROWS_TABLE);
+  }
+
+  /**
+   * Maps the airport ids held in the nearest airports candidates.
+   */
+  private static void renumberNearestAirports(final Connection dbConn, final Statement stat)
+      throws SQLException {
+    final Map<Integer, Integer> airportIds = new HashMap<Integer, Integer>();
+    ResultSet rs = stat.executeQuery("SELECT old_id, new_id FROM airport_ids");
+    while (rs.next()) {
+      airportIds.put(rs.getInt("old_id"), rs.getInt("new_id"));
+    }
+    rs.close();
+
+    final Map<Integer, byte[]> candidates = new HashMap<Integer, byte[]>();
+    rs = stat.executeQuery("SELECT start_cell_id, airports FROM nearest_airports");
+    while (rs.next()) {
+      candidates.put(rs.getInt("start_cell_id"), rs.getBytes("airports"));
+    }
+    rs.close();
+
+    final PreparedStatement update = dbConn.prepareStatement(
+        "UPDATE nearest_airports SET airports = ? WHERE start_cell_id = ?");
+    try {
+      for (Map.Entry<Integer, byte[]> entry: candidates.entrySet()) {
+        final int[] triples = NearestAirports.decodeCandidates(entry.getValue());
+        for (int i = 0; i < triples.length; i += 3) {
+          final Integer newId = airportIds.get(triples[i]);
+          if (newId == null) {
+            throw new RuntimeException("Unknown nearest airport id: " + triples[i]);
+          }
+          triples[i] = newId;
+        }
+        update.setBytes(1, NearestAirports.encodeCandidates(triples));
+        update.setInt(2, entry.getKey());
+        update.executeUpdate();
+      }
+    } finally {
+      update.close();
+    }
+  }
+
+  /**
+   * Returns the comma-separated column names of {@code table}, in declaration order.
+   */
+  private static String getColumns(final Connection dbConn, final String table)
+      throws SQLException {
+    final StringBuilder columns = new StringBuilder();
+    final ResultSet rs = dbConn.getMetaData().getColumns(null, null, table, null);
+    while (rs.next()) {
+      if (columns.length() > 0) {
+        columns.append(", ");
+      }
+      columns.append(rs.getString("COLUMN_NAME"));
+    }
+    rs.close();
+    return columns.toString();
+  }
+
+  private static boolean hasTable(final Connection dbConn, final String name)
+      throws SQLException {
+    final ResultSet rs = dbConn.getMetaData().getTables(null, null, name, null);
+    final boolean hasTable = rs.next();
+    rs.close();
+    return hasTable;
+  }
+}
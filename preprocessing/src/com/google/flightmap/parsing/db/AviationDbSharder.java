@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.db;
+
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.db.AviationDbShards;
+import com.google.flightmap.common.db.CustomGridUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * Splits the aviation database in region shards (see {@link AviationDbShards}) and writes their
+ * index.  Must run after all other tools, since shards are copies of the complete database.
+ */
+public class AviationDbSharder {
+  private final static Logger LOG = Logger.getLogger(AviationDbSharder.class.getName());
+
+  // Command line options
+  private final static Options OPTIONS = new Options();
+  private final static String HELP_OPTION = "help";
+  private final static String AVIATION_DB_OPTION = "aviation_db";
+  private final static String LEVEL_OPTION = "level";
+  private final static String OUTPUT_DIR_OPTION = "output_dir";
+
+  private final static int DEFAULT_LEVEL = 4;
+
+  static {
+    // Command Line options definitions
+    OPTIONS.addOption("h", "help", false, "Print this message.");
+    OPTIONS.addOption(OptionBuilder.withLongOpt(AVIATION_DB_OPTION)
+                                   .withDescription("Aviation database.")
+                                   .hasArg()
+                                   .isRequired()
+                                   .withArgName("aviation_db")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(LEVEL_OPTION)
+                                   .withDescription("Grid cell level of shards (default: " +
+                                                    DEFAULT_LEVEL + ").")
+                                   .hasArg()
+                                   .withArgName("level")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(OUTPUT_DIR_OPTION)
+                                   .withDescription("Directory of the shards and their index " +
+                                                    "(default: directory of the database).")
+                                   .hasArg()
+                                   .withArgName("dir")
+                                   .create());
+  }
+
+  private final File db;
+  private final int level;
+  private final File outputDir;
+
+  /**
+   * @param db Aviation database
+   * @param level Grid cell level of shards (see {@link CustomGridUtil})
+   * @param outputDir Directory of the shards and their index
+   */
+  public AviationDbSharder(final File db, final int level, final File outputDir)
+      throws ClassNotFoundException {
+    this.db = db;
+    this.level = level;
+    this.outputDir = outputDir;
+    Class.forName("org.sqlite.JDBC");
+  }
+
+  public static void main(String args[]) {
+    CommandLine line = null;
+    try {
+      final CommandLineParser parser = new PosixParser();
+      line = parser.parse(OPTIONS, args);
+    } catch (ParseException pEx) {
+      System.err.println(pEx.getMessage());
+      printHelp(line);
+      System.exit(2);
+    }
+
+    if (line.hasOption(HELP_OPTION)) {
+      printHelp(line);
+      System.exit(0);
+    }
+
+    final File db = new File(line.getOptionValue(AVIATION_DB_OPTION));
+    final int level = line.hasOption(LEVEL_OPTION) ?
+        Integer.parseInt(line.getOptionValue(LEVEL_OPTION)) : DEFAULT_LEVEL;
+    final File outputDir = line.hasOption(OUTPUT_DIR_OPTION) ?
+        new File(line.getOptionValue(OUTPUT_DIR_OPTION)) : db.getAbsoluteFile().getParentFile();
+    try {
+      (new AviationDbSharder(db, level, outputDir)).execute();
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void printHelp(final CommandLine line) {
+    final HelpFormatter formatter = new HelpFormatter();
+    formatter.setWidth(100);
+    formatter.printHelp("AviationDbSharder", OPTIONS, true);
+  }
+
+  /**
+   * Writes one shard per cell holding airports or overlapped by airspaces, and the index.
+   */
+  public void execute() throws IOException, SQLException {
+    if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+      throw new IOException("Could not create output directory: " + outputDir.getPath());
+    }
+    final List<AviationDbShards.Shard> shards = new ArrayList<AviationDbShards.Shard>();
+    final List<Integer> cells = getPopulatedCells();
+    for (int cellId: cells) {
+      final String name = AviationDbShards.getShardName(db.getName(), level, cellId);
+      final File shardFile = new File(outputDir, name);
+      copyFile(db, shardFile);
+      final int[] airportIds = trimShard(shardFile, cellId);
+      shards.add(new AviationDbShards.Shard(cellId, level, name,
+          AviationDbShards.getRanges(airportIds)));
+      LOG.info(String.format("%s: %d airports, %d bytes.", name, airportIds.length,
+          shardFile.length()));
+    }
+
+    final File indexFile = new File(outputDir, db.getName() + AviationDbShards.INDEX_SUFFIX);
+    final Writer out = new FileWriter(indexFile);
+    try {
+      out.write(new AviationDbShards(level, shards).toString());
+    } finally {
+      out.close();
+    }
+    LOG.info(String.format("%d shards at level %d.", shards.size(), level));
+  }
+
+  /**
+   * Returns the cells at {@link #level} holding airports or overlapped by airspaces.
+   */
+  private List<Integer> getPopulatedCells() throws SQLException {
+    final List<Integer> cells = new ArrayList<Integer>();
+    final Connection dbConn = DriverManager.getConnection("jdbc:sqlite:" + db.getAbsolutePath());
+    try {
+      final boolean hasAirspaces = hasTable(dbConn, "airspaces");
+      final PreparedStatement airportStat = dbConn.prepareStatement(
+          "SELECT 1 FROM airports WHERE cell_id >= ? AND cell_id < ? LIMIT 1");
+      final PreparedStatement airspaceStat = dbConn.prepareStatement(
+          "SELECT 1 FROM airspaces WHERE " + getAirspaceOverlapCondition() + " LIMIT 1");
+      try {
+        final int cellCount = 1 << (2 * level);
+        for (int cellId = 0; cellId < cellCount; ++cellId) {
+          final int[] range = CustomGridUtil.getCellRange(cellId, level);
+          airportStat.setInt(1, range[0]);
+          airportStat.setInt(2, range[1]);
+          boolean populated = exists(airportStat);
+          if (!populated && hasAirspaces) {
+            setAirspaceOverlapParameters(airspaceStat, CustomGridUtil.getCellBounds(cellId, level));
+            populated = exists(airspaceStat);
+          }
+          if (populated) {
+            cells.add(cellId);
+          }
+        }
+      } finally {
+        airportStat.close();
+        airspaceStat.close();
+      }
+    } finally {
+      dbConn.close();
+    }
+    return cells;
+  }
+
+  /**
+   * Removes from {@code shardFile} all data outside of {@code cellId}.
+   *
+   * @return Sorted ids of the airports left in the shard
+   */
+  private int[] trimShard(final File shardFile, final int cellId) throws SQLException {
+    final int[] range = CustomGridUtil.getCellRange(cellId, level);
+    final Connection dbConn =
+        DriverManager.getConnection("jdbc:sqlite:" + shardFile.getAbsolutePath());
+    try {
+      final Statement stat = dbConn.createStatement();
+      try {
+        stat.executeUpdate(String.format(
+            "DELETE FROM airports WHERE cell_id < %d OR cell_id >= %d", range[0], range[1]));
+        final String missingAirport = "airport_id NOT IN (SELECT _id FROM airports)";
+        for (String table: new String[] {"airport_properties", "airport_comm",
+            "airport_airspaces", "runways"}) {
+          deleteIfTable(dbConn, stat, table, missingAirport);
+        }
+        deleteIfTable(dbConn, stat, "runway_ends", "runway_id NOT IN (SELECT _id FROM runways)");
+        deleteIfTable(dbConn, stat, "runway_end_properties",
+            "runway_end_id NOT IN (SELECT _id FROM runway_ends)");
+
+        if (hasTable(dbConn, "airspaces")) {
+          final PreparedStatement airspaceStat = dbConn.prepareStatement(
+              "DELETE FROM airspaces WHERE NOT (" + getAirspaceOverlapCondition() + ")");
+          try {
+            setAirspaceOverlapParameters(airspaceStat, CustomGridUtil.getCellBounds(cellId, level));
+            airspaceStat.executeUpdate();
+          } finally {
+            airspaceStat.close();
+          }
+          final String missingAirspace = "airspace_id NOT IN (SELECT _id FROM airspaces)";
+          for (String table: new String[] {"airspace_points", "airspace_arcs",
+              "airspace_lods"}) {
+            deleteIfTable(dbConn, stat, table, missingAirspace);
+          }
+        }
+
+        deleteIfTable(dbConn, stat, "nearest_airports", String.format(
+            "end_cell_id <= %d OR start_cell_id >= %d", range[0], range[1]));
+        stat.executeUpdate("VACUUM");
+
+        final List<Integer> ids = new ArrayList<Integer>();
+        final ResultSet rs = stat.executeQuery("SELECT _id FROM airports ORDER BY _id");
+        while (rs.next()) {
+          ids.add(rs.getInt("_id"));
+        }
+        rs.close();
+        final int[] airportIds = new int[ids.size()];
+        for (int i = 0; i < airportIds.length; ++i) {
+          airportIds[i] = ids.get(i);
+        }
+        return airportIds;
+      } finally {
+        stat.close();
+      }
+    } finally {
+      dbConn.close();
+    }
+  }
+
+  /**
+   * Returns the condition on airspace bounding boxes overlapping the area given by four parameters
+   * (see {@link #setAirspaceOverlapParameters}).  Matches {@link AviationDbShards} intersections.
+   */
+  private static String getAirspaceOverlapCondition() {
+    return "min_lat <= ? AND max_lat >= ? AND min_lng <= ? AND max_lng >= ?";
+  }
+
+  private static void setAirspaceOverlapParameters(final PreparedStatement stat,
+      final LatLngRect area) throws SQLException {
+    stat.setInt(1, area.getNorth());
+    stat.setInt(2, area.getSouth());
+    stat.setInt(3, area.getEast());
+    stat.setInt(4, area.getWest());
+  }
+
+  private static boolean exists(final PreparedStatement stat) throws SQLException {
+    final ResultSet rs = stat.executeQuery();
+    final boolean exists = rs.next();
+    rs.close();
+    return exists;
+  }
+
+  private static void deleteIfTable(final Connection dbConn, final Statement stat,
+      final String table, final String condition) throws SQLException {
+    if (hasTable(dbConn, table)) {
+      stat.executeUpdate("DELETE FROM " + table + " WHERE " + condition);
+    }
+  }
+
+  private static boolean hasTable(final Connection dbConn, final String name)
+      throws SQLException {
+    final ResultSet rs = dbConn.getMetaData().getTables(null, null, name, null);
+    final boolean hasTable = rs.next();
+    rs.close();
+    return hasTable;
+  }
+
+  private static void copyFile(final File source, final File dest) throws IOException {
+    final InputStream in = new BufferedInputStream(new FileInputStream(source));
+    try {
+      final OutputStream out = new BufferedOutputStream(new FileOutputStream(dest));
+      try {
+        final byte[] buf = new byte[64 * 1024];
+        int count;
+        while ((count = in.read(buf)) >= 0) {
+          out.write(buf, 0, count);
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+}
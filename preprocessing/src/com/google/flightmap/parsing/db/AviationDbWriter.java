@@ -16,6 +16,8 @@
 
 package com.google.flightmap.parsing.db;
 
+import com.google.flightmap.common.geo.MagneticVariationGrid;
+
 import java.sql.Connection;
 import java.sql.SQLException;
 
@@ -82,6 +84,26 @@ public interface AviationDbWriter {
    */
   public void initAirspaceTables() throws SQLException;
 
+  /**
+   * Creates table holding simplified airspace geometries.  Deletes existing table.
+   */
+  public void initAirspaceLodTable() throws SQLException;
+
+  /**
+   * Creates table holding the magnetic variation grid.  Deletes existing table.
+   */
+  public void initMagneticVariationTable() throws SQLException;
+
+  /**
+   * Creates table holding the airspaces containing each airport.  Deletes existing table.
+   */
+  public void initAirportAirspacesTable() throws SQLException;
+
+  /**
+   * Creates table holding the nearest airports of each grid cell.  Deletes existing table.
+   */
+  public void initNearestAirportsTable() throws SQLException;
+
   /**
    * Create metadata db table, needed by android.
    */
@@ -167,6 +189,39 @@ public interface AviationDbWriter {
   public void insertAirspaceArc(int id, int num, int minLat, int maxLat, int minLng, int maxLng,
       int startAngle, int sweepAngle) throws SQLException;
 
+  /**
+   * Adds the simplified shape of an airspace at a given level of detail.
+   *
+   * @param id Airspace id.
+   * @param lod Level of detail (see {@link
+   * com.google.flightmap.common.geo.AirspaceLevelsOfDetail}).
+   * @param points Polygon points, encoded with {@link
+   * com.google.flightmap.common.geo.AirspaceLevelsOfDetail#encodePoints}.
+   */
+  public void insertAirspaceLod(int id, int lod, byte[] points) throws SQLException;
+
+  /**
+   * Stores the magnetic variation grid.  At most one grid should be inserted.
+   */
+  public void insertMagneticVariationGrid(MagneticVariationGrid grid) throws SQLException;
+
+  /**
+   * Records that an airport lies within the lateral boundary of an airspace.
+   */
+  public void insertAirportAirspace(int airportId, int airspaceId, String classString,
+      int lowAlt, int highAlt) throws SQLException;
+
+  /**
+   * Adds the nearest airport candidates of a grid cell.
+   *
+   * @param startCell First (maximum level) cell covered, inclusive.
+   * @param endCell Last (maximum level) cell covered, exclusive.
+   * @param airports Candidates, encoded with {@link
+   * com.google.flightmap.common.db.NearestAirports#encodeCandidates}.
+   */
+  public void insertNearestAirports(int startCell, int endCell, byte[] airports)
+      throws SQLException;
+
   /**
    * Updates rank of airport.
    */
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.db;
+
+import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.Airspace;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.data.Runway;
+import com.google.flightmap.common.data.RunwayEnd;
+import com.google.flightmap.common.db.AviationSnapshotWriter;
+import com.google.flightmap.common.db.MappedAviationDbAdapter;
+import com.google.flightmap.common.db.NearestAirports;
+import com.google.flightmap.common.geo.AirspaceLevelsOfDetail;
+import com.google.flightmap.db.JdbcAviationDbAdapter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.logging.Logger;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * Exports the aviation database to a flat snapshot for {@link MappedAviationDbAdapter}.  Must run
+ * after all other tools, since the snapshot is read-only.
+ */
+public class AviationSnapshotBuilder {
+  private final static Logger LOG = Logger.getLogger(AviationSnapshotBuilder.class.getName());
+
+  // Command line options
+  private final static Options OPTIONS = new Options();
+  private final static String HELP_OPTION = "help";
+  private final static String AVIATION_DB_OPTION = "aviation_db";
+  private final static String SNAPSHOT_OPTION = "snapshot";
+
+  static {
+    // Command Line options definitions
+    OPTIONS.addOption("h", "help", false, "Print this message.");
+    OPTIONS.addOption(OptionBuilder.withLongOpt(AVIATION_DB_OPTION)
+                                   .withDescription("Aviation database.")
+                                   .hasArg()
+                                   .isRequired()
+                                   .withArgName("aviation_db")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(SNAPSHOT_OPTION)
+                                   .withDescription("Snapshot file to write.")
+                                   .hasArg()
+                                   .isRequired()
+                                   .withArgName("snapshot")
+                                   .create());
+  }
+
+  /**
+   * Area covering all airspaces.
+   */
+  private final static LatLngRect WORLD =
+      new LatLngRect(new LatLng(-90000000, -180000000), new LatLng(90000000, 180000000));
+
+  private final File snapshot;
+  private final Connection dbConn;
+  private final JdbcAviationDbAdapter dbAdapter;
+
+  /**
+   * @param db Aviation database
+   * @param snapshot Snapshot file to write
+   */
+  public AviationSnapshotBuilder(final File db, final File snapshot)
+      throws ClassNotFoundException, SQLException {
+    this.snapshot = snapshot;
+    Class.forName("org.sqlite.JDBC");
+    dbConn = DriverManager.getConnection("jdbc:sqlite:" + db.getAbsolutePath());
+    dbAdapter = new JdbcAviationDbAdapter(dbConn);
+  }
+
+  public static void main(String args[]) {
+    CommandLine line = null;
+    try {
+      final CommandLineParser parser = new PosixParser();
+      line = parser.parse(OPTIONS, args);
+    } catch (ParseException pEx) {
+      System.err.println(pEx.getMessage());
+      printHelp(line);
+      System.exit(2);
+    }
+
+    if (line.hasOption(HELP_OPTION)) {
+      printHelp(line);
+      System.exit(0);
+    }
+
+    final File db = new File(line.getOptionValue(AVIATION_DB_OPTION));
+    final File snapshot = new File(line.getOptionValue(SNAPSHOT_OPTION));
+    try {
+      (new AviationSnapshotBuilder(db, snapshot)).execute();
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void printHelp(final CommandLine line) {
+    final HelpFormatter formatter = new HelpFormatter();
+    formatter.setWidth(100);
+    formatter.printHelp("AviationSnapshotBuilder", OPTIONS, true);
+  }
+
+  /**
+   * Writes the snapshot of the whole database.
+   */
+  public void execute() throws InterruptedException, IOException, SQLException {
+    try {
+      final AviationSnapshotWriter writer = new AviationSnapshotWriter();
+      addConstants(writer);
+      addMetadata(writer);
+      final List<Integer> airportIds = dbAdapter.getAllAirportIds();
+      for (int airportId: airportIds) {
+        final Airport airport = dbAdapter.getAirport(airportId);
+        writer.addAirport(airport, dbAdapter.getAirportProperties(airportId),
+            dbAdapter.getAirportComms(airportId), dbAdapter.getAirportAirspaces(airportId));
+        for (Runway runway: airport.runways) {
+          for (RunwayEnd runwayEnd: runway.runwayEnds) {
+            writer.addRunwayEndProperties(runwayEnd.id,
+                dbAdapter.getRunwayEndProperties(runwayEnd.id));
+          }
+        }
+      }
+      final int airspaceCount = addAirspaces(writer);
+      writer.setMagneticVariationGrid(dbAdapter.getMagneticVariationGrid());
+      addNearestAirports(writer);
+
+      final OutputStream out = new BufferedOutputStream(new FileOutputStream(snapshot));
+      try {
+        writer.write(out);
+      } finally {
+        out.close();
+      }
+      LOG.info(String.format("%d airports, %d airspaces, %d bytes.", airportIds.size(),
+          airspaceCount, snapshot.length()));
+    } finally {
+      dbConn.close();
+    }
+  }
+
+  private void addConstants(final AviationSnapshotWriter writer) throws SQLException {
+    final Statement stat = dbConn.createStatement();
+    try {
+      final ResultSet rs = stat.executeQuery("SELECT _id, constant FROM constants");
+      while (rs.next()) {
+        writer.addConstant(rs.getInt("_id"), rs.getString("constant"));
+      }
+      rs.close();
+    } finally {
+      stat.close();
+    }
+  }
+
+  private void addMetadata(final AviationSnapshotWriter writer) throws SQLException {
+    if (!hasTable("metadata")) {
+      return;
+    }
+    final Statement stat = dbConn.createStatement();
+    try {
+      final ResultSet rs = stat.executeQuery("SELECT key, value FROM metadata");
+      while (rs.next()) {
+        writer.addMetadata(rs.getString("key"), rs.getString("value"));
+      }
+      rs.close();
+    } finally {
+      stat.close();
+    }
+  }
+
+  /**
+   * Adds all airspaces, with their bounding boxes and simplified geometries.
+   *
+   * @return Number of airspaces added
+   */
+  private int addAirspaces(final AviationSnapshotWriter writer)
+      throws InterruptedException, SQLException {
+    final Map<Integer, LatLngRect> bounds = new HashMap<Integer, LatLngRect>();
+    final Map<Integer, List<SortedMap<Integer, LatLng>>> levels =
+        new HashMap<Integer, List<SortedMap<Integer, LatLng>>>();
+    final Statement stat = dbConn.createStatement();
+    try {
+      ResultSet rs =
+          stat.executeQuery("SELECT _id, min_lat, max_lat, min_lng, max_lng FROM airspaces");
+      while (rs.next()) {
+        bounds.put(rs.getInt("_id"), new LatLngRect(
+            new LatLng(rs.getInt("min_lat"), rs.getInt("min_lng")),
+            new LatLng(rs.getInt("max_lat"), rs.getInt("max_lng"))));
+      }
+      rs.close();
+      if (hasTable("airspace_lods")) {
+        final int levelCount = AirspaceLevelsOfDetail.getLevelCount();
+        rs = stat.executeQuery("SELECT airspace_id, lod, points FROM airspace_lods");
+        while (rs.next()) {
+          final int id = rs.getInt("airspace_id");
+          final int level = rs.getInt("lod");
+          if (level >= levelCount) {
+            continue;
+          }
+          List<SortedMap<Integer, LatLng>> airspaceLevels = levels.get(id);
+          if (airspaceLevels == null) {
+            airspaceLevels = new ArrayList<SortedMap<Integer, LatLng>>();
+            for (int i = 0; i < levelCount; ++i) {
+              airspaceLevels.add(null);
+            }
+            levels.put(id, airspaceLevels);
+          }
+          airspaceLevels.set(level, AirspaceLevelsOfDetail.decodePoints(rs.getBytes("points")));
+        }
+        rs.close();
+      }
+    } finally {
+      stat.close();
+    }
+
+    int count = 0;
+    for (Airspace airspace: dbAdapter.getAirspacesInRectangle(WORLD)) {
+      writer.addAirspace(airspace, bounds.get(airspace.id), levels.get(airspace.id));
+      ++count;
+    }
+    return count;
+  }
+
+  private void addNearestAirports(final AviationSnapshotWriter writer) throws SQLException {
+    if (!hasTable("nearest_airports")) {
+      return;
+    }
+    final Statement stat = dbConn.createStatement();
+    try {
+      final ResultSet rs =
+          stat.executeQuery("SELECT start_cell_id, end_cell_id, airports FROM nearest_airports");
+      while (rs.next()) {
+        writer.addNearestAirports(rs.getInt("start_cell_id"), rs.getInt("end_cell_id"),
+            NearestAirports.decodeCandidates(rs.getBytes("airports")));
+      }
+      rs.close();
+    } finally {
+      stat.close();
+    }
+  }
+
+  private boolean hasTable(final String name) throws SQLException {
+    final ResultSet rs = dbConn.getMetaData().getTables(null, null, name, null);
+    final boolean hasTable = rs.next();
+    rs.close();
+    return hasTable;
+  }
+}
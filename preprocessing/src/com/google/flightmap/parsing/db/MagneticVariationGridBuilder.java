@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.db;
+
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.geo.MagneticVariationGrid;
+import com.google.flightmap.db.JdbcAviationDbAdapter;
+import com.google.flightmap.db.JdbcAviationDbWriter;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+import java.util.logging.Logger;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * Adds to the aviation database the magnetic variation computed on a regular grid covering all
+ * airports (see {@link MagneticVariationGrid}).  Must run after airports have been added.
+ * <p>
+ * The variation is computed for the effective date of the data cycle, given with {@code --epoch},
+ * never for the time of the build: builds of the same data produce the same grid.
+ */
+public class MagneticVariationGridBuilder {
+  private final static Logger LOG = Logger.getLogger(MagneticVariationGridBuilder.class.getName());
+
+  // Command line options
+  private final static Options OPTIONS = new Options();
+  private final static String HELP_OPTION = "help";
+  private final static String AVIATION_DB_OPTION = "aviation_db";
+  private final static String STEP_OPTION = "step";
+  private final static String EPOCH_OPTION = "epoch";
+
+  /**
+   * Default distance between grid rows and columns, in degrees.
+   */
+  private final static double DEFAULT_STEP = 0.5;
+
+  static {
+    // Command Line options definitions
+    OPTIONS.addOption("h", "help", false, "Print this message.");
+    OPTIONS.addOption(OptionBuilder.withLongOpt(AVIATION_DB_OPTION)
+                                   .withDescription("Aviation database.")
+                                   .hasArg()
+                                   .isRequired()
+                                   .withArgName("aviation_db")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(STEP_OPTION)
+                                   .withDescription("Grid step, in degrees (default: " +
+                                                    DEFAULT_STEP + ").")
+                                   .hasArg()
+                                   .withArgName("degrees")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(EPOCH_OPTION)
+                                   .withDescription("Time of the magnetic variation: " +
+                                                    "effective date of the data cycle, as " +
+                                                    "yyyy-MM-dd UTC.")
+                                   .hasArg()
+                                   .isRequired()
+                                   .withArgName("date")
+                                   .create());
+  }
+
+  private final AviationDbWriter dbWriter;
+  private final AviationDbReader dbReader;
+
+  /**
+   * Distance between grid rows and columns, in degrees E6.
+   */
+  private final int step;
+
+  /**
+   * Time of the magnetic variation, in milliseconds since Epoch.
+   */
+  private final long epoch;
+
+  /**
+   * @param db Aviation database
+   * @param step Distance between grid rows and columns, in degrees
+   * @param epoch Time of the magnetic variation, in milliseconds since Epoch
+   */
+  public MagneticVariationGridBuilder(final File db, final double step, final long epoch)
+      throws ClassNotFoundException, SQLException {
+    this.step = (int) Math.round(step * 1E6);
+    this.epoch = epoch;
+    dbWriter = new JdbcAviationDbWriter(db);
+    dbWriter.open();
+    dbReader = new JdbcAviationDbAdapter(dbWriter.getConnection());
+  }
+
+  public static void main(String args[]) {
+    CommandLine line = null;
+    try {
+      final CommandLineParser parser = new PosixParser();
+      line = parser.parse(OPTIONS, args);
+    } catch (ParseException pEx) {
+      System.err.println(pEx.getMessage());
+      printHelp(line);
+      System.exit(2);
+    }
+
+    if (line.hasOption(HELP_OPTION)) {
+      printHelp(line);
+      System.exit(0);
+    }
+
+    final String dbPath = line.getOptionValue(AVIATION_DB_OPTION);
+    final File db = new File(dbPath);
+    final double step = line.hasOption(STEP_OPTION) ?
+        Double.parseDouble(line.getOptionValue(STEP_OPTION)) : DEFAULT_STEP;
+    try {
+      final long epoch = parseDate(line.getOptionValue(EPOCH_OPTION));
+      (new MagneticVariationGridBuilder(db, step, epoch)).execute();
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void printHelp(final CommandLine line) {
+    final HelpFormatter formatter = new HelpFormatter();
+    formatter.setWidth(100);
+    formatter.printHelp("MagneticVariationGridBuilder", OPTIONS, true);
+  }
+
+  /**
+   * Returns the time of {@code date} (yyyy-MM-dd), at midnight UTC.
+   */
+  private static long parseDate(final String date) throws java.text.ParseException {
+    final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    format.setLenient(false);
+    return format.parse(date).getTime();
+  }
+
+  /**
+   * Replaces the magnetic variation grid in the database.
+   */
+  public void execute() throws SQLException {
+    try {
+      final LatLngRect area = getCoverageArea();
+      if (area.isEmpty()) {
+        throw new RuntimeException("No airports in database.");
+      }
+      final long start = System.currentTimeMillis();
+      final MagneticVariationGrid grid = MagneticVariationGrid.build(area, step, epoch);
+      final long stop = System.currentTimeMillis();
+      LOG.info(String.format("Computed %d x %d grid over %s for %tF in %d ms.", grid.getRows(),
+          grid.getCols(), area, epoch, stop - start));
+      dbWriter.initMagneticVariationTable();
+      dbWriter.insertMagneticVariationGrid(grid);
+    } finally {
+      dbWriter.close();
+    }
+  }
+
+  /**
+   * Returns the area covering all airports, rounded outwards to whole grid steps.
+   */
+  private LatLngRect getCoverageArea() {
+    final LatLngRect airports = new LatLngRect();
+    for (int id: dbReader.getAllAirportIds()) {
+      airports.add(dbReader.getAirport(id).location);
+    }
+    if (airports.isEmpty()) {
+      return airports;
+    }
+    final int south = Math.max(-90000000, floor(airports.getSouth()));
+    final int north = Math.min(90000000, floor(airports.getNorth()) + step);
+    final int west = Math.max(-180000000, floor(airports.getWest()));
+    final int east = Math.min(180000000, floor(airports.getEast()) + step);
+    return new LatLngRect(new LatLng(south, west), new LatLng(north, east));
+  }
+
+  /**
+   * Returns the largest multiple of {@link #step} not greater than {@code value}.
+   */
+  private int floor(final int value) {
+    return (int) Math.floor((double) value / step) * step;
+  }
+}
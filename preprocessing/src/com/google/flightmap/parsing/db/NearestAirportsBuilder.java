@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.db;
+
+import com.google.flightmap.common.data.Airport;
+import com.google.flightmap.common.data.LatLng;
+import com.google.flightmap.common.data.LatLngRect;
+import com.google.flightmap.common.data.Runway;
+import com.google.flightmap.common.db.CustomGridUtil;
+import com.google.flightmap.common.db.NearestAirports;
+import com.google.flightmap.common.geo.NavigationUtil;
+import com.google.flightmap.db.JdbcAviationDbAdapter;
+import com.google.flightmap.db.JdbcAviationDbWriter;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * Adds to the aviation database the nearest suitable airports of each populated grid cell (see
+ * {@link NearestAirports}).  Must run after airports and runways have been added and ranked.
+ * <p>
+ * A cell is populated if it, or one of its eight neighbors, contains a suitable airport.  The
+ * candidates of a cell are all airports that can be among the {@code count} nearest of at least
+ * one point of the cell: if the {@code count}-th smallest distance to the farthest corner of the
+ * cell is {@code D}, every airport closer than {@code D} to some point of the cell is kept.
+ */
+public class NearestAirportsBuilder {
+  private final static Logger LOG = Logger.getLogger(NearestAirportsBuilder.class.getName());
+
+  // Command line options
+  private final static Options OPTIONS = new Options();
+  private final static String HELP_OPTION = "help";
+  private final static String AVIATION_DB_OPTION = "aviation_db";
+  private final static String COUNT_OPTION = "count";
+  private final static String LEVEL_OPTION = "level";
+  private final static String MIN_RANK_OPTION = "min_rank";
+  private final static String MIN_RUNWAY_LENGTH_OPTION = "min_runway_length";
+  private final static String HARD_SURFACE_OPTION = "hard_surface";
+
+  private final static int DEFAULT_COUNT = 10;
+  private final static int DEFAULT_LEVEL = 8;
+  private final static int DEFAULT_MIN_RANK = 0;
+  private final static int DEFAULT_MIN_RUNWAY_LENGTH = 2000;
+
+  /**
+   * Relative margin added to the candidate distance threshold, to cover the approximation of
+   * distances to a cell by distances to its corners and edges.
+   */
+  private final static double DISTANCE_MARGIN = 1.01;
+
+  static {
+    // Command Line options definitions
+    OPTIONS.addOption("h", "help", false, "Print this message.");
+    OPTIONS.addOption(OptionBuilder.withLongOpt(AVIATION_DB_OPTION)
+                                   .withDescription("Aviation database.")
+                                   .hasArg()
+                                   .isRequired()
+                                   .withArgName("aviation_db")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(COUNT_OPTION)
+                                   .withDescription("Number of nearest airports guaranteed for " +
+                                                    "any position (default: " + DEFAULT_COUNT +
+                                                    ").")
+                                   .hasArg()
+                                   .withArgName("count")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(LEVEL_OPTION)
+                                   .withDescription("Grid cell level (default: " + DEFAULT_LEVEL +
+                                                    ").")
+                                   .hasArg()
+                                   .withArgName("level")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(MIN_RANK_OPTION)
+                                   .withDescription("Minimum airport rank (default: " +
+                                                    DEFAULT_MIN_RANK + ").")
+                                   .hasArg()
+                                   .withArgName("rank")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(MIN_RUNWAY_LENGTH_OPTION)
+                                   .withDescription("Minimum runway length, in feet (default: " +
+                                                    DEFAULT_MIN_RUNWAY_LENGTH + ").")
+                                   .hasArg()
+                                   .withArgName("feet")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(HARD_SURFACE_OPTION)
+                                   .withDescription("Only consider hard surface runways.")
+                                   .create());
+  }
+
+  private final AviationDbWriter dbWriter;
+  private final AviationDbReader dbReader;
+  private final int count;
+  private final int level;
+  private final int minRank;
+  private final int minRunwayLength;
+  private final boolean hardSurface;
+
+  /**
+   * @param db Aviation database
+   * @param count Number of nearest airports guaranteed for any position in a populated cell
+   * @param level Grid cell level (see {@link CustomGridUtil})
+   * @param minRank Minimum airport rank
+   * @param minRunwayLength Minimum runway length, in feet
+   * @param hardSurface If true, only hard surface runways are considered
+   */
+  public NearestAirportsBuilder(final File db, final int count, final int level,
+      final int minRank, final int minRunwayLength, final boolean hardSurface)
+      throws ClassNotFoundException, SQLException {
+    this.count = count;
+    this.level = level;
+    this.minRank = minRank;
+    this.minRunwayLength = minRunwayLength;
+    this.hardSurface = hardSurface;
+    dbWriter = new JdbcAviationDbWriter(db);
+    dbWriter.open();
+    dbReader = new JdbcAviationDbAdapter(dbWriter.getConnection());
+  }
+
+  public static void main(String args[]) {
+    CommandLine line = null;
+    try {
+      final CommandLineParser parser = new PosixParser();
+      line = parser.parse(OPTIONS, args);
+    } catch (ParseException pEx) {
+      System.err.println(pEx.getMessage());
+      printHelp(line);
+      System.exit(2);
+    }
+
+    if (line.hasOption(HELP_OPTION)) {
+      printHelp(line);
+      System.exit(0);
+    }
+
+    final String dbPath = line.getOptionValue(AVIATION_DB_OPTION);
+    final File db = new File(dbPath);
+    final int count = getIntOption(line, COUNT_OPTION, DEFAULT_COUNT);
+    final int level = getIntOption(line, LEVEL_OPTION, DEFAULT_LEVEL);
+    final int minRank = getIntOption(line, MIN_RANK_OPTION, DEFAULT_MIN_RANK);
+    final int minRunwayLength =
+        getIntOption(line, MIN_RUNWAY_LENGTH_OPTION, DEFAULT_MIN_RUNWAY_LENGTH);
+    final boolean hardSurface = line.hasOption(HARD_SURFACE_OPTION);
+    try {
+      (new NearestAirportsBuilder(db, count, level, minRank, minRunwayLength, hardSurface))
+          .execute();
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static int getIntOption(final CommandLine line, final String option,
+      final int defaultValue) {
+    return line.hasOption(option) ? Integer.parseInt(line.getOptionValue(option)) : defaultValue;
+  }
+
+  private static void printHelp(final CommandLine line) {
+    final HelpFormatter formatter = new HelpFormatter();
+    formatter.setWidth(100);
+    formatter.printHelp("NearestAirportsBuilder", OPTIONS, true);
+  }
+
+  /**
+   * Replaces the nearest airports of all cells in the database.
+   */
+  public void execute() throws SQLException {
+    try {
+      final List<Airport> airports = getSuitableAirports();
+      final SortedSet<Integer> cells = getPopulatedCells(airports);
+      dbWriter.initNearestAirportsTable();
+      int candidateCount = 0;
+      dbWriter.beginTransaction();
+      try {
+        for (int cellId: cells) {
+          final int[] candidates = getCandidates(cellId, airports);
+          candidateCount += candidates.length / 3;
+          final int[] range = CustomGridUtil.getCellRange(cellId, level);
+          dbWriter.insertNearestAirports(
+              range[0], range[1], NearestAirports.encodeCandidates(candidates));
+        }
+        dbWriter.commit();
+      } catch (SQLException sqlEx) {
+        dbWriter.rollback();
+        throw sqlEx;
+      }
+      LOG.info(String.format("%d suitable airports, %d cells, %.1f candidates per cell.",
+          airports.size(), cells.size(), cells.isEmpty() ? 0 : (double) candidateCount /
+          cells.size()));
+    } finally {
+      dbWriter.close();
+    }
+  }
+
+  /**
+   * Returns all open airports that pass the rank and runway filters.
+   */
+  private List<Airport> getSuitableAirports() {
+    final List<Airport> airports = new ArrayList<Airport>();
+    for (int id: dbReader.getAllAirportIds()) {
+      final Airport airport = dbReader.getAirport(id);
+      if (isSuitable(airport)) {
+        airports.add(airport);
+      }
+    }
+    return airports;
+  }
+
+  private boolean isSuitable(final Airport airport) {
+    if (!airport.isOpen || airport.type != Airport.Type.AIRPORT || airport.rank < minRank ||
+        airport.runways == null) {
+      return false;
+    }
+    for (Runway runway: airport.runways) {
+      if (runway.length >= minRunwayLength && (!hardSurface || runway.isHardSurface())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the cells containing an airport, and their neighbors.
+   */
+  private SortedSet<Integer> getPopulatedCells(final List<Airport> airports) {
+    final SortedSet<Integer> cells = new TreeSet<Integer>();
+    for (Airport airport: airports) {
+      final int cellId = CustomGridUtil.getCellId(airport.location, level);
+      final LatLngRect bounds = CustomGridUtil.getCellBounds(cellId, level);
+      final LatLng center = bounds.getCenter();
+      final int height = bounds.getNorth() - bounds.getSouth();
+      final int width = bounds.getEast() - bounds.getWest();
+      for (int i = -1; i <= 1; ++i) {
+        for (int j = -1; j <= 1; ++j) {
+          final long lat = (long) center.lat + i * height;
+          final long lng = (long) center.lng + j * width;
+          if (Math.abs(lat) < 90000000 && Math.abs(lng) < 180000000) {
+            cells.add(CustomGridUtil.getCellId(new LatLng((int) lat, (int) lng), level));
+          }
+        }
+      }
+    }
+    return cells;
+  }
+
+  /**
+   * Returns the candidates of a cell, as interleaved (id, latitude, longitude) triples ordered by
+   * distance from the center of the cell.
+   */
+  private int[] getCandidates(final int cellId, final List<Airport> airports) {
+    final LatLngRect bounds = CustomGridUtil.getCellBounds(cellId, level);
+    final int size = airports.size();
+    final double[] minDistances = new double[size];
+    final double[] maxDistances = new double[size];
+    for (int i = 0; i < size; ++i) {
+      final LatLng location = airports.get(i).location;
+      final int lat = Math.max(bounds.getSouth(), Math.min(bounds.getNorth(), location.lat));
+      final int lng = Math.max(bounds.getWest(), Math.min(bounds.getEast(), location.lng));
+      minDistances[i] = NavigationUtil.computeDistance(location, lat, lng);
+      maxDistances[i] = Math.max(
+          Math.max(NavigationUtil.computeDistance(location, bounds.getNorth(), bounds.getWest()),
+                   NavigationUtil.computeDistance(location, bounds.getNorth(), bounds.getEast())),
+          Math.max(NavigationUtil.computeDistance(location, bounds.getSouth(), bounds.getWest()),
+                   NavigationUtil.computeDistance(location, bounds.getSouth(), bounds.getEast())));
+    }
+    double threshold = Double.POSITIVE_INFINITY;
+    if (size > count) {
+      final double[] sortedMaxDistances = maxDistances.clone();
+      Arrays.sort(sortedMaxDistances);
+      threshold = sortedMaxDistances[count - 1] * DISTANCE_MARGIN;
+    }
+
+    final List<Airport> candidates = new ArrayList<Airport>();
+    for (int i = 0; i < size; ++i) {
+      if (minDistances[i] <= threshold) {
+        candidates.add(airports.get(i));
+      }
+    }
+    final LatLng center = bounds.getCenter();
+    Collections.sort(candidates, new Comparator<Airport>() {
+      @Override
+      public int compare(final Airport a, final Airport b) {
+        return Double.compare(NavigationUtil.computeDistance(center, a.location),
+                              NavigationUtil.computeDistance(center, b.location));
+      }
+    });
+    final int[] candidateLatLngs = new int[candidates.size() * 3];
+    for (int i = 0; i < candidates.size(); ++i) {
+      final Airport airport = candidates.get(i);
+      candidateLatLngs[i * 3] = airport.id;
+      candidateLatLngs[i * 3 + 1] = airport.location.lat;
+      candidateLatLngs[i * 3 + 2] = airport.location.lng;
+    }
+    return candidateLatLngs;
+  }
+}
@@ -16,20 +16,33 @@
 
 package com.google.flightmap.parsing.esri;
 
-import com.google.flightmap.common.io.StreamUtils;
-import com.google.flightmap.parsing.esri.data.Point;
 import com.google.flightmap.parsing.esri.data.Polygon;
 import com.google.flightmap.parsing.esri.data.Shapefile;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
+/**
+ * Reads polygon shapefiles (.shp).
+ * <p>
+ * The file is memory-mapped and polygons are decoded one at a time by the iterator returned by
+ * {@link #getPolygons()}, so memory usage does not depend on the size of the shapefile.
+ */
 public class ShapefileReader {
   private final static int NULL_SHAPE = 0;
   private final static int POLYGON = 5;
 
+  /**
+   * Size of the main file header, in bytes.
+   */
+  private final static int FILE_HEADER_SIZE = 100;
+
   private final File shapefile;
 
   /**
@@ -37,28 +50,66 @@ public class ShapefileReader {
    */
   private ByteBuffer buf;
 
+  /**
+   * Main file header.  Initialized by calling {@link #readHeader()}.
+   */
+  private Shapefile header;
+
   public ShapefileReader(File shapefile) {
     this.shapefile = shapefile;
   }
 
   /**
-   * Reads shape file data.  This method cannot be called twice.
+   * Reads shape file data, loading all polygons in memory.  This method cannot be called twice.
+   * Prefer {@link #getPolygons()} for large files.
    *
    * @return Contents of shape file
    */
   public synchronized Shapefile read() throws IOException {
-    open();
-    final Shapefile shapefile = readFileHeader();
-    readRecords(shapefile);
+    final Shapefile shapefile = readHeader();
+    final Iterator<Polygon> polygons = getPolygons();
+    while (polygons.hasNext()) {
+      shapefile.addPolygon(polygons.next());
+    }
     return shapefile;
   }
 
   /**
-   * Loads contents of shapefile in memory and initializes input buffer.
+   * Reads and returns the main file header.  The returned object contains no polygons.
+   */
+  public synchronized Shapefile readHeader() throws IOException {
+    if (header == null) {
+      open();
+      header = readFileHeader();
+    }
+    return header;
+  }
+
+  /**
+   * Returns an iterator over the polygons of the file, in file order.  Polygons are decoded when
+   * {@link Iterator#next()} is called.  This method cannot be called twice.
+   */
+  public synchronized Iterator<Polygon> getPolygons() throws IOException {
+    readHeader();
+    return new PolygonIterator();
+  }
+
+  /**
+   * Memory-maps shapefile and initializes input buffer.
    */
   private synchronized void open() throws IOException {
-    final byte[] contents = StreamUtils.getBytes(shapefile);
-    buf = ByteBuffer.wrap(contents);
+    final FileInputStream in = new FileInputStream(shapefile);
+    try {
+      final FileChannel channel = in.getChannel();
+      final long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Shapefile too large: " + shapefile + " (" + size + " bytes)");
+      }
+      // The mapping remains valid after the channel is closed.
+      buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    } finally {
+      in.close();
+    }
   }
 
   /**
@@ -85,45 +136,48 @@ public class ShapefileReader {
     final double zMax = buf.getDouble();
     final double mMin = buf.getDouble();
     final double mMax = buf.getDouble();
+    buf.position(FILE_HEADER_SIZE);
     return new Shapefile(fileCode, length, version, shapeType, xMin, yMin, xMax, yMax, zMin, zMax, 
         mMin, mMax);
   }
 
   /**
-   * Reads shape records from the buffer and populates {@code shapefile}.
+   * Reads shape records from the buffer until a polygon is found.
+   *
+   * @return Next polygon, or {@code null} if there are no more polygons in the file.
    */
-  private synchronized void readRecords(final Shapefile shapefile) {
+  private synchronized Polygon readNextPolygon() {
     while (buf.hasRemaining()) {
       buf.order(ByteOrder.BIG_ENDIAN);
       final int recordNumber = buf.getInt();
       final int contentLengthWords = buf.getInt();
+      final int recordEnd = buf.position() + 2 * contentLengthWords;
       buf.order(ByteOrder.LITTLE_ENDIAN);
       final int shapeType = peekInt();
-      if (shapeType != 0 && shapeType != shapefile.shapeType) {
+      if (shapeType != 0 && shapeType != header.shapeType) {
         throw new RuntimeException("Unexpected record shape type: " + shapeType + 
-            " (should be " + shapefile.shapeType + " or 0).");
+            " (should be " + header.shapeType + " or 0).");
       }
       switch (shapeType) {
         case NULL_SHAPE:
+          buf.position(recordEnd);
           continue;
         case POLYGON:
           final Polygon polygon = readPolygon(recordNumber);
-          shapefile.addPolygon(polygon);
-          break;
+          buf.position(recordEnd);
+          return polygon;
         default:
           throw new RuntimeException("Shape type not supported: " + shapeType);
       }
     }
+    return null;
   }
 
   /**
    * Reads an int from the buffer without changing its position.
    */
   private synchronized int peekInt() {
-    final int position = buf.position();
-    final int val = buf.getInt();
-    buf.position(position);
-    return val;
+    return buf.getInt(buf.position());
   }
 
   /**
@@ -157,29 +211,59 @@ public class ShapefileReader {
     final Polygon.Part[] parts = new Polygon.Part[numParts];
     for (int currentPart = 0; currentPart < numParts; ++currentPart) {
       final int pointsInPart = pointsPerPart[currentPart];
-      final Point[] points = new Point[pointsInPart];
+      final double[] x = new double[pointsInPart];
+      final double[] y = new double[pointsInPart];
       for (int i = 0; i < pointsInPart; ++i) {
-        points[i] = readPoint();
+        x[i] = buf.getDouble();
+        y[i] = buf.getDouble();
       }
-      parts[currentPart] = new Polygon.Part(points);
+      parts[currentPart] = new Polygon.Part(x, y);
     }
     return new Polygon(recordNumber, xMin, yMin, xMax, yMax, parts);
   }
 
   /**
-   * Reads a {@link Point} from the buffer.
+   * Iterates over the polygons of the file, decoding them one at a time.
    */
-  private synchronized Point readPoint() {
-    final double x = buf.getDouble();
-    final double y = buf.getDouble();
-    return new Point(x,y);
+  private class PolygonIterator implements Iterator<Polygon> {
+    /**
+     * Next polygon to return, already decoded by {@link #hasNext()}, if any.
+     */
+    private Polygon next;
+
+    @Override
+    public boolean hasNext() {
+      if (next == null) {
+        next = readNextPolygon();
+      }
+      return next != null;
+    }
+
+    @Override
+    public Polygon next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final Polygon polygon = next;
+      next = null;
+      return polygon;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
   }
 
   public static void main(String args[]) {
     try {
     final String filename = args[0];
     final ShapefileReader reader = new ShapefileReader(new File(filename));
-    System.out.println(reader.read());
+    System.out.println(reader.readHeader());
+    final Iterator<Polygon> polygons = reader.getPolygons();
+    while (polygons.hasNext()) {
+      System.out.println(polygons.next());
+    }
     } catch (Exception ex) {
       ex.printStackTrace();
       System.exit(1);
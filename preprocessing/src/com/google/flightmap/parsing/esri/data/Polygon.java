@@ -18,20 +18,39 @@ package com.google.flightmap.parsing.esri.data;
 
 public class Polygon {
 
+  /**
+   * Ring of a polygon.  Point {@code i} is ({@code x[i]}, {@code y[i]}).
+   */
   public static class Part {
-    public final Point[] points;
+    public final double[] x;
+    public final double[] y;
 
-    public Part(final Point[] points) {
-      this.points = points;
+    public Part(final double[] x, final double[] y) {
+      if (x.length != y.length) {
+        throw new IllegalArgumentException("x and y lengths differ: " + x.length + " " + y.length);
+      }
+      this.x = x;
+      this.y = y;
+    }
+
+    /**
+     * Returns the number of points in this part.
+     */
+    public int size() {
+      return x.length;
     }
 
     @Override
     public String toString() {
       final StringBuilder sb = new StringBuilder();
       sb.append("Part -");
-      for (Point point: points) {
+      for (int i = 0; i < x.length; ++i) {
         sb.append("\n  ");
-        sb.append(point);
+        sb.append("Point -");
+        sb.append(" x: ");
+        sb.append(x[i]);
+        sb.append(" y: ");
+        sb.append(y[i]);
       }
       return sb.toString();
     }
@@ -19,7 +19,14 @@ package com.google.flightmap.parsing.faa.afd;
 import java.io.*;
 import java.sql.*;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.*;
 
 import org.apache.commons.cli.CommandLineParser;
@@ -33,7 +40,9 @@ import org.apache.commons.cli.PosixParser;
 
 /**
  * Parses airports from compiled AFD file.
- *
+ * <p>
+ * The file is read one airport section at a time (see {@link AfdSectionReader}) and each section
+ * is matched on its own, optionally on several threads.
  */
 public class AfdCommParser {
   private final static Options OPTIONS = new Options();
@@ -42,6 +51,18 @@ public class AfdCommParser {
   private final static String AFD_OPTION = "afd";
   private final static String IATA_TO_ICAO_OPTION = "iata_to_icao";
   private final static String AVIATION_DB_OPTION = "aviation_db";
+  private final static String THREADS_OPTION = "threads";
+
+  /**
+   * Maximum number of parsed sections waiting to be added to the database, per thread.
+   */
+  private final static int MAX_PENDING_SECTIONS_PER_THREAD = 4;
+
+  private final static Pattern COMM_SECTION_PATTERN = Pattern.compile(
+      "\\((\\S+?)\\)\\s+?\\d+\\s*(?:N|E|W|S|NE|NW|SE|SW).+?UTC\\s+.+?COMMUNICATIONS\\:");
+//      "\\((\\S+?)\\)\\s+?\\d+.+?UTC\\s+.+?COMMUNICATIONS\\:");
+  private final static Pattern FREQ_PATTERN =
+      Pattern.compile("([A-Z]+(?:[A-Z]| |/)+?)(\\d+\\.\\d+)\\s+(?:\\((.+?)\\))?");
 
   static {
     OPTIONS.addOption("h", "help", false, "Print this message.");
@@ -63,6 +84,11 @@ public class AfdCommParser {
                                    .isRequired()
                                    .withArgName("aviation.db")
                                    .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(THREADS_OPTION)
+                                   .withDescription("Number of threads matching sections.")
+                                   .hasArg()
+                                   .withArgName("count")
+                                   .create());
   }
 
 
@@ -72,7 +98,9 @@ public class AfdCommParser {
   private final Map<String, String> icaoToIata = new HashMap<String, String>();
 
 
-  private final StringBuilder afd;
+  private final String afdFile;
+  private final int threads;
+
   /**
    * @param afdFile
    *          FAA Form 5010, Airport Master Record file
@@ -81,7 +109,23 @@ public class AfdCommParser {
   public AfdCommParser(final String afdFile,
                        final String iataToIcaoFile,
                        final String dbFile) {
+    this(afdFile, iataToIcaoFile, dbFile, 1);
+  }
+
+  /**
+   * @param afdFile
+   *          FAA Form 5010, Airport Master Record file
+   * @param dbFile
+   * @param threads
+   *          Number of threads matching sections (1 to match on the calling thread)
+   */
+  public AfdCommParser(final String afdFile,
+                       final String iataToIcaoFile,
+                       final String dbFile,
+                       final int threads) {
+    this.afdFile = afdFile;
     this.dbFile = dbFile;
+    this.threads = threads;
     try {
       final BufferedReader in = new BufferedReader(new FileReader(iataToIcaoFile));
       String line;
@@ -91,13 +135,6 @@ public class AfdCommParser {
         icaoToIata.put(codes[1], codes[0]);
       }
       in.close();
-
-      final BufferedReader afdIn = new BufferedReader(new FileReader(afdFile));
-      afd = new StringBuilder(60000);
-      while ((line = afdIn.readLine()) != null) {
-        afd.append(line);
-        afd.append(' ');
-      }
     } catch (IOException ioex) {
       System.err.println("Error while reading iataToIcao file");
       throw new RuntimeException(ioex);
@@ -142,20 +179,68 @@ public class AfdCommParser {
 
   }
 
-  private void addCommData() throws SQLException {
-    Pattern commSectionRegex = Pattern.compile(
-        "\\((\\S+?)\\)\\s+?\\d+\\s*(?:N|E|W|S|NE|NW|SE|SW).+?UTC\\s+.+?COMMUNICATIONS\\:");
-//        "\\((\\S+?)\\)\\s+?\\d+.+?UTC\\s+.+?COMMUNICATIONS\\:");
-    Pattern freqRegex = Pattern.compile("([A-Z]+(?:[A-Z]| |/)+?)(\\d+\\.\\d+)\\s+(?:\\((.+?)\\))?");
+  private void addCommData() throws IOException, SQLException, InterruptedException {
+    final AfdSectionReader sections = new AfdSectionReader(new FileReader(afdFile));
+    try {
+      if (threads > 1) {
+        addCommDataInParallel(sections);
+        return;
+      }
+      String section;
+      while ((section = sections.readSection()) != null) {
+        addSectionToDb(parseSection(section));
+      }
+    } finally {
+      sections.close();
+    }
+  }
+
+  /**
+   * Matches sections on {@link #threads} threads and adds them to the database in file order.
+   */
+  private void addCommDataInParallel(final AfdSectionReader sections)
+      throws IOException, SQLException, InterruptedException {
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final LinkedList<Future<ParsedSection>> pending = new LinkedList<Future<ParsedSection>>();
+    try {
+      String section;
+      while ((section = sections.readSection()) != null) {
+        final String text = section;
+        pending.add(executor.submit(new Callable<ParsedSection>() {
+          @Override
+          public ParsedSection call() {
+            return parseSection(text);
+          }
+        }));
+        // Bound the number of sections held in memory.
+        if (pending.size() >= MAX_PENDING_SECTIONS_PER_THREAD * threads) {
+          addSectionToDb(pending.removeFirst().get());
+        }
+      }
+      while (!pending.isEmpty()) {
+        addSectionToDb(pending.removeFirst().get());
+      }
+    } catch (ExecutionException eEx) {
+      throw new RuntimeException(eEx.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Finds communication frequencies in a single section of the A/FD.
+   */
+  private static ParsedSection parseSection(final String afd) {
+    final ParsedSection parsed = new ParsedSection();
     int start = 0;
 
-    Matcher commSectionMatcher = commSectionRegex.matcher(afd);
-    Matcher freqMatcher = freqRegex.matcher(afd);
+    final Matcher commSectionMatcher = COMM_SECTION_PATTERN.matcher(afd);
+    final Matcher freqMatcher = FREQ_PATTERN.matcher(afd);
 
     while (commSectionMatcher.find(start)) {
       start = commSectionMatcher.start();
       final String iata = commSectionMatcher.group(1);
-      System.out.println(iata);
+      parsed.messages.add(iata);
 
       // Determine potential end of this COMMUNICATIONS end
       int nextColon = afd.indexOf(":", commSectionMatcher.end());
@@ -174,23 +259,45 @@ public class AfdCommParser {
 
       while (freqMatcher.find(start)) {
         if (freqMatcher.start() > stop) {
-          start = stop;
           break;
         }
-        System.out.println("  -> " + freqMatcher.group(0));
+        parsed.messages.add("  -> " + freqMatcher.group(0));
         final String identifier = freqMatcher.group(1).trim();
         final String frequency = freqMatcher.group(2).trim();
         String remarks = freqMatcher.group(3);
         if (remarks != null) {
           remarks = remarks.trim();
         }
-        
-        addAirportCommToDb(iata, identifier, frequency, remarks);
+
+        parsed.comms.add(new String[] {iata, identifier, frequency, remarks});
         start = freqMatcher.end();
       }
+      // Next communications section cannot start before stop.
+      start = Math.max(start, stop);
     }
+    return parsed;
   }
 
+  /**
+   * Prints messages of a parsed section and adds its frequencies to the database.
+   */
+  private void addSectionToDb(final ParsedSection parsed) throws SQLException {
+    for (String message: parsed.messages) {
+      System.out.println(message);
+    }
+    for (String[] comm: parsed.comms) {
+      addAirportCommToDb(comm[0], comm[1], comm[2], comm[3]);
+    }
+  }
+
+  /**
+   * Result of matching a section: progress messages and (iata, identifier, frequency, remarks)
+   * tuples.
+   */
+  private static class ParsedSection {
+    final List<String> messages = new LinkedList<String>();
+    final List<String[]> comms = new LinkedList<String[]>();
+  }
 
   private void addAirportCommToDb(final String iata, final String identifier,
       final String frequency, final String remarks) throws SQLException {
@@ -262,9 +369,10 @@ public class AfdCommParser {
     final String afdFile =  line.getOptionValue(AFD_OPTION);
     final String iataToIcaoFile = line.getOptionValue(IATA_TO_ICAO_OPTION);
     final String dbFile = line.getOptionValue(AVIATION_DB_OPTION);
+    final int threads = line.hasOption(THREADS_OPTION) ?
+        Integer.parseInt(line.getOptionValue(THREADS_OPTION)) : 1;
 
-
-    (new AfdCommParser(afdFile, iataToIcaoFile, dbFile)).execute();
+    (new AfdCommParser(afdFile, iataToIcaoFile, dbFile, threads)).execute();
   }
 
 }
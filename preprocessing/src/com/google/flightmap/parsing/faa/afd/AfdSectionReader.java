@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.faa.afd;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.regex.Pattern;
+
+/**
+ * Splits an Airport/Facility Directory text file in per-airport sections while reading it.
+ * <p>
+ * A new section starts on each line containing an airport header, eg.
+ * {@code SAN FRANCISCO INTL (SFO) 8 SE UTC-8(-7DT)}.  Lines of a section are joined with spaces.
+ * Only one section is held in memory at a time.
+ */
+class AfdSectionReader {
+  private final static Pattern SECTION_START_PATTERN =
+      Pattern.compile("\\(\\S+?\\)\\s+?\\d+\\s*(?:N|E|W|S|NE|NW|SE|SW)");
+
+  private final BufferedReader in;
+
+  /**
+   * First line of the next section, read while looking for the end of the current one.
+   */
+  private String pendingLine;
+
+  AfdSectionReader(final Reader in) {
+    this.in = new BufferedReader(in);
+  }
+
+  /**
+   * Returns the text of the next section, or {@code null} if the end of the file was reached.
+   */
+  synchronized String readSection() throws IOException {
+    final StringBuilder section = new StringBuilder();
+    if (pendingLine != null) {
+      section.append(pendingLine);
+      section.append(' ');
+      pendingLine = null;
+    }
+    String line;
+    while ((line = in.readLine()) != null) {
+      if (section.length() > 0 && SECTION_START_PATTERN.matcher(line).find()) {
+        pendingLine = line;
+        return section.toString();
+      }
+      section.append(line);
+      section.append(' ');
+    }
+    return section.length() > 0 ? section.toString() : null;
+  }
+
+  synchronized void close() throws IOException {
+    in.close();
+  }
+}
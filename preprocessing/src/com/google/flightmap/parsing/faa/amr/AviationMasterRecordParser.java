@@ -26,8 +26,9 @@ import com.google.flightmap.db.JdbcAviationDbWriter;
 import com.google.flightmap.parsing.db.AviationDbWriter;
 import com.google.flightmap.parsing.db.AviationDbReader;
 import com.google.flightmap.parsing.util.IcaoUtils;
-import com.google.flightmap.parsing.util.IndexedArray;
 import com.google.flightmap.parsing.util.StringUtils;
+import com.google.flightmap.parsing.util.TabDelimitedReader;
+import com.google.flightmap.parsing.util.TabDelimitedReader.Column;
 
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.CommandLine;
@@ -38,7 +39,6 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
@@ -286,48 +286,60 @@ public class AviationMasterRecordParser {
    * Parse file and add airport data to the database.
    */
   private void addAirportDataToDb() throws SQLException, IOException {
-    final BufferedReader in = new BufferedReader(new FileReader(airportSourceFile));
+    final TabDelimitedReader in = new TabDelimitedReader(new FileReader(airportSourceFile), true);
     try {
-      String line = in.readLine();
-      if (line == null) {
-        throw new RuntimeException("Airport Master Record file is empty.");
-      }
-      // Parse first line to determine headers
-      final String[] headers = line.split("\\t");
-      removeEnclosingQuotes(headers);
-      final IndexedArray<String, String> fields = new IndexedArray<String, String>(headers);
+      // Resolve columns once
+      final Column locationIdColumn = in.getColumn(AIRPORT_LOCATION_ID_HEADER);
+      final Column facilityNameColumn = in.getColumn(AIRPORT_FACILITY_NAME_HEADER);
+      final Column typeColumn = in.getColumn(AIRPORT_TYPE_HEADER);
+      final Column cityColumn = in.getColumn(AIRPORT_CITY_HEADER);
+      final Column latitudeColumn = in.getColumn(AIRPORT_LATITUDE_HEADER);
+      final Column longitudeColumn = in.getColumn(AIRPORT_LONGITUDE_HEADER);
+      final Column statusColumn = in.getColumn(AIRPORT_STATUS_HEADER);
+      final Column useColumn = in.getColumn(AIRPORT_USE_HEADER);
+      final Column controlTowerColumn = in.getColumn(AIRPORT_CONTROL_TOWER_HEADER);
+      final Column ownershipColumn = in.getColumn(AIRPORT_OWNERSHIP_HEADER);
+      final Column siteNumberColumn = in.getColumn(AIRPORT_SITE_NUMBER_HEADER);
+      final Column ctafColumn = in.getColumn(AIRPORT_CTAF_HEADER);
+      final Column elevationColumn = in.getColumn(AIRPORT_ELEVATION_HEADER);
+      final Column beaconColorColumn = in.getColumn(AIRPORT_BEACON_COLOR_HEADER);
+      final Column fuelTypesColumn = in.getColumn(AIRPORT_FUEL_TYPES_HEADER);
+      final Column landingFeeColumn = in.getColumn(AIRPORT_LANDING_FEE_HEADER);
+      final Column segmentedCircleColumn = in.getColumn(AIRPORT_SEGMENTED_CIRCLE_HEADER);
+      final Column effectiveDateColumn = in.getColumn(AIRPORT_EFFECTIVE_DATE_HEADER);
+      final Column windIndicatorColumn = in.getColumn(AIRPORT_WIND_INDICATOR_HEADER);
       dbWriter.initAirportTables();
       dbWriter.initAirportCommTable();
       dbWriter.beginTransaction();
       // Parse airport lines
-      while ((line = in.readLine()) != null) {
-        fields.setFields(line.split("\\t"));
+      while (in.next()) {
         // icao
-        final String iata = fields.get(AIRPORT_LOCATION_ID_HEADER);
+        final String iata = in.get(locationIdColumn);
         final String icao = getIcao(iata);
         // name
-        String name = fields.get(AIRPORT_FACILITY_NAME_HEADER);
+        String name = in.get(facilityNameColumn);
         name = getAirportNameToDisplay(icao, name);
         // type
-        String type = fields.get(AIRPORT_TYPE_HEADER);
+        String type = in.get(typeColumn);
         type = StringUtils.capitalize(type.toLowerCase());
         // city
-        final String city = fields.get(AIRPORT_CITY_HEADER);
+        final String city = in.get(cityColumn);
         // lat, lng
-        final String latitudeS = fields.get(AIRPORT_LATITUDE_HEADER);
-        final String longitudeS = fields.get(AIRPORT_LONGITUDE_HEADER);
-        final LatLng position = LatLngParsingUtils.parseLatLng(latitudeS, longitudeS);
+        final CharSequence line = in.getLine();
+        final LatLng position = LatLngParsingUtils.parseLatLng(
+            line, in.getStart(latitudeColumn), in.getEnd(latitudeColumn),
+            line, in.getStart(longitudeColumn), in.getEnd(longitudeColumn));
         // is_open
-        final String status = fields.get(AIRPORT_STATUS_HEADER);
+        final String status = in.get(statusColumn);
         final boolean isOpen = "O".equals(status);
         // is_public
-        final String use = fields.get(AIRPORT_USE_HEADER);
+        final String use = in.get(useColumn);
         final boolean isPublic = "PU".equals(use);
         // is_towered
-        final String controlTower = fields.get(AIRPORT_CONTROL_TOWER_HEADER);
+        final String controlTower = in.get(controlTowerColumn);
         final boolean isTowered = "Y".equals(controlTower);
         // is_military
-        final String ownership = fields.get(AIRPORT_OWNERSHIP_HEADER);
+        final String ownership = in.get(ownershipColumn);
         final boolean isMilitary =  ownership.startsWith("M");
         // cell_id
         int cellId = CustomGridUtil.getCellId(position);
@@ -342,12 +354,12 @@ public class AviationMasterRecordParser {
           throw new RuntimeException("Could not determine db id of airport: " + icao);
         }
         // Map SiteNumber to icao code for future reference by runway parser
-        final String siteNumber = fields.tryGet(AIRPORT_SITE_NUMBER_HEADER);
+        final String siteNumber = in.tryGet(siteNumberColumn);
         siteNumberToId.put(siteNumber, id);
 
 
         // Common traffic advisory frequency. (CTAF)
-        String ctaf = fields.tryGet(AIRPORT_CTAF_HEADER);
+        String ctaf = in.tryGet(ctafColumn);
         if (ctaf != null && !ctaf.isEmpty()) {
           try { // Parse frequency and convert it back to String to eliminate leading/trailing 0s.
             Double freq = Double.valueOf(ctaf);
@@ -360,30 +372,30 @@ public class AviationMasterRecordParser {
 
         // Additional properties
         // Elevation
-        final String elevation = fields.get(AIRPORT_ELEVATION_HEADER);
+        final String elevation = in.get(elevationColumn);
         addAirportProperty(id, AIRPORT_ELEVATION_HEADER, elevation);
         // Beacon Color
         final String beaconColor =
-            AirportParsingUtils.parseAirportBeaconColor(fields.tryGet(AIRPORT_BEACON_COLOR_HEADER));
+            AirportParsingUtils.parseAirportBeaconColor(in.tryGet(beaconColorColumn));
         addAirportProperty(id, AIRPORT_BEACON_COLOR_HEADER, beaconColor);
         // Fuel Types
         final String fuelTypes =
-            AirportParsingUtils.parseAirportFuelTypes(fields.tryGet(AIRPORT_FUEL_TYPES_HEADER));
+            AirportParsingUtils.parseAirportFuelTypes(in.tryGet(fuelTypesColumn));
         addAirportProperty(id, AIRPORT_FUEL_TYPES_HEADER, fuelTypes);
         // Non-Commercial Landing Fee
         final String landingFee =
-          AirportParsingUtils.parseBoolean(fields.tryGet(AIRPORT_LANDING_FEE_HEADER));
+          AirportParsingUtils.parseBoolean(in.tryGet(landingFeeColumn));
         addAirportProperty(id, AIRPORT_LANDING_FEE_HEADER, landingFee);
         // Segmented circle
         final String segmentedCircle =
-          AirportParsingUtils.parseBoolean(fields.tryGet(AIRPORT_SEGMENTED_CIRCLE_HEADER));
+          AirportParsingUtils.parseBoolean(in.tryGet(segmentedCircleColumn));
         addAirportProperty(id, AIRPORT_SEGMENTED_CIRCLE_HEADER, segmentedCircle);
         // Effective date
-        final String effectiveDate = fields.tryGet(AIRPORT_EFFECTIVE_DATE_HEADER);
+        final String effectiveDate = in.tryGet(effectiveDateColumn);
         addAirportProperty(id, AIRPORT_EFFECTIVE_DATE_HEADER, effectiveDate);
         // Wind indicator 
         final String windIndicator = AirportParsingUtils.parseAirportWindIndicator(
-            fields.tryGet(AIRPORT_WIND_INDICATOR_HEADER));
+            in.tryGet(windIndicatorColumn));
         addAirportProperty(id, AIRPORT_WIND_INDICATOR_HEADER, windIndicator);
       }
       dbWriter.commit();
@@ -412,39 +424,62 @@ public class AviationMasterRecordParser {
     dbWriter.insertAirportProperty(id, label, value);
   }
 
+  /**
+   * Column handles of the data of one runway end.
+   */
+  private static class RunwayEndColumns {
+    final Column letters;
+    final Column trueAlignment;
+    final Column reil;
+    final Column rightTraffic;
+    final Column vasi;
+
+    /**
+     * Resolves the runway end columns whose header starts with {@code prefix}.
+     */
+    RunwayEndColumns(final TabDelimitedReader in, final String prefix) {
+      letters = in.getColumn(prefix + RUNWAY_END_LETTERS_HEADER_SUFFIX);
+      trueAlignment = in.getColumn(prefix + RUNWAY_END_TRUE_ALIGNMENT_HEADER_SUFFIX);
+      reil = in.getColumn(prefix + RUNWAY_END_REIL_HEADER_SUFFIX);
+      rightTraffic = in.getColumn(prefix + RUNWAY_END_RIGHT_TRAFFIC_HEADER_SUFFIX);
+      vasi = in.getColumn(prefix + RUNWAY_END_VASI_HEADER_SUFFIX);
+    }
+  }
+
   /**
    * Parse file and add runway data to the database.
    */
   private void addRunwayDataToDb() throws SQLException, IOException {
-    final BufferedReader in = new BufferedReader(new FileReader(runwaySourceFile));
+    final TabDelimitedReader in = new TabDelimitedReader(new FileReader(runwaySourceFile), true);
     try {
-      String line = in.readLine();
-      if (line == null) {
-        throw new RuntimeException("Runway Master Record file is empty.");
-      }
-      // Parse first line to determine headers
-      final String[] headers = line.split("\\t");
-      removeEnclosingQuotes(headers);
-      final IndexedArray<String, String> fields = new IndexedArray<String, String>(headers);
+      // Resolve columns once
+      final Column siteNumberColumn = in.getColumn(RUNWAY_SITE_NUMBER_HEADER);
+      final Column lettersColumn = in.getColumn(RUNWAY_LETTERS_HEADER);
+      final Column lengthColumn = in.getColumn(RUNWAY_LENGTH_HEADER);
+      final Column widthColumn = in.getColumn(RUNWAY_WIDTH_HEADER);
+      final Column surfaceColumn = in.getColumn(RUNWAY_SURFACE_HEADER);
+      final RunwayEndColumns baseEndColumns =
+          new RunwayEndColumns(in, BASE_RUNWAY_END_HEADER_PREFIX);
+      final RunwayEndColumns reciprocalEndColumns =
+          new RunwayEndColumns(in, RECIPROCAL_RUNWAY_END_HEADER_PREFIX);
       // Initialize db and prepare statements
       dbWriter.initRunwayTables();
       dbWriter.beginTransaction();
       // Parse runway lines
-      while ((line = in.readLine()) != null) {
-        fields.setFields(line.split("\\t"));
+      while (in.next()) {
         // Get corresponding airport
-        final String siteNumber = fields.get(RUNWAY_SITE_NUMBER_HEADER);
+        final String siteNumber = in.get(siteNumberColumn);
         final Integer airportId = siteNumberToId.get(siteNumber);
         if (airportId == null) {
           System.err.println("Could not find airport id for site number: " + siteNumber);
           continue;
         }
         // Insert new runway in db
-        final String letters = fields.get(RUNWAY_LETTERS_HEADER).substring(1); // Remove first '
-        final int length = Integer.parseInt(fields.get(RUNWAY_LENGTH_HEADER));
-        final int width = Integer.parseInt(fields.get(RUNWAY_WIDTH_HEADER));
+        final String letters = in.get(lettersColumn).substring(1); // Remove first '
+        final int length = Integer.parseInt(in.get(lengthColumn));
+        final int width = Integer.parseInt(in.get(widthColumn));
         final String surface =
-            AirportParsingUtils.parseRunwaySurface(fields.get(RUNWAY_SURFACE_HEADER));
+            AirportParsingUtils.parseRunwaySurface(in.get(surfaceColumn));
         dbWriter.insertRunway(airportId, letters, length, width, surface);
         // Retrieve db id of freshly added runway
         final int runwayId = dbReader.getRunwayId(airportId, letters);
@@ -454,7 +489,8 @@ public class AviationMasterRecordParser {
                   letters, airportId));
         }
         // Add runway ends
-        addRunwayEndDataToDb(runwayId, fields);
+        addRunwayEndDataToDb(runwayId, in, baseEndColumns);
+        addRunwayEndDataToDb(runwayId, in, reciprocalEndColumns);
       }
       dbWriter.commit();
     } finally {
@@ -463,19 +499,12 @@ public class AviationMasterRecordParser {
   }
 
   /**
-   * Inserts both base and reciprocal runway end data in database.
+   * Inserts data of the runway end described by {@code columns} in database.
    */
-  private void addRunwayEndDataToDb(final int runwayId, final IndexedArray<String, String> fields)
-      throws SQLException {
-    addRunwayEndDataToDb(runwayId, fields, BASE_RUNWAY_END_HEADER_PREFIX);
-    addRunwayEndDataToDb(runwayId, fields, RECIPROCAL_RUNWAY_END_HEADER_PREFIX);
-  }
-
-  private void addRunwayEndDataToDb(final int runwayId, final IndexedArray<String, String> fields,
-      final String prefix) throws SQLException {
+  private void addRunwayEndDataToDb(final int runwayId, final TabDelimitedReader in,
+      final RunwayEndColumns columns) throws SQLException {
     // Add runway end to database
-    final String lettersHeader = prefix + RUNWAY_END_LETTERS_HEADER_SUFFIX;
-    final String letters = fields.get(lettersHeader).substring(1); // Remove first char "'"
+    final String letters = in.get(columns.letters).substring(1); // Remove first char "'"
     if (letters.isEmpty()) {
       // Skip runway ends with no letters (heliports)
       return;
@@ -491,21 +520,17 @@ public class AviationMasterRecordParser {
 
     // Add runway end properties
     // True Alignment
-    final String trueAlignmentHeader = prefix + RUNWAY_END_TRUE_ALIGNMENT_HEADER_SUFFIX;
-    final String trueAlignment = fields.tryGet(trueAlignmentHeader);
+    final String trueAlignment = in.tryGet(columns.trueAlignment);
     addRunwayEndProperty(runwayEndId, RUNWAY_END_TRUE_ALIGNMENT_HEADER_SUFFIX, trueAlignment);
     // Runway end identifier lights
-    final String reilHeader = prefix + RUNWAY_END_REIL_HEADER_SUFFIX;
-    final String runwayEndReil = AirportParsingUtils.parseBoolean(fields.tryGet(reilHeader));
+    final String runwayEndReil = AirportParsingUtils.parseBoolean(in.tryGet(columns.reil));
     addRunwayEndProperty(runwayEndId, RUNWAY_END_REIL_HEADER_SUFFIX, runwayEndReil);
     // Traffic pattern
-    final String rightTrafficHeader = prefix + RUNWAY_END_RIGHT_TRAFFIC_HEADER_SUFFIX;
-    final String trafficPattern = 
-        AirportParsingUtils.parseTrafficPattern(fields.tryGet(rightTrafficHeader));
+    final String trafficPattern =
+        AirportParsingUtils.parseTrafficPattern(in.tryGet(columns.rightTraffic));
     addRunwayEndProperty(runwayEndId, RUNWAY_END_RIGHT_TRAFFIC_HEADER_SUFFIX, trafficPattern);
     // Visual glide slope indicators
-    final String vasiHeader = prefix + RUNWAY_END_VASI_HEADER_SUFFIX;
-    final String vasi = AirportParsingUtils.parseVasi(fields.tryGet(vasiHeader));
+    final String vasi = AirportParsingUtils.parseVasi(in.tryGet(columns.vasi));
     addRunwayEndProperty(runwayEndId, RUNWAY_END_VASI_HEADER_SUFFIX, vasi);
   }
 
@@ -539,22 +564,4 @@ public class AviationMasterRecordParser {
     formatter.setWidth(100);
     formatter.printHelp("AviationMasterRecordParser", OPTIONS, true);
   }
-
-  /**
-   * Removes enclosing double quotes from all entries in {@code headers}.
-   * <p>
-   * <pre>[ "\"foo\"", "\"bar\"" ] -> [ "foo", "bar" ]</pre>
-   *
-   * @throws RuntimeException Entry in {@code headers} is not enclosed in quotes.
-   */
-  private static void removeEnclosingQuotes(final String[] headers) {
-    for (int i = 0; i < headers.length; ++i) {
-      String header = headers[i];
-      if (!header.matches("\"\\w+\"")) {
-        throw new RuntimeException("No enclosing quotes: " + header);
-      }
-      header = header.substring(1,header.length()-1);
-      headers[i] = header;
-    }
-  }
 }
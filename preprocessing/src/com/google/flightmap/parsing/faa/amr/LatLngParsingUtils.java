@@ -27,6 +27,21 @@ class LatLngParsingUtils {
    */
   private LatLngParsingUtils() { }
 
+  /**
+   * Maximum number of digits parsed by {@link #parseDecimal} without rounding (2^53 > 10^15).
+   */
+  private final static int MAX_EXACT_DIGITS = 15;
+
+  private final static double[] POWERS_OF_TEN = new double[MAX_EXACT_DIGITS + 1];
+
+  static {
+    double power = 1;
+    for (int i = 0; i < POWERS_OF_TEN.length; ++i) {
+      POWERS_OF_TEN[i] = power;
+      power *= 10;
+    }
+  }
+
    /**
    * Parses latitude and longitude from fractional seconds.
    *
@@ -36,8 +51,20 @@ class LatLngParsingUtils {
    * @return            Position corresponding to given strings
    */ 
   public static LatLng parseLatLng(final String latitudeS, final String longitudeS) {
-    final double latitude = parseLatitudeS(latitudeS);
-    final double longitude = parseLongitudeS(longitudeS);
+    return parseLatLng(latitudeS, 0, latitudeS.length(), longitudeS, 0, longitudeS.length());
+  }
+
+  /**
+   * Parses latitude and longitude from fractional seconds in [{@code latBegin}, {@code latEnd})
+   * of {@code lat} and [{@code lngBegin}, {@code lngEnd}) of {@code lng}, without creating
+   * intermediate strings.
+   *
+   * @see #parseLatLng(String, String)
+   */
+  public static LatLng parseLatLng(final CharSequence lat, final int latBegin, final int latEnd,
+      final CharSequence lng, final int lngBegin, final int lngEnd) {
+    final double latitude = parseLatitudeS(lat, latBegin, latEnd);
+    final double longitude = parseLongitudeS(lng, lngBegin, lngEnd);
     final LatLng position = LatLng.fromDouble(latitude, longitude);
     return position;
   }
@@ -45,12 +72,12 @@ class LatLngParsingUtils {
   /**
    * Parses latitude seconds.
    *
-   * @param latitudeS  Latitude in fractional seconds ("136545.1250N")
-   * @return           Latitude in degrees (North positive, South negative)
+   * @param s  Latitude in fractional seconds ("136545.1250N") in [{@code begin}, {@code end})
+   * @return   Latitude in degrees (North positive, South negative)
    */
-  private static double parseLatitudeS(final String latitudeS) {
-    double latitudeSeconds = Double.parseDouble(latitudeS.substring(0, latitudeS.length() - 1));
-    final char northSouthIndicatorChar = latitudeS.charAt(latitudeS.length() - 1);
+  private static double parseLatitudeS(final CharSequence s, final int begin, final int end) {
+    double latitudeSeconds = parseDecimal(s, begin, end - 1);
+    final char northSouthIndicatorChar = s.charAt(end - 1);
     if (northSouthIndicatorChar == 'S') {
       latitudeSeconds *= -1;
     } else if (northSouthIndicatorChar != 'N') {
@@ -62,12 +89,12 @@ class LatLngParsingUtils {
   /**
    * Parses longitude seconds.
    *
-   * @param longitudeS  Longitude in fractional seconds ("326633.3600W")
-   * @return            Longitude in degrees (East positive, West negative)
+   * @param s  Longitude in fractional seconds ("326633.3600W") in [{@code begin}, {@code end})
+   * @return   Longitude in degrees (East positive, West negative)
    */
-  private static double parseLongitudeS(final String longitudeS) {
-    double longitudeSeconds = Double.parseDouble(longitudeS.substring(0, longitudeS.length() - 1));
-    final char westEastIndicatorChar = longitudeS.charAt(longitudeS.length() - 1);
+  private static double parseLongitudeS(final CharSequence s, final int begin, final int end) {
+    double longitudeSeconds = parseDecimal(s, begin, end - 1);
+    final char westEastIndicatorChar = s.charAt(end - 1);
     if (westEastIndicatorChar == 'W') {
       longitudeSeconds *= -1;
     } else if (westEastIndicatorChar != 'E') {
@@ -75,4 +102,35 @@ class LatLngParsingUtils {
     }
     return longitudeSeconds/3600.0;
   }
+
+  /**
+   * Parses an unsigned decimal number ("136545.1250") in [{@code begin}, {@code end}).
+   * <p>
+   * The digits are accumulated in a {@code long} and divided once by the matching power of ten.
+   * Both values are exact doubles for the supported precision, so the result is the same as
+   * {@link Double#parseDouble}.  Other inputs are handed over to {@link Double#parseDouble}.
+   */
+  private static double parseDecimal(final CharSequence s, final int begin, final int end) {
+    long mantissa = 0;
+    int digits = 0;
+    int fractionDigits = -1;
+    for (int i = begin; i < end; ++i) {
+      final char c = s.charAt(i);
+      if (c == '.' && fractionDigits == -1) {
+        fractionDigits = 0;
+      } else if (c >= '0' && c <= '9' && digits < MAX_EXACT_DIGITS) {
+        mantissa = mantissa * 10 + (c - '0');
+        ++digits;
+        if (fractionDigits != -1) {
+          ++fractionDigits;
+        }
+      } else {
+        return Double.parseDouble(s.subSequence(begin, end).toString());
+      }
+    }
+    if (digits == 0) {
+      throw new NumberFormatException("Not a number: " + s.subSequence(begin, end));
+    }
+    return fractionDigits <= 0 ? mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+  }
 }
@@ -20,6 +20,7 @@ import com.google.flightmap.parsing.util.CsvParser;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,10 +29,14 @@ class AirspaceAttributeUtils {
   private AirspaceAttributeUtils() { }
 
   static AirspaceAttributeBean[] parse(final File file) throws IOException {
-    final Map<String, AirspaceAttributeBean> freqUses =
-        new HashMap<String, AirspaceAttributeBean>();
+    final List<AirspaceAttributeBean> beans = new ArrayList<AirspaceAttributeBean>();
     final Parser parser = new Parser(file);
-    final List<AirspaceAttributeBean> beans = parser.getAll();
+    parser.forEach(new CsvParser.RowHandler<AirspaceAttributeBean>() {
+      @Override
+      public void handleRow(final AirspaceAttributeBean bean) {
+        beans.add(bean);
+      }
+    });
     final AirspaceAttributeBean[] airspaceAttributes = new AirspaceAttributeBean[beans.size()];
     return beans.toArray(airspaceAttributes);
   }
@@ -50,7 +55,7 @@ class AirspaceAttributeUtils {
     }
 
     Parser(final File file) {
-      super(file, CSV_COLUMN_MAPPING, AirspaceAttributeBean.class);
+      super(file, CSV_COLUMN_MAPPING, new AirspaceAttributeBeanRowMapper());
     }
   }
 }
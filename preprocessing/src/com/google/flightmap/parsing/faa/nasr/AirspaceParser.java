@@ -36,24 +36,39 @@ import org.apache.commons.cli.PosixParser;
 
 import java.io.*;
 import java.sql.*;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.*;
 
 /**
- * Parses airports from compiled AFD file.
+ * Parses airspaces from NASR shapefiles.
+ * <p>
+ * Shapefiles are decoded on worker threads (one per shapefile, up to {@code --threads}), while a
+ * single writer adds the resulting airspaces to the database in command line order.
  */
 public class AirspaceParser {
   private final static Pattern SHAPEFILE_NAME_PATTERN = Pattern.compile("class_(.)\\.shp");
   private final static String ATTRIBUTE_FILE_SUFFIX = ".csv";
 
+  /**
+   * Maximum number of decoded airspaces waiting to be added to the database, per shapefile.
+   */
+  private final static int MAX_PENDING_AIRSPACES_PER_SHAPEFILE = 64;
+
   // Commandline options
   private final static Options OPTIONS = new Options();
   private final static String HELP_OPTION = "help";
   private final static String SHAPEFILES_OPTION = "shapefiles";
   private final static String AVIATION_DB_OPTION = "aviation_db";
+  private final static String THREADS_OPTION = "threads";
 
   static {
     OPTIONS.addOption("h", "help", false, "Print this message.");
@@ -70,30 +85,98 @@ public class AirspaceParser {
                                    .isRequired()
                                    .withArgName("aviation.db")
                                    .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(THREADS_OPTION)
+                                   .withDescription("Number of threads decoding shapefiles.")
+                                   .hasArg()
+                                   .withArgName("count")
+                                   .create());
   }
 
-  private final File shapefile;
-  private final File attributeFile;
-  private final String airspaceClass;
+  /**
+   * Shapefile with its attribute file and airspace class.
+   */
+  private static class AirspaceSource {
+    final File shapefile;
+    final File attributeFile;
+    final String airspaceClass;
+
+    AirspaceSource(final String shapefile) {
+      this.shapefile = new File(shapefile);
+      // Determine attribute file and airspace class (Bravo, Charlie, etc.) from shapefile
+      final String shapefileName = this.shapefile.getName();
+      final Matcher matcher = SHAPEFILE_NAME_PATTERN.matcher(shapefileName);
+      if (!matcher.matches()) {
+        throw new RuntimeException(
+            "Unsupported shapefile name: " + shapefileName + " (should be class_X.shp)");
+      }
+      attributeFile = new File(
+          this.shapefile.getParentFile(), "class_" + matcher.group(1) + ATTRIBUTE_FILE_SUFFIX);
+      final char airspaceClassAbbreviation = matcher.group(1).toUpperCase().charAt(0);
+      airspaceClass = getAirspaceClassFromAbbreviation(airspaceClassAbbreviation);
+    }
+  }
+
+  /**
+   * Decoded airspace, ready to be added to the database.
+   */
+  private static class DecodedAirspace {
+    final String name;
+    final int lowAlt;
+    final int highAlt;
+    final LatLngRect boundingBox;
+    final int[] lats;
+    final int[] lngs;
+
+    DecodedAirspace(final String name, final int lowAlt, final int highAlt,
+        final LatLngRect boundingBox, final int[] lats, final int[] lngs) {
+      this.name = name;
+      this.lowAlt = lowAlt;
+      this.highAlt = highAlt;
+      this.boundingBox = boundingBox;
+      this.lats = lats;
+      this.lngs = lngs;
+    }
+  }
+
+  /**
+   * Marks the end of the airspaces of a shapefile in the queues used by
+   * {@link #addAirspaceDataInParallel}.
+   */
+  private final static DecodedAirspace END_OF_SHAPEFILE =
+      new DecodedAirspace(null, 0, 0, null, null, null);
+
+  /**
+   * Consumer of decoded airspaces.
+   */
+  private interface DecodedAirspaceHandler {
+    public void handleAirspace(DecodedAirspace airspace) throws SQLException, InterruptedException;
+  }
+
+  private final AirspaceSource[] sources;
+  private final int threads;
   private final AviationDbWriter dbWriter;
+
   /**
    * @param shapefile Airspace shape (.shp) file.
    * @param dbFile Aviation database file
    */
   public AirspaceParser(final String shapefile, final String dbFile) throws ClassNotFoundException,
       IOException, SQLException {
-    this.shapefile = new File(shapefile);
-    // Determine attribute file and airspace class (Bravo, Charlie, etc.) from shapefile
-    final String shapefileName = this.shapefile.getName();
-    final Matcher matcher = SHAPEFILE_NAME_PATTERN.matcher(shapefileName);
-    if (!matcher.matches()) {
-      throw new RuntimeException(
-          "Unsupported shapefile name: " + shapefileName + " (should be class_X.shp)");
+    this(new String[] {shapefile}, dbFile, 1);
+  }
+
+  /**
+   * @param shapefiles Airspace shape (.shp) files.  Airspaces are added in this order.
+   * @param dbFile Aviation database file
+   * @param threads Number of threads decoding shapefiles (1 to decode on the calling thread)
+   */
+  public AirspaceParser(final String[] shapefiles, final String dbFile, final int threads)
+      throws ClassNotFoundException, IOException, SQLException {
+    sources = new AirspaceSource[shapefiles.length];
+    for (int i = 0; i < shapefiles.length; ++i) {
+      sources[i] = new AirspaceSource(shapefiles[i]);
     }
-    attributeFile = new File(
-        this.shapefile.getParentFile(), "class_" + matcher.group(1) + ATTRIBUTE_FILE_SUFFIX);
-    final char airspaceClassAbbreviation = matcher.group(1).toUpperCase().charAt(0);
-    airspaceClass = getAirspaceClassFromAbbreviation(airspaceClassAbbreviation);
+    this.threads = threads;
 
     dbWriter = new JdbcAviationDbWriter(new File(dbFile));
     dbWriter.open();
@@ -110,7 +193,18 @@ public class AirspaceParser {
     dbWriter.beginTransaction();
     try {
       dbWriter.initAirspaceTables();
-      addAirspaceData();
+      if (threads > 1 && sources.length > 1) {
+        addAirspaceDataInParallel();
+      } else {
+        for (final AirspaceSource source: sources) {
+          decodeAirspaces(source, new DecodedAirspaceHandler() {
+            @Override
+            public void handleAirspace(final DecodedAirspace airspace) throws SQLException {
+              addAirspaceToDb(source.airspaceClass, airspace);
+            }
+          });
+        }
+      }
       dbWriter.commit();
     } catch (Exception ex) {
       dbWriter.rollback();
@@ -120,11 +214,68 @@ public class AirspaceParser {
     }
   }
 
-  private void addAirspaceData() throws IOException, SQLException, InterruptedException {
-    final AirspaceAttributeBean[] attributeBeans = AirspaceAttributeUtils.parse(attributeFile);
-    final ShapefileReader reader = new ShapefileReader(shapefile);
-    final Shapefile data = reader.read();
-    for (Polygon polygon: data.getPolygons()) {
+  /**
+   * Decodes shapefiles on {@link #threads} threads and adds their airspaces to the database in
+   * shapefile order.
+   * <p>
+   * Each shapefile has a bounded queue of decoded airspaces, drained by the calling thread.  Tasks
+   * start in shapefile order, so the shapefile being written is always being decoded.
+   */
+  private void addAirspaceDataInParallel() throws IOException, SQLException, InterruptedException {
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<BlockingQueue<DecodedAirspace>> queues =
+          new ArrayList<BlockingQueue<DecodedAirspace>>(sources.length);
+      final List<Future<Void>> results = new ArrayList<Future<Void>>(sources.length);
+      for (final AirspaceSource source: sources) {
+        final BlockingQueue<DecodedAirspace> queue =
+            new ArrayBlockingQueue<DecodedAirspace>(MAX_PENDING_AIRSPACES_PER_SHAPEFILE);
+        queues.add(queue);
+        results.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            try {
+              decodeAirspaces(source, new DecodedAirspaceHandler() {
+                @Override
+                public void handleAirspace(final DecodedAirspace airspace)
+                    throws InterruptedException {
+                  queue.put(airspace);
+                }
+              });
+            } finally {
+              queue.put(END_OF_SHAPEFILE);
+            }
+            return null;
+          }
+        }));
+      }
+      for (int i = 0; i < sources.length; ++i) {
+        final BlockingQueue<DecodedAirspace> queue = queues.get(i);
+        DecodedAirspace airspace;
+        while ((airspace = queue.take()) != END_OF_SHAPEFILE) {
+          addAirspaceToDb(sources[i].airspaceClass, airspace);
+        }
+        results.get(i).get();
+      }
+    } catch (ExecutionException eEx) {
+      throw new RuntimeException(eEx.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Decodes all airspaces of {@code source} and passes them to {@code handler}, in record order.
+   */
+  private static void decodeAirspaces(final AirspaceSource source,
+      final DecodedAirspaceHandler handler)
+      throws IOException, SQLException, InterruptedException {
+    final AirspaceAttributeBean[] attributeBeans =
+        AirspaceAttributeUtils.parse(source.attributeFile);
+    final ShapefileReader reader = new ShapefileReader(source.shapefile);
+    final Iterator<Polygon> polygons = reader.getPolygons();
+    while (polygons.hasNext()) {
+      final Polygon polygon = polygons.next();
       if (polygon.parts.length != 1) {
         throw new RuntimeException(
             "Cannot handle polygon with parts.length != 1.  Record number: " +
@@ -140,30 +291,34 @@ public class AirspaceParser {
       final LatLng minCorner = LatLng.fromDouble(polygon.yMin, polygon.xMin);
       final LatLng maxCorner = LatLng.fromDouble(polygon.yMax, polygon.xMax);
       final LatLngRect boundingBox = new LatLngRect(minCorner, maxCorner);
-      // Get LatLng points
-      Polygon.Part part = polygon.parts[0];
-      final List<LatLng> points = new LinkedList<LatLng>();
-      for (Point point: part.points) {
-        points.add(LatLng.fromDouble(point.y, point.x));
+      // Convert points
+      final Polygon.Part part = polygon.parts[0];
+      final int size = part.size();
+      final int[] lats = new int[size];
+      final int[] lngs = new int[size];
+      for (int i = 0; i < size; ++i) {
+        final LatLng point = LatLng.fromDouble(part.y[i], part.x[i]);
+        lats[i] = point.lat;
+        lngs[i] = point.lng;
       }
-      addAirspaceToDb(name, lowAlt, highAlt, boundingBox, points);
+      handler.handleAirspace(new DecodedAirspace(name, lowAlt, highAlt, boundingBox, lats, lngs));
     }
   }
 
-  private void addAirspaceToDb(final String name, final int lowAlt, final int highAlt,
-      final LatLngRect boundingBox, final List<LatLng> points) throws SQLException {
+  private void addAirspaceToDb(final String airspaceClass, final DecodedAirspace airspace)
+      throws SQLException {
     // Create airspace entry
     final int airportId = -1;  // Airspace center N/A in NASR.
+    final LatLngRect boundingBox = airspace.boundingBox;
     final int minLat = boundingBox.getSouth();
     final int maxLat = boundingBox.getNorth();
     final int minLng = boundingBox.getWest();
     final int maxLng = boundingBox.getEast();
-    final int id = dbWriter.insertAirspace(
-        airportId, name, airspaceClass, minLat, maxLat, minLng, maxLng, lowAlt, highAlt);
+    final int id = dbWriter.insertAirspace(airportId, airspace.name, airspaceClass, minLat, maxLat,
+        minLng, maxLng, airspace.lowAlt, airspace.highAlt);
     // Insert polygon points
-    int i = 0;
-    for (LatLng point: points) {
-      dbWriter.insertAirspacePoint(id, i++, point.lat, point.lng);
+    for (int i = 0; i < airspace.lats.length; ++i) {
+      dbWriter.insertAirspacePoint(id, i, airspace.lats[i], airspace.lngs[i]);
     }
   }
 
@@ -191,11 +346,11 @@ public class AirspaceParser {
 
     final String[] shapefiles = line.getOptionValues(SHAPEFILES_OPTION);
     final String dbFile = line.getOptionValue(AVIATION_DB_OPTION);
+    final int threads = line.hasOption(THREADS_OPTION) ?
+        Integer.parseInt(line.getOptionValue(THREADS_OPTION)) : 1;
 
     try {
-      for (String shapefile: shapefiles) {
-        (new AirspaceParser(shapefile, dbFile)).execute();
-      }
+      (new AirspaceParser(shapefiles, dbFile, threads)).execute();
     } catch (Exception ex) {
       ex.printStackTrace();
       System.exit(1);
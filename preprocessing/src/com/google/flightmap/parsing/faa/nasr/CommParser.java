@@ -16,7 +16,6 @@
 
 package com.google.flightmap.parsing.faa.nasr;
 
-import com.google.flightmap.common.io.StreamUtils;
 import com.google.flightmap.db.JdbcAviationDbAdapter;
 import com.google.flightmap.db.JdbcAviationDbWriter;
 import com.google.flightmap.parsing.data.AirportComm;
@@ -87,7 +86,7 @@ public class CommParser {
   private final AviationDbReader dbReader;
   private final Map<String, String> iataToIcao;
   private final Map<String, NormalizedFrequencyUseBean> normalizedFreqUses;
-  private final String data;
+  private final File twrFile;
 
   /**
    * @param twrFile NASR Terminal Communications Services database file.
@@ -100,7 +99,7 @@ public class CommParser {
     dbWriter = new JdbcAviationDbWriter(new File(dbFile));
     dbWriter.open();
     dbReader = new JdbcAviationDbAdapter(dbWriter.getConnection());
-    data = StreamUtils.read(new File(twrFile));
+    this.twrFile = new File(twrFile);
     iataToIcao = IcaoUtils.parseIataToIcao(iataToIcaoFile);
     normalizedFreqUses = NormalizedFrequencyUseUtils.parse(freqUsesNormalizationFile);
   }
@@ -118,10 +117,20 @@ public class CommParser {
     }
   }
 
+  /**
+   * Reads TWR file line by line and adds records to the database as they are read.
+   */
   private void addCommData() throws IOException, SQLException {
-    final BufferedReader in = new BufferedReader(new StringReader(data));
-    String line;
+    final BufferedReader in = new BufferedReader(new FileReader(twrFile));
+    try {
+      addCommData(in);
+    } finally {
+      in.close();
+    }
+  }
 
+  private void addCommData(final BufferedReader in) throws IOException, SQLException {
+    String line;
     while ((line = in.readLine()) != null) {
       if (Twr3.matches(line)) {
         final Twr3 record = new Twr3(line);
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.faa.nasr;
+
+import com.google.flightmap.parsing.util.CsvParser;
+
+public class NormalizedFrequencyUseBeanRowMapper implements
+    CsvParser.RowMapper<NormalizedFrequencyUseBean> {
+  private final static String[] FIELD_NAMES = {
+    "normalizedUse",
+    "originalUse",
+    "remarks",
+  };
+
+  @Override
+  public String[] getFieldNames() {
+    return FIELD_NAMES.clone();
+  }
+
+  @Override
+  public NormalizedFrequencyUseBean mapRow(final String[] row, final int[] columns) {
+    final NormalizedFrequencyUseBean bean = new NormalizedFrequencyUseBean();
+    bean.setNormalizedUse(CsvParser.getField(row, columns[0]));
+    bean.setOriginalUse(CsvParser.getField(row, columns[1]));
+    bean.setRemarks(CsvParser.getField(row, columns[2]));
+    return bean;
+  }
+}
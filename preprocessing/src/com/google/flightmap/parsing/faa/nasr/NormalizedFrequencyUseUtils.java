@@ -21,7 +21,6 @@ import com.google.flightmap.parsing.util.CsvParser;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 class NormalizedFrequencyUseUtils {
@@ -31,10 +30,12 @@ class NormalizedFrequencyUseUtils {
     final Map<String, NormalizedFrequencyUseBean> freqUses =
         new HashMap<String, NormalizedFrequencyUseBean>();
     final Parser parser = new Parser(new File(file));
-    List<NormalizedFrequencyUseBean> beans = parser.getAll();
-    for (NormalizedFrequencyUseBean bean: beans) {
-      freqUses.put(bean.getOriginalUse(), bean);
-    }
+    parser.forEach(new CsvParser.RowHandler<NormalizedFrequencyUseBean>() {
+      @Override
+      public void handleRow(final NormalizedFrequencyUseBean bean) {
+        freqUses.put(bean.getOriginalUse(), bean);
+      }
+    });
     return freqUses;
   }
 
@@ -52,7 +53,7 @@ class NormalizedFrequencyUseUtils {
     }
 
     Parser(final File file) {
-      super(file, CSV_COLUMN_MAPPING, NormalizedFrequencyUseBean.class);
+      super(file, CSV_COLUMN_MAPPING, new NormalizedFrequencyUseBeanRowMapper());
     }
   }
 }
@@ -26,20 +26,22 @@ import com.google.flightmap.db.JdbcAviationDbAdapter;
 import com.google.flightmap.db.JdbcAviationDbWriter;
 import com.google.flightmap.parsing.db.AviationDbReader;
 import com.google.flightmap.parsing.db.AviationDbWriter;
-import com.google.flightmap.parsing.faa.nfd.data.ControlledAirspaceRecord;
+import com.google.flightmap.parsing.faa.nfd.data.ControlledAirspaceRecordView;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Logger;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.CommandLine;
@@ -71,6 +73,12 @@ public class NfdAirspaceParser {
   private final static String HELP_OPTION = "help";
   private final static String NFD_OPTION = "nfd";
   private final static String AVIATION_DB_OPTION = "aviation_db";
+  private final static String THREADS_OPTION = "threads";
+
+  /**
+   * Maximum number of built airspaces waiting to be added to the database, per thread.
+   */
+  private final static int MAX_PENDING_AIRSPACES_PER_THREAD = 4;
 
   static {
     // Command Line options definitions
@@ -87,6 +95,11 @@ public class NfdAirspaceParser {
                                    .isRequired()
                                    .withArgName("aviation_db")
                                    .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(THREADS_OPTION)
+                                   .withDescription("Number of threads building airspaces.")
+                                   .hasArg()
+                                   .withArgName("count")
+                                   .create());
   }
 
   /**
@@ -100,57 +113,65 @@ public class NfdAirspaceParser {
   private final AviationDbReader dbReader;
 
   /**
-   * Path to file in ARINC 424-18 format (eg. NFD)
-   */
-  private final File nfd;
-
-  /**
-   * NFD reader
+   * Records of each airspace, in file order.  Each group starts with the record holding the
+   * airspace information and ends with the record marked as last (boundary via "xE").  The last
+   * group may be incomplete if the file is truncated.
    */
-  private BufferedReader in;
+  private final List<List<String>> airspaceRecords = new ArrayList<List<String>>();
 
   /**
-   * Indicates that {@code in} has been closed, most likely after having read all its contents.
+   * Records of the airspace being collected.
    */
-  private boolean inClosed = false;
+  private List<String> pendingAirspaceRecords = new ArrayList<String>();
 
   /**
-   * Current airspace center.
+   * Number of threads building airspace geometry.
    */
-  private String center;
+  private final int threads;
 
   /**
-   * Airport id for current airspace center.
+   * Airspace built from a group of records, ready to be added to the database.
    */
-  private int airportId;
-
-  /**
-   * Current airspace area.
-   */
-  private char area;
-
-  /**
-   * Current airspace (area) id.
-   */
-  private int areaId;
-
-  /**
-   * Current sequence number.
-   */
-  private int sequenceNumber;
+  private static class ParsedAirspace {
+    final String center;
+    final String name;
+    final char airspaceClass;
+    final LatLngRect boundingBox;
+    final int lowAlt;
+    final int highAlt;
+    final Map<Integer, LatLng> points;
+    final Map<Integer, AirspaceArc> arcs;
+
+    ParsedAirspace(final String center, final String name, final char airspaceClass,
+        final LatLngRect boundingBox, final int lowAlt, final int highAlt,
+        final Map<Integer, LatLng> points, final Map<Integer, AirspaceArc> arcs) {
+      this.center = center;
+      this.name = name;
+      this.airspaceClass = airspaceClass;
+      this.boundingBox = boundingBox;
+      this.lowAlt = lowAlt;
+      this.highAlt = highAlt;
+      this.points = points;
+      this.arcs = arcs;
+    }
+  }
 
   /**
-   * Buffer for peeked records (allows to read next record without consuming it.
+   * @param db Aviation database
    */
-  private ControlledAirspaceRecord buf;
+  public NfdAirspaceParser(final File db) throws ClassNotFoundException, IOException,
+         SQLException {
+    this(db, 1);
+  }
 
   /**
-   * @param nfd Source database in ARINC 424-18 format (eg NFD)
    * @param db Aviation database
+   * @param threads Number of threads building airspace geometry (1 to build it on the calling
+   * thread)
    */
-  public NfdAirspaceParser(final File nfd, final File db) throws ClassNotFoundException,
+  public NfdAirspaceParser(final File db, final int threads) throws ClassNotFoundException,
          IOException, SQLException {
-    this.nfd = nfd;
+    this.threads = threads;
     dbWriter = new JdbcAviationDbWriter(db);
     dbWriter.open();
     dbReader = new JdbcAviationDbAdapter(dbWriter.getConnection());
@@ -176,8 +197,14 @@ public class NfdAirspaceParser {
     final File nfd = new File(nfdPath);
     final String dbPath = line.getOptionValue(AVIATION_DB_OPTION);
     final File db = new File(dbPath);
+    final int threads = line.hasOption(THREADS_OPTION) ?
+        Integer.parseInt(line.getOptionValue(THREADS_OPTION)) : 1;
     try {
-      (new NfdAirspaceParser(nfd, db)).execute();
+      final NfdScanner scanner = new NfdScanner(nfd);
+      final NfdAirspaceParser airspaceParser = new NfdAirspaceParser(db, threads);
+      airspaceParser.addHandlers(scanner);
+      scanner.scan();
+      airspaceParser.execute();
     } catch (Exception ex) {
       ex.printStackTrace();
       System.exit(1);
@@ -190,10 +217,54 @@ public class NfdAirspaceParser {
     formatter.printHelp("NfdAirspaceParser", OPTIONS, true);
   }
 
+  /**
+   * Registers with {@code scanner} the handler collecting controlled airspace records.  Must be
+   * called, and the scan completed, before {@link #execute}.
+   */
+  public void addHandlers(final NfdScanner scanner) {
+    scanner.addHandler('U', 'C', new NfdRecordHandler() {
+      private final ControlledAirspaceRecordView view = new ControlledAirspaceRecordView();
+
+      @Override
+      public void handleRecord(final NfdRecord record) {
+        // The scanner only dispatches 132-column S/T records of section U, subsection C here.
+        addRecord(record.line, view.wrap(record.line).boundaryVia(1) == 'E');
+      }
+
+      @Override
+      public void scanCompleted() {
+        completeRecords();
+      }
+    });
+  }
+
+  /**
+   * Adds controlled airspace record to the records of the current airspace.
+   *
+   * @param isLast Whether this is the last record of the airspace
+   */
+  private synchronized void addRecord(final String record, final boolean isLast) {
+    pendingAirspaceRecords.add(record);
+    if (isLast) {
+      airspaceRecords.add(pendingAirspaceRecords);
+      pendingAirspaceRecords = new ArrayList<String>();
+    }
+  }
+
+  /**
+   * Keeps the records of an airspace truncated by the end of the file.
+   */
+  private synchronized void completeRecords() {
+    if (!pendingAirspaceRecords.isEmpty()) {
+      airspaceRecords.add(pendingAirspaceRecords);
+      pendingAirspaceRecords = new ArrayList<String>();
+    }
+  }
+
   /**
    * Executes all operations required to add airspaces to the aviation database.
    */
-  private void execute() throws IOException, SQLException {
+  public void execute() throws IOException, SQLException, InterruptedException {
     try {
       dbWriter.initAirspaceTables();
       parseAirspaceRecords();
@@ -203,92 +274,102 @@ public class NfdAirspaceParser {
   }
 
   /**
-   * Parses al airspace records in the NFD and inserts them in the aviation database.
-   */
-  private void parseAirspaceRecords() throws IOException, SQLException {
-    while (parseNextAirspace()) { }
-  }
-
-  /**
-   * Returns (and consumes) next record in NFD, or null if none left.
+   * Parses all airspace records in the NFD and inserts them in the aviation database.
    */
-  private synchronized ControlledAirspaceRecord readNextRecord() throws IOException {
-    if (buf != null) {
-      final ControlledAirspaceRecord r = buf;
-      buf = null;
-      return r;
-    }
-    if (inClosed) {
-      return null;
-    }
-    if (in == null) {
-      in = new BufferedReader(new FileReader(nfd));
+  private synchronized void parseAirspaceRecords() throws SQLException, InterruptedException {
+    completeRecords();
+    if (threads > 1) {
+      parseAirspaceRecordsInParallel();
+      return;
     }
-    String line;
-    while ((line = in.readLine()) != null) {
-      if (ControlledAirspaceRecord.matches(line)) {
-        return ControlledAirspaceRecord.parse(line);
-      }
+    for (List<String> records: airspaceRecords) {
+      addAirspaceToDb(parseAirspace(records));
     }
-    in.close();
-    inClosed = true;
-    return null;
   }
-  
+
   /**
-   * Returns next record in NFD without consuming it, or null if none left.
+   * Builds airspaces on {@link #threads} threads and adds them to the database in file order.
    */
-  private synchronized ControlledAirspaceRecord peekNextRecord() throws IOException {
-    if (buf == null) {
-      buf = readNextRecord();
+  private void parseAirspaceRecordsInParallel() throws SQLException, InterruptedException {
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final LinkedList<Future<ParsedAirspace>> pending = new LinkedList<Future<ParsedAirspace>>();
+    try {
+      for (final List<String> records: airspaceRecords) {
+        pending.add(executor.submit(new Callable<ParsedAirspace>() {
+          @Override
+          public ParsedAirspace call() {
+            return parseAirspace(records);
+          }
+        }));
+        // Bound the number of airspaces held in memory.
+        if (pending.size() >= MAX_PENDING_AIRSPACES_PER_THREAD * threads) {
+          addAirspaceToDb(pending.removeFirst().get());
+        }
+      }
+      while (!pending.isEmpty()) {
+        addAirspaceToDb(pending.removeFirst().get());
+      }
+    } catch (ExecutionException eEx) {
+      throw new RuntimeException(eEx.getCause());
+    } finally {
+      executor.shutdownNow();
     }
-    return buf;
   }
 
   /**
-   * Parses a single airspace from the NFD.
+   * Builds the geometry of a single airspace from its records.
+   *
+   * @return  Parsed airspace, or {@code null} if the records do not end the airspace.
    */
-  private boolean parseNextAirspace() throws IOException, SQLException {
+  private static ParsedAirspace parseAirspace(final List<String> records) {
     int seqNr = 0;
     LinkedHashMap<Integer, LatLng> points = new LinkedHashMap<Integer, LatLng>();
     LinkedHashMap<Integer, AirspaceArc> arcs = new LinkedHashMap<Integer, AirspaceArc>();
 
-    final ControlledAirspaceRecord init = peekNextRecord();
-    if (init == null) {
-      return false;
-    }
+    final ControlledAirspaceRecordView init = new ControlledAirspaceRecordView();
+    init.wrap(records.get(0));
     // Get airspace information
-    final String center = init.airspaceCenter.trim();
-    final String name = init.controlledAirspaceName.trim();
-    final char airspaceClass = init.airspaceClass.charAt(0);
-    final String lowAltString = init.lowerLimit.trim();
+    final String center = init.airspaceCenter().trim();
+    final String name = init.controlledAirspaceName().trim();
+    final char airspaceClass = init.airspaceClass();
+    final String lowAltString = init.lowerLimit().trim();
     final int lowAlt = "GND".equals(lowAltString) ? Airspace.SFC : Integer.parseInt(lowAltString);
-    final int highAlt = Integer.parseInt(init.upperLimit);
+    final int highAlt = init.upperLimit();
     // Check altitudes are MSL
-    if ((lowAlt != Airspace.SFC && !"M".equals(init.lowerLimitUnitIndicator)) ||
-        !"M".equals(init.upperLimitUnitIndicator)) {
+    final char lowUnit = init.lowerLimitUnitIndicator();
+    final char highUnit = init.upperLimitUnitIndicator();
+    if ((lowAlt != Airspace.SFC && lowUnit != 'M') || highUnit != 'M') {
       throw new RuntimeException("Airspace altitude limit indicator not supported: " +
-          init.lowerLimitUnitIndicator + " or " + init.upperLimitUnitIndicator);
+          lowUnit + " or " + highUnit);
     }
     final LatLngRect boundingBox = new LatLngRect();
-    ControlledAirspaceRecord c;
+    final ControlledAirspaceRecordView c = new ControlledAirspaceRecordView();
+    final ControlledAirspaceRecordView n = new ControlledAirspaceRecordView();
     LatLng first = null;
     LatLng lastArcEnd = null;
-    while ((c = readNextRecord()) != null) {
-      final char via = c.boundaryVia.charAt(0);
-      final boolean isEnd = c.boundaryVia.charAt(1) == 'E';
+    for (int r = 0; r < records.size(); ++r) {
+      c.wrap(records.get(r));
+      final char via = c.boundaryVia(0);
+      final boolean isEnd = c.boundaryVia(1) == 'E';
       LatLng current;
       LatLng next;
       if (via == 'C') {
         // Circle should be first and only record of airspace.
         assert first == null;
         assert isEnd;
-        current = LatLngParsingUtils.parseLatLng(c.arcOriginLatitude, c.arcOriginLongitude);
+        current = LatLng.fromDouble(c.arcOriginLatitude(), c.arcOriginLongitude());
         next = null;
       } else {
-        current = LatLngParsingUtils.parseLatLng(c.latitude, c.longitude);
-        final ControlledAirspaceRecord n = peekNextRecord();
-        next = isEnd ? first : LatLngParsingUtils.parseLatLng(n.latitude, n.longitude);
+        current = LatLng.fromDouble(c.latitude(), c.longitude());
+        if (isEnd) {
+          next = first;
+        } else {
+          if (r + 1 >= records.size()) {
+            throw new RuntimeException("Missing record after: " + records.get(r));
+          }
+          n.wrap(records.get(r + 1));
+          next = LatLng.fromDouble(n.latitude(), n.longitude());
+        }
         if (first == null) {
           first = current ;
         }
@@ -309,20 +390,19 @@ public class NfdAirspaceParser {
           points.put(seqNr++, current);
         }
       } else if (via == 'G') {
-        final List<LatLng> samples =
-            GreatCircleUtils.sampleGreatCircle(current, next, MAX_LOC_DIFF);
+        final int[] samples = GreatCircleUtils.sampleGreatCircleE6(current, next, MAX_LOC_DIFF);
         int count = 0;
-        int size = samples.size();
-        for (LatLng sample: samples) {
+        final int size = samples.length / 2;
+        for (int i = 0; i < size; ++i) {
           if (count == 0 && lastArcEnd == current) {
             continue;  // Skip first point if it is equal to end of previous arc segment.
           }
           if (++count < size) {  // Skips last point (will be handled by next record).
-            points.put(seqNr++, sample);
+            points.put(seqNr++, new LatLng(samples[2 * i], samples[2 * i + 1]));
           }
         }
       } else if (via == 'R' || via == 'L' || via == 'C') {
-        final LatLng o = LatLngParsingUtils.parseLatLng(c.arcOriginLatitude, c.arcOriginLongitude);
+        final LatLng o = LatLng.fromDouble(c.arcOriginLatitude(), c.arcOriginLongitude());
         float startAngle;
         float sweepAngle;
         double radius;
@@ -330,7 +410,7 @@ public class NfdAirspaceParser {
         if (via == 'C') {
           startAngle = 0;
           sweepAngle = 359;
-          radius = Integer.parseInt(c.arcDistance) / 10.0 / NavigationUtil.METERS_TO_NM;
+          radius = c.arcDistance() / 10.0 / NavigationUtil.METERS_TO_NM;
         } else {
           final boolean clockwise = via == 'R';
           startAngle = (float) ((NavigationUtil.getInitialCourse(o, current) + 270) % 360);
@@ -394,15 +474,15 @@ public class NfdAirspaceParser {
       }
 
       if (isEnd) {
-        addAirspaceToDb(center, name, airspaceClass, boundingBox, lowAlt, highAlt, points, arcs);
-        return true;
+        return new ParsedAirspace(
+            center, name, airspaceClass, boundingBox, lowAlt, highAlt, points, arcs);
       }
 
       if (via != 'R' && via != 'L') {
         lastArcEnd = null;
       }
     }
-    return false;
+    return null;
   }
 
   /**
@@ -413,12 +493,20 @@ public class NfdAirspaceParser {
   }
 
   /**
-   * Adds airspace to the aviation database.
+   * Adds airspace to the aviation database.  No-op if {@code airspace} is {@code null}.
    */
-  private void addAirspaceToDb(final String icao, final String name, final char airspaceClass,
-      final LatLngRect boundingBox, final int lowAlt, final int highAlt,
-      final Map<Integer, LatLng> points, final Map<Integer, AirspaceArc> arcs)
-      throws SQLException {
+  private void addAirspaceToDb(final ParsedAirspace airspace) throws SQLException {
+    if (airspace == null) {
+      return;
+    }
+    final String icao = airspace.center;
+    final String name = airspace.name;
+    final char airspaceClass = airspace.airspaceClass;
+    final LatLngRect boundingBox = airspace.boundingBox;
+    final int lowAlt = airspace.lowAlt;
+    final int highAlt = airspace.highAlt;
+    final Map<Integer, LatLng> points = airspace.points;
+    final Map<Integer, AirspaceArc> arcs = airspace.arcs;
     System.out.println("Inserting airspace: " + name);
     final int airportId = dbReader.getAirportIdByIcao(icao);
     if (airportId == -1) {
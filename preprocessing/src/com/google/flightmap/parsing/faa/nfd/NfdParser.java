@@ -16,11 +16,10 @@
 
 package com.google.flightmap.parsing.faa.nfd;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.io.BufferedReader;
+import com.google.flightmap.parsing.faa.nfd.tools.NfdAnalyzer;
+
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
 
@@ -35,8 +34,9 @@ import org.apache.commons.cli.PosixParser;
 
 
 /**
- * Parses airports from ARINC 424-18 file and adds them to a SQLite database
- * 
+ * Parses ARINC 424-18 file in a single pass and feeds its records to all NFD consumers: IATA to
+ * ICAO mapping, airspaces (see {@link NfdAirspaceParser}) and statistics (see
+ * {@link NfdAnalyzer}).
  */
 public class NfdParser {
   // Command line options
@@ -44,9 +44,9 @@ public class NfdParser {
   private final static String HELP_OPTION = "help";
   private final static String NFD_OPTION = "nfd";
   private final static String IATA_TO_ICAO_OPTION = "iata_to_icao";
-
-  // IATA to ICAO pattern regex
-  private final static Pattern airportArincPattern = Pattern.compile("S...P (.{4})..A(.{3}).*");
+  private final static String AVIATION_DB_OPTION = "aviation_db";
+  private final static String STATS_OPTION = "stats";
+  private final static String THREADS_OPTION = "threads";
 
   static {
     // Command Line options definitions
@@ -58,21 +58,55 @@ public class NfdParser {
                                    .withArgName("nfd.dat")
                                    .create());
     OPTIONS.addOption(OptionBuilder.withLongOpt(IATA_TO_ICAO_OPTION)
-                                   .withDescription("IATA to ICAO codes text file.")
+                                   .withDescription("IATA to ICAO codes text file (output).")
                                    .hasArg()
-                                   .isRequired()
                                    .withArgName("iata_to_icao.txt")
                                    .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(AVIATION_DB_OPTION)
+                                   .withDescription("Aviation database to add airspaces to.")
+                                   .hasArg()
+                                   .withArgName("aviation_db")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(STATS_OPTION)
+                                   .withDescription("Print record statistics.")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(THREADS_OPTION)
+                                   .withDescription("Number of threads building airspaces.")
+                                   .hasArg()
+                                   .withArgName("count")
+                                   .create());
   }
   private final File nfd;
   private final File iataToIcao;
+  private final File db;
+  private final boolean printStats;
+  private final int threads;
 
   /**
    * @param nfd Source database in ARINC 424-18 format (eg NFD)
+   * @param iataToIcao Destination file for IATA to ICAO mapping, or {@code null}
+   * @param db Aviation database to add airspaces to, or {@code null}
+   * @param printStats Whether record statistics should be printed
    */
-  public NfdParser(final File nfd, final File iataToIcao) {
+  public NfdParser(final File nfd, final File iataToIcao, final File db,
+      final boolean printStats) {
+    this(nfd, iataToIcao, db, printStats, 1);
+  }
+
+  /**
+   * @param nfd Source database in ARINC 424-18 format (eg NFD)
+   * @param iataToIcao Destination file for IATA to ICAO mapping, or {@code null}
+   * @param db Aviation database to add airspaces to, or {@code null}
+   * @param printStats Whether record statistics should be printed
+   * @param threads Number of threads building airspaces
+   */
+  public NfdParser(final File nfd, final File iataToIcao, final File db,
+      final boolean printStats, final int threads) {
     this.nfd = nfd;
     this.iataToIcao = iataToIcao;
+    this.db = db;
+    this.printStats = printStats;
+    this.threads = threads;
   }
 
   public static void main(String args[]) {
@@ -91,12 +125,25 @@ public class NfdParser {
       System.exit(0);
     }
 
+    final boolean printStats = line.hasOption(STATS_OPTION);
+    if (!(line.hasOption(IATA_TO_ICAO_OPTION) || line.hasOption(AVIATION_DB_OPTION) ||
+          printStats)) {
+      System.err.println("At least one of --" + IATA_TO_ICAO_OPTION + ", --" + AVIATION_DB_OPTION +
+          " or --" + STATS_OPTION + " is required.");
+      printHelp(line);
+      System.exit(1);
+    }
+
     final String nfdPath = line.getOptionValue(NFD_OPTION);
     final File nfd = new File(nfdPath);
     final String iataToIcaoPath = line.getOptionValue(IATA_TO_ICAO_OPTION);
-    final File iataToIcao = new File(iataToIcaoPath);
+    final File iataToIcao = iataToIcaoPath == null ? null : new File(iataToIcaoPath);
+    final String dbPath = line.getOptionValue(AVIATION_DB_OPTION);
+    final File db = dbPath == null ? null : new File(dbPath);
+    final int threads = line.hasOption(THREADS_OPTION) ?
+        Integer.parseInt(line.getOptionValue(THREADS_OPTION)) : 1;
 
-    (new NfdParser(nfd, iataToIcao)).execute();
+    (new NfdParser(nfd, iataToIcao, db, printStats, threads)).execute();
   }
 
   private static void printHelp(final CommandLine line) {
@@ -107,38 +154,57 @@ public class NfdParser {
 
   private void execute() {
     try {
-      parseAndDumpIataToIcao();
-    } catch (IOException ex) {
+      final NfdScanner scanner = new NfdScanner(nfd);
+      if (iataToIcao != null) {
+        scanner.addHandler('P', 'A', new IataToIcaoHandler(iataToIcao));
+      }
+      if (printStats) {
+        scanner.addHandler(new NfdAnalyzer.StatsHandler());
+      }
+      NfdAirspaceParser airspaceParser = null;
+      if (db != null) {
+        airspaceParser = new NfdAirspaceParser(db, threads);
+        airspaceParser.addHandlers(scanner);
+      }
+
+      scanner.scan();
+
+      if (airspaceParser != null) {
+        airspaceParser.execute();
+      }
+    } catch (Exception ex) {
       ex.printStackTrace();
       System.exit(2);
     }
   }
 
-  private void parseAndDumpIataToIcao() throws IOException {
-    final BufferedReader in = new BufferedReader(new FileReader(nfd));
-    final PrintStream out = new PrintStream(iataToIcao);
+  /**
+   * Writes IATA to ICAO mapping of airport reference point records to a text file.
+   * <p>
+   * Must be registered for airport reference point records (section P, subsection A).
+   */
+  public static class IataToIcaoHandler implements NfdRecordHandler {
+    private final PrintStream out;
 
-    Matcher airportArincMatcher;
+    public IataToIcaoHandler(final File iataToIcao) throws FileNotFoundException {
+      out = new PrintStream(iataToIcao);
+    }
 
-    // Airport data variables
-    String icao, iata;
-    String line;
-    try {
-      while ((line = in.readLine()) != null) {
-        airportArincMatcher = airportArincPattern.matcher(line);
-        if (!airportArincMatcher.matches()) {
-          // Not an airport entry
-          continue;
-        }
-
-        icao = airportArincMatcher.group(1).trim();
-        iata = airportArincMatcher.group(2).trim();
-        if ( !(iata.isEmpty() || icao.isEmpty()) && !iata.equals(icao) )
-          out.println(iata + " " + icao);
+    @Override
+    public void handleRecord(final NfdRecord record) {
+      final String line = record.line;
+      if (record.recordType != 'S' || line.charAt(5) != ' ') {
+        return;
       }
-    } finally {
+      final String icao = line.substring(6, 10).trim();
+      final String iata = line.substring(13, 16).trim();
+      if ( !(iata.isEmpty() || icao.isEmpty()) && !iata.equals(icao) )
+        out.println(iata + " " + icao);
+    }
+
+    @Override
+    public void scanCompleted() {
       out.close();
-      in.close();
     }
   }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.faa.nfd;
+
+/**
+ * Single line of an ARINC 424-18 file, as classified by {@link NfdScanner}.
+ */
+public class NfdRecord {
+  /**
+   * Length of a record, in characters (excluding line terminator).
+   */
+  public final static int RECORD_LENGTH = 132;
+
+  /**
+   * Kinds of lines found in an ARINC 424-18 file.
+   */
+  public static enum Kind {
+    /** Volume header record ("VOL..."). */
+    VOLUME,
+    /** Header or end-of-file record ("HDR..." or "EOF..."). */
+    HEADER,
+    /** Standard or tailored data record ("S..." or "T..."). */
+    DATA,
+    /** Anything else. */
+    UNKNOWN
+  }
+
+  /**
+   * Line number (1-based) of this record in the file.
+   */
+  public final int lineNumber;
+
+  /**
+   * Kind of record.
+   */
+  public final Kind kind;
+
+  /**
+   * Record type ('S' or 'T') for data records, {@code 0} otherwise.
+   */
+  public final char recordType;
+
+  /**
+   * Customer/area code for data records, {@code null} otherwise.
+   */
+  public final String area;
+
+  /**
+   * Section code for data records, {@code 0} otherwise.
+   */
+  public final char sectionCode;
+
+  /**
+   * Subsection code for data records, {@code 0} otherwise.  For airport and heliport records
+   * (sections P and H), this is read from column 13 when column 6 is blank.
+   */
+  public final char subsectionCode;
+
+  /**
+   * Full text of the record.
+   */
+  public final String line;
+
+  NfdRecord(final int lineNumber, final Kind kind, final char recordType, final String area,
+      final char sectionCode, final char subsectionCode, final String line) {
+    this.lineNumber = lineNumber;
+    this.kind = kind;
+    this.recordType = recordType;
+    this.area = area;
+    this.sectionCode = sectionCode;
+    this.subsectionCode = subsectionCode;
+    this.line = line;
+  }
+
+  /**
+   * Classifies {@code line}.
+   *
+   * @param lineNumber Line number (1-based) of {@code line} in the file
+   * @param line Text of the record, without line terminator
+   */
+  static NfdRecord classify(final int lineNumber, final String line) {
+    if (line.length() == RECORD_LENGTH) {
+      final char first = line.charAt(0);
+      if ((first == 'S' || first == 'T') && !Character.isWhitespace(line.charAt(4))) {
+        final char sectionCode = line.charAt(4);
+        char subsectionCode = line.charAt(5);
+        if (subsectionCode == ' ' && (sectionCode == 'P' || sectionCode == 'H')) {
+          subsectionCode = line.charAt(12);
+        }
+        return new NfdRecord(lineNumber, Kind.DATA, first, line.substring(1, 4), sectionCode,
+            subsectionCode, line);
+      }
+      if ((line.startsWith("HDR") || line.startsWith("EOF")) &&
+          Character.isDigit(line.charAt(3))) {
+        return new NfdRecord(lineNumber, Kind.HEADER, (char) 0, null, (char) 0, (char) 0, line);
+      }
+      if (line.startsWith("VOL")) {
+        return new NfdRecord(lineNumber, Kind.VOLUME, (char) 0, null, (char) 0, (char) 0, line);
+      }
+    }
+    return new NfdRecord(lineNumber, Kind.UNKNOWN, (char) 0, null, (char) 0, (char) 0, line);
+  }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.faa.nfd;
+
+import java.io.IOException;
+
+/**
+ * Consumer of records dispatched by {@link NfdScanner}.
+ */
+public interface NfdRecordHandler {
+  /**
+   * Processes a single record.  Called in file order.
+   */
+  public void handleRecord(NfdRecord record) throws IOException;
+
+  /**
+   * Called once all records of the file have been dispatched.
+   */
+  public void scanCompleted() throws IOException;
+}
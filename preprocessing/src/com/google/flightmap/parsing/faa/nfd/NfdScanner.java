@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.faa.nfd;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads an ARINC 424-18 file (eg. NFD) once, classifies each record by section and subsection
+ * code and dispatches it to the registered {@link NfdRecordHandler}s.
+ * <p>
+ * This allows several consumers (IATA to ICAO mapping, airspaces, statistics, ...) to share a
+ * single pass over the file.
+ */
+public class NfdScanner {
+  /**
+   * Path to file in ARINC 424-18 format.
+   */
+  private final File nfd;
+
+  /**
+   * Handlers that receive every line of the file, whatever its kind.
+   */
+  private final List<NfdRecordHandler> allRecordsHandlers = new LinkedList<NfdRecordHandler>();
+
+  /**
+   * Maps section and subsection codes (see {@link #getCategoryKey}) to data record handlers.
+   */
+  private final Map<String, List<NfdRecordHandler>> categoryHandlers =
+      new HashMap<String, List<NfdRecordHandler>>();
+
+  /**
+   * @param nfd Source database in ARINC 424-18 format (eg NFD)
+   */
+  public NfdScanner(final File nfd) {
+    this.nfd = nfd;
+  }
+
+  /**
+   * Registers {@code handler} to receive all records (including header and unknown records).
+   */
+  public synchronized void addHandler(final NfdRecordHandler handler) {
+    allRecordsHandlers.add(handler);
+  }
+
+  /**
+   * Registers {@code handler} to receive data records of the given section and subsection.
+   */
+  public synchronized void addHandler(final char sectionCode, final char subsectionCode,
+      final NfdRecordHandler handler) {
+    final String key = getCategoryKey(sectionCode, subsectionCode);
+    List<NfdRecordHandler> handlers = categoryHandlers.get(key);
+    if (handlers == null) {
+      handlers = new LinkedList<NfdRecordHandler>();
+      categoryHandlers.put(key, handlers);
+    }
+    handlers.add(handler);
+  }
+
+  /**
+   * Reads the whole file and dispatches each record to the interested handlers.  Once done,
+   * {@link NfdRecordHandler#scanCompleted} is called on each registered handler.
+   */
+  public synchronized void scan() throws IOException {
+    final BufferedReader in = new BufferedReader(new FileReader(nfd));
+    try {
+      String line;
+      int lineNumber = 0;
+      while ((line = in.readLine()) != null) {
+        final NfdRecord record = NfdRecord.classify(++lineNumber, line);
+        for (NfdRecordHandler handler: allRecordsHandlers) {
+          handler.handleRecord(record);
+        }
+        if (record.kind != NfdRecord.Kind.DATA) {
+          continue;
+        }
+        final List<NfdRecordHandler> handlers =
+            categoryHandlers.get(getCategoryKey(record.sectionCode, record.subsectionCode));
+        if (handlers != null) {
+          for (NfdRecordHandler handler: handlers) {
+            handler.handleRecord(record);
+          }
+        }
+      }
+    } finally {
+      in.close();
+    }
+
+    final Set<NfdRecordHandler> handlers = new LinkedHashSet<NfdRecordHandler>();
+    handlers.addAll(allRecordsHandlers);
+    for (List<NfdRecordHandler> categoryHandlerList: categoryHandlers.values()) {
+      handlers.addAll(categoryHandlerList);
+    }
+    for (NfdRecordHandler handler: handlers) {
+      handler.scanCompleted();
+    }
+  }
+
+  private static String getCategoryKey(final char sectionCode, final char subsectionCode) {
+    return new String(new char[] {sectionCode, subsectionCode});
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.faa.nfd.data;
+
+/**
+ * Flyweight view over a fixed-width record.  Generated by RecordStructGenerator.
+ * <p>
+ * Fields are parsed from the wrapped line only when their accessor is called.  A view can
+ * be re-pointed at another line with {@link #wrap}; it is not thread-safe.
+ */
+public class ControlledAirspaceRecordView {
+  private CharSequence line;
+  private int offset;
+
+  /**
+   * Points this view at {@code line}.
+   */
+  public ControlledAirspaceRecordView wrap(final CharSequence line) {
+    return wrap(line, 0);
+  }
+
+  /**
+   * Points this view at the record starting at {@code offset} in {@code buffer}.
+   */
+  public ControlledAirspaceRecordView wrap(final CharSequence buffer, final int offset) {
+    this.line = buffer;
+    this.offset = offset;
+    return this;
+  }
+
+  public char type() {
+    return line.charAt(offset + 0);
+  }
+
+  public String area() {
+    return FixedWidthParsingUtils.substring(line, offset + 1, offset + 4);
+  }
+
+  public boolean isAreaBlank() {
+    return FixedWidthParsingUtils.isBlank(line, offset + 1, offset + 4);
+  }
+
+  public char secCode() {
+    return line.charAt(offset + 4);
+  }
+
+  public char subCode() {
+    return line.charAt(offset + 5);
+  }
+
+  public String icaoCode() {
+    return FixedWidthParsingUtils.substring(line, offset + 6, offset + 8);
+  }
+
+  public boolean isIcaoCodeBlank() {
+    return FixedWidthParsingUtils.isBlank(line, offset + 6, offset + 8);
+  }
+
+  public char airspaceType() {
+    return line.charAt(offset + 8);
+  }
+
+  public String airspaceCenter() {
+    return FixedWidthParsingUtils.substring(line, offset + 9, offset + 14);
+  }
+
+  public boolean isAirspaceCenterBlank() {
+    return FixedWidthParsingUtils.isBlank(line, offset + 9, offset + 14);
+  }
+
+  public String airspaceCenterSecCode() {
+    return FixedWidthParsingUtils.substring(line, offset + 14, offset + 15);
+  }
+
+  public boolean isAirspaceCenterSecCodeBlank() {
+    return FixedWidthParsingUtils.isBlank(line, offset + 14, offset + 15);
+  }
+
+  public String airspaceCenterSubCode() {
+    return FixedWidthParsingUtils.substring(line, offset + 15, offset + 16);
+  }
+
+  public boolean isAirspaceCenterSubCodeBlank() {
+    return FixedWidthParsingUtils.isBlank(line, offset + 15, offset + 16);
+  }
+
+  public char airspaceClass() {
+    return line.charAt(offset + 16);
+  }
+
+  public char multipleCode() {
+    return line.charAt(offset + 19);
+  }
+
+  public int sequenceNumber() {
+    return FixedWidthParsingUtils.parseInt(line, offset + 20, offset + 24);
+  }
+
+  public char continuationRecordNumber() {
+    return line.charAt(offset + 24);
+  }
+
+  public char level() {
+    return line.charAt(offset + 25);
+  }
+
+  public char timeCode() {
+    return line.charAt(offset + 26);
+  }
+
+  public char notam() {
+    return line.charAt(offset + 27);
+  }
+
+  public char boundaryVia(final int i) {
+    return line.charAt(offset + 30 + i);
+  }
+
+  public double latitude() {
+    return FixedWidthParsingUtils.parseLatitude(line, offset + 32);
+  }
+
+  public double longitude() {
+    return FixedWidthParsingUtils.parseLongitude(line, offset + 41);
+  }
+
+  public double arcOriginLatitude() {
+    return FixedWidthParsingUtils.parseLatitude(line, offset + 51);
+  }
+
+  public double arcOriginLongitude() {
+    return FixedWidthParsingUtils.parseLongitude(line, offset + 60);
+  }
+
+  public int arcDistance() {
+    return FixedWidthParsingUtils.parseInt(line, offset + 70, offset + 74);
+  }
+
+  public int arcBearing() {
+    return FixedWidthParsingUtils.parseInt(line, offset + 74, offset + 78);
+  }
+
+  public String rnp() {
+    return FixedWidthParsingUtils.substring(line, offset + 78, offset + 81);
+  }
+
+  public boolean isRnpBlank() {
+    return FixedWidthParsingUtils.isBlank(line, offset + 78, offset + 81);
+  }
+
+  public String lowerLimit() {
+    return FixedWidthParsingUtils.substring(line, offset + 81, offset + 86);
+  }
+
+  public boolean isLowerLimitBlank() {
+    return FixedWidthParsingUtils.isBlank(line, offset + 81, offset + 86);
+  }
+
+  public char lowerLimitUnitIndicator() {
+    return line.charAt(offset + 86);
+  }
+
+  public int upperLimit() {
+    return FixedWidthParsingUtils.parseInt(line, offset + 87, offset + 92);
+  }
+
+  public char upperLimitUnitIndicator() {
+    return line.charAt(offset + 92);
+  }
+
+  public String controlledAirspaceName() {
+    return FixedWidthParsingUtils.substring(line, offset + 93, offset + 123);
+  }
+
+  public boolean isControlledAirspaceNameBlank() {
+    return FixedWidthParsingUtils.isBlank(line, offset + 93, offset + 123);
+  }
+
+  public int fileRecordNumber() {
+    return FixedWidthParsingUtils.parseInt(line, offset + 123, offset + 128);
+  }
+
+  public String cycle() {
+    return FixedWidthParsingUtils.substring(line, offset + 128, offset + 132);
+  }
+
+  public boolean isCycleBlank() {
+    return FixedWidthParsingUtils.isBlank(line, offset + 128, offset + 132);
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.faa.nfd.data;
+
+/**
+ * Utility class provides methods to parse fixed-width fields directly from a character sequence,
+ * without creating intermediate strings.  Used by generated record views.
+ */
+public class FixedWidthParsingUtils {
+  /**
+   *  Utility class: default and only constructor is private.
+   */
+  private FixedWidthParsingUtils() { }
+
+  /**
+   * Returns the characters in [{@code begin}, {@code end}) as a string.
+   */
+  public static String substring(final CharSequence s, final int begin, final int end) {
+    return s.subSequence(begin, end).toString();
+  }
+
+  /**
+   * Parses a decimal integer in [{@code begin}, {@code end}).  Leading and trailing blanks are
+   * ignored.
+   *
+   * @throws NumberFormatException if the field is blank or not a number
+   */
+  public static int parseInt(final CharSequence s, final int begin, final int end) {
+    int i = begin;
+    int last = end;
+    while (i < last && s.charAt(i) == ' ') {
+      ++i;
+    }
+    while (last > i && s.charAt(last - 1) == ' ') {
+      --last;
+    }
+    if (i == last) {
+      throw new NumberFormatException("Blank field: [" + begin + ", " + end + ")");
+    }
+    boolean negative = false;
+    final char sign = s.charAt(i);
+    if (sign == '-' || sign == '+') {
+      negative = sign == '-';
+      if (++i == last) {
+        throw new NumberFormatException(substring(s, begin, end));
+      }
+    }
+    int value = 0;
+    for (; i < last; ++i) {
+      final int digit = s.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException(substring(s, begin, end));
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Checks if the characters in [{@code begin}, {@code end}) are all blanks.
+   */
+  public static boolean isBlank(final CharSequence s, final int begin, final int end) {
+    for (int i = begin; i < end; ++i) {
+      if (s.charAt(i) != ' ') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses latitude.
+   *
+   * @param begin  Index of latitude as specified in ARINC SPEC 424, section 5.36 ("NDDMMSSss")
+   * @return       Latitude in degrees (North positive, South negative)
+   */
+  public static double parseLatitude(final CharSequence s, final int begin) {
+    final char northSouthIndicatorChar = s.charAt(begin);
+    final int latDeg = parseInt(s, begin + 1, begin + 3);
+    final int latMin = parseInt(s, begin + 3, begin + 5);
+    final int latSecHundredths = parseInt(s, begin + 5, begin + 9);
+    double lat = latDeg;
+    lat += latMin / 60.0;
+    lat += latSecHundredths / 360000.0;
+    if (northSouthIndicatorChar == 'S') {
+      lat *= -1;
+    } else if (northSouthIndicatorChar != 'N') {
+      throw new RuntimeException("Unknown north/south indicator: " + northSouthIndicatorChar);
+    }
+    return lat;
+  }
+
+  /**
+   * Parses longitude.
+   *
+   * @param begin  Index of longitude as specified in ARINC SPEC 424, section 5.36 ("WDDDMMSSss")
+   * @return       Longitude in degrees (East positive, West negative)
+   */
+  public static double parseLongitude(final CharSequence s, final int begin) {
+    final char westEastIndicatorChar = s.charAt(begin);
+    final int lngDeg = parseInt(s, begin + 1, begin + 4);
+    final int lngMin = parseInt(s, begin + 4, begin + 6);
+    final int lngSecHundredths = parseInt(s, begin + 6, begin + 10);
+    double lng = lngDeg;
+    lng += lngMin / 60.0;
+    lng += lngSecHundredths / 360000.0;
+    if (westEastIndicatorChar == 'W') {
+      lng *= -1;
+    } else if (westEastIndicatorChar != 'E') {
+      throw new RuntimeException("Unknown west/east indicator: " + westEastIndicatorChar);
+    }
+    return lng;
+  }
+}
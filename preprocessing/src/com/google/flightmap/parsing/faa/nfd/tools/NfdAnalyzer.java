@@ -16,16 +16,26 @@
 
 package com.google.flightmap.parsing.faa.nfd.tools;
 
+import com.google.flightmap.parsing.faa.nfd.NfdRecord;
+import com.google.flightmap.parsing.faa.nfd.NfdRecordHandler;
+import com.google.flightmap.parsing.faa.nfd.NfdScanner;
+
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.io.BufferedReader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.CommandLine;
@@ -39,18 +49,27 @@ import org.apache.commons.cli.PosixParser;
 
 /**
  * Analyzes ARINC 424-18 file and prints record statistics.
- * 
+ * <p>
+ * In parallel mode, the file is memory-mapped and split in record-aligned chunks that are
+ * analyzed concurrently; records are classified by comparing bytes at fixed offsets.
  */
 public class NfdAnalyzer {
   // Command line options
   private final static Options OPTIONS = new Options();
   private final static String HELP_OPTION = "help";
   private final static String NFD_OPTION = "nfd";
+  private final static String PARALLEL_OPTION = "parallel";
+  private final static String THREADS_OPTION = "threads";
+
+  /**
+   * Maximum size of a chunk analyzed by a single task in parallel mode, in bytes.
+   */
+  private final static long MAX_CHUNK_SIZE = 64 * 1024 * 1024;
 
-  // IATA to ICAO pattern regex
-  private final static Pattern volRecordPattern = Pattern.compile("VOL.{129}");
-  private final static Pattern hdrRecordPattern = Pattern.compile("(?:HDR|EOF)(\\d).{128}");
-  private final static Pattern dataRecordPattern = Pattern.compile("(S|T)(.{3})(\\S).{127}");
+  /**
+   * Number of chunks per thread in parallel mode (evens out the load between threads).
+   */
+  private final static int CHUNKS_PER_THREAD = 4;
 
   static {
     // Command Line options definitions
@@ -61,15 +80,35 @@ public class NfdAnalyzer {
                                    .isRequired()
                                    .withArgName("nfd.dat")
                                    .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(PARALLEL_OPTION)
+                                   .withDescription("Memory-map file and analyze it in parallel.")
+                                   .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(THREADS_OPTION)
+                                   .withDescription("Number of threads in parallel mode.")
+                                   .hasArg()
+                                   .withArgName("count")
+                                   .create());
   }
   private final File nfd;
-
+  private final boolean parallel;
+  private final int threads;
 
   /**
    * @param nfd Source database in ARINC 424-18 format (eg NFD)
    */
   public NfdAnalyzer(final File nfd) {
+    this(nfd, false, 1);
+  }
+
+  /**
+   * @param nfd Source database in ARINC 424-18 format (eg NFD)
+   * @param parallel Whether the file should be memory-mapped and analyzed in parallel
+   * @param threads Number of threads to use in parallel mode
+   */
+  public NfdAnalyzer(final File nfd, final boolean parallel, final int threads) {
     this.nfd = nfd;
+    this.parallel = parallel;
+    this.threads = threads;
   }
 
   public static void main(String args[]) {
@@ -90,9 +129,18 @@ public class NfdAnalyzer {
 
     final String nfdPath = line.getOptionValue(NFD_OPTION);
     final File nfd = new File(nfdPath);
+    final boolean parallel = line.hasOption(PARALLEL_OPTION);
+    int threads = Runtime.getRuntime().availableProcessors();
+    if (line.hasOption(THREADS_OPTION)) {
+      threads = Integer.parseInt(line.getOptionValue(THREADS_OPTION));
+      if (threads < 1) {
+        System.err.println("Invalid thread count: " + threads);
+        System.exit(1);
+      }
+    }
 
     try {
-      (new NfdAnalyzer(nfd)).execute();
+      (new NfdAnalyzer(nfd, parallel, threads)).execute();
     } catch (IOException ioEx) {
       ioEx.printStackTrace();
       System.exit(2);
@@ -106,75 +154,347 @@ public class NfdAnalyzer {
   }
 
   private void execute() throws IOException {
-    final BufferedReader in = new BufferedReader(new FileReader(nfd));
-    NfdFileStats stats = new NfdFileStats();
-    String line;
-    Matcher m;
+    if (parallel) {
+      executeParallel();
+      return;
+    }
+    final NfdScanner scanner = new NfdScanner(nfd);
+    scanner.addHandler(new StatsHandler());
+    scanner.scan();
+  }
+
+  /**
+   * Memory-maps the file, analyzes record-aligned chunks in parallel and prints merged results.
+   */
+  private void executeParallel() throws IOException {
+    final FileInputStream in = new FileInputStream(nfd);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
     try {
-      while ((line = in.readLine()) != null) {
-        ++stats.totalLines;
-        // Handle generic data record
-        m = dataRecordPattern.matcher(line);
-        if (m.matches()) {
-          processDataRecord(m, stats);
-          continue;
+      final FileChannel channel = in.getChannel();
+      final long[] bounds = getChunkBounds(channel, threads * CHUNKS_PER_THREAD);
+      final List<Future<NfdFileStats>> results = new LinkedList<Future<NfdFileStats>>();
+      for (int i = 0; i + 1 < bounds.length; ++i) {
+        final long size = bounds[i + 1] - bounds[i];
+        if (size > 0) {
+          final ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], size);
+          results.add(executor.submit(new ChunkAnalyzer(chunk)));
         }
+      }
 
-        // Handle header record
-        m = hdrRecordPattern.matcher(line);
-        if (m.matches()) {
-          processHdrRecord(m, stats);
-          continue;
+      // Merge partial results in file order (keeps line numbers of unknown records correct).
+      final NfdFileStats stats = new NfdFileStats();
+      for (Future<NfdFileStats> result: results) {
+        stats.merge(result.get());
+      }
+      printStats(stats);
+    } catch (InterruptedException iEx) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while analyzing " + nfd);
+    } catch (ExecutionException eEx) {
+      final Throwable cause = eEx.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new RuntimeException(cause);
+    } finally {
+      executor.shutdownNow();
+      in.close();
+    }
+  }
+
+  /**
+   * Splits file in (about) {@code count} chunks that start at the beginning of a line.
+   *
+   * @return Chunk boundaries: chunk {@code i} spans [{@code bounds[i]}, {@code bounds[i + 1]}).
+   */
+  private static long[] getChunkBounds(final FileChannel channel, final int count)
+      throws IOException {
+    final long size = channel.size();
+    final int chunkCount = (int) Math.max(count, size / MAX_CHUNK_SIZE + 1);
+    final long[] bounds = new long[chunkCount + 1];
+    bounds[chunkCount] = size;
+    final ByteBuffer window = ByteBuffer.allocate(4 * NfdRecord.RECORD_LENGTH);
+    for (int i = 1; i < chunkCount; ++i) {
+      final long nominal = Math.max(bounds[i - 1], size / chunkCount * i);
+      bounds[i] = getNextLineStart(channel, nominal, window);
+    }
+    return bounds;
+  }
+
+  /**
+   * Returns the position of the first line starting at or after {@code position}.
+   */
+  private static long getNextLineStart(final FileChannel channel, final long position,
+      final ByteBuffer window) throws IOException {
+    if (position == 0) {
+      return 0;
+    }
+    // A line starts at position if the previous byte is a line feed.
+    long offset = position - 1;
+    while (true) {
+      window.clear();
+      final int read = channel.read(window, offset);
+      if (read <= 0) {
+        return channel.size();
+      }
+      for (int i = 0; i < read; ++i) {
+        if (window.get(i) == '\n') {
+          return offset + i + 1;
+        }
+      }
+      offset += read;
+    }
+  }
+
+  /**
+   * Computes statistics on a record-aligned chunk of a memory-mapped NFD file.
+   * <p>
+   * Counts are kept in primitive arrays while scanning and only converted to a partial
+   * {@link NfdFileStats} (with chunk-relative line numbers) at the end.
+   */
+  private static class ChunkAnalyzer implements Callable<NfdFileStats> {
+    /**
+     * Valid section and subsection codes (ASCII), indexed by section then subsection code.
+     */
+    private final static boolean[][] VALID_CATEGORIES = new boolean[128][128];
+
+    static {
+      for (Map.Entry<String, Map<Character, String>> secEntry:
+           NfdFileStats.SUB_LABELS.entrySet()) {
+        final char sec = secEntry.getKey().charAt(0);
+        for (Character sub: secEntry.getValue().keySet()) {
+          VALID_CATEGORIES[sec][sub] = true;
+        }
+      }
+    }
+
+    private final ByteBuffer chunk;
+    private int totalLines;
+    private int totalRecords;
+    private int volRecords;
+    private int hdrRecords;
+    private int dataRecords;
+    private final int[][] recordsPerSection = new int[128][];
+    private int[] areaKeys = new int[16];  // Area code bytes, packed in an int
+    private int[] areaCounts = new int[16];
+    private int areaCount;
+    private final SortedMap<Integer, String> unknownRecords = new TreeMap<Integer, String>();
+
+    ChunkAnalyzer(final ByteBuffer chunk) {
+      this.chunk = chunk;
+    }
+
+    @Override
+    public NfdFileStats call() {
+      final int limit = chunk.limit();
+      int start = 0;
+      while (start < limit) {
+        final int end = getLineEnd(start, limit);
+        int length = end - start;
+        if (length > 0 && chunk.get(end - 1) == '\r') {
+          --length;
+        }
+        ++totalLines;
+        processLine(start, length);
+        start = end + 1;
+      }
+      return toStats();
+    }
+
+    /**
+     * Returns the index of the line feed ending the line at {@code start}, or {@code limit}.
+     */
+    private int getLineEnd(final int start, final int limit) {
+      // Fast path: well-formed record.
+      final int expected = start + NfdRecord.RECORD_LENGTH;
+      if (expected < limit && chunk.get(expected) == '\n') {
+        return expected;
+      }
+      if (expected + 1 < limit && chunk.get(expected + 1) == '\n' &&
+          chunk.get(expected) == '\r') {
+        return expected + 1;
+      }
+      int i = start;
+      while (i < limit && chunk.get(i) != '\n') {
+        ++i;
+      }
+      return i;
+    }
+
+    private void processLine(final int start, final int length) {
+      if (length == NfdRecord.RECORD_LENGTH) {
+        final byte b0 = chunk.get(start);
+        final byte b1 = chunk.get(start + 1);
+        final byte b2 = chunk.get(start + 2);
+        final byte b3 = chunk.get(start + 3);
+        final byte b4 = chunk.get(start + 4);
+        if ((b0 == 'S' || b0 == 'T') && !isWhitespace(b4)) {
+          processDataRecord(start, length, b1, b2, b3, b4);
+          return;
+        }
+        if (((b0 == 'H' && b1 == 'D' && b2 == 'R') || (b0 == 'E' && b1 == 'O' && b2 == 'F')) &&
+            b3 >= '0' && b3 <= '9') {
+          ++totalRecords;
+          ++hdrRecords;
+          return;
         }
+        if (b0 == 'V' && b1 == 'O' && b2 == 'L') {
+          ++totalRecords;
+          ++volRecords;
+          return;
+        }
+      }
+      processUnknownRecord(start, length);
+    }
+
+    private void processDataRecord(final int start, final int length, final byte area0,
+        final byte area1, final byte area2, final byte sec) {
+      ++totalRecords;
+      incrementAreaCount(((area0 & 0xff) << 16) | ((area1 & 0xff) << 8) | (area2 & 0xff));
+
+      byte sub = chunk.get(start + 5);
+      if (sub == ' ' && (sec == 'P' || sec == 'H')) {
+        sub = chunk.get(start + 12);
+      }
+      if (sec < 0 || sub < 0 || !VALID_CATEGORIES[sec][sub]) {
+        processUnknownRecord(start, length);
+        return;
+      }
+      if (recordsPerSection[sec] == null) {
+        recordsPerSection[sec] = new int[128];
+      }
+      ++recordsPerSection[sec][sub];
+      ++dataRecords;
+    }
+
+    private void incrementAreaCount(final int key) {
+      for (int i = 0; i < areaCount; ++i) {
+        if (areaKeys[i] == key) {
+          ++areaCounts[i];
+          return;
+        }
+      }
+      if (areaCount == areaKeys.length) {
+        final int[] newKeys = new int[2 * areaCount];
+        final int[] newCounts = new int[2 * areaCount];
+        System.arraycopy(areaKeys, 0, newKeys, 0, areaCount);
+        System.arraycopy(areaCounts, 0, newCounts, 0, areaCount);
+        areaKeys = newKeys;
+        areaCounts = newCounts;
+      }
+      areaKeys[areaCount] = key;
+      areaCounts[areaCount] = 1;
+      ++areaCount;
+    }
 
-        // Handle volume header record
-        m = volRecordPattern.matcher(line);
-        if (m.matches()) {
-          processVolRecord(m, stats);
+    private void processUnknownRecord(final int start, final int length) {
+      final byte[] bytes = new byte[length];
+      for (int i = 0; i < length; ++i) {
+        bytes[i] = chunk.get(start + i);
+      }
+      unknownRecords.put(totalLines, new String(bytes));
+    }
+
+    private static boolean isWhitespace(final byte b) {
+      return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    /**
+     * Converts counts to a (partial) {@link NfdFileStats}.
+     */
+    private NfdFileStats toStats() {
+      final NfdFileStats s = new NfdFileStats();
+      s.totalLines = totalLines;
+      s.totalRecords = totalRecords;
+      s.volRecords = volRecords;
+      s.hdrRecords = hdrRecords;
+      s.dataRecords = dataRecords;
+      for (int sec = 0; sec < recordsPerSection.length; ++sec) {
+        if (recordsPerSection[sec] == null) {
           continue;
         }
+        final Map<Character, Integer> recordsPerSubsection = new TreeMap<Character, Integer>();
+        for (int sub = 0; sub < recordsPerSection[sec].length; ++sub) {
+          if (recordsPerSection[sec][sub] > 0) {
+            recordsPerSubsection.put((char) sub, recordsPerSection[sec][sub]);
+          }
+        }
+        s.recordsPerSection.put(String.valueOf((char) sec), recordsPerSubsection);
+      }
+      for (int i = 0; i < areaCount; ++i) {
+        final int key = areaKeys[i];
+        final String area = new String(
+            new char[] {(char) (key >> 16), (char) ((key >> 8) & 0xff), (char) (key & 0xff)});
+        s.recordsPerArea.put(area, areaCounts[i]);
+      }
+      s.unknownRecords.putAll(unknownRecords);
+      return s;
+    }
+  }
 
-        // Else, handle unknown record
-        processUnknownRecord(line, stats);
+  /**
+   * Computes statistics on all records of an NFD file and prints them once the scan completes.
+   * <p>
+   * Must be registered to receive all records (see {@link NfdScanner#addHandler(NfdRecordHandler)}).
+   */
+  public static class StatsHandler implements NfdRecordHandler {
+    private final NfdFileStats stats = new NfdFileStats();
+
+    @Override
+    public void handleRecord(final NfdRecord record) {
+      ++stats.totalLines;
+      switch (record.kind) {
+        case DATA:
+          processDataRecord(record, stats);
+          break;
+        case HEADER:
+          processHdrRecord(record, stats);
+          break;
+        case VOLUME:
+          processVolRecord(record, stats);
+          break;
+        default:
+          processUnknownRecord(record.line, stats);
       }
+    }
+
+    @Override
+    public void scanCompleted() {
       // Display results of analysis
       printStats(stats);
-    } finally {
-      in.close();
     }
   }
 
   /**
    * Updates {@code stats} with unknown record corresponding to read {@code line}.
    */
-  private void processUnknownRecord(final String line, final NfdFileStats s) {
+  private static void processUnknownRecord(final String line, final NfdFileStats s) {
     s.unknownRecords.put(s.totalLines, line);
   }
 
   /**
-   * Updates {@code stats} with volume header record matched by {@link #volRecordPattern}.
+   * Updates {@code stats} with volume header record.
    */
-  private void processVolRecord(final Matcher m, final NfdFileStats s) {
+  private static void processVolRecord(final NfdRecord r, final NfdFileStats s) {
     ++s.totalRecords;
     ++s.volRecords;
   }
 
   /**
-   * Updates {@code stats} with header record matched by {@link #hdrRecordPattern}.
+   * Updates {@code stats} with header record.
    */
-  private void processHdrRecord(final Matcher m, final NfdFileStats s) {
+  private static void processHdrRecord(final NfdRecord r, final NfdFileStats s) {
     ++s.totalRecords;
     ++s.hdrRecords;
   }
 
   /**
-   * Updates {@code stats} with data record matched by {@link #dataRecordPattern}.
+   * Updates {@code stats} with data record.
    */
-  private void processDataRecord(final Matcher m, final NfdFileStats s) {
+  private static void processDataRecord(final NfdRecord r, final NfdFileStats s) {
     ++s.totalRecords;
-    final String type = m.group(1);
-    final String area = m.group(2);
-    final String secCode = m.group(3);
+    final String area = r.area;
+    final String secCode = String.valueOf(r.sectionCode);
    
     // Increment area count
     Integer count = s.recordsPerArea.get(area);
@@ -183,12 +503,9 @@ public class NfdAnalyzer {
     s.recordsPerArea.put(area, count);
 
     // Increment section count
-    Character subCode = m.group(0).charAt(5);
-    if (subCode.equals(' ') && (secCode.equals("P") || secCode.equals("H"))) {
-      subCode = m.group(0).charAt(12);
-    }
+    final Character subCode = r.subsectionCode;
     if (!NfdFileStats.isValidCategory(secCode, subCode)) {
-      processUnknownRecord(m.group(0), s);
+      processUnknownRecord(r.line, s);
       return;
     }
 
@@ -210,7 +527,7 @@ public class NfdAnalyzer {
   /**
    * Prints results from {@code s} in a nice format.
    */
-  private void printStats(final NfdFileStats s) {
+  private static void printStats(final NfdFileStats s) {
     System.out.println("Lines read: " + s.totalLines);
     System.out.println("Records");
     System.out.println("  Vol: " + s.volRecords);
@@ -383,6 +700,38 @@ public class NfdAnalyzer {
       unknownRecords = new TreeMap<Integer, String>();
     }
 
+    /**
+     * Adds counts of {@code other}, computed on the lines following those counted in this object.
+     */
+    void merge(final NfdFileStats other) {
+      for (Map.Entry<Integer, String> unknownEntry: other.unknownRecords.entrySet()) {
+        unknownRecords.put(totalLines + unknownEntry.getKey(), unknownEntry.getValue());
+      }
+      totalLines += other.totalLines;
+      totalRecords += other.totalRecords;
+      volRecords += other.volRecords;
+      hdrRecords += other.hdrRecords;
+      dataRecords += other.dataRecords;
+      for (Map.Entry<String, Integer> areaEntry: other.recordsPerArea.entrySet()) {
+        final Integer count = recordsPerArea.get(areaEntry.getKey());
+        recordsPerArea.put(areaEntry.getKey(),
+            (count == null ? 0 : count) + areaEntry.getValue());
+      }
+      for (Map.Entry<String, Map<Character, Integer>> secEntry:
+           other.recordsPerSection.entrySet()) {
+        Map<Character, Integer> recordsPerSubsection = recordsPerSection.get(secEntry.getKey());
+        if (recordsPerSubsection == null) {
+          recordsPerSubsection = new TreeMap<Character, Integer>();
+          recordsPerSection.put(secEntry.getKey(), recordsPerSubsection);
+        }
+        for (Map.Entry<Character, Integer> subEntry: secEntry.getValue().entrySet()) {
+          final Integer count = recordsPerSubsection.get(subEntry.getKey());
+          recordsPerSubsection.put(subEntry.getKey(),
+              (count == null ? 0 : count) + subEntry.getValue());
+        }
+      }
+    }
+
     /**
      * Returns label for section {@code sec} and (optionaly) subsection {@code sub}.
      *
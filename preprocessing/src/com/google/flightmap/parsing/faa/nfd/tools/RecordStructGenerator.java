@@ -16,7 +16,9 @@
 
 package com.google.flightmap.parsing.faa.nfd.tools;
 
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -36,14 +38,37 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
 
 
+/**
+ * Generates Java classes for fixed-width records from a definition file.
+ * <p>
+ * Each line of the definition file is {@code name length [type]}, where {@code type} is one of
+ * {@code string} (default), {@code int}, {@code char}, {@code latitude} or {@code longitude}.
+ * Fields named {@code BLANK} are skipped.
+ * <p>
+ * By default, a struct class with one {@code String} field per record field is generated.  With
+ * {@code --view}, a flyweight view class is generated instead: it wraps a reusable line buffer and
+ * exposes typed accessors that parse directly from column offsets, so fields that are not read
+ * are never extracted.
+ */
 public class RecordStructGenerator {
   // Command line options
   private final static Options OPTIONS = new Options();
   private final static String HELP_OPTION = "help";
   private final static String DEF_FILE_OPTION = "def";
+  private final static String VIEW_OPTION = "view";
 
-  private final static Pattern fieldDefPattern = Pattern.compile("(\\w+) (\\d+)");
+  private final static Pattern fieldDefPattern = Pattern.compile("(\\w+) (\\d+)(?: (\\w+))?");
   private final static String BLANK_FIELD_NAME = "BLANK";
+  private final static String VIEW_CLASS_SUFFIX = "View";
+
+  // Field types
+  private final static String STRING_TYPE = "string";
+  private final static String INT_TYPE = "int";
+  private final static String CHAR_TYPE = "char";
+  private final static String LATITUDE_TYPE = "latitude";
+  private final static String LONGITUDE_TYPE = "longitude";
+  private final static List<String> FIELD_TYPES =
+      Arrays.asList(STRING_TYPE, INT_TYPE, CHAR_TYPE, LATITUDE_TYPE, LONGITUDE_TYPE);
   private final static String PACKAGE = "com.google.flightmap.parsing.faa.nfd.data";
   private final static String COPYRIGHT = 
       "/*\n" +
@@ -71,16 +96,30 @@ public class RecordStructGenerator {
                                    .isRequired()
                                    .withArgName("StructClas.def")
                                    .create());
+    OPTIONS.addOption(OptionBuilder.withLongOpt(VIEW_OPTION)
+                                   .withDescription("Generate flyweight view instead of struct.")
+                                   .create());
   }
 
   private final File def;
+  private final boolean view;
   private Map<String, int[]> fields; // field name -> begin, end index
+  private Map<String, String> fieldTypes; // field name -> type
   private String className;
   private PrintStream out;
   private int indent = 0;
 
   public RecordStructGenerator(final File def) {
+    this(def, false);
+  }
+
+  /**
+   * @param def Struct definition file
+   * @param view If {@code true}, generate flyweight view class instead of struct class
+   */
+  public RecordStructGenerator(final File def, final boolean view) {
     this.def = def;
+    this.view = view;
   }
 
   public static void main(String args[]) {
@@ -103,7 +142,7 @@ public class RecordStructGenerator {
     final File def = new File(defPath);
 
     try {
-      (new RecordStructGenerator(def)).execute();
+      (new RecordStructGenerator(def, line.hasOption(VIEW_OPTION))).execute();
     } catch (IOException ioEx) {
       ioEx.printStackTrace();
       System.exit(2);
@@ -119,13 +158,18 @@ public class RecordStructGenerator {
   private void execute() throws IOException {
     parseFields();
     initOutputFile();
-    writeClass();
+    if (view) {
+      writeViewClass();
+    } else {
+      writeClass();
+    }
     closeOutputFile();
   }
 
   private void parseFields() throws IOException {
     final BufferedReader in = new BufferedReader(new FileReader(def));
     fields = new LinkedHashMap<String, int[]>();
+    fieldTypes = new LinkedHashMap<String, String>();
     Matcher m;
     String line;
     int currentIndex = 0;
@@ -134,10 +178,15 @@ public class RecordStructGenerator {
         if ( (m = fieldDefPattern.matcher(line)).matches()) {
           final String name = m.group(1);
           final int length = Integer.parseInt(m.group(2));
+          final String type = m.group(3) == null ? STRING_TYPE : m.group(3);
+          if (!FIELD_TYPES.contains(type)) {
+            throw new IOException("Unknown field type: " + line);
+          }
           final int nextIndex = currentIndex + length;
           if (!BLANK_FIELD_NAME.equals(name)) {
             final int[] indices = new int[] {currentIndex, nextIndex};
             fields.put(name, indices);
+            fieldTypes.put(name, type);
           }
           currentIndex = nextIndex;
         }
@@ -149,6 +198,9 @@ public class RecordStructGenerator {
 
   private void initOutputFile() throws IOException {
     className = def.getName().split("\\.")[0];
+    if (view) {
+      className += VIEW_CLASS_SUFFIX;
+    }
     out = new PrintStream(className + ".java");
     print(COPYRIGHT);
     print("");
@@ -220,6 +272,82 @@ public class RecordStructGenerator {
     print("}");
   }
 
+  private void writeViewClass() throws IOException {
+    print("package " + PACKAGE + ";");
+    print("");
+    print("/**");
+    print(" * Flyweight view over a fixed-width record.  Generated by RecordStructGenerator.");
+    print(" * <p>");
+    print(" * Fields are parsed from the wrapped line only when their accessor is called.  A view can");
+    print(" * be re-pointed at another line with {@link #wrap}; it is not thread-safe.");
+    print(" */");
+    print("public class " + className + " {");
+    ++indent;
+    print("private CharSequence line;");
+    print("private int offset;");
+    print("");
+    print("/**");
+    print(" * Points this view at {@code line}.");
+    print(" */");
+    print("public " + className + " wrap(final CharSequence line) {");
+    print(indent + 1, "return wrap(line, 0);");
+    print("}");
+    print("");
+    print("/**");
+    print(" * Points this view at the record starting at {@code offset} in {@code buffer}.");
+    print(" */");
+    print("public " + className + " wrap(final CharSequence buffer, final int offset) {");
+    print(indent + 1, "this.line = buffer;");
+    print(indent + 1, "this.offset = offset;");
+    print(indent + 1, "return this;");
+    print("}");
+    for (Map.Entry<String, int[]> entry: fields.entrySet()) {
+      print("");
+      writeViewAccessor(entry.getKey(), fieldTypes.get(entry.getKey()), entry.getValue());
+    }
+  }
+
+  private void writeViewAccessor(final String name, final String type, final int[] indices) {
+    final String begin = "offset + " + indices[0];
+    final String end = "offset + " + indices[1];
+    if (STRING_TYPE.equals(type)) {
+      print("public String " + name + "() {");
+      print(indent + 1,
+          "return FixedWidthParsingUtils.substring(line, " + begin + ", " + end + ");");
+      print("}");
+      print("");
+      print("public boolean is" + capitalize(name) + "Blank() {");
+      print(indent + 1, "return FixedWidthParsingUtils.isBlank(line, " + begin + ", " + end + ");");
+      print("}");
+    } else if (INT_TYPE.equals(type)) {
+      print("public int " + name + "() {");
+      print(indent + 1,
+          "return FixedWidthParsingUtils.parseInt(line, " + begin + ", " + end + ");");
+      print("}");
+    } else if (CHAR_TYPE.equals(type)) {
+      if (indices[1] - indices[0] == 1) {
+        print("public char " + name + "() {");
+        print(indent + 1, "return line.charAt(" + begin + ");");
+      } else {
+        print("public char " + name + "(final int i) {");
+        print(indent + 1, "return line.charAt(" + begin + " + i);");
+      }
+      print("}");
+    } else if (LATITUDE_TYPE.equals(type)) {
+      print("public double " + name + "() {");
+      print(indent + 1, "return FixedWidthParsingUtils.parseLatitude(line, " + begin + ");");
+      print("}");
+    } else if (LONGITUDE_TYPE.equals(type)) {
+      print("public double " + name + "() {");
+      print(indent + 1, "return FixedWidthParsingUtils.parseLongitude(line, " + begin + ");");
+      print("}");
+    }
+  }
+
+  private static String capitalize(final String name) {
+    return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+  }
+
   private void closeOutputFile() throws IOException {
     --indent;
     print("}");
@@ -228,7 +356,7 @@ public class RecordStructGenerator {
 
 
   private void print(final int indent, final String text) {
-    for (int i = 0; i < indent; ++i) {
+    for (int i = 0; i < indent && text.length() > 0; ++i) {
       out.print("  ");
     }
     out.println(text);
@@ -20,30 +20,124 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
-import au.com.bytecode.opencsv.bean.CsvToBean;
-import au.com.bytecode.opencsv.bean.HeaderColumnNameTranslateMappingStrategy;
-
+import au.com.bytecode.opencsv.CSVReader;
 
+/**
+ * Parses CSV files with a header line into beans.
+ * <p>
+ * Columns are mapped to bean fields with {@code columnMap} (CSV header to field name), and beans
+ * are filled by a {@link RowMapper}, typically generated with {@code BeanMaker}, which assigns
+ * fields directly instead of going through reflection.  Values are trimmed, and fields with no
+ * corresponding column are left {@code null}.
+ */
 public class CsvParser<T> {
+  /**
+   * Creates beans from CSV rows.
+   */
+  public interface RowMapper<T> {
+    /**
+     * Returns the names of the fields set by this mapper, in the order expected by
+     * {@link #mapRow}.
+     */
+    public String[] getFieldNames();
+
+    /**
+     * Creates a bean from {@code row}.
+     *
+     * @param columns  Index in {@code row} of each field returned by {@link #getFieldNames}, or
+     *                 -1 if the file has no such column.  See {@link CsvParser#getField}.
+     */
+    public T mapRow(String[] row, int[] columns);
+  }
+
+  /**
+   * Consumer of beans created by {@link CsvParser#forEach}.
+   */
+  public interface RowHandler<T> {
+    /**
+     * Processes a single bean.  Called in file order.
+     */
+    public void handleRow(T bean) throws IOException;
+  }
+
   private final File file;
   private final Map<String, String> columnMap;
-  private final Class<T> tClass;
+  private final RowMapper<T> rowMapper;
 
-  public CsvParser(final File file, final Map<String, String> columnMap, final Class<T> tClass) {
+  public CsvParser(final File file, final Map<String, String> columnMap,
+      final RowMapper<T> rowMapper) {
     this.file = file;
     this.columnMap = columnMap;
-    this.tClass = tClass;
+    this.rowMapper = rowMapper;
   }
 
+  /**
+   * Returns the trimmed value of {@code row} at index {@code column}, or {@code null} if the row
+   * has no such column.
+   */
+  public static String getField(final String[] row, final int column) {
+    if (column < 0 || column >= row.length) {
+      return null;
+    }
+    return row[column].trim();
+  }
+
+  /**
+   * Reads the file and passes a bean for each row to {@code handler}.  Only one row is held in
+   * memory at a time.
+   */
+  public void forEach(final RowHandler<T> handler) throws IOException {
+    final CSVReader reader = new CSVReader(new BufferedReader(new FileReader(file)));
+    try {
+      final String[] headers = reader.readNext();
+      if (headers == null) {
+        return;
+      }
+      final int[] columns = getColumns(headers);
+      String[] row;
+      while ((row = reader.readNext()) != null) {
+        handler.handleRow(rowMapper.mapRow(row, columns));
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Returns beans for all rows of the file.
+   *
+   * @see #forEach
+   */
   public List<T> getAll() throws IOException {
-    final HeaderColumnNameTranslateMappingStrategy<T> strat = 
-        new HeaderColumnNameTranslateMappingStrategy<T>();
-    strat.setType(tClass);
-    strat.setColumnMapping(columnMap);
-    final CsvToBean<T> csv = new CsvToBean<T>();
-    return csv.parse(strat, new BufferedReader(new FileReader(file)));
+    final List<T> beans = new ArrayList<T>();
+    forEach(new RowHandler<T>() {
+      @Override
+      public void handleRow(final T bean) {
+        beans.add(bean);
+      }
+    });
+    return beans;
+  }
+
+  /**
+   * Returns the index in {@code headers} of each field of {@link #rowMapper}, or -1 if no
+   * header maps to it.  If several headers map to the same field, the last one is used.
+   */
+  private int[] getColumns(final String[] headers) {
+    final String[] fieldNames = rowMapper.getFieldNames();
+    final int[] columns = new int[fieldNames.length];
+    for (int i = 0; i < fieldNames.length; ++i) {
+      columns[i] = -1;
+      for (int j = 0; j < headers.length; ++j) {
+        if (fieldNames[i].equals(columnMap.get(headers[j]))) {
+          columns[i] = j;
+        }
+      }
+    }
+    return columns;
   }
 }
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flightmap.parsing.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a tab-delimited file whose first line holds the column headers.
+ * <p>
+ * Headers are resolved to {@link Column} handles once, before reading data lines.  Each data line
+ * is split into reusable arrays of field offsets: no {@code String[]} is allocated per line, and
+ * fields are only converted to strings when requested.
+ * <p>
+ * Fields are counted like {@link String#split} would: trailing empty fields are considered
+ * missing.
+ * <p>
+ * Field accessors read the arrays of the current line, which {@link #next} overwrites: a reader
+ * is not thread-safe.
+ */
+public class TabDelimitedReader {
+  /**
+   * Handle to a column, as returned by {@link TabDelimitedReader#getColumn}.
+   */
+  public static class Column {
+    private final int index;
+    private final String header;
+
+    private Column(final int index, final String header) {
+      this.index = index;
+      this.header = header;
+    }
+
+    public String getHeader() {
+      return header;
+    }
+
+    @Override
+    public String toString() {
+      return header;
+    }
+  }
+
+  public static class UnknownHeaderException extends RuntimeException {
+    static final long serialVersionUID = 4214532913470371522L;
+
+    public UnknownHeaderException(final String header) {
+      super("Unknown header: " + header);
+    }
+  }
+
+  private final BufferedReader in;
+  private final String[] headers;
+  private final Map<String, Integer> headerPosition = new HashMap<String, Integer>();
+
+  /**
+   * Current line, {@code null} before the first call to {@link #next} and at the end of file.
+   */
+  private String line;
+
+  /**
+   * Offsets of the fields of the current line: field {@code i} is in
+   * [{@code starts[i]}, {@code ends[i]}).
+   */
+  private int[] starts = new int[16];
+  private int[] ends = new int[16];
+
+  /**
+   * Number of fields available in the current line.
+   */
+  private int fieldCount;
+
+  /**
+   * Reads the header line from {@code in}.
+   *
+   * @param quotedHeaders  If {@code true}, headers must be enclosed in double quotes, which are
+   *                       removed (eg. {@code "\"foo\""} becomes {@code "foo"}).
+   * @throws IOException   {@code in} is empty or could not be read.
+   * @throws RuntimeException  {@code quotedHeaders} is set but a header is not enclosed in quotes.
+   */
+  public TabDelimitedReader(final Reader in, final boolean quotedHeaders) throws IOException {
+    this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+    final String headerLine = this.in.readLine();
+    if (headerLine == null) {
+      throw new IOException("Missing header line.");
+    }
+    headers = headerLine.split("\\t");
+    for (int i = 0; i < headers.length; ++i) {
+      String header = headers[i];
+      if (quotedHeaders) {
+        if (!header.matches("\"\\w+\"")) {
+          throw new RuntimeException("No enclosing quotes: " + header);
+        }
+        header = header.substring(1, header.length() - 1);
+        headers[i] = header;
+      }
+      headerPosition.put(header, i);
+    }
+  }
+
+  /**
+   * Returns a copy of the headers, in file order.
+   */
+  public String[] getHeaders() {
+    return headers.clone();
+  }
+
+  /**
+   * Returns the handle of the column with the given {@code header}.
+   *
+   * @throws UnknownHeaderException  No such column.
+   */
+  public Column getColumn(final String header) {
+    final Integer index = headerPosition.get(header);
+    if (index == null) {
+      throw new UnknownHeaderException(header);
+    }
+    return new Column(index, header);
+  }
+
+  /**
+   * Advances to the next data line.
+   *
+   * @return  {@code false} if the end of the file was reached.
+   */
+  public boolean next() throws IOException {
+    line = in.readLine();
+    if (line == null) {
+      fieldCount = 0;
+      return false;
+    }
+    final int length = line.length();
+    int count = 0;
+    int start = 0;
+    while (true) {
+      int end = line.indexOf('\t', start);
+      if (end == -1) {
+        end = length;
+      }
+      if (count == starts.length) {
+        final int[] newStarts = new int[count * 2];
+        final int[] newEnds = new int[count * 2];
+        System.arraycopy(starts, 0, newStarts, 0, count);
+        System.arraycopy(ends, 0, newEnds, 0, count);
+        starts = newStarts;
+        ends = newEnds;
+      }
+      starts[count] = start;
+      ends[count] = end;
+      ++count;
+      if (end == length) {
+        break;
+      }
+      start = end + 1;
+    }
+    // Ignore trailing empty fields, unless the line holds a single field.
+    while (count > 1 && starts[count - 1] == ends[count - 1]) {
+      --count;
+    }
+    fieldCount = count;
+    return true;
+  }
+
+  /**
+   * Returns the current line.
+   */
+  public CharSequence getLine() {
+    return line;
+  }
+
+  /**
+   * Checks if the current line has a field for {@code column}.
+   */
+  public boolean has(final Column column) {
+    return column.index < fieldCount;
+  }
+
+  /**
+   * Returns the index in {@link #getLine} of the first character of {@code column}.
+   *
+   * @throws ArrayIndexOutOfBoundsException  No field for {@code column} in the current line.
+   */
+  public int getStart(final Column column) {
+    checkField(column);
+    return starts[column.index];
+  }
+
+  /**
+   * Returns the index in {@link #getLine} after the last character of {@code column}.
+   *
+   * @throws ArrayIndexOutOfBoundsException  No field for {@code column} in the current line.
+   */
+  public int getEnd(final Column column) {
+    checkField(column);
+    return ends[column.index];
+  }
+
+  /**
+   * Returns the value of {@code column} in the current line.
+   *
+   * @throws ArrayIndexOutOfBoundsException  No field for {@code column} in the current line.
+   * @see #tryGet
+   */
+  public String get(final Column column) {
+    checkField(column);
+    return line.substring(starts[column.index], ends[column.index]);
+  }
+
+  /**
+   * Returns the value of {@code column} in the current line if available, else {@code null}.
+   *
+   * @see #get
+   */
+  public String tryGet(final Column column) {
+    return has(column) ? get(column) : null;
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private void checkField(final Column column) {
+    if (!has(column)) {
+      throw new ArrayIndexOutOfBoundsException(
+          "No field for " + column.header + " in line: " + line);
+    }
+  }
+}
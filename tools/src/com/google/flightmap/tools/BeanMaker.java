@@ -17,6 +17,7 @@
 package com.google.flightmap.tools;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.util.Set;
@@ -27,6 +28,9 @@ import java.util.TreeSet;
  * Utility class for Java Bean creation.
  * Reads members from stdin and creates a Java Bean with the corresponding accessors.
  * Must be called with the Bean class name as single argument.
+ * <p>
+ * A matching {@code CsvParser.RowMapper} is also created in {@code <Bean>RowMapper.java}.  It
+ * assigns fields through their setters, so that CSV files can be parsed without reflection.
  */
 public class BeanMaker {
 
@@ -48,9 +52,7 @@ public class BeanMaker {
         out.println("  private String " + field + ";");
       }
       for (String field: fields) {
-        final StringBuilder sb = new StringBuilder(field);
-        sb.setCharAt(0, Character.toUpperCase(field.charAt(0)));
-        final String capitalizedField = sb.toString();
+        final String capitalizedField = capitalize(field);
         out.println();
         out.println("  public void set" + capitalizedField + "(final String " + field + ") {");
         out.println("    this." + field + " = " + field + ";");
@@ -71,9 +73,54 @@ public class BeanMaker {
       out.println("    return sb.toString();");
       out.println("  }");
       out.println("}");
+      out.close();
+
+      writeRowMapper(beanName, fields);
     } catch (Exception ex) {
       ex.printStackTrace();
       System.exit(1);
     }
   }
+
+  /**
+   * Creates {@code <beanName>RowMapper.java}, a direct-assignment row mapper for the bean.
+   */
+  private static void writeRowMapper(final String beanName, final Set<String> fields)
+      throws IOException {
+    final String mapperName = beanName + "RowMapper";
+    final PrintStream out = new PrintStream(mapperName + ".java");
+    out.println("import com.google.flightmap.parsing.util.CsvParser;");
+    out.println();
+    out.println("public class " + mapperName + " implements");
+    out.println("    CsvParser.RowMapper<" + beanName + "> {");
+    out.println("  private final static String[] FIELD_NAMES = {");
+    for (String field: fields) {
+      out.println("    \"" + field + "\",");
+    }
+    out.println("  };");
+    out.println();
+    out.println("  @Override");
+    out.println("  public String[] getFieldNames() {");
+    out.println("    return FIELD_NAMES.clone();");
+    out.println("  }");
+    out.println();
+    out.println("  @Override");
+    out.println("  public " + beanName + " mapRow(final String[] row, final int[] columns) {");
+    out.println("    final " + beanName + " bean = new " + beanName + "();");
+    int index = 0;
+    for (String field: fields) {
+      out.println("    bean.set" + capitalize(field) + "(CsvParser.getField(row, columns[" +
+          index++ + "]));");
+    }
+    out.println("    return bean;");
+    out.println("  }");
+    out.println("}");
+    out.close();
+  }
+
+  private static String capitalize(final String field) {
+    final StringBuilder sb = new StringBuilder(field);
+    sb.setCharAt(0, Character.toUpperCase(field.charAt(0)));
+    return sb.toString();
+  }
 }